@@ -0,0 +1,102 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.numenta.nupic.algorithms.SpatialPooler;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.util.MersenneTwister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chaschev.lang.Pair;
+
+/**
+ * Compares {@link SpatialPooler#inhibitColumnsGlobal(Connections, double[], double)}
+ * with the boxed {@code Pair} sort it replaced, at 2% density.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GlobalInhibitionBenchmark {
+    private static final double DENSITY = 0.02;
+
+    @Param({ "2048", "65536" })
+    private int numColumns;
+
+    private SpatialPooler sp;
+    private Connections c;
+    private double[] overlaps;
+
+    @Setup
+    public void init() {
+        sp = new SpatialPooler();
+        c = new Connections();
+        c.setNumColumns(numColumns);
+        c.setStimulusThreshold(1);
+
+        // Boosted overlaps of a sparse input: mostly zeros, some small integer overlaps
+        MersenneTwister random = new MersenneTwister(42);
+        overlaps = new double[numColumns];
+        for(int i = 0;i < numColumns;i++) {
+            overlaps[i] = random.nextDouble() < 0.3 ? random.nextInt(20) * (1 + random.nextDouble()) : 0;
+        }
+    }
+
+    @Benchmark
+    public int[] sortedPairs() {
+        int numActive = (int)(DENSITY * numColumns);
+        int[] sortedWinnerIndices = IntStream.range(0, overlaps.length)
+            .mapToObj(i -> new Pair<>(i, overlaps[i]))
+            .sorted(c.inhibitionComparator)
+            .mapToInt(Pair<Integer, Double>::getFirst)
+            .toArray();
+
+        int start = sortedWinnerIndices.length - numActive;
+        while(start < sortedWinnerIndices.length) {
+            if(overlaps[sortedWinnerIndices[start]] >= c.getStimulusThreshold()) break;
+            ++start;
+        }
+        return IntStream.of(sortedWinnerIndices).skip(start).toArray();
+    }
+
+    @Benchmark
+    public int[] primitiveSelection() {
+        return sp.inhibitColumnsGlobal(c, overlaps, DENSITY);
+    }
+}
@@ -0,0 +1,144 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.numenta.nupic.algorithms.Classification;
+import org.numenta.nupic.algorithms.ColumnarWeightMatrix.Precision;
+import org.numenta.nupic.algorithms.SDRClassifier;
+import org.numenta.nupic.util.ArrayUtils;
+import org.numenta.nupic.util.MersenneTwister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gnu.trove.list.array.TIntArrayList;
+import no.uib.cipr.matrix.sparse.FlexCompRowMatrix;
+
+/**
+ * Times one {@link SDRClassifier} step with 40 active cells out of 2000 after
+ * every bucket has been seen once, and compares inference with the row by row
+ * {@code FlexCompRowMatrix} evaluation and quadratic softmax it replaced.
+ * The classifier is sized for all the buckets and cells up front.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SDRClassifierBenchmark {
+    private static final int NUM_CELLS = 2000;
+    private static final int NUM_ACTIVE = 40;
+
+    @Param({ "1000", "10000" })
+    private int numBuckets;
+
+    @Param({ "DOUBLE", "FLOAT" })
+    private Precision precision;
+
+    private SDRClassifier classifier;
+    private FlexCompRowMatrix flexMatrix;
+    private int[][] patterns;
+    private int recordNum;
+
+    @Setup
+    public void init() {
+        MersenneTwister random = new MersenneTwister(42);
+        patterns = new int[numBuckets][];
+        for(int b = 0;b < numBuckets;b++) {
+            TIntArrayList pattern = new TIntArrayList();
+            while(pattern.size() < NUM_ACTIVE) {
+                int cell = random.nextInt(NUM_CELLS);
+                if(!pattern.contains(cell)) pattern.add(cell);
+            }
+            pattern.sort();
+            patterns[b] = pattern.toArray();
+        }
+
+        classifier = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0,
+            numBuckets, NUM_CELLS, precision);
+        for(recordNum = 0;recordNum < numBuckets;recordNum++) {
+            classifier.compute(recordNum, classification(recordNum), patterns[recordNum], true, false);
+        }
+
+        flexMatrix = new FlexCompRowMatrix(numBuckets, NUM_CELLS);
+        for(int b = 0;b < numBuckets;b++) {
+            for(int bit : patterns[b]) {
+                flexMatrix.set(b, bit, random.nextDouble());
+            }
+        }
+    }
+
+    private static Map<String, Object> classification(int bucketIdx) {
+        Map<String, Object> classification = new LinkedHashMap<>();
+        classification.put("bucketIdx", bucketIdx);
+        classification.put("actValue", (double)bucketIdx);
+        return classification;
+    }
+
+    @Benchmark
+    public Classification<Double> infer() {
+        int bucket = recordNum % numBuckets;
+        return classifier.compute(recordNum++, classification(bucket), patterns[bucket], false, true);
+    }
+
+    @Benchmark
+    public Classification<Double> learn() {
+        int bucket = recordNum % numBuckets;
+        return classifier.compute(recordNum++, classification(bucket), patterns[bucket], true, false);
+    }
+
+    @Benchmark
+    public double[] flexMatrixInfer() {
+        int[] patternNZ = patterns[recordNum++ % numBuckets];
+        double[] outputActivation = new double[numBuckets];
+        for(int row = 0;row < numBuckets;row++) {
+            for(int bit : patternNZ) {
+                outputActivation[row] += flexMatrix.get(row, bit);
+            }
+        }
+
+        double[] expOutputActivation = new double[outputActivation.length];
+        for(int i = 0;i < expOutputActivation.length;i++) {
+            expOutputActivation[i] = Math.exp(outputActivation[i]);
+        }
+        double[] predictDist = new double[outputActivation.length];
+        for(int i = 0;i < predictDist.length;i++) {
+            predictDist[i] = expOutputActivation[i] / ArrayUtils.sum(expOutputActivation);
+        }
+        return predictDist;
+    }
+}
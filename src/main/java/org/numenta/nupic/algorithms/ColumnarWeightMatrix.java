@@ -0,0 +1,411 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Dense weight matrix of one {@link SDRClassifier} step, stored by input bit:
+ * the weights from input bit {@code i} to all the buckets are one contiguous
+ * column, indexed by bucket.
+ * 按输入位分列存储的分类器权重矩阵
+ * <p>
+ * The classifier only ever reads and writes the columns of the active bits, and
+ * always across all the buckets: inference adds the active columns into the
+ * output activation and learning adds the same error vector to each active column.
+ * With this layout both are straight loops over contiguous memory. A column is
+ * allocated the first time its bit learns; until it is written again a column may
+ * be shorter than the number of buckets, the missing weights being 0.
+ * </p><p>
+ * New columns get room for the bucket capacity given at creation, so a classifier
+ * which knows its number of buckets in advance never copies a column. Beyond that,
+ * columns and the table of columns grow geometrically, by at least half their size.
+ * The weights are kept as {@code double}s, as {@code float}s, or as {@code float}s
+ * outside the Java heap, see {@link Precision}; sums are always computed in double.
+ * </p>
+ */
+public abstract class ColumnarWeightMatrix implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * How the weights are stored.
+     */
+    public enum Precision {
+        /** One {@code double[]} per column */
+        DOUBLE,
+        /** One {@code float[]} per column: half the memory, about 7 significant digits */
+        FLOAT,
+        /** One direct {@code float} buffer per column, outside the garbage collected heap */
+        OFF_HEAP_FLOAT
+    }
+    
+    /** The number of buckets in use */
+    protected int numBuckets;
+    /** The number of input bits in use */
+    protected int numInputs;
+    /** The length a new column is allocated with, at least */
+    protected final int bucketCapacity;
+    
+    /**
+     * @param numBuckets        the initial number of buckets (rows)
+     * @param bucketCapacity    the number of buckets to make room for in each new column
+     */
+    protected ColumnarWeightMatrix(int numBuckets, int bucketCapacity) {
+        this.numBuckets = numBuckets;
+        this.bucketCapacity = bucketCapacity;
+    }
+    
+    /**
+     * Creates an empty matrix.
+     * 
+     * @param precision         how the weights are stored
+     * @param numBuckets        the initial number of buckets (rows)
+     * @param numInputs         the initial number of input bits (columns)
+     * @param bucketCapacity    the number of buckets expected, 0 if unknown
+     * @param inputCapacity     the number of input bits expected, 0 if unknown
+     * @return  the new matrix
+     */
+    public static ColumnarWeightMatrix create(Precision precision, int numBuckets, int numInputs,
+        int bucketCapacity, int inputCapacity) {
+        
+        ColumnarWeightMatrix matrix;
+        switch(precision) {
+            case FLOAT: matrix = new FloatColumns(numBuckets, bucketCapacity); break;
+            case OFF_HEAP_FLOAT: matrix = new OffHeapFloatColumns(numBuckets, bucketCapacity); break;
+            default: matrix = new DoubleColumns(numBuckets, bucketCapacity); break;
+        }
+        matrix.reserveInputs(Math.max(numInputs, inputCapacity));
+        matrix.ensureInputs(numInputs);
+        return matrix;
+    }
+    
+    /**
+     * Creates an empty matrix of {@code double}s without capacity hints.
+     * 
+     * @param numBuckets    the initial number of buckets (rows)
+     * @param numInputs     the initial number of input bits (columns)
+     * @return  the new matrix
+     */
+    public static ColumnarWeightMatrix create(int numBuckets, int numInputs) {
+        return create(Precision.DOUBLE, numBuckets, numInputs, 0, 0);
+    }
+    
+    /**
+     * Returns {@code needed} or, if larger, {@code current} grown by half.
+     */
+    protected static int grow(int current, int needed) {
+        return Math.max(needed, current + (current >> 1));
+    }
+    
+    /**
+     * Makes room for at least {@code numInputs} input bits.
+     * @param numInputs     the number of input bits
+     */
+    public void ensureInputs(int numInputs) {
+        if(numInputs > this.numInputs) {
+            if(numInputs > inputCapacity()) {
+                reserveInputs(grow(inputCapacity(), numInputs));
+            }
+            this.numInputs = numInputs;
+        }
+    }
+    
+    /**
+     * Makes room for at least {@code numBuckets} buckets. The weights of the new
+     * buckets are 0; no column is copied until it is next written.
+     * @param numBuckets    the number of buckets
+     */
+    public void ensureBuckets(int numBuckets) {
+        this.numBuckets = Math.max(this.numBuckets, numBuckets);
+    }
+    
+    /**
+     * Returns the number of buckets (rows).
+     * @return  the number of buckets
+     */
+    public int numBuckets() {
+        return numBuckets;
+    }
+    
+    /**
+     * Returns the number of input bits (columns).
+     * @return  the number of input bits
+     */
+    public int numInputs() {
+        return numInputs;
+    }
+    
+    /**
+     * Returns the length a column written now gets if it is shorter than the number of buckets.
+     */
+    protected int newColumnLength(int currentLength) {
+        return Math.max(bucketCapacity, currentLength == 0 ? numBuckets : grow(currentLength, numBuckets));
+    }
+    
+    /**
+     * Returns the number of input bits the table of columns has room for.
+     */
+    protected abstract int inputCapacity();
+    
+    /**
+     * Resizes the table of columns to {@code capacity} input bits, keeping the columns.
+     */
+    protected abstract void reserveInputs(int capacity);
+    
+    /**
+     * Returns the weight from input bit {@code input} to bucket {@code bucket}.
+     * @param bucket    the bucket index
+     * @param input     the input bit index
+     * @return  the weight
+     */
+    public abstract double get(int bucket, int input);
+    
+    /**
+     * Adds the weights of the active bits into {@code activation}, bit by bit in the
+     * order of {@code patternNZ}, so each bucket's sum is accumulated in the same
+     * order as a row by row evaluation would.
+     * 
+     * @param patternNZ     the active input bits
+     * @param activation    receives the summed weights, one entry per bucket
+     */
+    public abstract void accumulate(int[] patternNZ, double[] activation);
+    
+    /**
+     * Adds {@code delta} to the column of each active bit: the gradient of the
+     * classifier's loss is non-zero on these columns only.
+     * 
+     * @param patternNZ     the active input bits; a repeated bit is updated once per occurrence
+     * @param delta         the change of weight for each bucket, at least {@link #numBuckets()} long
+     */
+    public abstract void addToColumns(int[] patternNZ, double[] delta);
+    
+    /**
+     * Weights stored as {@code double}s.
+     */
+    static class DoubleColumns extends ColumnarWeightMatrix {
+        private static final long serialVersionUID = 1L;
+        
+        /** Weights by input bit, then bucket; null for bits which never learned */
+        private double[][] columns = new double[0][];
+        
+        DoubleColumns(int numBuckets, int bucketCapacity) {
+            super(numBuckets, bucketCapacity);
+        }
+        
+        @Override
+        protected int inputCapacity() {
+            return columns.length;
+        }
+        
+        @Override
+        protected void reserveInputs(int capacity) {
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        
+        @Override
+        public double get(int bucket, int input) {
+            double[] column = columns[input];
+            return column == null || bucket >= Math.min(column.length, numBuckets) ? 0 : column[bucket];
+        }
+        
+        @Override
+        public void accumulate(int[] patternNZ, double[] activation) {
+            int length = Math.min(activation.length, numBuckets);
+            for(int bit : patternNZ) {
+                double[] column = columns[bit];
+                if(column == null) continue;
+                for(int row = 0, end = Math.min(length, column.length);row < end;row++) {
+                    activation[row] += column[row];
+                }
+            }
+        }
+        
+        @Override
+        public void addToColumns(int[] patternNZ, double[] delta) {
+            for(int bit : patternNZ) {
+                double[] column = columns[bit];
+                if(column == null || column.length < numBuckets) {
+                    int length = newColumnLength(column == null ? 0 : column.length);
+                    column = columns[bit] = column == null ? new double[length] : Arrays.copyOf(column, length);
+                }
+                for(int row = 0;row < numBuckets;row++) {
+                    column[row] += delta[row];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Weights stored as {@code float}s, summed and updated in {@code double}.
+     */
+    static class FloatColumns extends ColumnarWeightMatrix {
+        private static final long serialVersionUID = 1L;
+        
+        /** Weights by input bit, then bucket; null for bits which never learned */
+        private float[][] columns = new float[0][];
+        
+        FloatColumns(int numBuckets, int bucketCapacity) {
+            super(numBuckets, bucketCapacity);
+        }
+        
+        @Override
+        protected int inputCapacity() {
+            return columns.length;
+        }
+        
+        @Override
+        protected void reserveInputs(int capacity) {
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        
+        @Override
+        public double get(int bucket, int input) {
+            float[] column = columns[input];
+            return column == null || bucket >= Math.min(column.length, numBuckets) ? 0 : column[bucket];
+        }
+        
+        @Override
+        public void accumulate(int[] patternNZ, double[] activation) {
+            int length = Math.min(activation.length, numBuckets);
+            for(int bit : patternNZ) {
+                float[] column = columns[bit];
+                if(column == null) continue;
+                for(int row = 0, end = Math.min(length, column.length);row < end;row++) {
+                    activation[row] += column[row];
+                }
+            }
+        }
+        
+        @Override
+        public void addToColumns(int[] patternNZ, double[] delta) {
+            for(int bit : patternNZ) {
+                float[] column = columns[bit];
+                if(column == null || column.length < numBuckets) {
+                    int length = newColumnLength(column == null ? 0 : column.length);
+                    column = columns[bit] = column == null ? new float[length] : Arrays.copyOf(column, length);
+                }
+                for(int row = 0;row < numBuckets;row++) {
+                    column[row] = (float)(column[row] + delta[row]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Weights stored as {@code float}s in direct buffers. The buffers are released
+     * with the matrix; serialization writes the weights themselves.
+     */
+    static class OffHeapFloatColumns extends ColumnarWeightMatrix {
+        private static final long serialVersionUID = 1L;
+        
+        /** Weights by input bit, then bucket; null for bits which never learned */
+        private transient FloatBuffer[] columns = new FloatBuffer[0];
+        
+        OffHeapFloatColumns(int numBuckets, int bucketCapacity) {
+            super(numBuckets, bucketCapacity);
+        }
+        
+        private static FloatBuffer allocate(int length) {
+            return ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        
+        @Override
+        protected int inputCapacity() {
+            return columns.length;
+        }
+        
+        @Override
+        protected void reserveInputs(int capacity) {
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        
+        @Override
+        public double get(int bucket, int input) {
+            FloatBuffer column = columns[input];
+            return column == null || bucket >= Math.min(column.capacity(), numBuckets) ? 0 : column.get(bucket);
+        }
+        
+        @Override
+        public void accumulate(int[] patternNZ, double[] activation) {
+            int length = Math.min(activation.length, numBuckets);
+            for(int bit : patternNZ) {
+                FloatBuffer column = columns[bit];
+                if(column == null) continue;
+                for(int row = 0, end = Math.min(length, column.capacity());row < end;row++) {
+                    activation[row] += column.get(row);
+                }
+            }
+        }
+        
+        @Override
+        public void addToColumns(int[] patternNZ, double[] delta) {
+            for(int bit : patternNZ) {
+                FloatBuffer column = columns[bit];
+                if(column == null || column.capacity() < numBuckets) {
+                    FloatBuffer grown = allocate(newColumnLength(column == null ? 0 : column.capacity()));
+                    if(column != null) {
+                        column.clear();
+                        grown.put(column).clear();
+                    }
+                    column = columns[bit] = grown;
+                }
+                for(int row = 0;row < numBuckets;row++) {
+                    column.put(row, (float)(column.get(row) + delta[row]));
+                }
+            }
+        }
+        
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(columns.length);
+            for(FloatBuffer column : columns) {
+                out.writeInt(column == null ? -1 : column.capacity());
+                if(column != null) {
+                    for(int row = 0;row < column.capacity();row++) {
+                        out.writeFloat(column.get(row));
+                    }
+                }
+            }
+        }
+        
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            columns = new FloatBuffer[in.readInt()];
+            for(int i = 0;i < columns.length;i++) {
+                int length = in.readInt();
+                if(length >= 0) {
+                    columns[i] = allocate(length);
+                    for(int row = 0;row < length;row++) {
+                        columns[i].put(row, in.readFloat());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.util.ArrayUtils;
+
+/**
+ * Read-only snapshot of a trained {@link SpatialPooler} for inference only.
+ * 训练好的空间池的只读快照，只用于推理
+ * <p>
+ * {@link #compile(SpatialPooler, Connections)} copies the connected synapses into a
+ * compressed table from each input bit to the columns it is connected to, together
+ * with the stimulus threshold, the inhibition density and, for local inhibition,
+ * the column neighborhoods. {@link #compute(int[])} then gives the same active
+ * columns as {@link SpatialPooler#compute(Connections, int[], int[], boolean)} with
+ * learning off would have given at the time of compiling, without touching the
+ * {@link Connections} or its bookkeeping. Nothing is written after construction,
+ * so one instance can serve any number of threads at once.
+ * </p>
+ */
+public class CompiledSpatialPooler implements Serializable {
+    /** keep it simple */
+    private static final long serialVersionUID = 1L;
+    
+    private final int numInputs;
+    private final int numColumns;
+    
+    /** The columns connected to input i are inputColumns[inputOffsets[i]..inputOffsets[i + 1]) */
+    private final int[] inputOffsets;
+    private final int[] inputColumns;
+    
+    private final double stimulusThreshold;
+    private final double density;
+    private final boolean globalInhibition;
+    /** The neighborhood of each column, null for global inhibition */
+    private final int[][] neighborhoods;
+    
+    private CompiledSpatialPooler(int numInputs, int numColumns, int[] inputOffsets, int[] inputColumns,
+        double stimulusThreshold, double density, boolean globalInhibition, int[][] neighborhoods) {
+        
+        this.numInputs = numInputs;
+        this.numColumns = numColumns;
+        this.inputOffsets = inputOffsets;
+        this.inputColumns = inputColumns;
+        this.stimulusThreshold = stimulusThreshold;
+        this.density = density;
+        this.globalInhibition = globalInhibition;
+        this.neighborhoods = neighborhoods;
+    }
+    
+    /**
+     * Snapshots the current state of a trained spatial pooler. Later learning on
+     * {@code c} does not affect the returned model.
+     * 
+     * @param sp    the spatial pooler trained on {@code c}, used for its inhibition
+     *              and neighborhood rules
+     * @param c     the {@link Connections} memory
+     * @return  the compiled model
+     */
+    public static CompiledSpatialPooler compile(SpatialPooler sp, Connections c) {
+        int numInputs = c.getNumInputs();
+        int numColumns = c.getNumColumns();
+        
+        // Transpose the connected matrix: count the fan-out of each input, then fill
+        int[] connected = c.getConnectedCounts().getSparseIndices();
+        int[] inputOffsets = new int[numInputs + 1];
+        for(int index : connected) {
+            inputOffsets[index % numInputs + 1]++;
+        }
+        for(int i = 0;i < numInputs;i++) {
+            inputOffsets[i + 1] += inputOffsets[i];
+        }
+        int[] inputColumns = new int[connected.length];
+        int[] fill = Arrays.copyOf(inputOffsets, numInputs);
+        for(int index : connected) {
+            inputColumns[fill[index % numInputs]++] = index / numInputs;
+        }
+        for(int i = 0;i < numInputs;i++) {
+            Arrays.sort(inputColumns, inputOffsets[i], inputOffsets[i + 1]);
+        }
+        
+        boolean globalInhibition = sp.isGlobalInhibition(c);
+        int[][] neighborhoods = null;
+        if(!globalInhibition) {
+            int[][] shared = sp.getColumnNeighborhoods(c, c.getInhibitionRadius());
+            neighborhoods = new int[numColumns][];
+            for(int i = 0;i < numColumns;i++) {
+                neighborhoods[i] = shared[i].clone();
+            }
+        }
+        
+        return new CompiledSpatialPooler(numInputs, numColumns, inputOffsets, inputColumns,
+            c.getStimulusThreshold(), sp.getInhibitionDensity(c), globalInhibition, neighborhoods);
+    }
+    
+    /**
+     * Computes the active columns for a binary (or integer weighted) input vector.
+     * 
+     * @param inputVector   one value per input bit
+     * @return  the indexes of the active columns in ascending order
+     */
+    public int[] compute(int[] inputVector) {
+        if(inputVector.length != numInputs) {
+            throw new IllegalArgumentException(
+                "Input array must be same size as the defined number of inputs: From Params: " + numInputs +
+                ", From Input Vector: " + inputVector.length);
+        }
+        
+        int[] overlaps = new int[numColumns];
+        for(int i = 0;i < numInputs;i++) {
+            int value = inputVector[i];
+            if(value != 0) {
+                for(int j = inputOffsets[i], end = inputOffsets[i + 1];j < end;j++) {
+                    overlaps[inputColumns[j]] += value;
+                }
+            }
+        }
+        return inhibit(overlaps);
+    }
+    
+    /**
+     * Computes the active columns for an input given by the indexes of its on bits.
+     * 
+     * @param inputIndices  the unique indexes of the input bits which are on
+     * @return  the indexes of the active columns in ascending order
+     */
+    public int[] computeSparse(int[] inputIndices) {
+        int[] overlaps = new int[numColumns];
+        for(int i : inputIndices) {
+            if(i < 0 || i >= numInputs) {
+                throw new IllegalArgumentException("Input index out of range: " + i + ", number of inputs: " + numInputs);
+            }
+            for(int j = inputOffsets[i], end = inputOffsets[i + 1];j < end;j++) {
+                overlaps[inputColumns[j]]++;
+            }
+        }
+        return inhibit(overlaps);
+    }
+    
+    /**
+     * Applies the stimulus threshold and the inhibition of the compiled pooler.
+     */
+    private int[] inhibit(int[] overlaps) {
+        for(int i = 0;i < numColumns;i++) {
+            if(overlaps[i] < stimulusThreshold) {
+                overlaps[i] = 0;
+            }
+        }
+        
+        double[] scores = ArrayUtils.toDoubleArray(overlaps);
+        int[] winners = globalInhibition ?
+            SpatialPooler.inhibitColumnsGlobal(scores, (int)(density * numColumns), stimulusThreshold) :
+                SpatialPooler.inhibitColumnsLocal(scores, neighborhoods, density, stimulusThreshold);
+        Arrays.sort(winners);
+        return winners;
+    }
+    
+    /**
+     * Returns the number of input bits.
+     * @return  the number of input bits
+     */
+    public int getNumInputs() {
+        return numInputs;
+    }
+    
+    /**
+     * Returns the number of columns.
+     * @return  the number of columns
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+    
+    /**
+     * Returns the number of connected synapses in the snapshot.
+     * @return  the number of connected synapses
+     */
+    public int getNumConnectedSynapses() {
+        return inputColumns.length;
+    }
+}
@@ -0,0 +1,388 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.Synapse;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Read-only snapshot of a trained {@link TemporalMemory} for inference only.
+ * 训练好的时间记忆的只读快照，只用于推理
+ * <p>
+ * {@link #compile(Connections)} numbers the distal segments by (cell, ordinal), the
+ * order in which {@link Connections#segmentPositionSortKey} sorts them, and lays out
+ * the synapses as a compressed table from each presynaptic cell to the segments it
+ * feeds, with the connected flag decided once against the connected permanence.
+ * The model itself is never written after construction, so one instance can serve
+ * any number of threads at once. What changes from step to step (the previous active
+ * cells and segments) lives in a {@link State} owned by the caller, one per sequence.
+ * </p><p>
+ * {@link #compute(State, int[])} gives the same active, winner and predictive cells as
+ * {@link TemporalMemory#compute(Connections, int[], boolean)} with learning off would
+ * have given at the time of compiling, provided the state's random generator draws the
+ * same numbers as the {@link Connections}' one: a bursting column without matching
+ * segments picks its winner at random among its least used cells.
+ * </p>
+ */
+public class CompiledTemporalMemory implements Serializable {
+    /** keep it simple */
+    private static final long serialVersionUID = 1L;
+    
+    private static final double EPSILON = 0.00001;
+    
+    private final int numColumns;
+    private final int cellsPerColumn;
+    private final int activationThreshold;
+    private final int minThreshold;
+    
+    /** The owning cell of each segment, in ascending order */
+    private final int[] segmentCells;
+    /** The segments of cell c are cellSegments[c]..cellSegments[c + 1] */
+    private final int[] cellSegments;
+    
+    /** The synapses from presynaptic cell c are entries presynapticOffsets[c]..presynapticOffsets[c + 1] */
+    private final int[] presynapticOffsets;
+    private final int[] synapseSegments;
+    private final boolean[] synapseConnected;
+    
+    private CompiledTemporalMemory(Connections c, int[] segmentCells, int[] cellSegments,
+        int[] presynapticOffsets, int[] synapseSegments, boolean[] synapseConnected) {
+        
+        this.numColumns = c.getNumColumns();
+        this.cellsPerColumn = c.getCellsPerColumn();
+        this.activationThreshold = c.getActivationThreshold();
+        this.minThreshold = c.getMinThreshold();
+        this.segmentCells = segmentCells;
+        this.cellSegments = cellSegments;
+        this.presynapticOffsets = presynapticOffsets;
+        this.synapseSegments = synapseSegments;
+        this.synapseConnected = synapseConnected;
+    }
+    
+    /**
+     * Snapshots the distal segments and synapses of a trained temporal memory.
+     * Later learning on {@code c} does not affect the returned model.
+     * 
+     * @param c     the {@link Connections} memory
+     * @return  the compiled model
+     */
+    public static CompiledTemporalMemory compile(Connections c) {
+        Cell[] cells = c.getCells();
+        int numCells = cells.length;
+        double threshold = c.getConnectedPermanence() - EPSILON;
+        
+        int[] cellSegments = new int[numCells + 1];
+        TIntArrayList segmentCells = new TIntArrayList();
+        List<DistalDendrite> segments = new ArrayList<>();
+        for(int i = 0;i < numCells;i++) {
+            List<DistalDendrite> own = new ArrayList<>(c.getSegments(cells[i]));
+            own.sort(Comparator.comparingInt(DistalDendrite::getOrdinal));
+            for(DistalDendrite segment : own) {
+                segmentCells.add(i);
+                segments.add(segment);
+            }
+            cellSegments[i + 1] = segments.size();
+        }
+        
+        // Count the synapses per presynaptic cell, then fill in segment order
+        int[] presynapticOffsets = new int[numCells + 1];
+        for(DistalDendrite segment : segments) {
+            for(Synapse synapse : c.getSynapses(segment)) {
+                presynapticOffsets[synapse.getPresynapticCell().getIndex() + 1]++;
+            }
+        }
+        for(int i = 0;i < numCells;i++) {
+            presynapticOffsets[i + 1] += presynapticOffsets[i];
+        }
+        int numSynapses = presynapticOffsets[numCells];
+        int[] synapseSegments = new int[numSynapses];
+        boolean[] synapseConnected = new boolean[numSynapses];
+        int[] fill = Arrays.copyOf(presynapticOffsets, numCells);
+        for(int s = 0;s < segments.size();s++) {
+            for(Synapse synapse : c.getSynapses(segments.get(s))) {
+                int entry = fill[synapse.getPresynapticCell().getIndex()]++;
+                synapseSegments[entry] = s;
+                synapseConnected[entry] = synapse.getPermanence() > threshold;
+            }
+        }
+        
+        return new CompiledTemporalMemory(c, segmentCells.toArray(), cellSegments,
+            presynapticOffsets, synapseSegments, synapseConnected);
+    }
+    
+    /**
+     * Returns a fresh state at the start of a sequence.
+     * 
+     * @param random    draws the winners of bursting columns without matching segments
+     * @return  a new {@link State}
+     */
+    public State newState(Random random) {
+        return new State(segmentCells.length, random);
+    }
+    
+    /**
+     * Performs one inference step for the specified active columns and updates {@code state}.
+     * 
+     * @param state             the state of the sequence, only used by one thread at a time
+     * @param activeColumns     indexes of the active columns
+     * @return  {@code state}
+     */
+    public State compute(State state, int[] activeColumns) {
+        if(state.numActivePotential.length != segmentCells.length) {
+            throw new IllegalArgumentException("State was created by another model");
+        }
+        
+        int[] columns = activeColumns.clone();
+        Arrays.sort(columns);
+        
+        TIntArrayList activeCells = new TIntArrayList();
+        TIntArrayList winnerCells = new TIntArrayList();
+        TIntArrayList leastUsedCells = new TIntArrayList(cellsPerColumn);
+        int[] prevActive = state.activeSegments;
+        int[] prevMatching = state.matchingSegments;
+        int a = 0, m = 0;
+        for(int i = 0;i < columns.length;i++) {
+            int column = columns[i];
+            if(i > 0 && column == columns[i - 1]) continue;
+            if(column < 0 || column >= numColumns) {
+                throw new IllegalArgumentException("Column index out of range: " + column);
+            }
+            
+            int firstCell = column * cellsPerColumn;
+            int endCell = firstCell + cellsPerColumn;
+            // Segments are ordered by cell and so by column: skip those of earlier columns
+            while(a < prevActive.length && segmentCells[prevActive[a]] < firstCell) a++;
+            while(m < prevMatching.length && segmentCells[prevMatching[m]] < firstCell) m++;
+            
+            if(a < prevActive.length && segmentCells[prevActive[a]] < endCell) {
+                // Predicted column: the cells with active segments
+                int previousCell = -1;
+                for(;a < prevActive.length && segmentCells[prevActive[a]] < endCell;a++) {
+                    int cell = segmentCells[prevActive[a]];
+                    if(cell != previousCell) {
+                        activeCells.add(cell);
+                        winnerCells.add(cell);
+                        previousCell = cell;
+                    }
+                }
+                continue;
+            }
+            
+            // Bursting column
+            for(int cell = firstCell;cell < endCell;cell++) {
+                activeCells.add(cell);
+            }
+            if(m < prevMatching.length && segmentCells[prevMatching[m]] < endCell) {
+                // First segment with the most active potential synapses
+                int best = prevMatching[m];
+                for(m++;m < prevMatching.length && segmentCells[prevMatching[m]] < endCell;m++) {
+                    if(state.numActivePotential[prevMatching[m]] > state.numActivePotential[best]) {
+                        best = prevMatching[m];
+                    }
+                }
+                winnerCells.add(segmentCells[best]);
+            }else{
+                leastUsedCells.resetQuick();
+                int minNumSegments = Integer.MAX_VALUE;
+                for(int cell = firstCell;cell < endCell;cell++) {
+                    int numSegments = cellSegments[cell + 1] - cellSegments[cell];
+                    if(numSegments < minNumSegments) {
+                        minNumSegments = numSegments;
+                        leastUsedCells.resetQuick();
+                    }
+                    if(numSegments == minNumSegments) {
+                        leastUsedCells.add(cell);
+                    }
+                }
+                winnerCells.add(leastUsedCells.get(state.random.nextInt(leastUsedCells.size())));
+            }
+        }
+        
+        state.activeCells = activeCells.toArray();
+        state.winnerCells = winnerCells.toArray();
+        activateDendrites(state);
+        
+        return state;
+    }
+    
+    /**
+     * Counts the active synapses of every segment fed by the state's active cells
+     * and collects the active and matching segments and the predictive cells.
+     */
+    private void activateDendrites(State state) {
+        int[] numActivePotential = state.numActivePotential;
+        int[] numActiveConnected = state.numActiveConnected;
+        TIntArrayList touched = state.touchedSegments;
+        for(int i = 0;i < touched.size();i++) {
+            numActivePotential[touched.get(i)] = 0;
+            numActiveConnected[touched.get(i)] = 0;
+        }
+        touched.resetQuick();
+        
+        for(int cell : state.activeCells) {
+            for(int j = presynapticOffsets[cell], end = presynapticOffsets[cell + 1];j < end;j++) {
+                int segment = synapseSegments[j];
+                if(numActivePotential[segment]++ == 0) {
+                    touched.add(segment);
+                }
+                if(synapseConnected[j]) {
+                    numActiveConnected[segment]++;
+                }
+            }
+        }
+        
+        // With a threshold of 0 segments without any active synapse qualify too
+        int[] candidates;
+        if(activationThreshold <= 0 || minThreshold <= 0) {
+            candidates = new int[segmentCells.length];
+            for(int s = 0;s < candidates.length;s++) candidates[s] = s;
+        }else{
+            candidates = touched.toArray();
+            Arrays.sort(candidates);
+        }
+        
+        TIntArrayList activeSegments = new TIntArrayList();
+        TIntArrayList matchingSegments = new TIntArrayList();
+        TIntArrayList predictiveCells = new TIntArrayList();
+        for(int segment : candidates) {
+            if(numActiveConnected[segment] >= activationThreshold) {
+                activeSegments.add(segment);
+                int cell = segmentCells[segment];
+                if(predictiveCells.isEmpty() || predictiveCells.get(predictiveCells.size() - 1) != cell) {
+                    predictiveCells.add(cell);
+                }
+            }
+            if(numActivePotential[segment] >= minThreshold) {
+                matchingSegments.add(segment);
+            }
+        }
+        
+        state.activeSegments = activeSegments.toArray();
+        state.matchingSegments = matchingSegments.toArray();
+        state.predictiveCells = predictiveCells.toArray();
+    }
+    
+    /**
+     * Returns the number of columns.
+     * @return  the number of columns
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+    
+    /**
+     * Returns the number of cells per column.
+     * @return  the number of cells per column
+     */
+    public int getCellsPerColumn() {
+        return cellsPerColumn;
+    }
+    
+    /**
+     * Returns the number of distal segments in the snapshot.
+     * @return  the number of segments
+     */
+    public int getNumSegments() {
+        return segmentCells.length;
+    }
+    
+    /**
+     * Returns the number of distal synapses in the snapshot.
+     * @return  the number of synapses
+     */
+    public int getNumSynapses() {
+        return synapseSegments.length;
+    }
+    
+    /**
+     * The per sequence state of a {@link CompiledTemporalMemory}: the result of the
+     * last step, which is the input of the next one. Not thread-safe; create one per
+     * concurrent sequence with {@link CompiledTemporalMemory#newState(Random)}.
+     * 一个序列的推理状态，每个并发的序列各用一个
+     */
+    public static class State {
+        private final Random random;
+        
+        private int[] activeCells = new int[0];
+        private int[] winnerCells = new int[0];
+        private int[] predictiveCells = new int[0];
+        /** Segment numbers in ascending, and so cell, order */
+        private int[] activeSegments = new int[0];
+        private int[] matchingSegments = new int[0];
+        
+        private final int[] numActivePotential;
+        private final int[] numActiveConnected;
+        private final TIntArrayList touchedSegments = new TIntArrayList();
+        
+        private State(int numSegments, Random random) {
+            this.random = random;
+            this.numActivePotential = new int[numSegments];
+            this.numActiveConnected = new int[numSegments];
+        }
+        
+        /**
+         * Starts a new sequence: forgets the active cells and predictions.
+         */
+        public void reset() {
+            activeCells = new int[0];
+            winnerCells = new int[0];
+            predictiveCells = new int[0];
+            activeSegments = new int[0];
+            matchingSegments = new int[0];
+        }
+        
+        /**
+         * Returns the active cells of the last step, in column order.
+         * @return  the active cell indexes
+         */
+        public int[] getActiveCells() {
+            return activeCells.clone();
+        }
+        
+        /**
+         * Returns the winner cells of the last step, in column order.
+         * @return  the winner cell indexes
+         */
+        public int[] getWinnerCells() {
+            return winnerCells.clone();
+        }
+        
+        /**
+         * Returns the cells predicted for the next step, in ascending order.
+         * @return  the predictive cell indexes
+         */
+        public int[] getPredictiveCells() {
+            return predictiveCells.clone();
+        }
+    }
+}
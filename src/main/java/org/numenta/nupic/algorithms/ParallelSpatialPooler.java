@@ -0,0 +1,308 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.numenta.nupic.model.Column;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.Pool;
+import org.numenta.nupic.util.ArrayUtils;
+import org.numenta.nupic.util.CSRBinaryMatrix;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * {@link SpatialPooler} which splits the per column work of a step into
+ * contiguous column ranges and runs them on a {@link ForkJoinPool}.
+ * 按列的范围并行计算的空间池
+ * <p>
+ * The parallel regions are the overlap calculation (on a {@link CSRBinaryMatrix}),
+ * the adaptation of the active columns' synapses, the duty cycle update, the
+ * permanence computation of {@link #bumpUpWeakColumns(Connections)} and
+ * {@link #updateMinDutyCyclesLocal(Connections)}. Each range only writes the
+ * entries of its own columns; changes to structures shared by all columns, the
+ * connected matrix above all, are collected per range and applied afterwards on
+ * the calling thread in the serial order. No random numbers are drawn inside
+ * the parallel regions, and every value is computed by the same arithmetic as
+ * in {@link SpatialPooler}, so the results are bit-identical to it whatever the
+ * parallelism. Inhibition stays serial: local inhibition depends on the
+ * winners already chosen.
+ * </p>
+ */
+public class ParallelSpatialPooler extends SpatialPooler {
+    /** keep it simple */
+    private static final long serialVersionUID = 1L;
+    
+    /** Below this many columns per range the work is not worth a task */
+    private static final int MIN_COLUMNS_PER_RANGE = 64;
+    
+    private final int parallelism;
+    
+    private transient ForkJoinPool pool;
+    
+    /**
+     * Uses one column range per available processor and the common pool.
+     */
+    public ParallelSpatialPooler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Uses up to {@code parallelism} column ranges on the common pool.
+     * 
+     * @param parallelism   the maximum number of column ranges per parallel region
+     */
+    public ParallelSpatialPooler(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Uses one column range per thread of {@code pool}, and runs the ranges on it.
+     * 
+     * @param pool  the pool to compute on
+     */
+    public ParallelSpatialPooler(ForkJoinPool pool) {
+        this(pool.getParallelism());
+        this.pool = pool;
+    }
+    
+    /**
+     * Returns the maximum number of column ranges per parallel region.
+     * @return  the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Work on the range of entries [from, to).
+     */
+    @FunctionalInterface
+    protected interface RangeTask {
+        void run(int range, int from, int to);
+    }
+    
+    /**
+     * Returns the number of ranges {@code length} entries are split into.
+     */
+    protected int numRanges(int length) {
+        return Math.max(1, Math.min(parallelism, length / MIN_COLUMNS_PER_RANGE));
+    }
+    
+    /**
+     * Splits [0, length) into {@code numRanges} contiguous ranges and runs
+     * {@code task} on each of them, in parallel if there is more than one.
+     */
+    protected void forEachRange(int length, int numRanges, RangeTask task) {
+        if(numRanges == 1) {
+            task.run(0, 0, length);
+            return;
+        }
+        
+        ForkJoinPool executor = pool == null ? ForkJoinPool.commonPool() : pool;
+        executor.submit(() -> IntStream.range(0, numRanges).parallel().forEach(r -> 
+            task.run(r, (int)((long)length * r / numRanges), (int)((long)length * (r + 1) / numRanges)))).join();
+    }
+    
+    /**
+     * Row driven overlap on a {@link CSRBinaryMatrix}, by column range. Other
+     * matrices, and input vectors which aren't binary, use the serial kernel.
+     */
+    @Override
+    public int[] calculateOverlap(Connections c, int[] inputVector) {
+        for(int i = 0;i < inputVector.length;i++) {
+            if(inputVector[i] != 0 && inputVector[i] != 1) {
+                return super.calculateOverlap(c, inputVector);
+            }
+        }
+        return calculateOverlapSparse(c, ArrayUtils.where(inputVector, ArrayUtils.INT_GREATER_THAN_0));
+    }
+    
+    /**
+     * Row driven overlap on a {@link CSRBinaryMatrix}, by column range.
+     */
+    @Override
+    public int[] calculateOverlapSparse(Connections c, int[] inputIndices) {
+        if(!(c.getConnectedCounts() instanceof CSRBinaryMatrix)) {
+            return super.calculateOverlapSparse(c, inputIndices);
+        }
+        
+        CSRBinaryMatrix matrix = (CSRBinaryMatrix)c.getConnectedCounts();
+        long[] inputBits = matrix.packInput(inputIndices);
+        int[] overlaps = new int[c.getNumColumns()];
+        double stimulusThreshold = c.getStimulusThreshold();
+        forEachRange(overlaps.length, numRanges(overlaps.length), (r, from, to) -> 
+            matrix.rightVecSumAtNZ(inputBits, overlaps, from, to, stimulusThreshold));
+        return overlaps;
+    }
+    
+    /**
+     * Runs the batch on this pooler's pool.
+     */
+    @Override
+    public int[][] computeBatchSparse(Connections c, int[][] inputIndices) {
+        ForkJoinPool executor = pool == null ? ForkJoinPool.commonPool() : pool;
+        return executor.submit(() -> super.computeBatchSparse(c, inputIndices)).join();
+    }
+    
+    /**
+     * Adapts ranges of the active columns in parallel, then applies their
+     * connected matrix changes in the serial order.
+     */
+    @Override
+    public void adaptSynapsesSparse(Connections c, int[] inputIndices, int[] activeColumns) {
+        boolean[] inputMask = new boolean[c.getNumInputs()];
+        for(int i = 0;i < inputIndices.length;i++) {
+            inputMask[inputIndices[i]] = true;
+        }
+        
+        c.markColumnsChanged(activeColumns);
+        
+        // Active columns are far fewer than columns: split them finer
+        int numRanges = Math.max(1, Math.min(parallelism, activeColumns.length));
+        if(numRanges == 1) {
+            adaptColumns(c, activeColumns, 0, activeColumns.length, inputMask, null);
+            return;
+        }
+        
+        TIntArrayList[] flips = new TIntArrayList[numRanges];
+        forEachRange(activeColumns.length, numRanges, (r, from, to) -> 
+            adaptColumns(c, activeColumns, from, to, inputMask, flips[r] = new TIntArrayList()));
+        
+        for(TIntArrayList rangeFlips : flips) {
+            for(int i = 0;i < rangeFlips.size();i += 3) {
+                c.getConnectedCounts().set(rangeFlips.get(i + 2), rangeFlips.get(i), rangeFlips.get(i + 1));
+            }
+        }
+    }
+    
+    /**
+     * Same moving averages as {@link SpatialPooler#updateDutyCycles(Connections, int[], int[])},
+     * computed by column range.
+     */
+    @Override
+    public void updateDutyCycles(Connections c, int[] overlaps, int[] activeColumns) {
+        int numColumns = c.getNumColumns();
+        boolean[] active = new boolean[numColumns];
+        for(int column : activeColumns) {
+            active[column] = true;
+        }
+        
+        int period = c.getDutyCyclePeriod();
+        if(period > c.getIterationNum()) {
+            period  = c.getIterationNum();
+        }
+        
+        // The arithmetic of updateDutyCyclesHelper: (dutyCycle * (period - 1) + newInput) / period
+        double keep = period - 1;
+        double divisor = period == 0 ? 1 : period;
+        double[] overlapDutyCycles = c.getOverlapDutyCycles();
+        double[] activeDutyCycles = c.getActiveDutyCycles();
+        double[] newOverlapDutyCycles = new double[numColumns];
+        double[] newActiveDutyCycles = new double[numColumns];
+        forEachRange(numColumns, numRanges(numColumns), (r, from, to) -> {
+            for(int i = from;i < to;i++) {
+                newOverlapDutyCycles[i] = (overlapDutyCycles[i] * keep + (overlaps[i] > 0 ? 1 : 0)) / divisor;
+                newActiveDutyCycles[i] = (activeDutyCycles[i] * keep + (active[i] ? 1 : 0)) / divisor;
+            }
+        });
+        
+        c.setOverlapDutyCycles(newOverlapDutyCycles);
+        c.setActiveDutyCycles(newActiveDutyCycles);
+    }
+    
+    /**
+     * Computes the raised permanences of the weak columns in parallel, then
+     * writes them back in column order.
+     */
+    @Override
+    public void bumpUpWeakColumns(final Connections c) {
+        double[] overlapDutyCycles = c.getOverlapDutyCycles();
+        double[] minOverlapDutyCycles = c.getMinOverlapDutyCycles();
+        TIntArrayList weak = new TIntArrayList();
+        for(int i = 0;i < c.getNumColumns();i++) {
+            if(overlapDutyCycles[i] < minOverlapDutyCycles[i]) {
+                weak.add(i);
+            }
+        }
+        
+        int[] weakColumns = weak.toArray();
+        double[][] perms = new double[weakColumns.length][];
+        int[][] indexes = new int[weakColumns.length][];
+        int numRanges = Math.max(1, Math.min(parallelism, weakColumns.length));
+        forEachRange(weakColumns.length, numRanges, (r, from, to) -> {
+            for(int i = from;i < to;i++) {
+                Pool pool = c.getPotentialPools().get(weakColumns[i]);
+                double[] perm = pool.getSparsePermanences();
+                ArrayUtils.raiseValuesBy(c.getSynPermBelowStimulusInc(), perm);
+                raisePermanenceToThresholdSparse(c, perm);
+                ArrayUtils.lessThanOrEqualXThanSetToY(perm, c.getSynPermTrimThreshold(), 0);
+                ArrayUtils.clip(perm, c.getSynPermMin(), c.getSynPermMax());
+                perms[i] = perm;
+                indexes[i] = pool.getSparsePotential();
+            }
+        });
+        
+        for(int i = 0;i < weakColumns.length;i++) {
+            Column col = c.getColumn(weakColumns[i]);
+            col.setProximalPermanencesSparse(c, perms[i], indexes[i]);
+        }
+    }
+    
+    /**
+     * {@link SpatialPooler#updateMinDutyCyclesLocal(Connections)} by column range.
+     */
+    @Override
+    public void updateMinDutyCyclesLocal(final Connections c) {
+        int len = c.getNumColumns();
+        double[] activeDutyCycles = c.getActiveDutyCycles();
+        double minPctActiveDutyCycles = c.getMinPctActiveDutyCycles();
+        double[] overlapDutyCycles = c.getOverlapDutyCycles();
+        double minPctOverlapDutyCycles = c.getMinPctOverlapDutyCycles();
+        double[] minActiveDutyCycles = c.getMinActiveDutyCycles();
+        double[] minOverlapDutyCycles = c.getMinOverlapDutyCycles();
+        
+        int[][] neighborhoods = getColumnNeighborhoods(c, c.getInhibitionRadius());
+        
+        forEachRange(len, numRanges(len), (r, from, to) -> {
+            for(int i = from;i < to;i++) {
+                int[] neighborhood = neighborhoods[i];
+                
+                // Same starting value as ArrayUtils.max()
+                double maxActiveDuty = Double.MIN_VALUE;
+                double maxOverlapDuty = Double.MIN_VALUE;
+                for(int n : neighborhood) {
+                    if(activeDutyCycles[n] > maxActiveDuty) maxActiveDuty = activeDutyCycles[n];
+                    if(overlapDutyCycles[n] > maxOverlapDuty) maxOverlapDuty = overlapDutyCycles[n];
+                }
+                
+                minActiveDutyCycles[i] = maxActiveDuty * minPctActiveDutyCycles;
+                minOverlapDutyCycles[i] = maxOverlapDuty * minPctOverlapDutyCycles;
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.numenta.nupic.model.ComputeCycle;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.util.UniversalRandom;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * {@link TemporalMemory} whose index based path learns on several shards of columns
+ * at once.
+ * 按列分片并行学习的时序记忆
+ * <p>
+ * The columns of a step are split into {@code parallelism} contiguous shards. Each
+ * shard activates its cells and adapts the permanences of its own segments in place,
+ * which is safe since a segment and its synapses belong to exactly one column. Destroying
+ * and growing synapses and segments touches structures shared by all columns, so these
+ * changes are recorded per shard and replayed on the calling thread in column order
+ * once every shard is done.
+ * </p><p>
+ * Every shard draws from its own {@link UniversalRandom}, seeded each step from the
+ * Connections' random generator, so a run is reproducible for a given parallelism.
+ * The draws differ from the serial path though, and so do the grown synapses: results
+ * match {@link TemporalMemory#computeIndices(Connections, int[], boolean, ComputeCycle)}
+ * only in distribution, not bit for bit.
+ * </p><p>
+ * Only {@link #computeIndices(Connections, int[], boolean, ComputeCycle)} is parallel;
+ * {@link #compute(Connections, int[], boolean)} runs as in {@link TemporalMemory}.
+ * </p>
+ */
+public class ParallelTemporalMemory extends TemporalMemory {
+    /** keep it simple */
+    private static final long serialVersionUID = 1L;
+    
+    private final int parallelism;
+    
+    private transient ForkJoinPool pool;
+    
+    private transient ColumnLearner[] learners;
+    private transient UniversalRandom[] randoms;
+    private transient int learnerCells;
+    
+    /**
+     * Uses one shard per available processor and the common pool.
+     */
+    public ParallelTemporalMemory() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Uses {@code parallelism} shards on the common pool.
+     * 
+     * @param parallelism   the number of column shards per step
+     */
+    public ParallelTemporalMemory(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Uses one shard per thread of {@code pool}, and runs the shards on it.
+     * 
+     * @param pool  the pool to learn on
+     */
+    public ParallelTemporalMemory(ForkJoinPool pool) {
+        this(pool.getParallelism());
+        this.pool = pool;
+    }
+    
+    /**
+     * Returns the number of column shards per step.
+     * @return  the number of column shards
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Parallel form of {@link TemporalMemory#activateCellIndices(Connections, ComputeCycle, int[], boolean)}.
+     * 
+     * @param conn              the Connectivity
+     * @param cycle             holds the previous state and receives the active and winner cells
+     * @param activeColumns     indexes of the active columns
+     * @param learn             whether to grow and reinforce synapses
+     */
+    @Override
+    public void activateCellIndices(Connections conn, ComputeCycle cycle, int[] activeColumns, boolean learn) {
+        prepareIndexScratch(conn, cycle);
+        int numGroups = groupColumns(conn, cycle, activeColumns);
+        prepareLearners(conn);
+        
+        // The segment map is created lazily: do it here rather than on a worker
+        conn.getSegments(conn.getCell(0));
+        
+        for(int s = 0;s < parallelism;s++) {
+            randoms[s].setSeed(conn.getRandom().nextInt());
+            learners[s].reset(conn, cycle, randoms[s], true);
+        }
+        
+        if(parallelism == 1 || numGroups < 2) {
+            learnColumns(learners[0], 0, numGroups, learn);
+        }else{
+            ForkJoinPool executor = pool == null ? ForkJoinPool.commonPool() : pool;
+            executor.submit(() -> IntStream.range(0, parallelism).parallel().forEach(s -> 
+                learnShard(s, numGroups, learn))).join();
+        }
+        
+        for(int s = 0;s < parallelism;s++) {
+            cycle.activeCellIndices.addAll(learners[s].activeCells);
+            cycle.winnerCellIndices.addAll(learners[s].winnerCells);
+            learners[s].applyDeferred();
+        }
+    }
+    
+    /**
+     * Learns on the column groups of shard {@code s}.
+     */
+    private void learnShard(int s, int numGroups, boolean learn) {
+        int from = (int)((long)numGroups * s / parallelism);
+        int to = (int)((long)numGroups * (s + 1) / parallelism);
+        learnColumns(learners[s], from, to, learn);
+    }
+    
+    /**
+     * Sizes the per shard learners for the cells of {@code conn}.
+     */
+    private void prepareLearners(Connections conn) {
+        int numCells = conn.getCells().length;
+        if(learners == null || learnerCells != numCells) {
+            learnerCells = numCells;
+            learners = new ColumnLearner[parallelism];
+            randoms = new UniversalRandom[parallelism];
+            for(int s = 0;s < parallelism;s++) {
+                learners[s] = new ColumnLearner(new TIntArrayList(), new TIntArrayList(), new int[numCells],
+                    new TIntArrayList(conn.getCellsPerColumn()), new ArrayList<>());
+                randoms[s] = new UniversalRandom(s);
+            }
+        }
+        
+        for(ColumnLearner learner : learners) {
+            learner.activeCells.resetQuick();
+            learner.winnerCells.resetQuick();
+        }
+    }
+}
@@ -22,7 +22,6 @@
 
 package org.numenta.nupic.algorithms;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -30,8 +29,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import no.uib.cipr.matrix.sparse.FlexCompRowMatrix;
-
+import org.numenta.nupic.algorithms.ColumnarWeightMatrix.Precision;
 import org.numenta.nupic.model.Persistable;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Deque;
@@ -134,9 +132,9 @@ public class SDRClassifier implements Persistable, Classifier {
      */
     int maxBucketIdx;
 	/**
-	 * The connection weight matrix
+	 * The connection weight matrix of each step, stored by input bit
 	 */
-	Map<Integer, FlexCompRowMatrix> weightMatrix = new HashMap<>();
+	Map<Integer, ColumnarWeightMatrix> weightMatrix = new HashMap<>();
     /** The sequence different steps of multi-step predictions */
     TIntList steps = new TIntArrayList();
     /**
@@ -178,14 +176,35 @@ public class SDRClassifier implements Persistable, Classifier {
      * @param verbosity Verbosity level, can be 0, 1, or 2. 冗长度，可以是0,1,2
      */
 	public SDRClassifier(TIntList steps, double alpha, double actValueAlpha, int verbosity) {
+		this(steps, alpha, actValueAlpha, verbosity, 0, 0, Precision.DOUBLE);
+	}
+
+    /**
+     * Constructor for the SDRClassifier which sizes the weight matrices in advance.
+     * Without capacities the matrices grow geometrically as larger bucket and input
+     * indexes appear; with them, a classifier whose buckets and inputs stay within the
+     * capacities never copies its weights.
+     * 预先声明桶和输入的数量，权重矩阵一次分配到位
+     * 
+     * @param steps Sequence of the different steps of multi-step predictions to learn.
+     * @param alpha The alpha used to adapt the weight matrix during learning.
+     * @param actValueAlpha Used to track the actual value withing each bucket.
+     * @param verbosity Verbosity level, can be 0, 1, or 2.
+     * @param bucketCapacity the number of buckets expected (for example x*y locations), 0 if unknown
+     * @param inputCapacity the number of input bits expected (for example the number of cells), 0 if unknown
+     * @param precision how the weights are stored, see {@link ColumnarWeightMatrix.Precision}
+     */
+	public SDRClassifier(TIntList steps, double alpha, double actValueAlpha, int verbosity,
+			int bucketCapacity, int inputCapacity, Precision precision) {
         this.steps = steps;
         this.alpha = alpha;
         this.actValueAlpha = actValueAlpha;
         this.verbosity = verbosity;
+        actualValues = new ArrayList<Object>(Math.max(1, bucketCapacity));
         actualValues.add(null);
         patternNZHistory = new Deque<Tuple>(ArrayUtils.max(steps.toArray()) + 1);//和迭代的步数有关系
 		for(int step : steps.toArray())
-			weightMatrix.put(step, new FlexCompRowMatrix(maxBucketIdx + 1, maxInputIdx + 1));
+			weightMatrix.put(step, ColumnarWeightMatrix.create(precision, maxBucketIdx + 1, maxInputIdx + 1, bucketCapacity, inputCapacity));
 	}
 
 	/**
@@ -287,12 +306,10 @@ public class SDRClassifier implements Persistable, Classifier {
 		//patternNZHistory.pushFirst(new Tuple(learnIteration, patternNZ));
 
 		//Update maxInputIdx and augment weight matrix with zero padding
-		if(ArrayUtils.max(patternNZ) > maxInputIdx) {
-			int newMaxInputIdx = ArrayUtils.max(patternNZ);
+		int newMaxInputIdx = ArrayUtils.max(patternNZ);
+		if(newMaxInputIdx > maxInputIdx) {
 			for (int nSteps : steps.toArray()) {
-				for(int i = maxInputIdx; i < newMaxInputIdx; i++) {
-					weightMatrix.get(nSteps).addCol(new double[maxBucketIdx + 1]);///添加列，每列有1个元素
-				}
+				weightMatrix.get(nSteps).ensureInputs(newMaxInputIdx + 1);///添加列
 			}
 			maxInputIdx = newMaxInputIdx;
 		}
@@ -314,9 +331,7 @@ public class SDRClassifier implements Persistable, Classifier {
 			// Update maxBucketIndex and augment weight matrix with zero padding
 			if(bucketIdx > maxBucketIdx) {
 				for(int nSteps : steps.toArray()) {
-					for(int i = maxBucketIdx; i < bucketIdx; i++) {
-						weightMatrix.get(nSteps).addRow(new double[maxInputIdx + 1]);
-					}
+					weightMatrix.get(nSteps).ensureBuckets(bucketIdx + 1);
 				}
 				maxBucketIdx = bucketIdx;
 			}
@@ -332,15 +347,8 @@ public class SDRClassifier implements Persistable, Classifier {
 			}
 			else {
 				if(Number.class.isAssignableFrom(actValue.getClass())) {
-//					Double val = ((1.0 - actValueAlpha) * ((Number)actualValues.get(bucketIdx)).doubleValue() +
-//							actValueAlpha * ((Number)actValue).doubleValue());(原代码，经过下面的修改）
-					
-					BigDecimal formerCoefficient=BigDecimal.valueOf(1.0).subtract(BigDecimal.valueOf(actValueAlpha));
-					BigDecimal formerEntity=BigDecimal.valueOf(((Number)actualValues.get(bucketIdx)).doubleValue());
-					BigDecimal latterCoefficient=BigDecimal.valueOf(actValueAlpha);
-					BigDecimal latterEntity=BigDecimal.valueOf(((Number)actValue).doubleValue());
-					
-					Double val=formerCoefficient.multiply(formerEntity).add(latterCoefficient.multiply(latterEntity)).doubleValue();
+					Double val = ((1.0 - actValueAlpha) * ((Number)actualValues.get(bucketIdx)).doubleValue() +
+							actValueAlpha * ((Number)actValue).doubleValue());
 					
 					actualValues.set(bucketIdx, (T)val);
 				}else{
@@ -348,23 +356,28 @@ public class SDRClassifier implements Persistable, Classifier {
 				}
 			}
 
-			int iteration = 0;
-			int[] learnPatternNZ = null;
+			// The error is the one of the newest history entry which learns; it only
+			// changes when the weights do, so it is computed once per update
+			int realSteps=steps.get(0);///这是我添加的代码
+			ColumnarWeightMatrix weights = weightMatrix.get(realSteps);
+			int[] errorPatternNZ = null;
 			for(Tuple t : patternNZHistory) {
-				iteration = (int)t.get(0);//记录是第几次迭代
-				learnPatternNZ = (int[])t.get(1);
-
-				Map<Integer, double[]> error = calculateError(classification_previous);//计算前面step所对应的输出的误差
+				if(isLearningStep(learnIteration - (int)t.get(0))) {
+					errorPatternNZ = (int[])t.get(1);
+				}
+			}
+			
+			for(Tuple t : patternNZHistory) {
+				int iteration = (int)t.get(0);//记录是第几次迭代
+				int[] learnPatternNZ = (int[])t.get(1);
 
 				int nSteps = learnIteration - iteration;
-				if(steps.contains(nSteps)||(periodic==true&&nSteps==-maxBucketIdx&&maxBucketIdx!=0)) {///这里添加一段代码，让它在循环的时候也能学习
-					int realSteps=steps.get(0);///这是我添加的代码
+				if(isLearningStep(nSteps)) {///这里添加一段代码，让它在循环的时候也能学习
+					double[] error = calculateError(classification_previous, errorPatternNZ, weights);//计算前面step所对应的输出的误差
 					for(int row = 0; row <= maxBucketIdx; row++) {
-						for (int bit : learnPatternNZ) {
-							
-							weightMatrix.get(realSteps).add(row, bit, alpha * error.get(realSteps)[row]);//对前面step步激活的单元，改变其分类连接的权重，这里之所以只留激活的，因为激活的单元输入值是1，其权重求导对应的值为误差值，而非激活单元的输入值直接为0，其连接参数的求导值直接为0
-						}
+						error[row] *= alpha;
 					}
+					weights.addToColumns(learnPatternNZ, error);//对前面step步激活的单元，改变其分类连接的权重，这里之所以只留激活的，因为激活的单元输入值是1，其权重求导对应的值为误差值，而非激活单元的输入值直接为0，其连接参数的求导值直接为0
 				}
 			}
 		}
@@ -445,33 +458,51 @@ public class SDRClassifier implements Persistable, Classifier {
 	 * matrix, return a predicted distribution.
 	 *
 	 * @param patternNZ int[] of the active indices from the output below
-	 * @param weightMatrix FlexCompColMatrix weight matrix
+	 * @param weightMatrix the weight matrix of the step
 	 * @return double[] of the predicted class label distribution
 	 */
-	private double[] inferSingleStep(int[] patternNZ, FlexCompRowMatrix weightMatrix) {
+	private double[] inferSingleStep(int[] patternNZ, ColumnarWeightMatrix weightMatrix) {
 		// Compute the output activation "level" for each bucket (matrix row)
-		// we've seen so far and store in double[]
+		// we've seen so far: the sum of the weights of the active bits in
+		// patternNZ, added column by column.计算这个桶的输出激活值，这个激活值等于在patternNZ中的激活位的权重之和
 		double[] outputActivation = new double[maxBucketIdx + 1];
-		for(int row = 0; row <= maxBucketIdx; row++) {
-			// Output activation for this bucket is computed as the sum of
-			// the weights for the the active bits in patternNZ, for current
-			// row of matrix.计算这个桶的输出激活值，这个激活值等于在patternNZ中的激活位的权重之和，对矩阵的当前行。实际相当于把第一步和第三步重复激活的单元的权重和加起来了
-			for(int bit : patternNZ) {
-				outputActivation[row] += weightMatrix.get(row, bit);//相当于建立了一个分类层，把这120个单元作为输入，每个输入都有一个权重，输入乘以权重变为加权和，即激活输出值
-			}
+		weightMatrix.accumulate(patternNZ, outputActivation);
+
+		return softmax(outputActivation);
+	}
+
+	/**
+	 * Softmax normalization in place. The largest activation is subtracted before
+	 * exponentiation so that no term overflows, and the exponentials are summed in
+	 * the same pass that computes them.
+	 *
+	 * @param activation the output activation of each bucket, replaced by its probability
+	 * @return {@code activation}
+	 */
+	static double[] softmax(double[] activation) {
+		double max = Double.NEGATIVE_INFINITY;
+		for(double a : activation) {
+			if(a > max) max = a;
 		}
 
-		// Softmax normalization
-		double[] expOutputActivation = new double[outputActivation.length];
-		for(int i = 0; i < expOutputActivation.length; i++) {
-			expOutputActivation[i] = Math.exp(outputActivation[i]);//把每个权重之和求取他的e指数，这是softmax分类函数必备的步骤
+		double sum = 0;
+		for(int i = 0; i < activation.length; i++) {
+			sum += activation[i] = Math.exp(activation[i] - max);//把每个权重之和求取他的e指数，这是softmax分类函数必备的步骤
 		}
-		double[] predictDist = new double[outputActivation.length];
-		for(int i = 0; i < predictDist.length; i++) {
-			predictDist[i] = expOutputActivation[i]/ArrayUtils.sum(expOutputActivation);//求取每个e指数的权重，也即各个值预测的分类概率ei/sum(ej)
+		for(int i = 0; i < activation.length; i++) {
+			activation[i] /= sum;//求取每个e指数的权重，也即各个值预测的分类概率ei/sum(ej)
 		}
 
-		return predictDist;
+		return activation;
+	}
+
+	/**
+	 * Returns true if the history entry {@code nSteps} records ago learns from the
+	 * current classification: either one of the steps, or, for a periodic
+	 * classifier, the wrap around from the last bucket back to the first.
+	 */
+	private boolean isLearningStep(int nSteps) {
+		return steps.contains(nSteps)||(periodic==true&&nSteps==-maxBucketIdx&&maxBucketIdx!=0);//当由第6个跳回第0个时也要学习，加上循环的指示
 	}
 
 	/**
@@ -480,35 +511,18 @@ public class SDRClassifier implements Persistable, Classifier {
 	 * @param classification {@link Map} of the classification information:
 	 * <p>&emsp;"bucketIdx" - index of the encoder bucket
 	 * <p>&emsp;"actValue" -  actual value doing into the encoder
-	 * @return
-	 * {@link Map} containing error. The key is the number of steps. The value
-	 * is a double[] of the error at the output layer.
-     */
-	private Map<Integer, double[]> calculateError(Map<String, Object> classification) {
-		Map<Integer, double[]> error = new HashMap<Integer, double[]>();
-		int[] targetDist = new int[maxBucketIdx + 1];
-		targetDist[(int)classification.get("bucketIdx")] = 1;//把目标值设置为1，这里是当前bucketIdx的值
-
-		int iteration = 0;
-		int[] learnPatternNZ = null;
-		int nSteps = 0;
-		for(Tuple t : patternNZHistory) {
-			iteration = (int) t.get(0);
-			learnPatternNZ = (int[]) t.get(1);
-			nSteps = learnIteration - iteration;//如果是上一次的激活的结果，才用现在的目标值取改进连接的参数
-
-			if(steps.contains(nSteps)||(periodic==true&&nSteps==-maxBucketIdx&&maxBucketIdx!=0)) {//问题出在这里，当由第6个跳回第0个时学习不到，这里需要改代码，加上循环的指示
-				int realStep=steps.get(0);
-				double[] predictDist = inferSingleStep(learnPatternNZ, weightMatrix.get(realStep));
-				double[] targetDistMinusPredictDist = new double[maxBucketIdx + 1];
-				for(int i = 0; i <= maxBucketIdx; i++) {
-					targetDistMinusPredictDist[i] = targetDist[i] - predictDist[i];///这里直接用目标值减去预测值作为预测误差，这背后其实是非常复杂的知识，咱们好好分析一下：首先其用的是交叉熵作为误差函数，
-					                                                               ////其次交叉熵误差函数对每一个连接权重求导，当这个权重连接的目标对象对应的输出时，其求导值等于（输出值-目标值），当这个权重连接的不是预期对象所对应的输出值是，其求导值等于输出值
-					                                                              ///这里输出值为predictDist,目标值为targetDist，这里为了后续计算方便，这里都直接添加了负号，
-				}
-				error.put(realStep, targetDistMinusPredictDist);
-			}
+	 * @param patternNZ the active input bits the prediction is made from
+	 * @param weightMatrix the weight matrix being learned
+	 * @return the error at the output layer, target distribution minus predicted distribution
+	 */
+	private double[] calculateError(Map<String, Object> classification, int[] patternNZ, ColumnarWeightMatrix weightMatrix) {
+		double[] error = inferSingleStep(patternNZ, weightMatrix);
+		///这里直接用目标值减去预测值作为预测误差：交叉熵误差函数对每一个连接权重求导，当这个权重连接的目标对象对应的输出时，其求导值等于（输出值-目标值），
+		///当这个权重连接的不是预期对象所对应的输出值时，其求导值等于输出值。这里为了后续计算方便，都直接添加了负号
+		for(int i = 0; i <= maxBucketIdx; i++) {
+			error[i] = -error[i];
 		}
+		error[(int)classification.get("bucketIdx")] += 1;//把目标值设置为1，这里是当前bucketIdx的值
 
 		return error;
 	}
@@ -22,19 +22,22 @@
 package org.numenta.nupic.algorithms;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.IntStream;
 import org.numenta.nupic.model.Column;
 import org.numenta.nupic.model.Connections;
 import org.numenta.nupic.model.Persistable;
 import org.numenta.nupic.model.Pool;
+import org.numenta.nupic.model.Synapse;
+import org.numenta.nupic.util.AbstractSparseBinaryMatrix;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Condition;
+import org.numenta.nupic.util.CSRBinaryMatrix;
 import org.numenta.nupic.util.SparseBinaryMatrix;
 import org.numenta.nupic.util.SparseMatrix;
 import org.numenta.nupic.util.SparseObjectMatrix;
 import org.numenta.nupic.util.Topology;
 
-import chaschev.lang.Pair;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
@@ -60,6 +63,9 @@ import gnu.trove.set.hash.TIntHashSet;
 public class SpatialPooler implements Persistable {
     /** Default Serial Version  */
     private static final long serialVersionUID = 1L;
+    
+    /** Number of records whose overlaps {@link #computeBatchSparse(Connections, int[][])} computes in one pass */
+    private static final int BATCH_BLOCK_SIZE = 64;
 
     /**
      * Constructs a new {@code SpatialPooler}
@@ -118,7 +124,7 @@ public class SpatialPooler implements Persistable {
 
         c.setPotentialPools(new SparseObjectMatrix<Pool>(c.getMemory().getDimensions()));//创建存储池的匹配数组
 
-        c.setConnectedMatrix(new SparseBinaryMatrix(new int[] { numColumns, numInputs }));//创建输入数据到输入列的连接矩阵，也就是创建每个列和所有输入的连接
+        c.setConnectedMatrix(new CSRBinaryMatrix(new int[] { numColumns, numInputs }));//创建输入数据到输入列的连接矩阵，也就是创建每个列和所有输入的连接
 
         //Initialize state meta-management statistics
         c.setOverlapDutyCycles(new double[numColumns]);//为每个列设置重叠占空比数组
@@ -195,6 +201,162 @@ public class SpatialPooler implements Persistable {
         updateBookeepingVars(c, learn);//更新迭代次数计数（spIterationNum)和迭代学习次数（spIterationLearnNum)
         int[] overlaps = c.setOverlaps(calculateOverlap(c, inputVector));//获取到了所有单元柱的重叠值
 
+        int[] inputIndices = learn ? ArrayUtils.where(inputVector, ArrayUtils.INT_GREATER_THAN_0) : null;
+        activateColumns(c, overlaps, inputIndices, activeArray, learn);
+    }
+    
+    /**
+     * Variant of {@link #compute(Connections, int[], int[], boolean)} which takes
+     * the input as the indexes of its on bits rather than as a dense array of 0's
+     * and 1's. The overlap calculation only visits the on bits, and no dense
+     * input vector is ever built, so callers which already hold the active input
+     * indexes (e.g. from an encoder writing into a reusable buffer) avoid the
+     * per-record dense allocations entirely.
+     * 
+     * @param c                 the {@link Connections} memory
+     * @param inputIndices      the unique indexes of the input bits which are on. Each
+     *                          index must be in the range [0, numInputs).
+     * @param activeArray       An array whose size is equal to the number of columns.
+     *                          Before the function returns this array will be populated
+     *                          with 1's at the indices of the active columns, and 0's
+     *                          everywhere else.
+     * @param learn             A boolean value indicating whether learning should be
+     *                          performed.
+     */
+    public void computeSparse(Connections c, int[] inputIndices, int[] activeArray, boolean learn) {
+        int numInputs = c.getNumInputs();
+        for(int i = 0;i < inputIndices.length;i++) {
+            if(inputIndices[i] < 0 || inputIndices[i] >= numInputs) {
+                throw new InvalidSPParamValueException(
+                    "Input index out of range: " + inputIndices[i] + ", number of inputs: " + numInputs);
+            }
+        }
+
+        updateBookeepingVars(c, learn);
+        int[] overlaps = c.setOverlaps(calculateOverlapSparse(c, inputIndices));
+
+        activateColumns(c, overlaps, inputIndices, activeArray, learn);
+    }
+    
+    /**
+     * Inference over a batch of records. Gives for every input vector the same
+     * active columns as {@link #compute(Connections, int[], int[], boolean)} with
+     * learning off, and advances the iteration count the same way, but computes the
+     * overlaps of a block of records in one pass over the connected matrix and
+     * inhibits the blocks in parallel. The overlaps stored in {@code c} are not updated.
+     * 批量推理，与逐条不学习地调用compute结果相同
+     * 
+     * @param c                 the {@link Connections} memory
+     * @param inputVectors      the binary input vectors, one per record
+     * @return  for each record, the indexes of its active columns in ascending order
+     */
+    public int[][] computeBatch(Connections c, int[][] inputVectors) {
+        int[][] inputIndices = new int[inputVectors.length][];
+        for(int r = 0;r < inputVectors.length;r++) {
+            int[] inputVector = inputVectors[r];
+            if(inputVector.length != c.getNumInputs()) {
+                throw new InvalidSPParamValueException(
+                        "Input array must be same size as the defined number of inputs: From Params: " + c.getNumInputs() +
+                        ", From Input Vector: " + inputVector.length);
+            }
+            TIntArrayList on = new TIntArrayList();
+            for(int i = 0;i < inputVector.length;i++) {
+                if(inputVector[i] == 1) {
+                    on.add(i);
+                }else if(inputVector[i] != 0) {
+                    throw new InvalidSPParamValueException("Batch input vectors must be binary: record " + r + 
+                        " has " + inputVector[i] + " at " + i);
+                }
+            }
+            inputIndices[r] = on.toArray();
+        }
+        
+        return computeBatchSparse(c, inputIndices);
+    }
+    
+    /**
+     * Variant of {@link #computeBatch(Connections, int[][])} which takes each
+     * record as the indexes of its on bits, like {@link #computeSparse(Connections, int[], int[], boolean)}.
+     * 
+     * @param c                 the {@link Connections} memory
+     * @param inputIndices      for each record, the unique indexes of its input bits which are on
+     * @return  for each record, the indexes of its active columns in ascending order
+     */
+    public int[][] computeBatchSparse(Connections c, int[][] inputIndices) {
+        int numInputs = c.getNumInputs();
+        for(int[] record : inputIndices) {
+            for(int i = 0;i < record.length;i++) {
+                if(record[i] < 0 || record[i] >= numInputs) {
+                    throw new InvalidSPParamValueException(
+                        "Input index out of range: " + record[i] + ", number of inputs: " + numInputs);
+                }
+            }
+        }
+        
+        for(int r = 0;r < inputIndices.length;r++) {
+            updateBookeepingVars(c, false);
+        }
+        
+        // Local inhibition caches the neighborhoods on first use: fill the cache before going parallel
+        if(!isGlobalInhibition(c)) {
+            getColumnNeighborhoods(c, c.getInhibitionRadius());
+        }
+        
+        int numRecords = inputIndices.length;
+        int[][] activeColumns = new int[numRecords][];
+        int numBlocks = (numRecords + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            int from = b * BATCH_BLOCK_SIZE;
+            int to = Math.min(numRecords, from + BATCH_BLOCK_SIZE);
+            int[][] overlaps = calculateOverlapBatch(c, inputIndices, from, to);
+            for(int r = from;r < to;r++) {
+                int[] winners = inhibitColumns(c, ArrayUtils.toDoubleArray(overlaps[r - from]));
+                Arrays.sort(winners);
+                activeColumns[r] = winners;
+            }
+        });
+        
+        return activeColumns;
+    }
+    
+    /**
+     * Overlaps of the records [from, to). On a {@link CSRBinaryMatrix} each row of
+     * the matrix is read once for the whole block; other matrices go record by record.
+     * 
+     * @param c                 the {@link Connections} memory
+     * @param inputIndices      for each record, the indexes of its input bits which are on
+     * @param from              the first record
+     * @param to                one past the last record
+     * @return  the overlaps of each record of the block
+     */
+    protected int[][] calculateOverlapBatch(Connections c, int[][] inputIndices, int from, int to) {
+        int[][] overlaps = new int[to - from][c.getNumColumns()];
+        if(c.getConnectedCounts() instanceof CSRBinaryMatrix) {
+            CSRBinaryMatrix matrix = (CSRBinaryMatrix)c.getConnectedCounts();
+            long[][] inputBits = new long[to - from][];
+            for(int r = from;r < to;r++) {
+                inputBits[r - from] = matrix.packInput(inputIndices[r]);
+            }
+            matrix.rightVecSumAtNZ(inputBits, overlaps, c.getStimulusThreshold());
+        }else{
+            for(int r = from;r < to;r++) {
+                c.getConnectedCounts().rightVecSumAtNZSparse(inputIndices[r], overlaps[r - from], c.getStimulusThreshold());
+            }
+        }
+        return overlaps;
+    }
+    
+    /**
+     * Shared remainder of the compute methods once the overlaps are known:
+     * boosting, inhibition, learning and writing of the active array.
+     * 
+     * @param c                 the {@link Connections} memory
+     * @param overlaps          the overlap score for each column
+     * @param inputIndices      the indexes of the on input bits (only read if learning)
+     * @param activeArray       the array to receive the active columns
+     * @param learn             whether learning should be performed
+     */
+    private void activateColumns(Connections c, int[] overlaps, int[] inputIndices, int[] activeArray, boolean learn) {
         double[] boostedOverlaps;
         if(learn) {
             boostedOverlaps = ArrayUtils.multiply(c.getBoostFactors(), overlaps);//所有单元的重叠值乘以BootFactors
@@ -205,7 +367,7 @@ public class SpatialPooler implements Persistable {
         int[] activeColumns = inhibitColumns(c, c.setBoostedOverlaps(boostedOverlaps));///通过内部抑制，获取激活的列的数组
 
         if(learn) {
-            adaptSynapses(c, inputVector, activeColumns);//更新激活单元柱的突触持久度值
+            adaptSynapsesSparse(c, inputIndices, activeColumns);//更新激活单元柱的突触持久度值
             updateDutyCycles(c, overlaps, activeColumns);//更新overlapDutyCycles和activeDutyCycles
             bumpUpWeakColumns(c);//把overlapDutyCycles小于minOverlapDutyCycles的列的突触的持久度进行一个增加
             updateBoostFactors(c);//更新BoostFactor
@@ -296,14 +458,19 @@ public class SpatialPooler implements Persistable {
         double[] overlapDutyCycles = c.getOverlapDutyCycles();//获取列的重叠近期活性值
         double minPctOverlapDutyCycles = c.getMinPctOverlapDutyCycles();///返回一个列应该至少有stimulusThreshold个激活输入的频率
         
+        int[][] neighborhoods = getColumnNeighborhoods(c, inhibitionRadius);
+        
         // Parallelize for speed up
         IntStream.range(0, len).forEach(i -> {
-            int[] neighborhood = getColumnNeighborhood(c, i, inhibitionRadius);//获取每个列的抑制邻域
+            int[] neighborhood = neighborhoods[i];//获取每个列的抑制邻域
             
-            double maxActiveDuty = ArrayUtils.max(
-                ArrayUtils.sub(activeDutyCycles, neighborhood));//邻域的近期活性值里面的最大值
-            double maxOverlapDuty = ArrayUtils.max(
-                ArrayUtils.sub(overlapDutyCycles, neighborhood));//邻域的重叠活性值里面的最大值
+            // Same starting value as ArrayUtils.max()
+            double maxActiveDuty = Double.MIN_VALUE;//邻域的近期活性值里面的最大值
+            double maxOverlapDuty = Double.MIN_VALUE;//邻域的重叠活性值里面的最大值
+            for(int n : neighborhood) {
+                if(activeDutyCycles[n] > maxActiveDuty) maxActiveDuty = activeDutyCycles[n];
+                if(overlapDutyCycles[n] > maxOverlapDuty) maxOverlapDuty = overlapDutyCycles[n];
+            }
             
             c.getMinActiveDutyCycles()[i] = maxActiveDuty * minPctActiveDutyCycles;//邻域的近期活性值里面的最大值乘以返回列应该被激活的最小频率
                 
@@ -459,17 +626,121 @@ public class SpatialPooler implements Persistable {
      */
     public void adaptSynapses(Connections c, int[] inputVector, int[] activeColumns) {
         int[] inputIndices = ArrayUtils.where(inputVector, ArrayUtils.INT_GREATER_THAN_0);//扫描指定的值并将条件应用于每个值，返回条件计算为true的值的索引。
-
-        double[] permChanges = new double[c.getNumInputs()];
-        Arrays.fill(permChanges, -1 * c.getSynPermInactiveDec());//生成一个与输入位数量大小一致的，非激活突触减少的持久度值
-        ArrayUtils.setIndexesTo(permChanges, inputIndices, c.getSynPermActiveInc());//这句话相当于把输入值为1的输入位的突触持久度改变值设置为增加值
-        for(int i = 0;i < activeColumns.length;i++) {//对于每一个激活的列
-            Pool pool = c.getPotentialPools().get(activeColumns[i]);//获取激活单元柱对应的池
-            double[] perm = pool.getDensePermanences(c);//获取连接至这个单元柱的近端树突的突触的连接持久度值，有连接的地方为值，没有连接的地方为0.获取激活单元柱突触的持久度值，这个数组的大小是和输入一样的大小，那么没有建立突触的地方其持久度值就为0
-            int[] indexes = pool.getSparsePotential();//获取有树突连接的输入的索引集合，包括连接上的和没有连接的
-            ArrayUtils.raiseValuesBy(permChanges, perm);//把perm中的每个元素的值增加permChanges，所有有输入的地方，不管其是否有突触都增加，没有输入的地方，不管其是否有突触其连接值都减小，这里来理理，相当于把输入值大于0的地方的持久度值增加了，其余地方的持久度值减小了，有刺激就增加，没有刺激就减小，这里的问题在于有刺激的地方不一定有突触，或者是连接突触
-            Column col = c.getColumn(activeColumns[i]);//获取这个激活的列（接上一行，后面的函数又接着处理，最终的效果是凡是有突出连接又有输入的地方突触持久度值增加，凡是有突触连接但是没有输入的地方持久度值减少，这样会新城新的连接突触和非连接突触）
-            updatePermanencesForColumn(c, perm, col, indexes, true);//更新这个列的树突的突触持久度值
+        adaptSynapsesSparse(c, inputIndices, activeColumns);
+    }
+    
+    /**
+     * Same as {@link #adaptSynapses(Connections, int[], int[])} but takes the
+     * indexes of the on input bits instead of the dense input vector.
+     * 
+     * @param c                 the {@link Connections} (spatial pooler memory)
+     * @param inputIndices      the indexes of the input bits which are on
+     * @param activeColumns     an array containing the indices of the columns that
+     *                          survived inhibition.
+     */
+    public void adaptSynapsesSparse(Connections c, int[] inputIndices, int[] activeColumns) {
+        boolean[] inputMask = new boolean[c.getNumInputs()];
+        for(int i = 0;i < inputIndices.length;i++) {
+            inputMask[inputIndices[i]] = true;
+        }
+        
+        adaptColumns(c, activeColumns, 0, activeColumns.length, inputMask, null);
+        c.markColumnsChanged(activeColumns);
+    }
+    
+    /**
+     * Adapts the synapses of the active columns [from, to) in place.
+     * 
+     * @param c                 the {@link Connections} (spatial pooler memory)
+     * @param activeColumns     an array containing the indices of the columns that
+     *                          survived inhibition.
+     * @param from              the first entry of {@code activeColumns} to adapt
+     * @param to                one past the last entry of {@code activeColumns} to adapt
+     * @param inputMask         true for each input bit which is on
+     * @param flips             if not null, receives the connected matrix changes as
+     *                          (column, input, value) triples instead of applying them
+     */
+    protected void adaptColumns(Connections c, int[] activeColumns, int from, int to, boolean[] inputMask, TIntArrayList flips) {
+        double[] perm = new double[0];
+        for(int i = from;i < to;i++) {//对于每一个激活的列
+            List<Synapse> synapses = c.getSynapses(c.getColumn(activeColumns[i]).getProximalDendrite());
+            if(perm.length < synapses.size()) {
+                perm = new double[Math.max(synapses.size(), perm.length * 2)];
+            }
+            adaptColumnInPlace(c, activeColumns[i], synapses, inputMask, perm, flips);
+        }
+    }
+    
+    /**
+     * Adapts the synapses in the pool of one column in place. Gives the same
+     * permanences as building the dense permanence vector, adding the dense
+     * change vector and calling {@link #updatePermanencesForColumn(Connections, double[], Column, int[], boolean)},
+     * but only visits the column's potential synapses, and only updates the
+     * connected matrix and the pool's connected set for the synapses whose
+     * connected state flips.
+     * 只遍历列的潜在突触，原地更新持久度值，只有连接状态改变的突触才去更新连接矩阵
+     * 
+     * @param c             the {@link Connections} (spatial pooler memory)
+     * @param column        the index of the column
+     * @param synapses      the synapses of the column's proximal dendrite
+     * @param inputMask     true for each input bit which is on
+     * @param perm          scratch space at least as long as {@code synapses}
+     * @param flips         if not null, receives the connected matrix changes instead
+     */
+    private void adaptColumnInPlace(Connections c, int column, List<Synapse> synapses, boolean[] inputMask, double[] perm, TIntArrayList flips) {
+        int size = synapses.size();
+        if(size < c.getStimulusThreshold()) {
+            throw new IllegalStateException("This is likely due to a " +
+                "value of stimulusThreshold that is too large relative " +
+                "to the input size. [len(mask) < self._stimulusThreshold]");
+        }
+        
+        double increment = c.getSynPermActiveInc();
+        double decrement = -1 * c.getSynPermInactiveDec();
+        double connected = c.getSynPermConnected();
+        double min = c.getSynPermMin();
+        double max = c.getSynPermMax();
+        
+        // raisePermanenceToThreshold: clip, then raise the whole pool until enough synapses are connected
+        int numConnected = 0;
+        for(int i = 0;i < size;i++) {
+            Synapse synapse = synapses.get(i);
+            double p = synapse.getPermanence() + (inputMask[synapse.getInputIndex()] ? increment : decrement);
+            p = Math.min(max, Math.max(min, p));
+            perm[i] = p;
+            if(p > connected) numConnected++;
+        }
+        while(numConnected < c.getStimulusThreshold()) {
+            numConnected = 0;
+            for(int i = 0;i < size;i++) {
+                perm[i] += c.getSynPermBelowStimulusInc();
+                if(perm[i] > connected) numConnected++;
+            }
+        }
+        
+        // Trim, clip and write back, touching the connected matrix only on a flip
+        double trimThreshold = c.getSynPermTrimThreshold();
+        AbstractSparseBinaryMatrix connectedCounts = c.getConnectedCounts();
+        for(int i = 0;i < size;i++) {
+            double p = perm[i];
+            if(p <= trimThreshold) p = 0;
+            p = Math.min(max, Math.max(min, p));
+            
+            Synapse synapse = synapses.get(i);
+            boolean wasConnected = synapse.getPermanence() >= connected;
+            boolean isConnected = p >= connected;
+            if(wasConnected != isConnected) {
+                synapse.setPermanence(c, p);
+                if(flips == null) {
+                    connectedCounts.set(isConnected ? 1 : 0, column, synapse.getInputIndex());
+                }else{
+                    flips.add(column);
+                    flips.add(synapse.getInputIndex());
+                    flips.add(isConnected ? 1 : 0);
+                }
+            }else{
+                synapse.updatePermanence(p);
+            }
         }
     }
     
@@ -783,24 +1054,48 @@ public class SpatialPooler implements Persistable {
     public int[] inhibitColumns(Connections c, double[] overlaps) {
         overlaps = Arrays.copyOf(overlaps, overlaps.length);//把这个重叠数组复制一遍
 
-        double density;
-        double inhibitionArea;
-        if((density = c.getLocalAreaDensity()) <= 0) {//如果本地面积密度小于0
-            inhibitionArea = Math.pow(2 * c.getInhibitionRadius() + 1, c.getColumnDimensions().length);//看来抑制区是一个正方形，是抑制区直径的几次方
-            inhibitionArea = Math.min(c.getNumColumns(), inhibitionArea);//抑制区域最大为整个区域
-            density = c.getNumActiveColumnsPerInhArea() / inhibitionArea;///每个抑制区允许的最大激活单元柱的数量，除以抑制区单元柱数量的总数，就是抑制区密度
-            density = Math.min(density, 0.5);//这个密度不能超过0.5
-        }
+        double density = getInhibitionDensity(c);
 
         //Add our fixed little bit of random noise to the scores to help break ties.
         //ArrayUtils.d_add(overlaps, c.getTieBreaker());
 
-        if(c.getGlobalInhibition() || c.getInhibitionRadius() > ArrayUtils.max(c.getColumnDimensions())) {
+        if(isGlobalInhibition(c)) {
             return inhibitColumnsGlobal(c, overlaps, density);//全局抑制函数
         }
 
         return inhibitColumnsLocal(c, overlaps, density);//局部抑制函数
     }
+    
+    /**
+     * Returns the fraction of columns {@link #inhibitColumns(Connections, double[])}
+     * lets survive: the local area density if set, otherwise the number of active
+     * columns per inhibition area over the size of that area, at most 0.5.
+     * 
+     * @param c     the {@link Connections} matrix
+     * @return  the target density of active columns
+     */
+    public double getInhibitionDensity(Connections c) {
+        double density;
+        double inhibitionArea;
+        if((density = c.getLocalAreaDensity()) <= 0) {//如果本地面积密度小于0
+            inhibitionArea = Math.pow(2 * c.getInhibitionRadius() + 1, c.getColumnDimensions().length);//看来抑制区是一个正方形，是抑制区直径的几次方
+            inhibitionArea = Math.min(c.getNumColumns(), inhibitionArea);//抑制区域最大为整个区域
+            density = c.getNumActiveColumnsPerInhArea() / inhibitionArea;///每个抑制区允许的最大激活单元柱的数量，除以抑制区单元柱数量的总数，就是抑制区密度
+            density = Math.min(density, 0.5);//这个密度不能超过0.5
+        }
+        return density;
+    }
+    
+    /**
+     * Returns true if {@link #inhibitColumns(Connections, double[])} inhibits globally,
+     * either because it is configured to or because the inhibition radius covers
+     * the whole region.
+     * 
+     * @param c     the {@link Connections} matrix
+     */
+    public boolean isGlobalInhibition(Connections c) {
+        return c.getGlobalInhibition() || c.getInhibitionRadius() > ArrayUtils.max(c.getColumnDimensions());
+    }
 
     /**
      * Perform global inhibition. Performing global inhibition entails picking the
@@ -821,22 +1116,107 @@ public class SpatialPooler implements Persistable {
         int numCols = c.getNumColumns();
         int numActive = (int)(density * numCols);
  
-        int[] sortedWinnerIndices = IntStream.range(0,overlaps.length)
-            .mapToObj(i-> new Pair<>(i,overlaps[i]))
-            .sorted(c.inhibitionComparator)
-            .mapToInt(Pair<Integer,Double>::getFirst)
-            .toArray();
+        return inhibitColumnsGlobal(overlaps, numActive, c.getStimulusThreshold());
+    }
+    
+    /**
+     * Global inhibition on plain values, see {@link #inhibitColumnsGlobal(Connections, double[], double)}.
+     * 
+     * @param overlaps          the overlap score of each column
+     * @param numActive         the number of columns to select
+     * @param stimulusThreshold the minimum overlap of a winner
+     * @return  the winning columns, in ascending order of overlap
+     */
+    public static int[] inhibitColumnsGlobal(double[] overlaps, int numActive, double stimulusThreshold) {
+        int[] sortedWinnerIndices = selectTopOverlaps(overlaps, numActive);
         
         // Enforce the stimulus threshold
-        double stimulusThreshold = c.getStimulusThreshold();
-        int start = sortedWinnerIndices.length - numActive;
+        int start = 0;
         while(start < sortedWinnerIndices.length) {
             int i = sortedWinnerIndices[start];
             if(overlaps[i] >= stimulusThreshold) break;
             ++start;
         }
         
-        return IntStream.of(sortedWinnerIndices).skip(start).toArray();
+        return start == 0 ? sortedWinnerIndices : Arrays.copyOfRange(sortedWinnerIndices, start, sortedWinnerIndices.length);
+    }
+    
+    /**
+     * Returns the indexes of the {@code numActive} columns with the highest
+     * overlaps, ordered the way {@link Connections#inhibitionComparator} sorts
+     * them: ascending overlap, with ties broken by ascending index (so among
+     * equal overlaps the higher indexes win). The result equals the tail of a
+     * full sort of boxed {@code Pair}s with that comparator, but is selected
+     * with a bounded min-heap of primitive indexes: once the heap is full most
+     * columns are rejected by a single comparison with its root.
+     * 
+     * @param overlaps      the overlap score of each column
+     * @param numActive     the number of columns to select
+     * @return  the selected column indexes, in ascending order of overlap
+     */
+    public static int[] selectTopOverlaps(double[] overlaps, int numActive) {
+        int k = Math.max(0, Math.min(numActive, overlaps.length));
+        int[] heap = new int[k];
+        if(k == 0) return heap;
+        
+        int size = 0;
+        for(int i = 0;i < overlaps.length;i++) {
+            if(size < k) {
+                // Sift up
+                int pos = size++;
+                while(pos > 0) {
+                    int parent = (pos - 1) >>> 1;
+                    if(!sortsBefore(overlaps, i, heap[parent])) break;
+                    heap[pos] = heap[parent];
+                    pos = parent;
+                }
+                heap[pos] = i;
+            }else if(sortsBefore(overlaps, heap[0], i)) {
+                siftDown(overlaps, heap, size, i);
+            }
+        }
+        
+        // Popping the root repeatedly yields the winners in ascending order
+        int[] sorted = new int[k];
+        for(int n = 0;n < k;n++) {
+            sorted[n] = heap[0];
+            --size;
+            if(size > 0) {
+                siftDown(overlaps, heap, size, heap[size]);
+            }
+        }
+        return sorted;
+    }
+    
+    /**
+     * Places {@code column} at the root of the min-heap and restores the heap
+     * property over its first {@code size} entries.
+     */
+    private static void siftDown(double[] overlaps, int[] heap, int size, int column) {
+        int pos = 0;
+        int child;
+        while((child = 2 * pos + 1) < size) {
+            if(child + 1 < size && sortsBefore(overlaps, heap[child + 1], heap[child])) {
+                ++child;
+            }
+            if(!sortsBefore(overlaps, heap[child], column)) break;
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = column;
+    }
+    
+    /**
+     * Primitive form of {@link Connections#inhibitionComparator}: returns true
+     * if column {@code a} sorts before column {@code b}.
+     */
+    private static boolean sortsBefore(double[] overlaps, int a, int b) {
+        double va = overlaps[a];
+        double vb = overlaps[b];
+        if(Math.abs(vb - va) < 0.000000000000000000001) {
+            return a < b;
+        }
+        return va < vb;
     }
     
     /**
@@ -856,6 +1236,20 @@ public class SpatialPooler implements Persistable {
      * @return  indices of the winning columns 胜出的单元
      */
     public int[] inhibitColumnsLocal(Connections c, double[] overlaps, double density) {
+        int[][] neighborhoods = getColumnNeighborhoods(c, c.getInhibitionRadius());
+        return inhibitColumnsLocal(overlaps, neighborhoods, density, c.getStimulusThreshold());
+    }
+    
+    /**
+     * Local inhibition on plain values, see {@link #inhibitColumnsLocal(Connections, double[], double)}.
+     * 
+     * @param overlaps          the overlap score of each column
+     * @param neighborhoods     the neighborhood of each column
+     * @param density           the fraction of columns to survive inhibition
+     * @param stimulusThreshold the minimum overlap of a winner
+     * @return  indices of the winning columns
+     */
+    public static int[] inhibitColumnsLocal(double[] overlaps, int[][] neighborhoods, double density, double stimulusThreshold) {
         double addToWinners = ArrayUtils.max(overlaps) / 1000.0d;//胜出的列的激活值将要被添加的值，这个值是叠加值数组里面最大值除以1000
         if(addToWinners == 0) {
             addToWinners = 0.001;
@@ -863,18 +1257,17 @@ public class SpatialPooler implements Persistable {
         double[] tieBrokenOverlaps = Arrays.copyOf(overlaps, overlaps.length);//把空间池的数组再复制一份
         
         TIntList winners = new TIntArrayList();//创建一个int数组
-        double stimulusThreshold = c.getStimulusThreshold();//获取激活阈值
-        int inhibitionRadius = c.getInhibitionRadius();//获取抑制半径
         for(int i = 0;i < overlaps.length;i++) {//对于空间池的每一个叠加的成果值
             int column = i;
             if(overlaps[column] >= stimulusThreshold) {//如果第i个单元柱的叠加值大于激活阈值
-               int[] neighborhood = getColumnNeighborhood(c, column, inhibitionRadius);//获取这个单元柱的邻域
-               double[] neighborhoodOverlaps = ArrayUtils.sub(tieBrokenOverlaps, neighborhood);//在源数组中，截取指定索引的元素，构成新的数组，这里相当于获取了邻域单元柱的叠加值
+               int[] neighborhood = neighborhoods[column];//获取这个单元柱的邻域
                
-               long numBigger = Arrays.stream(neighborhoodOverlaps)
-                   .parallel() //DoubleStream类的方法返回一个等效的并行流，相当于复制操作
-                   .filter(d -> d > overlaps[column])//把邻域单元柱中叠加值大于中心单元柱的挑出来，
-                   .count();//统计一下数量
+               // Count the neighbors (including already boosted winners) which beat this column
+               double overlap = overlaps[column];
+               int numBigger = 0;
+               for(int n : neighborhood) {
+                   if(tieBrokenOverlaps[n] > overlap) numBigger++;//把邻域单元柱中叠加值大于中心单元柱的统计一下数量
+               }
                
                int numActive = (int)(0.5 + density * neighborhood.length);//最大激活单元柱的数量，在这个邻域单元柱数组中，这个领域中允许激活的单元柱总数
                if(numBigger < numActive) {//如果邻域单元柱数组中叠加值大于中心单元柱叠加值的单元柱的数量小于邻域单元柱中最大激活单元柱的数量，也就是说中心单元柱的值能排进前几名，那么这个单元柱就是一个激活单元柱
@@ -943,7 +1336,9 @@ public class SpatialPooler implements Persistable {
      * that are connected (permanence value is greater than '_synPermConnected')
      * to input bits which are turned on. Overlap values that are lower than
      * the 'stimulusThreshold' are ignored. The implementation takes advantage of
-     * the SpraseBinaryMatrix class to perform this calculation efficiently.
+     * the SpraseBinaryMatrix class to perform this calculation efficiently: the
+     * default {@link CSRBinaryMatrix} only visits the active input bits and the
+     * columns connected to each of them.
      *  
      * @param c             the {@link Connections} memory encapsulation
      * @param inputVector   an input array of 0's and 1's that comprises the input to
@@ -956,6 +1351,19 @@ public class SpatialPooler implements Persistable {
         return overlaps;
     }
     
+    /**
+     * Sparse input version of {@link #calculateOverlap(Connections, int[])}.
+     * 
+     * @param c             the {@link Connections} memory encapsulation
+     * @param inputIndices  the indexes of the input bits which are on
+     * @return
+     */
+    public int[] calculateOverlapSparse(Connections c, int[] inputIndices) {
+        int[] overlaps = new int[c.getNumColumns()];
+        c.getConnectedCounts().rightVecSumAtNZSparse(inputIndices, overlaps, c.getStimulusThreshold());
+        return overlaps;
+    }
+    
     /**
      * Return the overlap to connected counts ratio for a given column
      * @param c
@@ -1074,6 +1482,29 @@ public class SpatialPooler implements Persistable {
                 c.getColumnTopology().neighborhood(centerColumn, inhibitionRadius);
     }
     
+    /**
+     * Returns the neighborhood of every column for the specified inhibition
+     * radius. The table is built once per radius through
+     * {@link #getColumnNeighborhood(Connections, int, int)} (so overriding
+     * that method still takes effect) and cached in the {@link Connections}.
+     * 返回每个列在指定抑制半径下的邻域，每个半径只计算一次并缓存在Connections中
+     * 
+     * @param c                     the {@link Connections} memory encapsulation
+     * @param inhibitionRadius      Span of columns included in each neighborhood
+     * @return                      The neighborhood of each column, indexed by column
+     */
+    public int[][] getColumnNeighborhoods(Connections c, int inhibitionRadius) {
+        int[][] neighborhoods = c.getColumnNeighborhoods(inhibitionRadius);
+        if(neighborhoods == null) {
+            neighborhoods = new int[c.getNumColumns()][];
+            for(int i = 0;i < neighborhoods.length;i++) {
+                neighborhoods[i] = getColumnNeighborhood(c, i, inhibitionRadius);
+            }
+            c.setColumnNeighborhoods(inhibitionRadius, neighborhoods);
+        }
+        return neighborhoods;
+    }
+    
     /**
      * Gets a neighborhood of inputs.
      * 获取输入的邻域
@@ -34,7 +34,6 @@ import java.util.Random;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.numenta.nupic.model.Cell;
 import org.numenta.nupic.model.Column;
@@ -49,6 +48,8 @@ import org.numenta.nupic.util.GroupBy2.Slot;
 import org.numenta.nupic.util.SparseObjectMatrix;
 import org.numenta.nupic.util.Tuple;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import chaschev.lang.Pair;
 
 /**
@@ -207,20 +208,19 @@ public class TemporalMemory implements ComputeDecorator, Serializable{
      *                 during segment cleanup.
 	 */
 	public void activateDendrites(Connections conn, ComputeCycle cycle, boolean learn) {
-	    Activity activity = conn.computeActivity(cycle.activeCells, conn.getConnectedPermanence());//activity里面存储的是活跃单元所包含的每个树突有突触数量，以及连接的突触数量
-	    
-	    List<DistalDendrite> activeSegments = IntStream.range(0, activity.numActiveConnected.length)
-	        .filter(i -> activity.numActiveConnected[i] >= conn.getActivationThreshold())//这个树突处于连接状态的突触的个数大于指定的阈值
-	        .mapToObj(i -> conn.segmentForFlatIdx(i))
-	        .collect(Collectors.toList());//这句话相当于获取了处于激活状态的树突列表
+	    // 激活树突和匹配树突在计数的同时收集好，并且已经按照所属单元的id排好序
+	    Activity activity = conn.computeActivity(cycle.activeCells, conn.getConnectedPermanence(),
+	        conn.getActivationThreshold(), conn.getMinThreshold());//activity里面存储的是活跃单元所包含的每个树突有突触数量，以及连接的突触数量
 	    
-	    List<DistalDendrite> matchingSegments = IntStream.range(0, activity.numActiveConnected.length)//
-	        .filter(i -> activity.numActivePotential[i] >= conn.getMinThreshold())//这个树突的突触的数量大于指定的阈值，那么这个树突就是匹配的树突
-	        .mapToObj(i -> conn.segmentForFlatIdx(i))
-	        .collect(Collectors.toList());//获取匹配树突的列表
+	    List<DistalDendrite> activeSegments = new ArrayList<>(activity.getNumActiveSegments());
+	    for(int i = 0;i < activity.getNumActiveSegments();i++) {
+	        activeSegments.add(conn.segmentForFlatIdx(activity.getActiveSegment(i)));//处于激活状态的树突列表
+	    }
 	    
-	    Collections.sort(activeSegments, conn.segmentPositionSortKey);//对激活树突列表进行排序，按照其所属的单元的id大小进行排序
-	    Collections.sort(matchingSegments, conn.segmentPositionSortKey);//对匹配数据列表进行排序，按照其所属的单元的id大小进行排序
+	    List<DistalDendrite> matchingSegments = new ArrayList<>(activity.getNumMatchingSegments());
+	    for(int i = 0;i < activity.getNumMatchingSegments();i++) {
+	        matchingSegments.add(conn.segmentForFlatIdx(activity.getMatchingSegment(i)));//匹配树突的列表
+	    }
 	    
 	    cycle.activeSegments = activeSegments;//把激活树突赋值给本轮ComputeCycle对象
 	    cycle.matchingSegments = matchingSegments;//把匹配树突赋值给本轮ComputeCycle对象
@@ -417,6 +417,504 @@ public class TemporalMemory implements ComputeDecorator, Serializable{
     }
 	
 	
+    /////////////////////////////////////
+    //     Index Based Compute Path    //
+    /////////////////////////////////////
+    
+    /**
+     * Same computation as {@link #compute(Connections, int[], boolean)}, on sorted
+     * {@code int} indexes instead of {@link Column}, {@link Cell} and segment collections.
+     * 和compute相同的计算，只是用排好序的整数索引代替列、单元和树突的集合
+     * <p>
+     * The previous step's state is read from, and the new state written into, the
+     * index buffers of {@code cycle}, so the same {@link ComputeCycle} must be passed
+     * to every step of a sequence. Active columns are merged with the previous active
+     * and matching segments in one linear pass, so no {@link GroupBy2} or {@link Tuple}
+     * is built, and the buffers are reused so a step creates almost no garbage.
+     * The synapses, segments and random draws are exactly those of {@code compute}.
+     * </p><p>
+     * This path keeps its state in the cycle only: the cell and segment collections of
+     * {@code conn} and of {@code cycle} are not updated. Use {@link ComputeCycle#resetIndices()}
+     * to start a new sequence.
+     * </p>
+     * 
+     * @param conn              the Connectivity
+     * @param activeColumns     indexes of the active columns
+     * @param learn             whether to grow and reinforce synapses
+     * @param cycle             the cycle holding the previous step's state, updated in place
+     * @return  {@code cycle}
+     */
+    public ComputeCycle computeIndices(Connections conn, int[] activeColumns, boolean learn, ComputeCycle cycle) {
+        cycle.swapIndices();
+        activateCellIndices(conn, cycle, activeColumns, learn);
+        activateDendriteIndices(conn, cycle, learn);
+        
+        return cycle;
+    }
+    
+    /**
+     * Index based {@link #activateCells(Connections, ComputeCycle, int[], boolean)}.
+     * 
+     * @param conn              the Connectivity
+     * @param cycle             holds the previous state and receives the active and winner cells
+     * @param activeColumns     indexes of the active columns
+     * @param learn             whether to grow and reinforce synapses
+     */
+    public void activateCellIndices(Connections conn, ComputeCycle cycle, int[] activeColumns, boolean learn) {
+        prepareIndexScratch(conn, cycle);
+        int numGroups = groupColumns(conn, cycle, activeColumns);
+        
+        ColumnLearner learner = new ColumnLearner(cycle.activeCellIndices, cycle.winnerCellIndices,
+            cycle.candidateCells, cycle.leastUsedCells, cycle.synapsesToDestroy);
+        learner.reset(conn, cycle, conn.getRandom(), false);
+        learnColumns(learner, 0, numGroups, learn);
+    }
+    
+    /**
+     * Merges the sorted active columns with the previous active and matching segments,
+     * which are ordered by cell and so by column, like a three way merge. Each column
+     * met in any of the three is stored in {@code cycle.columnGroups} as
+     * {column, isActive, activeFrom, activeTo, matchingFrom, matchingTo}, where the
+     * ranges index the previous segment buffers.
+     * 
+     * @return  the number of column groups
+     */
+    protected int groupColumns(Connections conn, ComputeCycle cycle, int[] activeColumns) {
+        int cellsPerColumn = conn.getCellsPerColumn();
+        int[] columns = activeColumns.clone();
+        Arrays.sort(columns);
+        TIntArrayList activeSegments = cycle.prevActiveSegmentIndices;
+        TIntArrayList matchingSegments = cycle.prevMatchingSegmentIndices;
+        TIntArrayList groups = cycle.columnGroups;
+        groups.resetQuick();
+        
+        int c = 0, a = 0, m = 0;
+        int numColumns = columns.length, numActive = activeSegments.size(), numMatching = matchingSegments.size();
+        while(c < numColumns || a < numActive || m < numMatching) {
+            // The smallest column among the three heads
+            int column = Integer.MAX_VALUE;
+            if(c < numColumns) column = columns[c];
+            if(a < numActive) column = Math.min(column, columnOf(conn, activeSegments.get(a), cellsPerColumn));
+            if(m < numMatching) column = Math.min(column, columnOf(conn, matchingSegments.get(m), cellsPerColumn));
+            
+            boolean isActive = c < numColumns && columns[c] == column;
+            while(c < numColumns && columns[c] == column) c++;
+            int activeStart = a;
+            while(a < numActive && columnOf(conn, activeSegments.get(a), cellsPerColumn) == column) a++;
+            int matchingStart = m;
+            while(m < numMatching && columnOf(conn, matchingSegments.get(m), cellsPerColumn) == column) m++;
+            
+            groups.add(column);
+            groups.add(isActive ? 1 : 0);
+            groups.add(activeStart);
+            groups.add(a);
+            groups.add(matchingStart);
+            groups.add(m);
+        }
+        
+        return groups.size() / 6;
+    }
+    
+    /**
+     * Activates and learns on the column groups [from, to) of {@code learner}'s cycle.
+     * Each column only touches the segments of its own cells.
+     */
+    protected void learnColumns(ColumnLearner learner, int from, int to, boolean learn) {
+        Connections conn = learner.conn;
+        TIntArrayList groups = learner.cycle.columnGroups;
+        double permanenceIncrement = conn.getPermanenceIncrement();
+        double permanenceDecrement = conn.getPermanenceDecrement();
+        
+        for(int g = from;g < to;g++) {
+            int column = groups.get(g * 6);
+            boolean isActive = groups.get(g * 6 + 1) == 1;
+            int activeFrom = groups.get(g * 6 + 2), activeTo = groups.get(g * 6 + 3);
+            int matchingFrom = groups.get(g * 6 + 4), matchingTo = groups.get(g * 6 + 5);
+            
+            if(isActive) {
+                if(activeTo > activeFrom) {
+                    activatePredictedColumnIndices(learner, activeFrom, activeTo, permanenceIncrement, permanenceDecrement, learn);
+                }else{
+                    burstColumnIndices(learner, column, matchingFrom, matchingTo, permanenceIncrement, permanenceDecrement, learn);
+                }
+            }else if(learn && conn.getPredictedSegmentDecrement() > 0) {
+                for(int i = matchingFrom;i < matchingTo;i++) {
+                    adaptSegment(learner, conn.segmentForFlatIdx(learner.cycle.prevMatchingSegmentIndices.get(i)),
+                        -conn.getPredictedSegmentDecrement(), 0);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Index based {@link #activateDendrites(Connections, ComputeCycle, boolean)}.
+     * 
+     * @param conn      the Connectivity
+     * @param cycle     holds the active cells and receives the active and matching segments
+     *                  and the predictive cells
+     * @param learn     If true, segment activations will be recorded.
+     */
+    public void activateDendriteIndices(Connections conn, ComputeCycle cycle, boolean learn) {
+        TIntArrayList activeCells = cycle.activeCellIndices;
+        Activity activity = conn.computeActivity(activeCells.toArray(cycle.candidateCells, 0, activeCells.size()),
+            activeCells.size(), conn.getConnectedPermanence(), conn.getActivationThreshold(), conn.getMinThreshold());
+        
+        int previousCell = -1;
+        for(int i = 0;i < activity.getNumActiveSegments();i++) {
+            int flatIdx = activity.getActiveSegment(i);
+            cycle.activeSegmentIndices.add(flatIdx);
+            
+            DistalDendrite segment = conn.segmentForFlatIdx(flatIdx);
+            int cell = segment.getParentCell().getIndex();
+            if(cell != previousCell) {
+                cycle.predictiveCellIndices.add(previousCell = cell);
+            }
+            if(learn) {
+                conn.recordSegmentActivity(segment);
+            }
+        }
+        for(int i = 0;i < activity.getNumMatchingSegments();i++) {
+            cycle.matchingSegmentIndices.add(activity.getMatchingSegment(i));
+        }
+        
+        if(learn) {
+            conn.startNewIteration();
+        }
+    }
+    
+    /**
+     * Index based {@link #activatePredictedColumn(Connections, List, List, Set, Set, double, double, boolean)}
+     * over the previous active segments [from, to) of one column.
+     */
+    private void activatePredictedColumnIndices(ColumnLearner learner, int from, int to,
+        double permanenceIncrement, double permanenceDecrement, boolean learn) {
+        
+        Connections conn = learner.conn;
+        int previousCell = -1;
+        for(int i = from;i < to;i++) {
+            DistalDendrite segment = conn.segmentForFlatIdx(learner.cycle.prevActiveSegmentIndices.get(i));
+            int cell = segment.getParentCell().getIndex();
+            if(cell != previousCell) {
+                learner.activeCells.add(cell);
+                learner.winnerCells.add(cell);
+                previousCell = cell;
+            }
+            
+            if(learn) {
+                boolean live = adaptSegment(learner, segment, permanenceIncrement, permanenceDecrement);
+                
+                int numActive = conn.getLastActivity().numActivePotential[segment.getIndex()];
+                int nGrowDesired = conn.getMaxNewSynapseCount() - numActive;
+                
+                if(live && nGrowDesired > 0) {
+                    growSynapses(learner, segment, cell, conn.getInitialPermanence(), nGrowDesired);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Index based {@link #burstColumn(Connections, Column, List, Set, Set, double, double, Random, boolean)}
+     * with the previous matching segments [from, to) of the column.
+     */
+    private void burstColumnIndices(ColumnLearner learner, int column, int from, int to,
+        double permanenceIncrement, double permanenceDecrement, boolean learn) {
+        
+        Connections conn = learner.conn;
+        int cellsPerColumn = conn.getCellsPerColumn();
+        int firstCell = column * cellsPerColumn;
+        for(int i = 0;i < cellsPerColumn;i++) {
+            learner.activeCells.add(firstCell + i);
+        }
+        
+        int bestCell;
+        if(from < to) {
+            // First segment with the most active potential synapses, like Stream.max()
+            int[] numPoten = conn.getLastActivity().numActivePotential;
+            TIntArrayList matchingSegments = learner.cycle.prevMatchingSegmentIndices;
+            int best = matchingSegments.get(from);
+            for(int i = from + 1;i < to;i++) {
+                int flatIdx = matchingSegments.get(i);
+                if(numPoten[flatIdx] > numPoten[best]) {
+                    best = flatIdx;
+                }
+            }
+            DistalDendrite bestSegment = conn.segmentForFlatIdx(best);
+            bestCell = bestSegment.getParentCell().getIndex();
+            
+            if(learn) {
+                boolean live = adaptSegment(learner, bestSegment, permanenceIncrement, permanenceDecrement);
+                
+                int nGrowDesired = conn.getMaxNewSynapseCount() - numPoten[best];
+                
+                if(live && nGrowDesired > 0) {
+                    growSynapses(learner, bestSegment, bestCell, conn.getInitialPermanence(), nGrowDesired);
+                }
+            }
+        }else{
+            TIntArrayList leastUsedCells = learner.leastUsedCells;
+            leastUsedCells.resetQuick();
+            int minNumSegments = Integer.MAX_VALUE;
+            for(int i = 0;i < cellsPerColumn;i++) {
+                int numSegments = conn.numSegments(conn.getCell(firstCell + i));
+                
+                if(numSegments < minNumSegments) {
+                    minNumSegments = numSegments;
+                    leastUsedCells.resetQuick();
+                }
+                
+                if(numSegments == minNumSegments) {
+                    leastUsedCells.add(firstCell + i);
+                }
+            }
+            bestCell = leastUsedCells.get(learner.random.nextInt(leastUsedCells.size()));
+            
+            if(learn) {
+                int nGrowExact = Math.min(conn.getMaxNewSynapseCount(), learner.cycle.prevWinnerCellIndices.size());
+                if(nGrowExact > 0) {
+                    growSynapses(learner, null, bestCell, conn.getInitialPermanence(), nGrowExact);
+                }
+            }
+        }
+        
+        learner.winnerCells.add(bestCell);
+    }
+    
+    /**
+     * Index based {@link #growSynapses(Connections, Set, DistalDendrite, double, int, Random)}:
+     * the candidates are the previous winner cells, which are already sorted.
+     * A null segment stands for a new segment on {@code cell}.
+     */
+    private void growSynapses(ColumnLearner learner, DistalDendrite segment, int cell,
+        double initialPermanence, int nDesiredNewSynapses) {
+        
+        Connections conn = learner.conn;
+        int[] candidates = learner.candidates;
+        int candidatesLength = learner.cycle.prevWinnerCellIndices.size();
+        learner.cycle.prevWinnerCellIndices.toArray(candidates, 0, candidatesLength);
+        
+        if(segment != null) {
+            for(Synapse synapse : conn.getSynapses(segment)) {
+                if(learner.isPendingDestroy(synapse)) continue;
+                
+                int index = Arrays.binarySearch(candidates, 0, candidatesLength, synapse.getPresynapticCell().getIndex());
+                if(index >= 0) {
+                    System.arraycopy(candidates, index + 1, candidates, index, --candidatesLength - index);
+                }
+            }
+        }
+        
+        int nActual = nDesiredNewSynapses < candidatesLength ? nDesiredNewSynapses : candidatesLength;
+        int[] presynapticCells = new int[nActual];
+        for(int i = 0;i < nActual;i++) {
+            int rand = learner.random.nextInt(candidatesLength);
+            presynapticCells[i] = candidates[rand];
+            System.arraycopy(candidates, rand + 1, candidates, rand, --candidatesLength - rand);
+        }
+        
+        learner.grow(segment, cell, initialPermanence, presynapticCells);
+    }
+    
+    /**
+     * Index based {@link #adaptSegment(Connections, DistalDendrite, Set, double, double)}:
+     * the previous active cells are looked up in the mask of the learner's cycle.
+     * 
+     * @return  false if the segment lost all its synapses and was destroyed
+     */
+    private boolean adaptSegment(ColumnLearner learner, DistalDendrite segment,
+        double permanenceIncrement, double permanenceDecrement) {
+        
+        Connections conn = learner.conn;
+        boolean[] prevActive = learner.cycle.prevActiveCellMask;
+        List<Synapse> synapsesToDestroy = learner.synapsesToDestroy;
+        synapsesToDestroy.clear();
+        
+        List<Synapse> synapses = conn.getSynapses(segment);
+        for(Synapse synapse : synapses) {
+            double permanence = synapse.getPermanence();
+            
+            if(prevActive[synapse.getPresynapticCell().getIndex()]) {
+                permanence += permanenceIncrement;
+            }else{
+                permanence -= permanenceDecrement;
+            }
+            
+            permanence = permanence < 0 ? 0 : permanence > 1.0 ? 1.0 : permanence;
+            
+            if(permanence < EPSILON) {
+                synapsesToDestroy.add(synapse);
+            }else{
+                synapse.setPermanence(conn, permanence);
+            }
+        }
+        
+        boolean live = synapses.size() > synapsesToDestroy.size();
+        learner.destroy(segment, live);
+        
+        return live;
+    }
+    
+    /**
+     * Sizes the scratch space of {@code cycle} and marks the previous active cells.
+     */
+    protected void prepareIndexScratch(Connections conn, ComputeCycle cycle) {
+        int numCells = conn.getCells().length;
+        if(cycle.prevActiveCellMask == null || cycle.prevActiveCellMask.length != numCells) {
+            cycle.prevActiveCellMask = new boolean[numCells];
+            cycle.candidateCells = new int[numCells];
+            cycle.leastUsedCells = new TIntArrayList(conn.getCellsPerColumn());
+            cycle.synapsesToDestroy = new ArrayList<>();
+            cycle.columnGroups = new TIntArrayList();
+        }else{
+            Arrays.fill(cycle.prevActiveCellMask, false);
+        }
+        
+        TIntArrayList prevActiveCells = cycle.prevActiveCellIndices;
+        for(int i = 0;i < prevActiveCells.size();i++) {
+            cycle.prevActiveCellMask[prevActiveCells.get(i)] = true;
+        }
+    }
+    
+    private static int columnOf(Connections conn, int flatIdx, int cellsPerColumn) {
+        return conn.segmentForFlatIdx(flatIdx).getParentCell().getIndex() / cellsPerColumn;
+    }
+    
+    /**
+     * Where the index based path sends the cells it activates and the changes it makes
+     * to segments and synapses.
+     * <p>
+     * Permanences of existing synapses are always written at once, since every synapse
+     * belongs to exactly one column. Destroying synapses and segments and growing new
+     * ones changes structures shared by all columns (flat indexes, presynaptic maps), so
+     * a deferred learner records these in order and {@link #applyDeferred()} replays them
+     * later on one thread.
+     * </p>
+     * 按列学习时的输出和结构修改，延迟模式下把结构修改按顺序记录下来，之后在单线程中重放
+     */
+    protected static class ColumnLearner {
+        protected Connections conn;
+        protected ComputeCycle cycle;
+        protected Random random;
+        /** Receives the active and winner cells, in column order */
+        protected final TIntArrayList activeCells;
+        protected final TIntArrayList winnerCells;
+        
+        private final int[] candidates;
+        private final TIntArrayList leastUsedCells;
+        private final List<Synapse> synapsesToDestroy;
+        
+        private boolean deferred;
+        /** Recorded structural changes: a Synapse or DistalDendrite to destroy, or a Growth */
+        private final List<Object> changes = new ArrayList<>();
+        /** Synapses recorded for destruction by the last adaptSegment, still present in deferred mode */
+        private final List<Synapse> pendingDestroy = new ArrayList<>();
+        
+        public ColumnLearner(TIntArrayList activeCells, TIntArrayList winnerCells, int[] candidates,
+            TIntArrayList leastUsedCells, List<Synapse> synapsesToDestroy) {
+            this.activeCells = activeCells;
+            this.winnerCells = winnerCells;
+            this.candidates = candidates;
+            this.leastUsedCells = leastUsedCells;
+            this.synapsesToDestroy = synapsesToDestroy;
+        }
+        
+        /**
+         * Prepares this learner for a step.
+         * 
+         * @param conn          the Connectivity
+         * @param cycle         the cycle holding the previous state
+         * @param random        random generator for cell choice and synapse growth
+         * @param deferred      true to record structural changes for {@link #applyDeferred()}
+         */
+        public void reset(Connections conn, ComputeCycle cycle, Random random, boolean deferred) {
+            this.conn = conn;
+            this.cycle = cycle;
+            this.random = random;
+            this.deferred = deferred;
+            changes.clear();
+            pendingDestroy.clear();
+        }
+        
+        /**
+         * Destroys the synapses collected by adaptSegment, and the segment too if none is left.
+         */
+        void destroy(DistalDendrite segment, boolean live) {
+            pendingDestroy.clear();
+            if(deferred) {
+                changes.addAll(synapsesToDestroy);
+                pendingDestroy.addAll(synapsesToDestroy);
+                if(!live) changes.add(segment);
+            }else{
+                for(int i = 0;i < synapsesToDestroy.size();i++) {
+                    conn.destroySynapse(synapsesToDestroy.get(i));
+                }
+                if(!live) conn.destroySegment(segment);
+            }
+            synapsesToDestroy.clear();
+        }
+        
+        boolean isPendingDestroy(Synapse synapse) {
+            for(int i = 0;i < pendingDestroy.size();i++) {
+                if(pendingDestroy.get(i) == synapse) return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Grows synapses from the specified presynaptic cells onto the segment, or onto
+         * a new segment of {@code cell} if {@code segment} is null.
+         */
+        void grow(DistalDendrite segment, int cell, double permanence, int[] presynapticCells) {
+            if(deferred) {
+                changes.add(new Growth(segment, cell, permanence, presynapticCells));
+            }else{
+                new Growth(segment, cell, permanence, presynapticCells).apply(conn);
+            }
+        }
+        
+        /**
+         * Replays the recorded structural changes in the order they were made.
+         */
+        public void applyDeferred() {
+            for(int i = 0;i < changes.size();i++) {
+                Object change = changes.get(i);
+                if(change instanceof Synapse) {
+                    conn.destroySynapse((Synapse)change);
+                }else if(change instanceof DistalDendrite) {
+                    conn.destroySegment((DistalDendrite)change);
+                }else{
+                    ((Growth)change).apply(conn);
+                }
+            }
+            changes.clear();
+            pendingDestroy.clear();
+        }
+    }
+    
+    /**
+     * Synapses to grow onto a segment, or onto a new segment of a cell.
+     */
+    private static class Growth {
+        private final DistalDendrite segment;
+        private final int cell;
+        private final double permanence;
+        private final int[] presynapticCells;
+        
+        private Growth(DistalDendrite segment, int cell, double permanence, int[] presynapticCells) {
+            this.segment = segment;
+            this.cell = cell;
+            this.permanence = permanence;
+            this.presynapticCells = presynapticCells;
+        }
+        
+        private void apply(Connections conn) {
+            DistalDendrite target = segment == null ? conn.createSegment(conn.getCell(cell)) : segment;
+            for(int presynapticCell : presynapticCells) {
+                conn.createSynapse(target, conn.getCell(presynapticCell), permanence);
+            }
+        }
+    }
+    
     ////////////////////////////
     //     Helper Methods     //
     ////////////////////////////
@@ -0,0 +1,297 @@
+package org.numenta.nupic.encoders;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * 预编译的空间位置编码器
+ *
+ * {@link SpatialDataEncoder}每次编码都要重新计算每个编码单元的间距、k值、三个方向向量和相位点，
+ * 而这些量只和编码单元有关，和输入的位置无关。这里在构造的时候把这些量按编码单元一次性算好存成表，
+ * 编码时只剩下每个单元三次余弦的计算。
+ *
+ * 表中每一项的计算顺序和原来的方法完全一致，因此编码结果和原方法逐位相同。
+ * 所有的表在构造以后都不再改变，同一个实例可以被多个线程同时使用。
+ * @author czg
+ *
+ */
+public class CompiledSpatialDataEncoder implements LocationEncoding
+{
+	/**
+	 * 可以预编译的编码方式
+	 */
+	public enum Variant
+	{
+		/** 对应{@link SpatialDataEncoder#encode_twoD(int, int)} */
+		TWO_D,
+		/** 对应{@link SpatialDataEncoder#encode_threeD(int, int)} */
+		THREE_D
+	}
+
+	private final Variant variant;
+
+	private final int code_width;
+
+	private final int code_height;
+
+	private final int spatial_width;
+
+	private final int spatial_height;
+
+	private final double major_angle;
+
+	/**
+	 * 编码展平以后的长度
+	 */
+	private final int length;
+
+	/**
+	 * 每一个参与计算的编码单元在展平编码中的位置
+	 */
+	private final int[] index;
+
+	/**
+	 * 每个编码单元的kvalue/Math.sqrt(2)
+	 */
+	private final double[] k;
+
+	/**
+	 * 每个编码单元的相位点
+	 */
+	private final double[] px;
+
+	private final double[] py;
+
+	/**
+	 * 三个光栅的方向系数，a=cos+sin，b=cos-sin，只和主角度有关，所有编码单元共用
+	 */
+	private final double a1;
+	private final double b1;
+	private final double a2;
+	private final double b2;
+	private final double a3;
+	private final double b3;
+
+	public CompiledSpatialDataEncoder(int code_width,int code_height,int spatial_width,int spatial_height,Variant variant)
+	{
+		this(code_width, code_height, spatial_width, spatial_height, Math.PI/12d, variant);
+	}
+
+	public CompiledSpatialDataEncoder(int code_width,int code_height,int spatial_width,int spatial_height,double major_angle,Variant variant)
+	{
+		this.code_width=code_width;
+		this.code_height=code_height;
+		this.spatial_width=spatial_width;
+		this.spatial_height=spatial_height;
+		this.major_angle=major_angle;
+		this.variant=variant;
+
+		int cells;
+		switch (variant)
+		{
+			case THREE_D:
+				length=SpatialDataEncoder.radius_level*code_height*code_width;
+				cells=SpatialDataEncoder.radius_level*Math.min(code_height, code_width);
+				break;
+			default:
+				length=code_height*code_width;
+				cells=length;
+				break;
+		}
+
+		index=new int[cells];
+		k=new double[cells];
+		px=new double[cells];
+		py=new double[cells];
+
+		///三个光栅的方向只和主角度有关
+		double cosOne=Math.cos(major_angle);
+		double sinOne=Math.sin(major_angle);
+		double cosTwo=Math.cos(major_angle+(Math.PI/3d));
+		double sinTwo=Math.sin(major_angle+(Math.PI/3d));
+		double cosThree=Math.cos(major_angle+(2*Math.PI/3d));
+		double sinThree=Math.sin(major_angle+(2*Math.PI/3d));
+		a1=cosOne+sinOne;
+		b1=cosOne-sinOne;
+		a2=cosTwo+sinTwo;
+		b2=cosTwo-sinTwo;
+		a3=cosThree+sinThree;
+		b3=cosThree-sinThree;
+
+		switch (variant)
+		{
+			case THREE_D:
+				compileThreeD();
+				break;
+			default:
+				compileTwoD();
+				break;
+		}
+	}
+
+	/**
+	 * 和{@link SpatialDataEncoder#encode_twoD(int, int)}相同的间距和相位安排
+	 */
+	private void compileTwoD()
+	{
+		double spacing_max=spatial_height*2;
+		double spacing_min=2d/Math.sqrt(3)+4*(spacing_max-(2d/Math.sqrt(3)))/code_height;
+
+		double spacing=spacing_min;
+		int n=0;
+		for(int mec_height=0;mec_height<code_height;mec_height++)
+		{
+			double kvalue=4*Math.PI/(Math.sqrt(3)*spacing);
+
+			double phase_increasing_x=(spacing*0.5)/(code_width-1);
+			double phase_increasing_y=(spacing*Math.sqrt(3)/2)/(code_height-1);
+			double spacing_increasing=(spacing_max-spacing_min)/(code_height-1);
+
+			double phase_y=phase_increasing_y*mec_height;
+			for (int mec_width = 0; mec_width <code_width; mec_width++)
+			{
+				index[n]=mec_height*code_width+mec_width;
+				k[n]=kvalue/Math.sqrt(2);
+				px[n]=phase_increasing_x*mec_width;
+				py[n]=phase_y;
+				n++;
+			}
+			spacing=spacing+spacing_increasing;
+		}
+	}
+
+	/**
+	 * 和{@link SpatialDataEncoder#encode_threeD(int, int)}相同的间距和相位安排，只有对角线上的单元参与计算
+	 */
+	private void compileThreeD()
+	{
+		double spacing_max=spatial_height*2;
+		double spacing_min=1;
+
+		double spacing=spacing_min;
+		double spacing_increasing=(spacing_max-spacing_min)/(SpatialDataEncoder.radius_level-1);
+		int n=0;
+		for (int i = 0; i < SpatialDataEncoder.radius_level; i++)
+		{
+			double kvalue=4*Math.PI/(Math.sqrt(3)*spacing);
+
+			double phase_increasing_x=(spacing*0.5)/(code_width-1);
+			double phase_increasing_y=(spacing*Math.sqrt(3)/2)/(code_height-1);
+			for(int diagonal=0;diagonal<Math.min(code_height, code_width);diagonal++)
+			{
+				index[n]=i*code_height*code_width+diagonal*code_width+diagonal;
+				k[n]=kvalue/Math.sqrt(2);
+				px[n]=phase_increasing_x*diagonal;
+				py[n]=phase_increasing_y*diagonal;
+				n++;
+			}
+			spacing=spacing+spacing_increasing;
+		}
+	}
+
+	/**
+	 * 对x,y位置进行编码，返回展平以后的编码，
+	 * 和SpatialDataEncoder对应方法的结果再经过GetEncodeTwoDim或者GetEncodeThreeDim以后相同
+	 * @param locationX X坐标
+	 * @param locationY Y坐标
+	 * @return
+	 */
+	@Override
+	public int[] encode(int locationX,int locationY)
+	{
+		int[] code=new int[length];
+		encode(locationX, locationY, code);
+		return code;
+	}
+
+	/**
+	 * 对x,y位置进行编码，结果直接写入调用者提供的展平数组，不再分配新的数组
+	 * @param locationX X坐标
+	 * @param locationY Y坐标
+	 * @param code 长度至少为getWidth()，原来的内容会被覆盖
+	 */
+	public void encode(int locationX,int locationY,int[] code)
+	{
+		Arrays.fill(code, 0, length, 0);
+		for (int n = 0; n < index.length; n++)
+		{
+			if (fires(n, locationX, locationY))
+			{
+				code[index[n]]=1;
+			}
+		}
+	}
+
+	/**
+	 * 对x,y位置进行编码，只输出激活位的索引（从小到大），activeIndices会先被清空，可以反复使用
+	 * @param locationX X坐标
+	 * @param locationY Y坐标
+	 * @param activeIndices
+	 */
+	public void encodeActive(int locationX,int locationY,TIntArrayList activeIndices)
+	{
+		activeIndices.resetQuick();
+		for (int n = 0; n < index.length; n++)
+		{
+			if (fires(n, locationX, locationY))
+			{
+				activeIndices.add(index[n]);
+			}
+		}
+	}
+
+	/**
+	 * 第n个编码单元在位置(x,y)是否激活
+	 */
+	private boolean fires(int n,int locationX,int locationY)
+	{
+		double dx=locationX-px[n];
+		double dy=locationY-py[n];
+		double gratingOne=Math.cos(k[n]*(a1*dx+b1*dy));
+		double gratingTwo=Math.cos(k[n]*(a2*dx+b2*dy));
+		double gratingThree=Math.cos(k[n]*(a3*dx+b3*dy));
+
+		double firingFunc=(gratingOne+gratingTwo+gratingThree)/3d;
+		return firingFunc>0;
+	}
+
+	public Variant getVariant()
+	{
+		return variant;
+	}
+
+	/**
+	 * 展平以后编码的长度
+	 * @return
+	 */
+	public int getWidth()
+	{
+		return length;
+	}
+
+	public int getCode_width()
+	{
+		return code_width;
+	}
+
+	public int getCode_height()
+	{
+		return code_height;
+	}
+
+	public int getSpatial_width()
+	{
+		return spatial_width;
+	}
+
+	public int getSpatial_height()
+	{
+		return spatial_height;
+	}
+
+	public double getMajor_angle()
+	{
+		return major_angle;
+	}
+}
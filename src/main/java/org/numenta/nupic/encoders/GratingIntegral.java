@@ -0,0 +1,123 @@
+package org.numenta.nupic.encoders;
+
+/**
+ * 一个编码单元在一个位置格子内的平均激活值
+ *
+ * 原来的做法是在格子里取10*10个采样点，每个点算三个光栅的余弦再求平均（暴力积分），每个编码单元要算300次余弦。
+ * 三个光栅都是平面余弦波，沿x、y两个方向等间距采样的和可以分离成两个狄利克雷核的乘积：
+ * <pre>
+ * sum(i,j=0..9) cos(p+A*i/10+B*j/10) = cos(p+0.45*(A+B)) * D(A/10) * D(B/10)
+ * D(t) = sin(5t)/sin(t/2)
+ * </pre>
+ * 其中D只和这一行的k值与角度有关，和相位点、位置都无关，因此每一行算一次，之后每个编码单元只需要三次余弦（解析积分）。
+ * 两种方法在数学上相等，只有浮点误差的区别，因此激活值正好落在阈值附近的单元可能会不同。
+ * @author czg
+ *
+ */
+final class GratingIntegral
+{
+	/**
+	 * 每个方向上的采样点数
+	 */
+	private static final int SAMPLES=10;
+
+	private final double c;
+
+	/**
+	 * 三个光栅的方向系数，a=cos+sin，b=cos-sin
+	 */
+	private final double a1,b1,a2,b2,a3,b3;
+
+	/**
+	 * 解析积分时三个光栅的相位修正和振幅
+	 */
+	private final double shift1,shift2,shift3;
+	private final double amplitude1,amplitude2,amplitude3;
+
+	/**
+	 * @param kvalue 这一行编码单元的k值
+	 * @param major_angle 这一行编码单元的角度
+	 */
+	GratingIntegral(double kvalue,double major_angle)
+	{
+		c=kvalue/Math.sqrt(2);
+		a1=Math.cos(major_angle)+Math.sin(major_angle);
+		b1=Math.cos(major_angle)-Math.sin(major_angle);
+		a2=Math.cos(major_angle+(Math.PI/3d))+Math.sin(major_angle+(Math.PI/3d));
+		b2=Math.cos(major_angle+(Math.PI/3d))-Math.sin(major_angle+(Math.PI/3d));
+		a3=Math.cos(major_angle+(2*Math.PI/3d))+Math.sin(major_angle+(2*Math.PI/3d));
+		b3=Math.cos(major_angle+(2*Math.PI/3d))-Math.sin(major_angle+(2*Math.PI/3d));
+
+		shift1=shift(c*a1, c*b1);
+		shift2=shift(c*a2, c*b2);
+		shift3=shift(c*a3, c*b3);
+		amplitude1=dirichlet(c*a1/SAMPLES)*dirichlet(c*b1/SAMPLES)/(SAMPLES*SAMPLES);
+		amplitude2=dirichlet(c*a2/SAMPLES)*dirichlet(c*b2/SAMPLES)/(SAMPLES*SAMPLES);
+		amplitude3=dirichlet(c*a3/SAMPLES)*dirichlet(c*b3/SAMPLES)/(SAMPLES*SAMPLES);
+	}
+
+	/**
+	 * 采样点中心相对格子左下角的相位偏移
+	 */
+	private static double shift(double A,double B)
+	{
+		return (SAMPLES-1)/2d*(A+B)/SAMPLES;
+	}
+
+	/**
+	 * 狄利克雷核sum(n=0..9) e^(i*n*t)的模（带符号），sin(t/2)为0时取极限
+	 */
+	private static double dirichlet(double t)
+	{
+		double denominator=Math.sin(t/2);
+		if (Math.abs(denominator)<1e-12)
+		{
+			return SAMPLES*Math.cos(SAMPLES*t/2)/Math.cos(t/2);
+		}
+		return Math.sin(SAMPLES*t/2)/denominator;
+	}
+
+	/**
+	 * 按指定的积分方法计算格子(locationX,locationY)~(locationX+1,locationY+1)内的平均激活值
+	 */
+	double average(SpatialDataEncoder.Integration integration,int locationX,int locationY,double phaseX,double phaseY)
+	{
+		return integration==SpatialDataEncoder.Integration.ANALYTIC?
+				analytic(locationX, locationY, phaseX, phaseY):bruteForce(locationX, locationY, phaseX, phaseY);
+	}
+
+	/**
+	 * 10*10个采样点逐个计算，和原来的循环逐位相同
+	 */
+	double bruteForce(int locationX,int locationY,double phaseX,double phaseY)
+	{
+		double totalResult=0;
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			double locationInX=locationX+i/10d;
+			for (int j = 0; j < SAMPLES; j++)
+			{
+				double locationInY=locationY+j/10d;
+				double gratingOne=Math.cos(c*(a1*(locationInX-phaseX)+b1*(locationInY-phaseY)));
+				double gratingTwo=Math.cos(c*(a2*(locationInX-phaseX)+b2*(locationInY-phaseY)));
+				double gratingThree=Math.cos(c*(a3*(locationInX-phaseX)+b3*(locationInY-phaseY)));
+				double firingFunc=(gratingOne+gratingTwo+gratingThree)/3d;
+				totalResult=totalResult+firingFunc;
+			}
+		}
+		return totalResult/100d;
+	}
+
+	/**
+	 * 用可分离的狄利克雷核直接求平均，每个编码单元只要三次余弦
+	 */
+	double analytic(int locationX,int locationY,double phaseX,double phaseY)
+	{
+		double dx=locationX-phaseX;
+		double dy=locationY-phaseY;
+		double gratingOne=amplitude1*Math.cos(c*(a1*dx+b1*dy)+shift1);
+		double gratingTwo=amplitude2*Math.cos(c*(a2*dx+b2*dy)+shift2);
+		double gratingThree=amplitude3*Math.cos(c*(a3*dx+b3*dy)+shift3);
+		return (gratingOne+gratingTwo+gratingThree)/3d;
+	}
+}
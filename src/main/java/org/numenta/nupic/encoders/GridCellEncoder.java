@@ -0,0 +1,392 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.encoders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.numenta.nupic.FieldMetaType;
+import org.numenta.nupic.util.Tuple;
+
+/**
+ * Encodes continuous 2D coordinates with a stack of grid cell modules.
+ * <p>
+ * Each module tiles the plane with a hexagonal lattice of a given spacing and
+ * orientation. A coordinate is projected onto the module's lattice basis once,
+ * after which its position inside the unit cell (its phase) is quantized to
+ * {@code phases x phases} bins and all remaining work is integer arithmetic on
+ * the phase torus: the active cells of the module are the bins within hex
+ * distance {@code activeRadius} of the coordinate's bin, wrapping around the
+ * torus edges. Module spacings grow geometrically by {@code scaleRatio}, so the
+ * combined code stays unique over a range far larger than the largest spacing
+ * while the output width only depends on the module configuration.
+ * <p>
+ * Encoding costs O(modules x active cells per module) and uses no trigonometry
+ * per call; the rotation of each module is precomputed at build time.
+ * <p>
+ * Input is a {@code double[] { x, y }} in the same units as {@code scale}
+ * (for example projected metres).
+ */
+public class GridCellEncoder extends Encoder<double[]> {
+    private static final long serialVersionUID = 1L;
+
+    /** Number of grid modules */
+    private int moduleCount;
+    /** Bins per lattice axis in each module */
+    private int phases;
+    /** Hex distance (in bins) around the coordinate's bin that is active */
+    private int activeRadius;
+    /** Lattice spacing of each module, in input units */
+    private double[] scales;
+    /** Lattice orientation of each module, in radians */
+    private double[] orientations;
+
+    /** Precomputed rotation of each module: cos and sin of -orientation */
+    private double[] cos;
+    private double[] sin;
+    /** Bin offsets (du, dv) within activeRadius of the centre bin */
+    private int[] offsetU;
+    private int[] offsetV;
+
+    /**
+     * Package private to encourage construction using the Builder Pattern
+     * but still allow inheritance.
+     */
+    GridCellEncoder() {
+        description.add(new Tuple("coordinate", 0));
+    }
+
+    /**
+     * Returns a builder for building GridCellEncoders.
+     * This builder may be reused to produce multiple builders
+     *
+     * @return a {@code GridCellEncoder.Builder}
+     */
+    public static GridCellEncoder.Builder builder() {
+        return new GridCellEncoder.Builder();
+    }
+
+    /**
+     * Precomputes the per-module rotation and the active bin offsets.
+     */
+    void init() {
+        cos = new double[moduleCount];
+        sin = new double[moduleCount];
+        for(int m = 0;m < moduleCount;m++) {
+            cos[m] = Math.cos(orientations[m]);
+            sin[m] = Math.sin(orientations[m]);
+        }
+
+        List<int[]> offsets = new ArrayList<>();
+        for(int du = -activeRadius;du <= activeRadius;du++) {
+            for(int dv = -activeRadius;dv <= activeRadius;dv++) {
+                if(hexDistance(du, dv) <= activeRadius) {
+                    offsets.add(new int[] { du, dv });
+                }
+            }
+        }
+        offsetU = new int[offsets.size()];
+        offsetV = new int[offsets.size()];
+        for(int i = 0;i < offsets.size();i++) {
+            offsetU[i] = offsets.get(i)[0];
+            offsetV[i] = offsets.get(i)[1];
+        }
+
+        n = moduleCount * phases * phases;
+        w = moduleCount * offsetU.length;
+    }
+
+    /**
+     * Returns the hex distance of the lattice vector {@code du*e1 + dv*e2}
+     * where e1 and e2 are unit vectors 120 degrees apart.
+     */
+    static int hexDistance(int du, int dv) {
+        return (Math.abs(du) + Math.abs(dv) + Math.abs(du - dv)) / 2;
+    }
+
+    /**
+     * Returns the quantized phase of the coordinate in the given module as the
+     * index of its bin, {@code u * phases + v}.
+     *
+     * @param module    the module index
+     * @param x         x coordinate in input units
+     * @param y         y coordinate in input units
+     * @return  the bin index within the module
+     */
+    public int phaseBin(int module, double x, double y) {
+        // Rotate into the module frame and measure in units of its spacing
+        double rx = (x * cos[module] + y * sin[module]) / scales[module];
+        double ry = (y * cos[module] - x * sin[module]) / scales[module];
+
+        // Lattice coordinates in the basis e1 = (1, 0), e2 = (-1/2, sqrt(3)/2)
+        double v = ry * 2 / Math.sqrt(3);
+        double u = rx + v / 2;
+
+        int bu = (int)Math.floorMod((long)Math.floor(u * phases), (long)phases);
+        int bv = (int)Math.floorMod((long)Math.floor(v * phases), (long)phases);
+        return bu * phases + bv;
+    }
+
+    /**
+     * Writes the indices of the active bits for the given coordinate into
+     * {@code activeIndices}, which must have a length of at least {@link #getW()}.
+     * Indices are grouped by module but are not sorted within a module.
+     *
+     * @param x                 x coordinate in input units
+     * @param y                 y coordinate in input units
+     * @param activeIndices     the output array
+     */
+    public void encodeActive(double x, double y, int[] activeIndices) {
+        int cellsPerModule = phases * phases;
+        int k = 0;
+        for(int m = 0;m < moduleCount;m++) {
+            int bin = phaseBin(m, x, y);
+            int bu = bin / phases;
+            int bv = bin % phases;
+            int base = m * cellsPerModule;
+            for(int i = 0;i < offsetU.length;i++) {
+                int cu = Math.floorMod(bu + offsetU[i], phases);
+                int cv = Math.floorMod(bv + offsetV[i], phases);
+                activeIndices[k++] = base + cu * phases + cv;
+            }
+        }
+    }
+
+    /**
+     * Convenience method to encode a coordinate without boxing it into an array.
+     *
+     * @param x     x coordinate in input units
+     * @param y     y coordinate in input units
+     * @return  the encoding
+     */
+    public int[] encode(double x, double y) {
+        int[] output = new int[n];
+        encodeIntoArray(new double[] { x, y }, output);
+        return output;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeIntoArray(double[] inputData, int[] output) {
+        int[] active = new int[w];
+        encodeActive(inputData[0], inputData[1], active);
+        Arrays.fill(output, 0, n, 0);
+        for(int i = 0;i < active.length;i++) {
+            output[active[i]] = 1;
+        }
+    }
+
+    /**
+     * @see Encoder for more information
+     */
+    @Override
+    public int getWidth() {
+        return n;
+    }
+
+    /**
+     * @see Encoder for more information
+     */
+    @Override
+    public boolean isDelta() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<FieldMetaType> getDecoderOutputFieldTypes() {
+        return new LinkedHashSet<>(Arrays.asList(FieldMetaType.COORD));
+    }
+
+    @Override
+    public <S> List<S> getBucketValues(Class<S> returnType) {
+        return null;
+    }
+
+    public int getModuleCount() {
+        return moduleCount;
+    }
+
+    public int getPhases() {
+        return phases;
+    }
+
+    public int getActiveRadius() {
+        return activeRadius;
+    }
+
+    /**
+     * Returns a copy of the lattice spacing of each module
+     * @return
+     */
+    public double[] getScales() {
+        return Arrays.copyOf(scales, scales.length);
+    }
+
+    /**
+     * Returns a copy of the lattice orientation of each module, in radians
+     * @return
+     */
+    public double[] getOrientations() {
+        return Arrays.copyOf(orientations, orientations.length);
+    }
+
+    /**
+     * Returns a {@code Builder} for constructing {@link GridCellEncoder}s
+     *
+     * The base class architecture is put together in such a way where boilerplate
+     * initialization can be kept to a minimum for implementing subclasses, while avoiding
+     * the mistake-proneness of extremely long argument lists.
+     *
+     * @see ScalarEncoder.Builder#setStuff(int)
+     */
+    public static class Builder extends Encoder.Builder<GridCellEncoder.Builder, GridCellEncoder> {
+        private int moduleCount = 8;
+        private int phases = 8;
+        private int activeRadius = 1;
+        private double scale = 1;
+        private double scaleRatio = Math.sqrt(2);
+        private double[] orientations;
+
+        private Builder() {}
+
+        @Override
+        public GridCellEncoder build() {
+            //Must be instantiated so that super class can initialize
+            //boilerplate variables.
+            encoder = new GridCellEncoder();
+
+            //Call super class here
+            super.build();
+
+            ////////////////////////////////////////////////////////
+            //  Implementing classes would do setting of specific //
+            //  vars here together with any sanity checking       //
+            ////////////////////////////////////////////////////////
+
+            if(moduleCount <= 0) {
+                throw new IllegalArgumentException("moduleCount must be a positive integer");
+            }
+            if(scale <= 0 || scaleRatio <= 0) {
+                throw new IllegalArgumentException("scale and scaleRatio must be positive");
+            }
+            if(activeRadius < 0 || phases < 2 * activeRadius + 1) {
+                throw new IllegalArgumentException(
+                    "phases must be at least 2 * activeRadius + 1 so that active cells do not wrap onto each other");
+            }
+            if(orientations != null && orientations.length != moduleCount) {
+                throw new IllegalArgumentException("Expected " + moduleCount + " orientations but got " + orientations.length);
+            }
+
+            GridCellEncoder e = (GridCellEncoder)encoder;
+            e.moduleCount = moduleCount;
+            e.phases = phases;
+            e.activeRadius = activeRadius;
+            e.scales = new double[moduleCount];
+            e.orientations = new double[moduleCount];
+            for(int m = 0;m < moduleCount;m++) {
+                e.scales[m] = scale * Math.pow(scaleRatio, m);
+                // Spread the modules evenly over the 60 degree symmetry of the lattice by default
+                e.orientations[m] = orientations == null ? m * (Math.PI / 3) / moduleCount : orientations[m];
+            }
+            e.init();
+
+            if(name == null || name.equals("None")) {
+                name = new StringBuilder("[").append(e.n).append(":").append(e.w).append("]").toString();
+                e.setName(name);
+            }
+
+            return e;
+        }
+
+        /**
+         * Number of grid modules
+         * @param moduleCount
+         * @return
+         */
+        public Builder moduleCount(int moduleCount) {
+            this.moduleCount = moduleCount;
+            return this;
+        }
+
+        /**
+         * Number of phase bins along each lattice axis; each module has
+         * phases * phases cells
+         * @param phases
+         * @return
+         */
+        public Builder phases(int phases) {
+            this.phases = phases;
+            return this;
+        }
+
+        /**
+         * Hex distance, in bins, around a coordinate's phase bin that is active
+         * @param activeRadius
+         * @return
+         */
+        public Builder activeRadius(int activeRadius) {
+            this.activeRadius = activeRadius;
+            return this;
+        }
+
+        /**
+         * Lattice spacing of the smallest module, in input units
+         * @param scale
+         * @return
+         */
+        public Builder scale(double scale) {
+            this.scale = scale;
+            return this;
+        }
+
+        /**
+         * Ratio between the spacings of consecutive modules
+         * @param scaleRatio
+         * @return
+         */
+        public Builder scaleRatio(double scaleRatio) {
+            this.scaleRatio = scaleRatio;
+            return this;
+        }
+
+        /**
+         * Lattice orientation of each module, in radians. Defaults to an even
+         * spread over 60 degrees.
+         * @param orientations
+         * @return
+         */
+        public Builder orientations(double[] orientations) {
+            this.orientations = orientations;
+            return this;
+        }
+    }
+}
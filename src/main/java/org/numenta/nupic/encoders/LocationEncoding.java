@@ -0,0 +1,47 @@
+package org.numenta.nupic.encoders;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 把一个位置编码成展平的0/1数组
+ *
+ * 实现必须没有内部状态，同一个实例可以被多个线程同时调用，
+ * SpatialDataEncoder的任何一种encode_*方法都可以用lambda包装成这个接口。
+ * @author czg
+ *
+ */
+@FunctionalInterface
+public interface LocationEncoding
+{
+	/**
+	 * 对x,y位置进行编码
+	 * @param locationX X坐标
+	 * @param locationY Y坐标
+	 * @return 展平以后的编码
+	 */
+	public int[] encode(int locationX,int locationY);
+
+	/**
+	 * 在公共的ForkJoinPool上并行地对一批位置编码
+	 * @param locations 每一行是一个位置{x,y}
+	 * @return 和locations顺序相同的编码
+	 */
+	public default int[][] encodeAll(int[][] locations)
+	{
+		int[][] codes=new int[locations.length][];
+		IntStream.range(0, locations.length).parallel().forEach(i -> codes[i]=encode(locations[i][0], locations[i][1]));
+		return codes;
+	}
+
+	/**
+	 * 在指定的ForkJoinPool上并行地对一批位置编码，可以用来限制编码占用的线程数
+	 * @param locations 每一行是一个位置{x,y}
+	 * @param pool
+	 * @return 和locations顺序相同的编码
+	 */
+	public default int[][] encodeAll(int[][] locations,ForkJoinPool pool)
+	{
+		return pool.submit(() -> encodeAll(locations)).join();
+	}
+}
@@ -211,6 +211,8 @@ public class MultiEncoder extends Encoder<Object> {
                 return DeltaEncoder.deltaBuilder();
             case "SDRPassThroughEncoder" :
                 return SDRPassThroughEncoder.sptBuilder();
+            case "GridCellEncoder" :
+                return GridCellEncoder.builder();
             default:
                 throw new IllegalArgumentException("Invalid encoder: " + encoderName);
         }
@@ -249,6 +251,24 @@ public class MultiEncoder extends Encoder<Object> {
             case "name":
                 builder.name((String) value);
                 break;
+            case "moduleCount":
+                ((GridCellEncoder.Builder) builder).moduleCount(((Number)value).intValue());
+                break;
+            case "phases":
+                ((GridCellEncoder.Builder) builder).phases(((Number)value).intValue());
+                break;
+            case "activeRadius":
+                ((GridCellEncoder.Builder) builder).activeRadius(((Number)value).intValue());
+                break;
+            case "scale":
+                ((GridCellEncoder.Builder) builder).scale(((Number)value).doubleValue());
+                break;
+            case "scaleRatio":
+                ((GridCellEncoder.Builder) builder).scaleRatio(((Number)value).doubleValue());
+                break;
+            case "orientations":
+                ((GridCellEncoder.Builder) builder).orientations((double[]) value);
+                break;
             case "categoryList":
                 if(value instanceof String) {
                     String strVal = (String)value;
@@ -5,58 +5,92 @@ import java.util.ArrayList;
 import org.netlib.util.doubleW;
 import org.numenta.nupic.examples.sp.DrawSee;
 import org.numenta.nupic.util.HPoint;
+import org.numenta.nupic.util.UniversalRandom;
 
 /**
  * 这里创建一个空间位置的编码器
+ *
+ * 构造以后编码器的参数不再改变，各个encode_*方法只使用局部变量，同一个实例可以被多个线程同时使用，
+ * 大批量的位置可以用{@link #encodeAll(int[][])}并行编码
  * @author czg
  *
  */
-public class SpatialDataEncoder {
+public class SpatialDataEncoder implements LocationEncoding {
+	/**
+	 * encode_twoDAngle、encode_twoDAngleDouble、encode_twoDRoundRandom求编码单元在一个格子内平均激活值的方法
+	 */
+	public enum Integration
+	{
+		/** 格子内取10*10个采样点逐个计算，每个编码单元300次余弦 */
+		BRUTE_FORCE,
+		/** 把采样点的和按方向分离成狄利克雷核直接求出，每个编码单元3次余弦，结果和BRUTE_FORCE只差浮点误差 */
+		ANALYTIC
+	}
+	
 	/**
 	 * 准备形成的编码的宽度
 	 */
-	private int code_width;
+	private final int code_width;
 	/**
 	 * 准备形成的编码的高度
 	 */
-	private int code_height;
+	private final int code_height;
 	/**
 	 * 空间范围的宽度
 	 */
-	private int spatial_width;
+	private final int spatial_width;
 	/**
 	 * 空间范围的高度
 	 */
-	private int spatial_height;
+	private final int spatial_height;
 	/**
-	 * 初始的角度
+	 * 初始的角度，各个encode_*方法里随编码单元变化的角度、间距和相位点都是局部变量，
+	 * 因此同一个编码器可以被多个线程同时使用
 	 */
-	private double major_angle=Math.PI/12d;
+	private final double major_angle=Math.PI/12d;
+	
+	public static final int  radius_level=8;
 	
-
-
 	/**
-	 * 格网间最大的间距
+	 * 半径
 	 */
-	private double spacing_max;
+	public double radius=0;
 	
 	/**
-	 * 格网间最小的间距
+	 * 随机数的种子，为null时encode_twoDRound、encode_twoDRoundDouble、encode_twoDRoundRandom每次编码都用Math.random()重新取随机的角度
 	 */
-	public double spacing_min;
+	private final Long seed;
 	
-	public final int  radius_level=8;
+	/**
+	 * 有种子时encode_twoDRound和encode_twoDRoundDouble每一行使用的角度
+	 */
+	private final double[] roundAngles;
 	
 	/**
-	 * 半径
+	 * 有种子时encode_twoDRoundRandom每一行使用的角度
 	 */
-	public double radius=0;
+	private final double[] randomAngles;
+	
 	/**
-	 * 初始相位点的坐标
+	 * 有种子时encode_twoDRoundRandom每个编码单元相位点的方向
 	 */
-	private HPoint phase_location;
+	private final double[][] randomPhaseAngles;
 	
 	public SpatialDataEncoder(int code_width,int code_height,int spatail_width,int spatial_height)
+	{
+		this(code_width, code_height, spatail_width, spatial_height, null);
+	}
+	
+	/**
+	 * 带种子的编码器，随机的角度和相位在构造的时候用UniversalRandom一次性取好保存下来，
+	 * 之后同一个位置的编码总是相同的，可以缓存，也不用在并行编码时争抢Math.random()
+	 * @param code_width
+	 * @param code_height
+	 * @param spatail_width
+	 * @param spatial_height
+	 * @param seed 随机数的种子，为null时和原来一样每次编码都取新的随机数
+	 */
+	public SpatialDataEncoder(int code_width,int code_height,int spatail_width,int spatial_height,Long seed)
 	{
 		this.code_width=code_width;
 		this.code_height=code_height;
@@ -67,17 +101,85 @@ public class SpatialDataEncoder {
 		
 		radius=0.075*(code_height+code_width);
 		
-		phase_location=new HPoint();
-		
+		this.seed=seed;
+		if (seed==null)
+		{
+			roundAngles=null;
+			randomAngles=null;
+			randomPhaseAngles=null;
+		}
+		else
+		{
+			///两组随机数分开取，这样每一组只和种子有关，和另一组方法是否使用无关
+			UniversalRandom random=new UniversalRandom(seed);
+			roundAngles=new double[code_height];
+			for(int mec_height=0;mec_height<code_height;mec_height++)
+			{
+				roundAngles[mec_height]=(60d/(mec_height+1))*random.nextDouble()/180*3.141592653;
+			}
+			
+			random=new UniversalRandom(seed+1);
+			randomAngles=new double[code_height];
+			randomPhaseAngles=new double[code_height][code_width];
+			for(int mec_height=0;mec_height<code_height;mec_height++)
+			{
+				randomAngles[mec_height]=60d*random.nextDouble()/180*3.141592653;
+				for (int mec_width = 0; mec_width <code_width; mec_width++)
+				{
+					randomPhaseAngles[mec_height][mec_width]=(360*random.nextDouble()/180d)*Math.PI;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 是否带有种子，带种子的编码器对同一个位置总是给出相同的编码
+	 * @return
+	 */
+	public boolean isSeeded()
+	{
+		return seed!=null;
+	}
+	
+	/**
+	 * 随机数的种子，没有种子时为null
+	 * @return
+	 */
+	public Long getSeed()
+	{
+		return seed;
+	}
+	/**
+	 * 按当前的参数生成预编译的编码器，编码结果和对应的方法相同
+	 * @param variant
+	 * @return
+	 */
+	public CompiledSpatialDataEncoder compile(CompiledSpatialDataEncoder.Variant variant)
+	{
+		return new CompiledSpatialDataEncoder(code_width, code_height, spatial_width, spatial_height, major_angle, variant);
+	}
+	
+	/**
+	 * 用encode_twoD对x,y位置进行编码，返回展平以后的编码
+	 * @param locationX X坐标
+	 * @param locationY Y坐标
+	 * @return
+	 */
+	@Override
+	public int[] encode(int locationX,int locationY)
+	{
+		return GetEncodeTwoDim(encode_twoD(locationX, locationY));
 	}
+	
 	public void drawLocationGrid(int codeX,int codeY)
 	{
+		HPoint phase_location=new HPoint();
 		ArrayList<Integer[]> cordinateSeries=new ArrayList<Integer[]>();///这个记录的是激活的位置的坐标序列
 		
 		
 		///把这个值尽量弄到从0开始,两个格网场的间距起码得大于等于1，否则就太密占满平面了
-		spacing_max=spatial_height;///让距离的最大值为空间范围的宽度
-		spacing_min=2d/Math.sqrt(3)+2*(spacing_max-(2d/Math.sqrt(3)))/code_height;
+		double spacing_max=spatial_height;///让距离的最大值为空间范围的宽度
+		double spacing_min=2d/Math.sqrt(3)+2*(spacing_max-(2d/Math.sqrt(3)))/code_height;
 		double spacing_increasing=(spacing_max-spacing_min)/code_height;
 		
 		////还有就是相位每次增加的值
@@ -262,9 +364,10 @@ public class SpatialDataEncoder {
 	 */
 	public int[][][] encode_threeD(int locationX,int locationY)
 	{
+		HPoint phase_location=new HPoint();
 		int[][][] codes=new int[radius_level][code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=spatial_height*2;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=1;
+		double spacing_max=spatial_height*2;///让距离的最大值为空间范围的宽度2倍
+		double spacing_min=1;
 		//spacing_min=8d;
 		
 		double spacing=spacing_min;
@@ -323,10 +426,23 @@ public class SpatialDataEncoder {
      */
 	public int[][] encode_twoDAngle(int locationX,int locationY)
 	{
+		return encode_twoDAngle(locationX, locationY, Integration.BRUTE_FORCE);
+	}
+	
+	/**
+     * 对x,y位置进行编码，用指定的方法求每个编码单元在格子内的平均激活值
+     * @param locationX X坐标
+     * @param locationY Y坐标
+     * @param integration 积分的方法
+     * @return
+     */
+	public int[][] encode_twoDAngle(int locationX,int locationY,Integration integration)
+	{
+		HPoint phase_location=new HPoint();
 		int[][] codes=new int[code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=1/2*code_height;///让距离的最大值为空间范围的宽度2倍
+		double spacing_max=1/2*code_height;///让距离的最大值为空间范围的宽度2倍
 		//spacing_max=16d;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=1/3d;
+		double spacing_min=1/3d;
 		//spacing_min=8d;
 		
 		double spacing=spacing_max;
@@ -350,8 +466,9 @@ public class SpatialDataEncoder {
 			
 			phase_location.y=phase_increasing_y*mec_height;//这个y是距离宽的那个边界的距离
 			
-			major_angle=0.455*mec_height;
+			double major_angle=0.455*mec_height;
 	        major_angle=major_angle/180*3.141592653;
+			GratingIntegral integral=new GratingIntegral(kvalue, major_angle);
 			
 			for (int mec_width = 0; mec_width <code_width; mec_width++) ///随着长度的增加，格网细胞的相位点不断的增加，但是相位点不能跑到长度或者宽度外面了
 			{
@@ -359,22 +476,7 @@ public class SpatialDataEncoder {
 				
 				////这里适宜求取整个格子的平均值作为是否激活的标准，单个格子难以代表整个平面的状况
 		
-				double totalResult=0;
-				for (int i = 0; i < 10; i++) 
-				{
-					double locationInX=locationX+i/10d;
-					for (int j = 0; j < 10; j++) 
-					{
-						double locationInY=locationY+j/10d;
-						double gratingOne=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle)+Math.sin(major_angle))*(locationInX-phase_location.x)+(Math.cos(major_angle)-Math.sin(major_angle))*(locationInY-phase_location.y)));
-				        double gratingTwo=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle+(Math.PI/3d))+Math.sin(major_angle+(Math.PI/3d)))*(locationInX-phase_location.x)+(Math.cos(major_angle+(Math.PI/3d))-Math.sin(major_angle+(Math.PI/3d)))*(locationInY-phase_location.y)));
-                        double gratingThree=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle+(2*Math.PI/3d))+Math.sin(major_angle+(2*Math.PI/3d)))*(locationInX-phase_location.x)+(Math.cos(major_angle+(2*Math.PI/3d))-Math.sin(major_angle+(2*Math.PI/3d)))*(locationInY-phase_location.y)));
-			            double firingFunc=(gratingOne+gratingTwo+gratingThree)/3d;
-			            totalResult=totalResult+firingFunc;
-					}
-				}
-				
-				totalResult=totalResult/100d;
+				double totalResult=integral.average(integration, locationX, locationY, phase_location.x, phase_location.y);
 				
 				if (totalResult>0.00001)
 				{
@@ -400,10 +502,23 @@ public class SpatialDataEncoder {
      */
 	public int[][] encode_twoDAngleDouble(int locationX,int locationY)
 	{
+		return encode_twoDAngleDouble(locationX, locationY, Integration.BRUTE_FORCE);
+	}
+	
+	/**
+     * 对x,y位置进行编码，用指定的方法求每个编码单元在格子内的平均激活值
+     * @param locationX X坐标
+     * @param locationY Y坐标
+     * @param integration 积分的方法
+     * @return
+     */
+	public int[][] encode_twoDAngleDouble(int locationX,int locationY,Integration integration)
+	{
+		HPoint phase_location=new HPoint();
 		int[][] codes=new int[code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=1/2*code_height;///让距离的最大值为空间范围的宽度2倍
+		double spacing_max=1/2*code_height;///让距离的最大值为空间范围的宽度2倍
 		//spacing_max=16d;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=1/3d;
+		double spacing_min=1/3d;
 		//spacing_min=8d;
 		
 		double spacing=spacing_max;
@@ -426,8 +541,9 @@ public class SpatialDataEncoder {
 			
 			phase_location.y=phase_increasing_y*mec_height;//这个y是距离宽的那个边界的距离
 			
-			major_angle=0.455*mec_height;
+			double major_angle=0.455*mec_height;
 	        major_angle=major_angle/180*3.141592653;
+			GratingIntegral integral=new GratingIntegral(kvalue, major_angle);
 			
 			for (int mec_width = 0; mec_width <code_width; mec_width++) ///随着长度的增加，格网细胞的相位点不断的增加，但是相位点不能跑到长度或者宽度外面了
 			{
@@ -435,22 +551,7 @@ public class SpatialDataEncoder {
 				
 				////这里适宜求取整个格子的平均值作为是否激活的标准，单个格子难以代表整个平面的状况
 		
-				double totalResult=0;
-				for (int i = 0; i < 10; i++) 
-				{
-					double locationInX=locationX+i/10d;
-					for (int j = 0; j < 10; j++) 
-					{
-						double locationInY=locationY+j/10d;
-						double gratingOne=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle)+Math.sin(major_angle))*(locationInX-phase_location.x)+(Math.cos(major_angle)-Math.sin(major_angle))*(locationInY-phase_location.y)));
-				        double gratingTwo=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle+(Math.PI/3d))+Math.sin(major_angle+(Math.PI/3d)))*(locationInX-phase_location.x)+(Math.cos(major_angle+(Math.PI/3d))-Math.sin(major_angle+(Math.PI/3d)))*(locationInY-phase_location.y)));
-                        double gratingThree=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle+(2*Math.PI/3d))+Math.sin(major_angle+(2*Math.PI/3d)))*(locationInX-phase_location.x)+(Math.cos(major_angle+(2*Math.PI/3d))-Math.sin(major_angle+(2*Math.PI/3d)))*(locationInY-phase_location.y)));
-			            double firingFunc=(gratingOne+gratingTwo+gratingThree)/3d;
-			            totalResult=totalResult+firingFunc;
-					}
-				}
-				
-				totalResult=totalResult/100d;
+				double totalResult=integral.average(integration, locationX, locationY, phase_location.x, phase_location.y);
 				
 				if (totalResult>0.00001)
 				{
@@ -475,9 +576,10 @@ public class SpatialDataEncoder {
      */
 	public int[][] encode_twoD(int locationX,int locationY)
 	{
+		HPoint phase_location=new HPoint();
 		int[][] codes=new int[code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=spatial_height*2;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=2d/Math.sqrt(3)+4*(spacing_max-(2d/Math.sqrt(3)))/code_height;
+		double spacing_max=spatial_height*2;///让距离的最大值为空间范围的宽度2倍
+		double spacing_min=2d/Math.sqrt(3)+4*(spacing_max-(2d/Math.sqrt(3)))/code_height;
 		//spacing_min=8d;
 		
 		double spacing=spacing_min;
@@ -534,9 +636,10 @@ public class SpatialDataEncoder {
      */
 	public double[][] encode_twoDRoundDouble(int locationX,int locationY)
 	{
+		HPoint phase_location=new HPoint();
 		double[][] codes=new double[code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=spatial_height*2/3;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=spatial_height*1/4;
+		double spacing_max=spatial_height*2/3;///让距离的最大值为空间范围的宽度2倍
+		double spacing_min=spatial_height*1/4;
 		//spacing_min=8d;
 		
 		double spacing=spacing_min;		
@@ -551,7 +654,7 @@ public class SpatialDataEncoder {
 			double phase_increasing_y=((double)spacing*Math.sqrt(3)/2)/((double)(code_height-1));
 			double spacing_increasing=(spacing_max-spacing_min)/(code_height-1);
 			///角度变换一下
-			major_angle=(60d/(mec_height+1))*Math.random()/180*3.141592653;
+			double major_angle=roundAngles!=null?roundAngles[mec_height]:(60d/(mec_height+1))*Math.random()/180*3.141592653;
 			
 			
 			phase_location.y=phase_increasing_y*mec_height;//这个y是距离宽的那个边界的距离
@@ -600,9 +703,10 @@ public class SpatialDataEncoder {
      */
 	public int[][] encode_twoDRound(int locationX,int locationY)
 	{
+		HPoint phase_location=new HPoint();
 		int[][] codes=new int[code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=spatial_height*2/3;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=spatial_height*1/4;
+		double spacing_max=spatial_height*2/3;///让距离的最大值为空间范围的宽度2倍
+		double spacing_min=spatial_height*1/4;
 		//spacing_min=8d;
 		
 		double spacing=spacing_min;		
@@ -617,7 +721,7 @@ public class SpatialDataEncoder {
 			double phase_increasing_y=((double)spacing*Math.sqrt(3)/2)/((double)(code_height-1));
 			double spacing_increasing=(spacing_max-spacing_min)/(code_height-1);
 			///角度变换一下
-			major_angle=(60d/(mec_height+1))*Math.random()/180*3.141592653;
+			double major_angle=roundAngles!=null?roundAngles[mec_height]:(60d/(mec_height+1))*Math.random()/180*3.141592653;
 			
 			
 			phase_location.y=phase_increasing_y*mec_height;//这个y是距离宽的那个边界的距离
@@ -670,9 +774,22 @@ public class SpatialDataEncoder {
      */
 	public int[][] encode_twoDRoundRandom(int locationX,int locationY)
 	{
+		return encode_twoDRoundRandom(locationX, locationY, Integration.BRUTE_FORCE);
+	}
+	
+	/**
+     * 对x,y位置进行编码，用指定的方法求每个编码单元在格子内的平均激活值
+     * @param locationX X坐标
+     * @param locationY Y坐标
+     * @param integration 积分的方法
+     * @return
+     */
+	public int[][] encode_twoDRoundRandom(int locationX,int locationY,Integration integration)
+	{
+		HPoint phase_location=new HPoint();
 		int[][] codes=new int[code_height][code_width];//每一行的值代表宽度上的值
-		spacing_max=spatial_height*2/3;///让距离的最大值为空间范围的宽度2倍
-		spacing_min=2d/Math.sqrt(3)+4*(spacing_max-(2d/Math.sqrt(3)))/code_height;
+		double spacing_max=spatial_height*2/3;///让距离的最大值为空间范围的宽度2倍
+		double spacing_min=2d/Math.sqrt(3)+4*(spacing_max-(2d/Math.sqrt(3)))/code_height;
 		spacing_min=spatial_height*1/3;
 		//spacing_min=8d;
 		
@@ -692,7 +809,8 @@ public class SpatialDataEncoder {
 			double spacing_increasing=(spacing_max-spacing_min)/(code_height-1);
 			///角度变换一下
 			//major_angle=(60d/(mec_height+1))*Math.random()/180*3.141592653;
-			major_angle=60d*Math.random()/180*3.141592653;
+			double major_angle=randomAngles!=null?randomAngles[mec_height]:60d*Math.random()/180*3.141592653;
+			GratingIntegral integral=new GratingIntegral(kvalue, major_angle);
 			
 			//phase_location.y=phase_increasing_y*mec_height;//这个y是距离宽的那个边界的距离
 			
@@ -707,7 +825,7 @@ public class SpatialDataEncoder {
 				//}
 				//else
 				
-					double angle=(360*Math.random()/180d)*Math.PI;
+					double angle=randomPhaseAngles!=null?randomPhaseAngles[mec_height][mec_width]:(360*Math.random()/180d)*Math.PI;
 					phase_location.x=0.5*Math.sqrt(3)/2d*spacing*Math.cos(angle);
 					phase_location.y=0.5*Math.sqrt(3)/2*spacing*Math.sin(angle);
 				
@@ -716,22 +834,7 @@ public class SpatialDataEncoder {
 				//phase_location.x=phase_increasing_x*mec_width;///x坐标是距离高那个边界的距离,这里得仔细理理，当x不断增加，相当于图形不断的沿着x轴扯，如果locationX-p.x的值正好等于一个周期，那么这个图形相当于是重复了，是属于无效表征，	重复编码			
 				
 				
-				double totalResult=0;
-				for (int i = 0; i < 10; i++) 
-				{
-					double locationInX=locationX+i/10d;
-					for (int j = 0; j < 10; j++) 
-					{
-						double locationInY=locationY+j/10d;
-						double gratingOne=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle)+Math.sin(major_angle))*(locationInX-phase_location.x)+(Math.cos(major_angle)-Math.sin(major_angle))*(locationInY-phase_location.y)));
-				        double gratingTwo=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle+(Math.PI/3d))+Math.sin(major_angle+(Math.PI/3d)))*(locationInX-phase_location.x)+(Math.cos(major_angle+(Math.PI/3d))-Math.sin(major_angle+(Math.PI/3d)))*(locationInY-phase_location.y)));
-                        double gratingThree=Math.cos((kvalue/Math.sqrt(2))*((Math.cos(major_angle+(2*Math.PI/3d))+Math.sin(major_angle+(2*Math.PI/3d)))*(locationInX-phase_location.x)+(Math.cos(major_angle+(2*Math.PI/3d))-Math.sin(major_angle+(2*Math.PI/3d)))*(locationInY-phase_location.y)));
-			            double firingFunc=(gratingOne+gratingTwo+gratingThree)/3d;
-			            totalResult=totalResult+firingFunc;
-					}
-				}
-				
-				totalResult=totalResult/100d;
+				double totalResult=integral.average(integration, locationX, locationY, phase_location.x, phase_location.y);
 				
 				if (totalResult>0)
 				{
@@ -770,6 +873,20 @@ public class SpatialDataEncoder {
 		return code;
 	}
 	
+	/**
+	 * 把二维编码展平写入调用者提供的数组，不再分配新的数组
+	 * @param encodeTwoDim
+	 * @param code 长度至少为encodeTwoDim.length*encodeTwoDim[0].length
+	 */
+	public void GetEncodeTwoDim(int[][] encodeTwoDim,int[] code)
+	{
+		int width=encodeTwoDim[0].length;
+		for (int i = 0; i < encodeTwoDim.length; i++) 
+		{
+			System.arraycopy(encodeTwoDim[i], 0, code, i*width, width);
+		}
+	}
+	
 	/**
      * 对x,y位置进行编码
      * @param locationX X坐标
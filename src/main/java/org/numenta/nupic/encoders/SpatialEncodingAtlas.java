@@ -0,0 +1,381 @@
+package org.numenta.nupic.encoders;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * 整个空间范围的编码图集
+ *
+ * 空间范围是一个不大的整数格网（61*61、122*61），同一个位置在一轮一轮的路径训练中会被重复编码成千上万次。
+ * 这里把spatial_width*spatial_height范围内每一个位置的编码提前并行算好，按位压缩存储，每个位置占一行long，
+ * 查询的时候按(x,y)直接定位，不再重新编码。
+ *
+ * 图集可以写到文件里，下次运行的时候用内存映射的方式直接打开，完全跳过编码。
+ * 文件头里记录了编码器的指纹（若干个探测位置上的编码的哈希），编码器的配置变了以后旧文件不会再被当成有效的图集。
+ * @author czg
+ *
+ */
+public class SpatialEncodingAtlas
+{
+	/**
+	 * 文件头的标记，"SDRA"
+	 */
+	private static final int MAGIC=0x53445241;
+
+	private static final int VERSION=2;
+
+	/**
+	 * 文件头的字节数：标记、版本、空间宽、空间高、编码长度、每行long的个数、编码器指纹
+	 */
+	private static final int HEADER_BYTES=6*4+8;
+
+	/**
+	 * 计算指纹时每个方向上探测位置的个数
+	 */
+	private static final int PROBES=5;
+
+	private final int spatial_width;
+
+	private final int spatial_height;
+
+	/**
+	 * 每个位置编码的位数
+	 */
+	private final int width;
+
+	/**
+	 * 每个位置占用的long的个数
+	 */
+	private final int words;
+
+	/**
+	 * 按位置顺序存放的编码，位置(x,y)的编码从(x*spatial_height+y)*words开始
+	 */
+	private final LongBuffer bits;
+
+	/**
+	 * 建立图集的编码器的指纹
+	 */
+	private final long fingerprint;
+
+	private SpatialEncodingAtlas(int spatial_width,int spatial_height,int width,LongBuffer bits)
+	{
+		this.spatial_width=spatial_width;
+		this.spatial_height=spatial_height;
+		this.width=width;
+		this.words=(width+63)>>>6;
+		this.bits=bits;
+		this.fingerprint=fingerprint(spatial_width, spatial_height, width, (x, y) -> get(x, y));
+	}
+
+	private SpatialEncodingAtlas(int spatial_width,int spatial_height,int width,LongBuffer bits,long fingerprint)
+	{
+		this.spatial_width=spatial_width;
+		this.spatial_height=spatial_height;
+		this.width=width;
+		this.words=(width+63)>>>6;
+		this.bits=bits;
+		this.fingerprint=fingerprint;
+	}
+
+	/**
+	 * 编码器的指纹：编码长度和空间范围内PROBES*PROBES个均匀分布的位置上激活位索引的FNV-1a哈希，
+	 * 编码单元个数、间距、主角度或者编码方式不同的编码器几乎不可能得到相同的指纹
+	 * @param spatial_width
+	 * @param spatial_height
+	 * @param width		编码的位数
+	 * @param encoder
+	 * @return
+	 */
+	static long fingerprint(int spatial_width,int spatial_height,int width,LocationEncoding encoder)
+	{
+		long hash=0xcbf29ce484222325L;
+		hash=(hash^width)*0x100000001b3L;
+		for (int i = 0; i < PROBES; i++)
+		{
+			for (int j = 0; j < PROBES; j++)
+			{
+				int[] code=encoder.encode(i*(spatial_width-1)/(PROBES-1), j*(spatial_height-1)/(PROBES-1));
+				hash=(hash^code.length)*0x100000001b3L;
+				for (int n = 0; n < code.length; n++)
+				{
+					if (code[n]>0)
+					{
+						hash=(hash^n)*0x100000001b3L;
+					}
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * 并行地对整个空间范围编码，每个线程通过encoders得到自己的编码器，
+	 * 需要每个线程各自准备缓存的编码方式也可以直接使用，例如：
+	 * <pre>
+	 * SpatialEncodingAtlas.build(122, 61, () -&gt; {
+	 *     SpatialDataEncoder e = new SpatialDataEncoder(30, 30, 122, 61);
+	 *     return (x, y) -&gt; e.GetEncodeTwoDim(e.encode_twoDAngle(x, y));
+	 * });
+	 * </pre>
+	 * @param spatial_width		空间范围的宽度
+	 * @param spatial_height	空间范围的高度
+	 * @param encoders			每个线程调用一次，返回这个线程使用的编码器
+	 * @return
+	 */
+	public static SpatialEncodingAtlas build(int spatial_width,int spatial_height,Supplier<LocationEncoding> encoders)
+	{
+		ThreadLocal<LocationEncoding> local=ThreadLocal.withInitial(encoders);
+		int width=local.get().encode(0, 0).length;
+		int words=(width+63)>>>6;
+		long[] store=new long[spatial_width*spatial_height*words];
+
+		IntStream.range(0, spatial_width*spatial_height).parallel().forEach(location -> {
+			int[] code=local.get().encode(location/spatial_height, location%spatial_height);
+			if (code.length!=width)
+			{
+				throw new IllegalStateException("encoding width changed from "+width+" to "+code.length);
+			}
+			int offset=location*words;
+			for (int i = 0; i < width; i++)
+			{
+				if (code[i]>0)
+				{
+					store[offset+(i>>>6)]|=1L<<(i&63);
+				}
+			}
+		});
+
+		return new SpatialEncodingAtlas(spatial_width, spatial_height, width, LongBuffer.wrap(store));
+	}
+
+	/**
+	 * 用没有内部状态的编码器建立图集，所有线程共用同一个编码器
+	 * @param spatial_width		空间范围的宽度
+	 * @param spatial_height	空间范围的高度
+	 * @param encoder
+	 * @return
+	 */
+	public static SpatialEncodingAtlas build(int spatial_width,int spatial_height,LocationEncoding encoder)
+	{
+		return build(spatial_width, spatial_height, () -> encoder);
+	}
+
+	/**
+	 * 用预编译的编码器建立图集
+	 * @param encoder
+	 * @return
+	 */
+	public static SpatialEncodingAtlas build(CompiledSpatialDataEncoder encoder)
+	{
+		return build(encoder.getSpatial_width(), encoder.getSpatial_height(), (LocationEncoding)encoder);
+	}
+
+	/**
+	 * 如果file已经存在、空间范围相同并且指纹和encoders给出的编码器一致就直接映射打开，
+	 * 否则编码整个空间并覆盖写入file
+	 * @param file
+	 * @param spatial_width
+	 * @param spatial_height
+	 * @param encoders
+	 * @return
+	 * @throws IOException
+	 */
+	public static SpatialEncodingAtlas loadOrBuild(File file,int spatial_width,int spatial_height,Supplier<LocationEncoding> encoders) throws IOException
+	{
+		if (file.exists())
+		{
+			SpatialEncodingAtlas atlas=null;
+			try
+			{
+				atlas=map(file);
+			}
+			catch (IOException e)
+			{
+				///旧版本或者损坏的文件，重新建立
+			}
+			if (atlas!=null&&atlas.spatial_width==spatial_width&&atlas.spatial_height==spatial_height)
+			{
+				LocationEncoding encoder=encoders.get();
+				int width=encoder.encode(0, 0).length;
+				if (atlas.width==width&&atlas.fingerprint==fingerprint(spatial_width, spatial_height, width, encoder))
+				{
+					return atlas;
+				}
+			}
+		}
+		SpatialEncodingAtlas atlas=build(spatial_width, spatial_height, encoders);
+		atlas.save(file);
+		return atlas;
+	}
+
+	/**
+	 * 以只读内存映射的方式打开save写出的图集文件
+	 * @param file
+	 * @return
+	 * @throws IOException	文件不存在，或者不是图集文件
+	 */
+	public static SpatialEncodingAtlas map(File file) throws IOException
+	{
+		try (FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			MappedByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining()<HEADER_BYTES||buffer.getInt()!=MAGIC)
+			{
+				throw new IOException(file+" is not a spatial encoding atlas");
+			}
+			int version=buffer.getInt();
+			if (version!=VERSION)
+			{
+				throw new IOException("unsupported atlas version "+version+" in "+file);
+			}
+			int spatial_width=buffer.getInt();
+			int spatial_height=buffer.getInt();
+			int width=buffer.getInt();
+			int words=buffer.getInt();
+			long fingerprint=buffer.getLong();
+			if (words!=((width+63)>>>6)||buffer.remaining()<(long)spatial_width*spatial_height*words*8)
+			{
+				throw new IOException("truncated atlas "+file);
+			}
+			return new SpatialEncodingAtlas(spatial_width, spatial_height, width, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer(), fingerprint);
+		}
+	}
+
+	/**
+	 * 把图集写到文件，之后可以用map直接打开
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException
+	{
+		int count=spatial_width*spatial_height*words;
+		ByteBuffer buffer=ByteBuffer.allocate(HEADER_BYTES+count*8).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(spatial_width).putInt(spatial_height).putInt(width).putInt(words).putLong(fingerprint);
+		for (int i = 0; i < count; i++)
+		{
+			buffer.putLong(bits.get(i));
+		}
+		buffer.flip();
+		try (FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+	}
+
+	private int offset(int locationX,int locationY)
+	{
+		if (locationX<0||locationX>=spatial_width||locationY<0||locationY>=spatial_height)
+		{
+			throw new IndexOutOfBoundsException("("+locationX+","+locationY+") is outside "+spatial_width+"x"+spatial_height);
+		}
+		return (locationX*spatial_height+locationY)*words;
+	}
+
+	/**
+	 * 返回位置(x,y)展平以后的编码
+	 * @param locationX
+	 * @param locationY
+	 * @return
+	 */
+	public int[] get(int locationX,int locationY)
+	{
+		int[] code=new int[width];
+		get(locationX, locationY, code);
+		return code;
+	}
+
+	/**
+	 * 把位置(x,y)的编码写入code，code的长度至少为getWidth()
+	 * @param locationX
+	 * @param locationY
+	 * @param code
+	 */
+	public void get(int locationX,int locationY,int[] code)
+	{
+		int offset=offset(locationX, locationY);
+		for (int i = 0; i < width; i++)
+		{
+			code[i]=(int)((bits.get(offset+(i>>>6))>>>(i&63))&1L);
+		}
+	}
+
+	/**
+	 * 把位置(x,y)编码中为1的位的索引按顺序追加到activeIndices
+	 * @param locationX
+	 * @param locationY
+	 * @param activeIndices
+	 */
+	public void getActive(int locationX,int locationY,TIntArrayList activeIndices)
+	{
+		int offset=offset(locationX, locationY);
+		for (int w = 0; w < words; w++)
+		{
+			long word=bits.get(offset+w);
+			while (word!=0)
+			{
+				activeIndices.add((w<<6)+Long.numberOfTrailingZeros(word));
+				word&=word-1;
+			}
+		}
+	}
+
+	/**
+	 * 返回位置(x,y)按位压缩的编码
+	 * @param locationX
+	 * @param locationY
+	 * @return
+	 */
+	public long[] getBits(int locationX,int locationY)
+	{
+		int offset=offset(locationX, locationY);
+		long[] row=new long[words];
+		for (int w = 0; w < words; w++)
+		{
+			row[w]=bits.get(offset+w);
+		}
+		return row;
+	}
+
+	public int getSpatial_width()
+	{
+		return spatial_width;
+	}
+
+	public int getSpatial_height()
+	{
+		return spatial_height;
+	}
+
+	/**
+	 * 每个位置编码的位数
+	 * @return
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * 建立图集的编码器的指纹
+	 * @return
+	 */
+	public long getFingerprint()
+	{
+		return fingerprint;
+	}
+}
@@ -37,6 +37,7 @@ import java.util.Set;
 import org.numenta.nupic.Parameters;
 import org.numenta.nupic.Parameters.KEY;
 import org.numenta.nupic.algorithms.Classification;
+import org.numenta.nupic.algorithms.ColumnarWeightMatrix.Precision;
 import org.numenta.nupic.algorithms.SDRClassifier;
 import org.numenta.nupic.algorithms.SpatialPooler;
 import org.numenta.nupic.algorithms.TemporalMemory;
@@ -86,7 +87,8 @@ public class LocationCellSDRGridCell {
         SpatialPooler sp = new SpatialPooler();//获取空间池化
         SpatialPooler spTwo=new SpatialPooler();///获取空间池化层，第二层
         TemporalMemory tm = new TemporalMemory();///时间记忆
-        SDRClassifier classifier = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);///分类器
+        SDRClassifier classifier = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0,
+            122 * 61, 10 * 10 * 4, Precision.DOUBLE);///分类器，桶为地图上的每个位置，输入为第二层的全部细胞
 
         Layer<int[]> layer = getLayer(params,paramsTwo, encoder, sp, spTwo,tm,classifier);
         
@@ -375,15 +377,24 @@ public class LocationCellSDRGridCell {
             //这里找几个值，当他的输出值稳定之后，我们认为训练完成
             if (sequenceNum==20) //每100
             {
+            	///第一层不学习，整张地图一次批量推理
+            	int[][] constVauleEncodes=new int[122*61][];
             	for(int i=0;i<122;i++)
             	{
             		for(int j=0;j<61;j++)
             		{
             			int[][] constvalue=encoder.encode_twoD(i, j);//j是离北面的距离，i是离西面的距离
-            			int[] constVauleEncode=encoder.GetEncodeTwoDim(constvalue);
+            			constVauleEncodes[i*61+j]=encoder.GetEncodeTwoDim(constvalue);
+            		}
+            	}
+            	int[][] activeColumnsResult=spatialPooler.computeBatch(memory, constVauleEncodes);
+            	for(int i=0;i<122;i++)
+            	{
+            		for(int j=0;j<61;j++)
+            		{
             			int[] outputResult =  new int[columnCount];
             			int[] outputResultTwo =  new int[columnCountTwo];
-            			spatialPooler.compute(memory, constVauleEncode, outputResult, false);
+            			ArrayUtils.setIndexesTo(outputResult, activeColumnsResult[i*61+j], 1);
             			spatialPooler2.compute(memoryTwo, outputResult, outputResultTwo, true);
                         //System.out.println("SpatialPooler Output For ConstantValue = " + Arrays.toString(output));
             		///////*****************这里需要把激活单元柱的对应的Overlap值也存储起来*******************************\\\\\\\\\\\
@@ -0,0 +1,685 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * A read-only, memory mapped view of the learned state of a {@link Connections},
+ * stored in a compact columnar file.
+ * <p>
+ * FST serialization of a {@link Connections} writes and rebuilds one object per
+ * column, cell, pool, segment and synapse. This format instead writes every kind of
+ * value into its own flat array (a "section"):
+ * <ul>
+ *  <li>the potential pools in compressed sparse row form: an offset per column into
+ *      parallel arrays of input indexes and {@code float} permanences</li>
+ *  <li>the duty cycles and boost factors of the columns</li>
+ *  <li>the distal segments as parallel arrays indexed by flat index (cell, ordinal,
+ *      last used iteration, and an offset into the synapse arrays)</li>
+ *  <li>the distal synapses as parallel arrays (presynaptic cell, ordinal, {@code float}
+ *      permanence), grouped by segment</li>
+ * </ul>
+ * {@link #write(Connections, Path)} streams the sections through a {@link FileChannel};
+ * {@link #map(Path)} only reads the fixed size header and maps each section, so opening
+ * even a very large model costs the same, and processes mapping the same file share its
+ * pages. The view can be queried directly (see {@link #computeOverlaps(int[])}), or
+ * {@link #restore(Connections)}d into a {@code Connections} to continue learning.
+ * </p><p>
+ * Permanences are stored as {@code float}s. A permanence which would change sides of
+ * its connected threshold by the rounding is nudged by one {@code float} step, so the
+ * connected synapses of a restored model are exactly those of the original. The
+ * threshold is the one each algorithm applies: {@code perm >= synPermConnected} for
+ * proximal synapses, and {@code perm > connectedPermanence - EPSILON} for distal ones,
+ * as in {@code TemporalMemory} and {@link Connections#computeActivity(java.util.Collection, double)}. The state
+ * of the current temporal memory sequence (active and winner cells and segments) and
+ * the random generator are not part of the model; a restored {@code Connections}
+ * starts as if it had just been reset.
+ * </p><p>
+ * All values are little endian and every section starts on an 8 byte boundary. A
+ * single section may not exceed 2GB.
+ * </p>
+ * 列式的模型文件格式，以内存映射的方式只读打开
+ * 
+ * @see ConnectionsDelta
+ */
+public final class ColumnarModel {
+    /** Tolerance of the distal connected threshold, as in TemporalMemory */
+    private static final double EPSILON = 0.00001;
+    
+    /** File header marker, "HTMM" */
+    private static final int MAGIC = 0x48544d4d;
+    private static final int VERSION = 1;
+    
+    private static final int POOL_OFFSETS = 0;
+    private static final int POOL_INPUTS = 1;
+    private static final int POOL_PERMANENCES = 2;
+    private static final int COLUMN_STATE = 3;
+    private static final int SEGMENT_CELLS = 4;
+    private static final int SEGMENT_ORDINALS = 5;
+    private static final int SEGMENT_LAST_USED = 6;
+    private static final int SEGMENT_OFFSETS = 7;
+    private static final int SYNAPSE_CELLS = 8;
+    private static final int SYNAPSE_ORDINALS = 9;
+    private static final int SYNAPSE_PERMANENCES = 10;
+    private static final int FREE_SEGMENTS = 11;
+    private static final int NUM_SECTIONS = 12;
+    
+    /** 16 ints, 1 long and 2 doubles of scalars, followed by the section offsets */
+    private static final int HEADER_BYTES = 16 * 4 + 3 * 8 + NUM_SECTIONS * 8;
+    
+    /** Number of per column arrays in the column state section */
+    private static final int COLUMN_ARRAYS = 5;
+    
+    private final int numInputs;
+    private final int numColumns;
+    private final int cellsPerColumn;
+    private final int numSegmentSlots;
+    private final int numSynapses;
+    private final int spIterationNum;
+    private final int spIterationLearnNum;
+    private final int inhibitionRadius;
+    private final int nextSegmentOrdinal;
+    private final int nextSynapseOrdinal;
+    /** Bit i is set if column state array i was written (see {@link #columnArrays(Connections)}) */
+    private final int columnStateMask;
+    private final long tmIteration;
+    private final double synPermConnected;
+    private final double connectedPermanence;
+    
+    private final IntBuffer poolOffsets;
+    private final IntBuffer poolInputs;
+    private final FloatBuffer poolPermanences;
+    private final DoubleBuffer columnState;
+    private final IntBuffer segmentCells;
+    private final IntBuffer segmentOrdinals;
+    private final LongBuffer segmentLastUsed;
+    private final IntBuffer segmentOffsets;
+    private final IntBuffer synapseCells;
+    private final IntBuffer synapseOrdinals;
+    private final FloatBuffer synapsePermanences;
+    private final IntBuffer freeSegments;
+    
+    private ColumnarModel(ByteBuffer header, ByteBuffer[] sections) {
+        numInputs = header.getInt();
+        numColumns = header.getInt();
+        cellsPerColumn = header.getInt();
+        header.getInt(); // pool size, implied by the sections
+        numSegmentSlots = header.getInt();
+        numSynapses = header.getInt();
+        header.getInt(); // free segments, implied by the sections
+        spIterationNum = header.getInt();
+        spIterationLearnNum = header.getInt();
+        inhibitionRadius = header.getInt();
+        nextSegmentOrdinal = header.getInt();
+        nextSynapseOrdinal = header.getInt();
+        columnStateMask = header.getInt();
+        header.getInt();
+        tmIteration = header.getLong();
+        synPermConnected = header.getDouble();
+        connectedPermanence = header.getDouble();
+        
+        poolOffsets = sections[POOL_OFFSETS].asIntBuffer();
+        poolInputs = sections[POOL_INPUTS].asIntBuffer();
+        poolPermanences = sections[POOL_PERMANENCES].asFloatBuffer();
+        columnState = sections[COLUMN_STATE].asDoubleBuffer();
+        segmentCells = sections[SEGMENT_CELLS].asIntBuffer();
+        segmentOrdinals = sections[SEGMENT_ORDINALS].asIntBuffer();
+        segmentLastUsed = sections[SEGMENT_LAST_USED].asLongBuffer();
+        segmentOffsets = sections[SEGMENT_OFFSETS].asIntBuffer();
+        synapseCells = sections[SYNAPSE_CELLS].asIntBuffer();
+        synapseOrdinals = sections[SYNAPSE_ORDINALS].asIntBuffer();
+        synapsePermanences = sections[SYNAPSE_PERMANENCES].asFloatBuffer();
+        freeSegments = sections[FREE_SEGMENTS].asIntBuffer();
+    }
+    
+    /**
+     * Writes the learned state of the specified {@link Connections} to "file",
+     * replacing it if it exists.
+     * 
+     * @param c         the {@link Connections} to write
+     * @param file      the file to write
+     * @throws IOException  if writing fails
+     */
+    public static void write(Connections c, Path file) throws IOException {
+        int numColumns = c.getNumColumns();
+        int numSegmentSlots = c.nextFlatIdx;
+        long numSynapses = c.numSynapses();
+        if(numSynapses > Integer.MAX_VALUE) {
+            throw new IOException("Too many synapses for the columnar format: " + numSynapses);
+        }
+        
+        List<List<Synapse>> pools = new ArrayList<>(numColumns);
+        int poolSize = 0;
+        for(int i = 0;i < numColumns;i++) {
+            List<Synapse> pool = c.getSynapses(c.getColumn(i).getProximalDendrite());
+            pools.add(pool);
+            poolSize += pool.size();
+        }
+        
+        double[][] columnArrays = columnArrays(c);
+        int columnStateMask = 0;
+        for(int i = 0;i < COLUMN_ARRAYS;i++) {
+            if(columnArrays[i] != null) columnStateMask |= 1 << i;
+        }
+        
+        long[] offsets = new long[NUM_SECTIONS];
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, 
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            
+            SectionWriter out = new SectionWriter(channel, HEADER_BYTES);
+            
+            offsets[POOL_OFFSETS] = out.align();
+            int offset = 0;
+            out.putInt(offset);
+            for(List<Synapse> pool : pools) {
+                out.putInt(offset += pool.size());
+            }
+            offsets[POOL_INPUTS] = out.align();
+            for(List<Synapse> pool : pools) {
+                for(Synapse s : pool) out.putInt(s.getInputIndex());
+            }
+            offsets[POOL_PERMANENCES] = out.align();
+            for(List<Synapse> pool : pools) {
+                for(Synapse s : pool) out.putFloat(toFloat(s.getPermanence(), c.getSynPermConnected()));
+            }
+            
+            offsets[COLUMN_STATE] = out.align();
+            for(double[] values : columnArrays) {
+                for(int i = 0;i < numColumns;i++) {
+                    out.putDouble(values == null ? 0 : values[i]);
+                }
+            }
+            
+            offsets[SEGMENT_CELLS] = out.align();
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                out.putInt(segment == null ? -1 : segment.getParentCell().getIndex());
+            }
+            offsets[SEGMENT_ORDINALS] = out.align();
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                out.putInt(segment == null ? -1 : segment.getOrdinal());
+            }
+            offsets[SEGMENT_LAST_USED] = out.align();
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                out.putLong(segment == null ? 0 : segment.lastUsedIteration());
+            }
+            offsets[SEGMENT_OFFSETS] = out.align();
+            offset = 0;
+            out.putInt(offset);
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                out.putInt(offset += segment == null ? 0 : c.getSynapses(segment).size());
+            }
+            
+            offsets[SYNAPSE_CELLS] = out.align();
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                if(segment == null) continue;
+                for(Synapse s : c.getSynapses(segment)) out.putInt(s.getPresynapticCell().getIndex());
+            }
+            offsets[SYNAPSE_ORDINALS] = out.align();
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                if(segment == null) continue;
+                for(Synapse s : c.getSynapses(segment)) out.putInt(s.getIndex());
+            }
+            offsets[SYNAPSE_PERMANENCES] = out.align();
+            for(int i = 0;i < numSegmentSlots;i++) {
+                DistalDendrite segment = c.segmentForFlatIdx(i);
+                if(segment == null) continue;
+                for(Synapse s : c.getSynapses(segment)) out.putFloat(toFloatAbove(s.getPermanence(), c.getConnectedPermanence() - EPSILON));
+            }
+            
+            offsets[FREE_SEGMENTS] = out.align();
+            for(int i = 0;i < c.freeFlatIdxs.size();i++) {
+                out.putInt(c.freeFlatIdxs.get(i));
+            }
+            out.flush();
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION)
+                .putInt(c.getNumInputs()).putInt(numColumns).putInt(c.getCellsPerColumn())
+                .putInt(poolSize).putInt(numSegmentSlots).putInt((int)numSynapses).putInt(c.freeFlatIdxs.size())
+                .putInt(c.spIterationNum).putInt(c.spIterationLearnNum).putInt(c.getInhibitionRadius())
+                .putInt(c.nextSegmentOrdinal).putInt(c.nextSynapseOrdinal).putInt(columnStateMask).putInt(0)
+                .putLong(c.tmIteration).putDouble(c.getSynPermConnected()).putDouble(c.getConnectedPermanence());
+            for(long o : offsets) {
+                header.putLong(o);
+            }
+            header.flip();
+            while(header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+    
+    /**
+     * Opens a file written by {@link #write(Connections, Path)}, mapping its sections
+     * read only. The file is not read beyond its header; the returned view stays
+     * valid after the file is closed.
+     * 
+     * @param file      the file to open
+     * @return  the mapped model
+     * @throws IOException  if the file is missing, truncated, not a columnar model, or
+     *                      of an unsupported version
+     */
+    public static ColumnarModel map(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining() && channel.read(header, header.position()) > 0);
+            header.flip();
+            if(header.remaining() < 8 || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a columnar model");
+            }
+            int version = header.getInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported columnar model version " + version + " in " + file);
+            }
+            if(header.remaining() < HEADER_BYTES - 8) {
+                throw new IOException("Truncated columnar model " + file);
+            }
+            
+            ByteBuffer scalars = header.slice().order(ByteOrder.LITTLE_ENDIAN);
+            int numColumns = header.getInt(12);
+            int poolSize = header.getInt(20);
+            int numSegmentSlots = header.getInt(24);
+            int numSynapses = header.getInt(28);
+            int numFree = header.getInt(32);
+            long[] lengths = new long[NUM_SECTIONS];
+            lengths[POOL_OFFSETS] = 4L * (numColumns + 1);
+            lengths[POOL_INPUTS] = 4L * poolSize;
+            lengths[POOL_PERMANENCES] = 4L * poolSize;
+            lengths[COLUMN_STATE] = 8L * COLUMN_ARRAYS * numColumns;
+            lengths[SEGMENT_CELLS] = 4L * numSegmentSlots;
+            lengths[SEGMENT_ORDINALS] = 4L * numSegmentSlots;
+            lengths[SEGMENT_LAST_USED] = 8L * numSegmentSlots;
+            lengths[SEGMENT_OFFSETS] = 4L * (numSegmentSlots + 1);
+            lengths[SYNAPSE_CELLS] = 4L * numSynapses;
+            lengths[SYNAPSE_ORDINALS] = 4L * numSynapses;
+            lengths[SYNAPSE_PERMANENCES] = 4L * numSynapses;
+            lengths[FREE_SEGMENTS] = 4L * numFree;
+            
+            ByteBuffer[] sections = new ByteBuffer[NUM_SECTIONS];
+            int table = HEADER_BYTES - NUM_SECTIONS * 8;
+            for(int i = 0;i < NUM_SECTIONS;i++) {
+                long offset = header.getLong(table + i * 8);
+                if(offset < HEADER_BYTES || offset + lengths[i] > size) {
+                    throw new IOException("Truncated columnar model " + file);
+                }
+                if(lengths[i] > Integer.MAX_VALUE) {
+                    throw new IOException("Section " + i + " of " + file + " exceeds 2GB");
+                }
+                sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, lengths[i])
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            
+            return new ColumnarModel(scalars, sections);
+        }
+    }
+    
+    /**
+     * Replaces the learned state of the specified {@link Connections} with this
+     * model. "c" must have been configured with the dimensions the model was written
+     * from and initialized by the spatial pooler and temporal memory (so that its
+     * columns and cells exist); its proximal pools, permanences, duty cycles, boost
+     * factors and distal segments are then overwritten.
+     * 
+     * @param c     the {@link Connections} to restore into
+     * @throws IllegalArgumentException if the dimensions of "c" differ from this model's
+     */
+    public void restore(Connections c) {
+        if(c.getNumInputs() != numInputs || c.getNumColumns() != numColumns || c.getCellsPerColumn() != cellsPerColumn) {
+            throw new IllegalArgumentException("Connections with " + c.getNumInputs() + " inputs, " + c.getNumColumns() + 
+                " columns and " + c.getCellsPerColumn() + " cells per column cannot hold a model with " + numInputs + 
+                " inputs, " + numColumns + " columns and " + cellsPerColumn + " cells per column");
+        }
+        
+        // Proximal
+        for(int i = 0;i < numColumns;i++) {
+            Column column = c.getColumn(i);
+            int[] inputs = getPotentialPool(i);
+            double[] permanences = new double[inputs.length];
+            for(int j = 0, start = poolOffsets.get(i);j < inputs.length;j++) {
+                permanences[j] = poolPermanences.get(start + j);
+            }
+            column.getProximalDendrite().clearSynapses(c);
+            c.getPotentialPools().set(i, column.createPotentialPool(c, inputs));
+            column.setProximalPermanencesSparse(c, permanences, inputs);
+        }
+        
+        double[][] columnArrays = new double[COLUMN_ARRAYS][];
+        for(int i = 0;i < COLUMN_ARRAYS;i++) {
+            if((columnStateMask & (1 << i)) == 0) continue;
+            columnArrays[i] = new double[numColumns];
+            for(int j = 0;j < numColumns;j++) {
+                columnArrays[i][j] = columnState.get(i * numColumns + j);
+            }
+        }
+        if(columnArrays[0] != null) c.setOverlapDutyCycles(columnArrays[0]);
+        if(columnArrays[1] != null) c.setActiveDutyCycles(columnArrays[1]);
+        if(columnArrays[2] != null) c.setMinOverlapDutyCycles(columnArrays[2]);
+        if(columnArrays[3] != null) c.setMinActiveDutyCycles(columnArrays[3]);
+        if(columnArrays[4] != null) c.setBoostFactors(columnArrays[4]);
+        c.spIterationNum = spIterationNum;
+        c.spIterationLearnNum = spIterationLearnNum;
+        if(inhibitionRadius != c.getInhibitionRadius()) {
+            c.setInhibitionRadius(inhibitionRadius);
+        }
+        
+        // Distal
+        for(int i = 0;i < c.segmentForFlatIdx.size();i++) {
+            DistalDendrite existing = c.segmentForFlatIdx(i);
+            if(existing != null) {
+                c.destroySegment(existing);
+            }
+        }
+        for(int i = 0;i < numSegmentSlots;i++) {
+            int cell = segmentCells.get(i);
+            if(cell == -1) continue;
+            
+            DistalDendrite segment = c.restoreSegment(c.getCell(cell), i, segmentOrdinals.get(i), segmentLastUsed.get(i));
+            for(int j = segmentOffsets.get(i), end = segmentOffsets.get(i + 1);j < end;j++) {
+                c.nextSynapseOrdinal = synapseOrdinals.get(j);
+                c.createSynapse(segment, c.getCell(synapseCells.get(j)), synapsePermanences.get(j));
+            }
+        }
+        while(c.segmentForFlatIdx.size() < numSegmentSlots) {
+            c.segmentForFlatIdx.add(null);
+        }
+        while(c.segmentForFlatIdx.size() > numSegmentSlots) {
+            c.segmentForFlatIdx.remove(c.segmentForFlatIdx.size() - 1);
+        }
+        c.nextFlatIdx = numSegmentSlots;
+        c.nextSegmentOrdinal = nextSegmentOrdinal;
+        c.nextSynapseOrdinal = nextSynapseOrdinal;
+        int[] free = new int[freeSegments.capacity()];
+        for(int i = 0;i < free.length;i++) {
+            free[i] = freeSegments.get(i);
+        }
+        c.freeFlatIdxs = new TIntArrayList(free);
+        c.tmIteration = tmIteration;
+        
+        c.setActiveCells(new LinkedHashSet<>());
+        c.setWinnerCells(new LinkedHashSet<>());
+        c.setActiveSegments(new ArrayList<>());
+        c.setMatchingSegments(new ArrayList<>());
+        c.lastActivity = null;
+    }
+    
+    /**
+     * Computes the overlap of every column with the input straight from the mapped
+     * model: the sum of the input values at the column's connected synapses, which
+     * is what {@code SpatialPooler.calculateOverlap} computes on the {@link Connections}
+     * the model was written from.
+     * 
+     * @param inputVector   one value per input bit
+     * @return  the overlap of each column
+     */
+    public int[] computeOverlaps(int[] inputVector) {
+        if(inputVector.length != numInputs) {
+            throw new IllegalArgumentException(
+                "Input array must be same size as the defined number of inputs: From Model: " + numInputs +
+                ", From Input Vector: " + inputVector.length);
+        }
+        
+        int[] overlaps = new int[numColumns];
+        for(int i = 0;i < numColumns;i++) {
+            int overlap = 0;
+            for(int j = poolOffsets.get(i), end = poolOffsets.get(i + 1);j < end;j++) {
+                if(poolPermanences.get(j) >= synPermConnected) {
+                    overlap += inputVector[poolInputs.get(j)];
+                }
+            }
+            overlaps[i] = overlap;
+        }
+        return overlaps;
+    }
+    
+    /**
+     * Returns the input indexes in the potential pool of the specified column.
+     * @param column    the index of the column
+     * @return  the input indexes, in the order of the column's synapses
+     */
+    public int[] getPotentialPool(int column) {
+        int start = poolOffsets.get(column);
+        int[] inputs = new int[poolOffsets.get(column + 1) - start];
+        for(int j = 0;j < inputs.length;j++) {
+            inputs[j] = poolInputs.get(start + j);
+        }
+        return inputs;
+    }
+    
+    /**
+     * Returns the permanences of the potential pool of the specified column.
+     * @param column    the index of the column
+     * @return  the permanences, in the same order as {@link #getPotentialPool(int)}
+     */
+    public float[] getPotentialPermanences(int column) {
+        int start = poolOffsets.get(column);
+        float[] permanences = new float[poolOffsets.get(column + 1) - start];
+        for(int j = 0;j < permanences.length;j++) {
+            permanences[j] = poolPermanences.get(start + j);
+        }
+        return permanences;
+    }
+    
+    /**
+     * Returns the index of the cell owning the segment with the specified flat
+     * index, or -1 if the flat index is not in use.
+     * @param flatIdx   the flat index of the segment
+     * @return  the cell index, or -1
+     */
+    public int getSegmentCell(int flatIdx) {
+        return segmentCells.get(flatIdx);
+    }
+    
+    /**
+     * Returns the presynaptic cell indexes of the synapses on the specified segment.
+     * @param flatIdx   the flat index of the segment
+     * @return  the presynaptic cell indexes
+     */
+    public int[] getPresynapticCells(int flatIdx) {
+        int start = segmentOffsets.get(flatIdx);
+        int[] cells = new int[segmentOffsets.get(flatIdx + 1) - start];
+        for(int j = 0;j < cells.length;j++) {
+            cells[j] = synapseCells.get(start + j);
+        }
+        return cells;
+    }
+    
+    /**
+     * Returns the permanences of the synapses on the specified segment.
+     * @param flatIdx   the flat index of the segment
+     * @return  the permanences, in the same order as {@link #getPresynapticCells(int)}
+     */
+    public float[] getSynapsePermanences(int flatIdx) {
+        int start = segmentOffsets.get(flatIdx);
+        float[] permanences = new float[segmentOffsets.get(flatIdx + 1) - start];
+        for(int j = 0;j < permanences.length;j++) {
+            permanences[j] = synapsePermanences.get(start + j);
+        }
+        return permanences;
+    }
+    
+    public int getNumInputs() {
+        return numInputs;
+    }
+    
+    public int getNumColumns() {
+        return numColumns;
+    }
+    
+    public int getCellsPerColumn() {
+        return cellsPerColumn;
+    }
+    
+    /**
+     * Returns the number of flat indexes used by segments, including free ones.
+     * @return  the number of segment slots
+     */
+    public int getNumSegmentSlots() {
+        return numSegmentSlots;
+    }
+    
+    /**
+     * Returns the number of live distal segments.
+     * @return  the number of segments
+     */
+    public int getNumSegments() {
+        return numSegmentSlots - freeSegments.capacity();
+    }
+    
+    /**
+     * Returns the number of distal synapses.
+     * @return  the number of synapses
+     */
+    public int getNumSynapses() {
+        return numSynapses;
+    }
+    
+    /**
+     * Returns the per column arrays of the column state section, in section order.
+     */
+    private static double[][] columnArrays(Connections c) {
+        return new double[][] {
+            c.getOverlapDutyCycles(), c.getActiveDutyCycles(), c.getMinOverlapDutyCycles(),
+            c.getMinActiveDutyCycles(), c.getBoostFactors()
+        };
+    }
+    
+    /**
+     * Rounds a permanence to a {@code float}, keeping it on the same side of the
+     * proximal connected threshold ({@code perm >= threshold}) as the {@code double}
+     * it was rounded from.
+     */
+    static float toFloat(double permanence, double threshold) {
+        float f = (float)permanence;
+        if(permanence < threshold && f >= threshold) {
+            f = Math.nextDown(f);
+        }else if(permanence >= threshold && f < threshold) {
+            f = Math.nextUp(f);
+        }
+        return f;
+    }
+    
+    /**
+     * Rounds a permanence to a {@code float}, keeping it on the same side of the
+     * distal connected threshold ({@code perm > threshold}) as the {@code double}
+     * it was rounded from.
+     */
+    static float toFloatAbove(double permanence, double threshold) {
+        float f = (float)permanence;
+        if(permanence > threshold && f <= threshold) {
+            f = Math.nextUp(f);
+        }else if(permanence <= threshold && f > threshold) {
+            f = Math.nextDown(f);
+        }
+        return f;
+    }
+    
+    /**
+     * Streams values into a {@link FileChannel} through a fixed size buffer,
+     * keeping track of the file position.
+     */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+        
+        SectionWriter(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.position = position;
+            channel.position(position);
+        }
+        
+        /**
+         * Pads to the next 8 byte boundary and returns the file position.
+         */
+        long align() throws IOException {
+            while(position % 8 != 0) {
+                room(1);
+                buffer.put((byte)0);
+                position++;
+            }
+            return position;
+        }
+        
+        void putInt(int v) throws IOException {
+            room(4);
+            buffer.putInt(v);
+            position += 4;
+        }
+        
+        void putFloat(float v) throws IOException {
+            room(4);
+            buffer.putFloat(v);
+            position += 4;
+        }
+        
+        void putLong(long v) throws IOException {
+            room(8);
+            buffer.putLong(v);
+            position += 8;
+        }
+        
+        void putDouble(double v) throws IOException {
+            room(8);
+            buffer.putDouble(v);
+            position += 8;
+        }
+        
+        private void room(int bytes) throws IOException {
+            if(buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -29,6 +29,8 @@ import java.util.Set;
 
 import org.numenta.nupic.algorithms.TemporalMemory;
 
+import gnu.trove.list.array.TIntArrayList;
+
 /**
  * Contains a snapshot of the state attained during one computational
  * call to the {@link TemporalMemory}. The {@code TemporalMemory} uses
@@ -46,6 +48,31 @@ public class ComputeCycle implements Persistable {
     public List<DistalDendrite> activeSegments = new ArrayList<>();//激活的基底树突
     public List<DistalDendrite> matchingSegments = new ArrayList<>();//匹配的基底树突
     public Set<Cell> predictiveCells = new LinkedHashSet<>();//预测单元
+    
+    ///////// Index buffers filled by TemporalMemory#computeIndices, reused from step to step /////////
+    /** Ascending indexes of the active cells 激活单元的索引 */
+    public TIntArrayList activeCellIndices = new TIntArrayList();
+    /** Ascending indexes of the winner cells 胜出单元的索引 */
+    public TIntArrayList winnerCellIndices = new TIntArrayList();
+    /** Flat indexes of the active segments, ordered by cell 激活树突的索引 */
+    public TIntArrayList activeSegmentIndices = new TIntArrayList();
+    /** Flat indexes of the matching segments, ordered by cell 匹配树突的索引 */
+    public TIntArrayList matchingSegmentIndices = new TIntArrayList();
+    /** Ascending indexes of the predictive cells 预测单元的索引 */
+    public TIntArrayList predictiveCellIndices = new TIntArrayList();
+    
+    /** The previous step's index buffers, swapped with the current ones by {@link #swapIndices()} */
+    public TIntArrayList prevActiveCellIndices = new TIntArrayList();
+    public TIntArrayList prevWinnerCellIndices = new TIntArrayList();
+    public TIntArrayList prevActiveSegmentIndices = new TIntArrayList();
+    public TIntArrayList prevMatchingSegmentIndices = new TIntArrayList();
+    
+    /** Scratch space of {@link TemporalMemory#computeIndices}, not part of the state 临时工作区 */
+    public transient boolean[] prevActiveCellMask;
+    public transient int[] candidateCells;
+    public transient TIntArrayList leastUsedCells;
+    public transient List<Synapse> synapsesToDestroy;
+    public transient TIntArrayList columnGroups;
         
     
     /**
@@ -104,6 +131,43 @@ public class ComputeCycle implements Persistable {
         return predictiveCells;
     }
     
+    /**
+     * Makes the current index buffers the previous ones and clears the
+     * current ones, without allocating.
+     * 把本轮的索引缓冲区变为上一轮的，并清空本轮的
+     */
+    public void swapIndices() {
+        TIntArrayList t = prevActiveCellIndices;
+        prevActiveCellIndices = activeCellIndices;
+        activeCellIndices = t;
+        t = prevWinnerCellIndices;
+        prevWinnerCellIndices = winnerCellIndices;
+        winnerCellIndices = t;
+        t = prevActiveSegmentIndices;
+        prevActiveSegmentIndices = activeSegmentIndices;
+        activeSegmentIndices = t;
+        t = prevMatchingSegmentIndices;
+        prevMatchingSegmentIndices = matchingSegmentIndices;
+        matchingSegmentIndices = t;
+        
+        activeCellIndices.resetQuick();
+        winnerCellIndices.resetQuick();
+        activeSegmentIndices.resetQuick();
+        matchingSegmentIndices.resetQuick();
+        predictiveCellIndices.resetQuick();
+    }
+    
+    /**
+     * Clears all index buffers, current and previous, as at the start of a sequence.
+     */
+    public void resetIndices() {
+        swapIndices();
+        prevActiveCellIndices.resetQuick();
+        prevWinnerCellIndices.resetQuick();
+        prevActiveSegmentIndices.resetQuick();
+        prevMatchingSegmentIndices.resetQuick();
+    }
+    
     /* (non-Javadoc)
      * @see java.lang.Object#hashCode()
      */
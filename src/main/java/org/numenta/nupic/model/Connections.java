@@ -31,6 +31,8 @@ import org.numenta.nupic.util.Topology;
 import org.numenta.nupic.util.UniversalRandom;
 import chaschev.lang.Pair;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
 /**
  * Contains the definition of the interconnected structural state of the {@link SpatialPooler} and
@@ -147,6 +149,13 @@ public class Connections implements Persistable {
      * average number of connected synapses per column.
      */
     private int inhibitionRadius = 0;
+    /**
+     * Column neighborhoods of every column, keyed by inhibition radius. Filled
+     * on demand by the {@link SpatialPooler} and dropped whenever the column
+     * topology or the wrap around flag changes. Not persisted.
+     * 按抑制半径缓存的每个列的邻域
+     */
+    private transient TIntObjectMap<int[][]> columnNeighborhoods;
 
     private double[] overlapDutyCycles;//重叠占空比
     private double[] activeDutyCycles;//激活占空比
@@ -247,6 +256,14 @@ public class Connections implements Persistable {
     protected List<DistalDendrite> segmentForFlatIdx = new ArrayList<>();
     /** Stores each cycle's most recent activity 存储每个周期的最新activity */
     public Activity lastActivity;
+    /** Reused by every call to computeActivity, recreated lazily after deserialization */
+    private transient Activity activityWorkspace;
+    /**
+     * Columns and segments changed since the last delta check point, null unless
+     * {@link #beginChangeTracking()} was called. Not persisted.
+     * 上次检查点以后改变过的列和树突
+     */
+    private transient ConnectionsDelta.Changes changes;
     /** The default random number seed */
     protected int seed = 42;
     /** The random number generator 随机数的产生器 */
@@ -462,6 +479,7 @@ public class Connections implements Persistable {
      */
     public void setColumnTopology(Topology topology) {
         this.columnTopology = topology;
+        clearColumnNeighborhoods();
     }
 
     /**
@@ -539,6 +557,36 @@ public class Connections implements Persistable {
         return inhibitionRadius;
     }
 
+    /**
+     * Returns the cached neighborhoods of every column for the specified
+     * inhibition radius, or null if they haven't been computed yet.
+     * 返回指定抑制半径下缓存的每个列的邻域，没有缓存时返回null
+     * @param inhibitionRadius
+     * @return
+     */
+    public int[][] getColumnNeighborhoods(int inhibitionRadius) {
+        return columnNeighborhoods == null ? null : columnNeighborhoods.get(inhibitionRadius);
+    }
+
+    /**
+     * Caches the neighborhoods of every column for the specified inhibition radius.
+     * @param inhibitionRadius
+     * @param neighborhoods     the neighborhood of each column, indexed by column
+     */
+    public void setColumnNeighborhoods(int inhibitionRadius, int[][] neighborhoods) {
+        if(columnNeighborhoods == null) {
+            columnNeighborhoods = new TIntObjectHashMap<>();
+        }
+        columnNeighborhoods.put(inhibitionRadius, neighborhoods);
+    }
+
+    /**
+     * Drops all cached column neighborhoods.
+     */
+    public void clearColumnNeighborhoods() {
+        columnNeighborhoods = null;
+    }
+
     /**
      * Sets the inhibition radius
      * 设置抑制半径
@@ -1083,6 +1131,7 @@ public class Connections implements Persistable {
      */
     public void setWrapAround(boolean b) {
         this.wrapAround = b;
+        clearColumnNeighborhoods();
     }
     
     /**
@@ -1304,8 +1353,20 @@ public class Connections implements Persistable {
 	////////////////////////////////////////
     
     /**
-     * Return type from {@link Connections#computeActivity(Set, double, int, double, int, boolean)}
+     * Return type from {@link Connections#computeActivity(Collection, double, int, int)}
      * 存储所有树突潜在突触的数量和连接突触的数量的类
+     * <p>
+     * A {@code Connections} keeps one {@code Activity} as a workspace and reuses it on
+     * every call: the counters are only cleared for the segments touched by the
+     * previous call, and the active and matching segments are collected while counting.
+     * The counters stay valid until the next call to {@code computeActivity}, and
+     * may be longer than the number of segments.
+     * 作为工作区重复使用，每次只清除上一次用到的计数
+     * </p><p>
+     * Only the counters are serialized; the segment lists and the sort scratch space
+     * are transient and are recreated by the first {@link #reset(int, int, int)} after
+     * deserialization.
+     * </p>
      */
     public static class Activity implements Serializable {
     	/** default serial */
@@ -1314,9 +1375,123 @@ public class Connections implements Persistable {
         public int[] numActiveConnected;
         public int[] numActivePotential;
         
+        private int activationThreshold = Integer.MAX_VALUE;
+        private int minThreshold = Integer.MAX_VALUE;
+        
+        /** Flat indexes of the segments with at least one active potential synapse */
+        private transient int[] touchedSegments;
+        private transient int numTouchedSegments;
+        /** Flat indexes of the active segments, ordered by cell once the computation is done */
+        private transient int[] activeSegments;
+        private transient int numActiveSegments;
+        /** Flat indexes of the matching segments, ordered by cell once the computation is done */
+        private transient int[] matchingSegments;
+        private transient int numMatchingSegments;
+        
+        /** Scratch space for sorting the segments by cell */
+        private transient long[] sortKeys;
+        private transient long[] sortKeyBuffer;
+        private transient int[] sortBuffer;
+        
         public Activity(int[] numConnected, int[] numPotential) {
             this.numActiveConnected = numConnected;
             this.numActivePotential = numPotential;
+            allocateSegmentLists(numPotential.length);
+        }
+        
+        private void allocateSegmentLists(int capacity) {
+            touchedSegments = new int[capacity];
+            activeSegments = new int[capacity];
+            matchingSegments = new int[capacity];
+        }
+        
+        /**
+         * Clears the counters touched by the previous computation and makes room
+         * for {@code numSegments} segments.
+         * 
+         * @param numSegments           the number of segment flat indexes in use
+         * @param activationThreshold   connected synapse count at which a segment is active
+         * @param minThreshold          potential synapse count at which a segment is matching
+         */
+        public void reset(int numSegments, int activationThreshold, int minThreshold) {
+            if(touchedSegments == null) {
+                // Deserialized: which counters were touched is not known, so clear them all
+                Arrays.fill(numActiveConnected, 0);
+                Arrays.fill(numActivePotential, 0);
+                allocateSegmentLists(numActivePotential.length);
+            }
+            for(int i = 0;i < numTouchedSegments;i++) {
+                int flatIdx = touchedSegments[i];
+                numActiveConnected[flatIdx] = 0;
+                numActivePotential[flatIdx] = 0;
+            }
+            numTouchedSegments = 0;
+            numActiveSegments = 0;
+            numMatchingSegments = 0;
+            
+            if(numSegments > numActivePotential.length) {
+                int capacity = Math.max(numSegments, numActivePotential.length * 2);
+                numActiveConnected = Arrays.copyOf(numActiveConnected, capacity);
+                numActivePotential = Arrays.copyOf(numActivePotential, capacity);
+                allocateSegmentLists(capacity);
+            }
+            
+            this.activationThreshold = activationThreshold;
+            this.minThreshold = minThreshold;
+        }
+        
+        /**
+         * Counts one active synapse on the segment with the specified flat index,
+         * and records the segment as active or matching when it reaches the threshold.
+         * 
+         * @param flatIdx       the flat index of the synapse's segment
+         * @param connected     whether the synapse's permanence is above the connected threshold
+         */
+        public void addSynapse(int flatIdx, boolean connected) {
+            int numPotential = ++numActivePotential[flatIdx];
+            if(numPotential == 1) {
+                touchedSegments[numTouchedSegments++] = flatIdx;
+            }
+            if(numPotential == minThreshold) {
+                matchingSegments[numMatchingSegments++] = flatIdx;
+            }
+            if(connected && ++numActiveConnected[flatIdx] == activationThreshold) {
+                activeSegments[numActiveSegments++] = flatIdx;
+            }
+        }
+        
+        /**
+         * Returns the number of active segments.
+         * @return  the number of active segments
+         */
+        public int getNumActiveSegments() {
+            return numActiveSegments;
+        }
+        
+        /**
+         * Returns the flat index of the i-th active segment, in cell order.
+         * @param i     position in the active segments
+         * @return  a segment flat index
+         */
+        public int getActiveSegment(int i) {
+            return activeSegments[i];
+        }
+        
+        /**
+         * Returns the number of matching segments.
+         * @return  the number of matching segments
+         */
+        public int getNumMatchingSegments() {
+            return numMatchingSegments;
+        }
+        
+        /**
+         * Returns the flat index of the i-th matching segment, in cell order.
+         * @param i     position in the matching segments
+         * @return  a segment flat index
+         */
+        public int getMatchingSegment(int i) {
+            return matchingSegments[i];
         }
     }
     
@@ -1331,26 +1506,176 @@ public class Connections implements Persistable {
      * @return
      */
     public Activity computeActivity(Collection<Cell> activePresynapticCells, double connectedPermanence) {
-        int[] numActiveConnectedSynapsesForSegment = new int[nextFlatIdx];//nextFlatIdx基本上指树突的总数，这里为每一个树突建立一个统计其连接突触数量的数组
-        int[] numActivePotentialSynapsesForSegment = new int[nextFlatIdx];//nextFlatIdx基本上指树突的总数，这里为每一个树突建立一个统计其潜在突触数量的数组
+        return computeActivity(activePresynapticCells, connectedPermanence, activationThreshold, minThreshold);
+    }
+    
+    /**
+     * Compute each segment's number of active synapses for a given input, and
+     * collect the active and matching segments ordered by cell
+     * (see {@link #segmentPositionSortKey}).
+     * <p>
+     * The work is proportional to the number of synapses of the active cells: the
+     * returned {@link Activity} is this {@code Connections}' workspace, reused by the next call.
+     * </p>
+     * 计算量只和激活单元的突触数量有关，激活和匹配的树突在计数的同时收集，并按所属单元排好序
+     * @param activePresynapticCells    the active cells
+     * @param connectedPermanence       permanence above which a synapse is connected
+     * @param activationThreshold       connected synapse count at which a segment is active
+     * @param minThreshold              potential synapse count at which a segment is matching
+     * @return  the activity workspace
+     */
+    public Activity computeActivity(Collection<Cell> activePresynapticCells, double connectedPermanence,
+        int activationThreshold, int minThreshold) {
+        
+        Activity activity = prepareActivity(activationThreshold, minThreshold);
         
         double threshold = connectedPermanence - EPSILON;//阈值
         
         for(Cell cell : activePresynapticCells)//对于每一个给定的激活的单元
         {
-            for(Synapse synapse : getReceptorSynapses(cell)) //获取以这个单元为突触前单元的突出列表，那么这个激活的神经元会通过突触向连接神经元传导激活性
-            {
-                int flatIdx = synapse.getSegment().getIndex();//获取这个突触对应的树突的索引
-                ++numActivePotentialSynapsesForSegment[flatIdx];//为树突索引所代表的树突的潜在突触数量+1，对于每一个激活的单元，如果有其他几个树突连接到这个单元，那么每个树突的潜在连接突触的数量增加1，这里实际上记录的是每个树突潜在输入的刺激数量
-                if(synapse.getPermanence() > threshold) {
-                    ++numActiveConnectedSynapsesForSegment[flatIdx];//对于突触的持久度值大于阈值的突触，为树突索引所代表的树突的连接突触数量+1
+            addCellActivity(activity, cell.getIndex(), threshold);
+        }
+        
+        return finishActivity(activity);
+    }
+    
+    /**
+     * Same as {@link #computeActivity(Collection, double, int, int)} for active
+     * cells given by index.
+     * @param activeCellIndices         the active cell indexes
+     * @param numActiveCells            the number of leading entries of activeCellIndices to use
+     * @param connectedPermanence       permanence above which a synapse is connected
+     * @param activationThreshold       connected synapse count at which a segment is active
+     * @param minThreshold              potential synapse count at which a segment is matching
+     * @return  the activity workspace
+     */
+    public Activity computeActivity(int[] activeCellIndices, int numActiveCells, double connectedPermanence,
+        int activationThreshold, int minThreshold) {
+        
+        Activity activity = prepareActivity(activationThreshold, minThreshold);
+        
+        double threshold = connectedPermanence - EPSILON;
+        
+        for(int i = 0;i < numActiveCells;i++) {
+            addCellActivity(activity, activeCellIndices[i], threshold);
+        }
+        
+        return finishActivity(activity);
+    }
+    
+    /**
+     * Counts the synapses of one active presynaptic cell into the workspace.
+     * @param activity      the workspace returned by {@link #prepareActivity(int, int)}
+     * @param cellIdx       the index of the active cell
+     * @param threshold     permanence above which a synapse is connected
+     */
+    protected void addCellActivity(Activity activity, int cellIdx, double threshold) {
+        for(Synapse synapse : getReceptorSynapses(cells[cellIdx])) //获取以这个单元为突触前单元的突出列表，那么这个激活的神经元会通过突触向连接神经元传导激活性
+        {
+            activity.addSynapse(synapse.getSegment().getIndex(), synapse.getPermanence() > threshold);
+        }
+    }
+    
+    /**
+     * Returns the activity workspace, cleared and sized for the current segments.
+     * @param activationThreshold       connected synapse count at which a segment is active
+     * @param minThreshold              potential synapse count at which a segment is matching
+     * @return  the activity workspace
+     */
+    protected Activity prepareActivity(int activationThreshold, int minThreshold) {
+        if(activityWorkspace == null) {
+            activityWorkspace = new Activity(new int[nextFlatIdx], new int[nextFlatIdx]);
+        }
+        activityWorkspace.reset(nextFlatIdx, activationThreshold, minThreshold);
+        return activityWorkspace;
+    }
+    
+    /**
+     * Orders the active and matching segments collected in the workspace by cell
+     * and makes it the last activity.
+     * @param activity  the workspace returned by {@link #prepareActivity(int, int)}
+     * @return  the finished activity
+     */
+    protected Activity finishActivity(Activity activity) {
+        if(activity.activationThreshold <= 0 || activity.minThreshold <= 0) {
+            // Segments without any active synapse qualify too, so fall back to a full scan
+            activity.numActiveSegments = 0;
+            activity.numMatchingSegments = 0;
+            for(int flatIdx = 0;flatIdx < nextFlatIdx;flatIdx++) {
+                if(segmentForFlatIdx.get(flatIdx) == null) continue;
+                if(activity.numActiveConnected[flatIdx] >= activity.activationThreshold) {
+                    activity.activeSegments[activity.numActiveSegments++] = flatIdx;
+                }
+                if(activity.numActivePotential[flatIdx] >= activity.minThreshold) {
+                    activity.matchingSegments[activity.numMatchingSegments++] = flatIdx;
                 }
             }
         }
         
-    	return lastActivity = new Activity(
-    	    numActiveConnectedSynapsesForSegment, 
-    	        numActivePotentialSynapsesForSegment);
+        sortByCell(activity, activity.activeSegments, activity.numActiveSegments);
+        sortByCell(activity, activity.matchingSegments, activity.numMatchingSegments);
+        
+        return lastActivity = activity;
+    }
+    
+    /**
+     * Sorts segment flat indexes by parent cell, then by ordinal, which is the
+     * order of {@link #segmentPositionSortKey}.
+     */
+    private void sortByCell(Activity activity, int[] flatIdxs, int length) {
+        if(length < 2) return;
+        
+        if(activity.sortKeys == null || activity.sortKeys.length < length) {
+            int capacity = activity.sortKeys == null ? length : Math.max(length, activity.sortKeys.length * 2);
+            activity.sortKeys = new long[capacity];
+            activity.sortKeyBuffer = new long[capacity];
+            activity.sortBuffer = new int[capacity];
+        }
+        
+        long[] keys = activity.sortKeys;
+        for(int i = 0;i < length;i++) {
+            DistalDendrite segment = segmentForFlatIdx.get(flatIdxs[i]);
+            keys[i] = ((long)segment.getParentCell().getIndex() << 32) | segment.getOrdinal();
+        }
+        
+        mergeSort(keys, flatIdxs, activity.sortKeyBuffer, activity.sortBuffer, 0, length);
+    }
+    
+    /**
+     * Sorts values[from, to) by keys[from, to), moving both arrays.
+     */
+    private static void mergeSort(long[] keys, int[] values, long[] keyBuffer, int[] valueBuffer, int from, int to) {
+        if(to - from < 16) {
+            for(int i = from + 1;i < to;i++) {
+                long key = keys[i];
+                int value = values[i];
+                int j = i - 1;
+                for(;j >= from && keys[j] > key;j--) {
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                }
+                keys[j + 1] = key;
+                values[j + 1] = value;
+            }
+            return;
+        }
+        
+        int mid = (from + to) >>> 1;
+        mergeSort(keys, values, keyBuffer, valueBuffer, from, mid);
+        mergeSort(keys, values, keyBuffer, valueBuffer, mid, to);
+        if(keys[mid - 1] <= keys[mid]) return;
+        
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(values, from, valueBuffer, from, to - from);
+        for(int i = from, l = from, r = mid;i < to;i++) {
+            if(r >= to || (l < mid && keyBuffer[l] <= keyBuffer[r])) {
+                keys[i] = keyBuffer[l];
+                values[i] = valueBuffer[l++];
+            } else {
+                keys[i] = keyBuffer[r];
+                values[i] = valueBuffer[r++];
+            }
+        }
     }
     
     /**
@@ -1371,6 +1696,9 @@ public class Connections implements Persistable {
      */
     public void recordSegmentActivity(DistalDendrite segment) {
     	segment.setLastUsedIteration(tmIteration);
+    	if(changes != null) {
+    	    changes.usedSegments[segment.getIndex()] = true;
+    	}
     }
     
     /**
@@ -1383,6 +1711,90 @@ public class Connections implements Persistable {
     }
     
     
+    /////////////////////////////////////////////////////////////////
+    //                     Change Tracking                         //
+    /////////////////////////////////////////////////////////////////
+    
+    /**
+     * Starts recording which columns and segments change, forgetting any changes
+     * recorded so far. Called right after a base check point is taken, so that
+     * the following check points can be written as deltas (see {@link ConnectionsDelta}).
+     * 开始记录改变过的列和树突，在基础检查点之后调用
+     */
+    public void beginChangeTracking() {
+        changes = new ConnectionsDelta.Changes(getNumColumns(), nextFlatIdx);
+    }
+    
+    /**
+     * Stops recording changes.
+     */
+    public void endChangeTracking() {
+        changes = null;
+    }
+    
+    /**
+     * Returns a flag indicating whether changes are being recorded.
+     * @return  true if {@link #beginChangeTracking()} was called, and not
+     *          followed by {@link #endChangeTracking()}
+     */
+    public boolean isTrackingChanges() {
+        return changes != null;
+    }
+    
+    /**
+     * Returns the changes recorded since tracking began or since the last delta,
+     * or null if changes aren't being tracked.
+     * @return  the recorded changes
+     */
+    ConnectionsDelta.Changes getChanges() {
+        return changes;
+    }
+    
+    /**
+     * Records that the proximal permanences of the specified column changed.
+     * @param column    the index of the column
+     */
+    public void markColumnChanged(int column) {
+        if(changes != null) {
+            changes.columns[column] = true;
+        }
+    }
+    
+    /**
+     * Records that the proximal permanences of the specified columns changed.
+     * @param columns   the indexes of the columns
+     */
+    public void markColumnsChanged(int[] columns) {
+        if(changes != null) {
+            for(int column : columns) {
+                changes.columns[column] = true;
+            }
+        }
+    }
+    
+    /**
+     * Records a newly created segment. Segments are only created by a single
+     * thread, which is also the only place the change flags grow.
+     * @param flatIdx   the flat index of the segment
+     */
+    protected void markSegmentCreated(int flatIdx) {
+        if(changes != null) {
+            changes.ensureSegment(flatIdx);
+            changes.segments[flatIdx] = true;
+        }
+    }
+    
+    /**
+     * Records that the specified segment, or one of its synapses, changed.
+     * @param flatIdx   the flat index of the segment
+     */
+    protected void markSegmentChanged(int flatIdx) {
+        if(changes != null) {
+            changes.segments[flatIdx] = true;
+        }
+    }
+    
+    
 	/////////////////////////////////////////////////////////////////
 	//     Segment (Specifically, Distal Dendrite) Operations      //
 	/////////////////////////////////////////////////////////////////
@@ -1420,10 +1832,41 @@ public class Connections implements Persistable {
     	DistalDendrite segment = new DistalDendrite(cell, flatIdx, tmIteration, ordinal);//创建一个新的基底树突，cell指这个树突所属的单元，flatIdx指的是这个树突的全局编号，tmIteration标记的时间，ordinal标记的是这个树突的创建先后
     	getSegments(cell, true).add(segment);//把这个树突添加至单元的树突集合
     	segmentForFlatIdx.set(flatIdx, segment);//在树突的存储容器中设置上这个新添加的树突
+    	markSegmentCreated(flatIdx);
     	
     	return segment;
     }
     
+    /**
+     * Puts back a segment written by a delta check point, with its original flat
+     * index, ordinal and last used iteration. The flat index must be free; the
+     * segment counters are left alone, {@link ConnectionsDelta} restores them
+     * once the whole delta has been applied.
+     * 按原来的全局编号恢复一个树突
+     * 
+     * @param cell              the Cell owning the segment
+     * @param flatIdx           the segment's flat index
+     * @param ordinal           the segment's creation ordinal
+     * @param lastUsedIteration the iteration the segment was last active in
+     * @return  the restored segment
+     */
+    DistalDendrite restoreSegment(Cell cell, int flatIdx, int ordinal, long lastUsedIteration) {
+        while(segmentForFlatIdx.size() <= flatIdx) {
+            segmentForFlatIdx.add(null);
+        }
+        
+        DistalDendrite segment = new DistalDendrite(cell, flatIdx, lastUsedIteration, ordinal);
+        List<DistalDendrite> cellSegments = getSegments(cell, true);
+        int position = cellSegments.size();
+        while(position > 0 && cellSegments.get(position - 1).getOrdinal() > ordinal) {
+            position--;
+        }
+        cellSegments.add(position, segment);
+        segmentForFlatIdx.set(flatIdx, segment);
+        
+        return segment;
+    }
+    
     /**
      * Destroys a segment ({@link DistalDendrite})
      * @param segment   the segment to destroy
@@ -1445,6 +1888,7 @@ public class Connections implements Persistable {
         // garbage-collected.示范flatIdx并删除最终引用，这样就可以对这个树突进行垃圾回收
     	freeFlatIdxs.add(segment.getIndex());//在拟销毁的数组中登记这个树突的索引
     	segmentForFlatIdx.set(segment.getIndex(), null);///把这个树突对应的索引设置为空
+    	markSegmentChanged(segment.getIndex());
     }
     
     /**
@@ -1625,6 +2069,7 @@ public class Connections implements Persistable {
 	            presynapticCell, segment, nextSynapseOrdinal, permanence));//新建一个突触，并添加到这个树突的突触集合列表里面，请注意所有的突触都是在这个位置添加的
 	    
         getReceptorSynapses(presynapticCell, true).add(synapse);//返回突触前单元的连接突触列表，并把新建的突触添加进去
+        markSegmentChanged(segment.getIndex());
         
         ++nextSynapseOrdinal;//突触的创建标记
         
@@ -1644,6 +2089,7 @@ public class Connections implements Persistable {
         removeSynapseFromPresynapticMap(synapse);
         
         getSynapses((DistalDendrite)synapse.getSegment()).remove(synapse);
+        markSegmentChanged(synapse.getSegment().getIndex());
     }
     
     /**
@@ -0,0 +1,407 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Writes and replays the changes made to a {@link Connections} since its last
+ * check point.
+ * <p>
+ * Once {@link Connections#beginChangeTracking()} is called, the {@code Connections}
+ * flags every column whose proximal permanences change and every distal segment
+ * which is created, destroyed, grows or loses synapses, or has a permanence adapted
+ * (see {@link Changes}). {@link #write(Connections, DataOutput)} then writes only
+ * the flagged columns and segments, followed by the small amount of state which
+ * changes on every cycle anyway (iteration counters, duty cycles, boost factors,
+ * the previous cycle's active cells and segments, and the random generator), and
+ * clears the flags. Applying the deltas in order with {@link #apply(Connections, DataInput)}
+ * to the {@code Connections} of the base snapshot restores the state it had when
+ * the last delta was written.
+ * </p><p>
+ * Segments are written whole: a flagged segment is rebuilt on replay with the same
+ * flat index, ordinal and synapses (ordinal, presynaptic cell and permanence), so
+ * later deltas (and the segment counters) keep referring to the same segments.
+ * </p>
+ * 只记录上次检查点以后改变过的列和树突，按顺序回放到基础快照上即可恢复状态
+ * 
+ * @see Connections#beginChangeTracking()
+ */
+public final class ConnectionsDelta {
+    private ConnectionsDelta() {}
+    
+    /**
+     * The columns and segments changed since the last delta. Flags are kept in
+     * plain arrays indexed by column and segment flat index: the index based
+     * {@code TemporalMemory} adapts the permanences of different columns on
+     * several threads, and writes to distinct elements of a {@code boolean[]}
+     * never interfere. The segment arrays only grow on the (serial) creation
+     * of segments.
+     */
+    static final class Changes {
+        /** Columns whose proximal permanences changed */
+        boolean[] columns;
+        /** Segments created, destroyed, or whose synapses changed */
+        boolean[] segments;
+        /** Segments whose last used iteration was recorded */
+        boolean[] usedSegments;
+        
+        Changes(int numColumns, int numSegments) {
+            columns = new boolean[numColumns];
+            segments = new boolean[numSegments];
+            usedSegments = new boolean[numSegments];
+        }
+        
+        /**
+         * Makes room for a segment with the specified flat index.
+         */
+        void ensureSegment(int flatIdx) {
+            if(flatIdx >= segments.length) {
+                int capacity = Math.max(flatIdx + 1, segments.length * 2);
+                segments = Arrays.copyOf(segments, capacity);
+                usedSegments = Arrays.copyOf(usedSegments, capacity);
+            }
+        }
+        
+        void clear() {
+            Arrays.fill(columns, false);
+            Arrays.fill(segments, false);
+            Arrays.fill(usedSegments, false);
+        }
+    }
+    
+    /**
+     * Writes the changes of the specified {@link Connections} since change tracking
+     * began or since the previous delta, and clears them.
+     * 
+     * @param c     the {@link Connections} to write the changes of
+     * @param out   the output to write to
+     * @throws IOException              if writing fails
+     * @throws IllegalStateException    if the {@code Connections} isn't tracking changes
+     */
+    public static void write(Connections c, DataOutput out) throws IOException {
+        Changes changes = c.getChanges();
+        if(changes == null) {
+            throw new IllegalStateException("Connections is not tracking changes");
+        }
+        
+        // Spatial pooler state which changes on every learning cycle
+        out.writeInt(c.spIterationNum);
+        out.writeInt(c.spIterationLearnNum);
+        out.writeInt(c.getInhibitionRadius());
+        writeDoubles(out, c.getOverlapDutyCycles());
+        writeDoubles(out, c.getActiveDutyCycles());
+        writeDoubles(out, c.getMinOverlapDutyCycles());
+        writeDoubles(out, c.getMinActiveDutyCycles());
+        writeDoubles(out, c.getBoostFactors());
+        
+        // Proximal permanences of the changed columns
+        TIntArrayList columns = flagged(changes.columns, changes.columns.length);
+        out.writeInt(columns.size());
+        for(int i = 0;i < columns.size();i++) {
+            int column = columns.get(i);
+            List<Synapse> synapses = c.getSynapses(c.getColumn(column).getProximalDendrite());
+            out.writeInt(column);
+            out.writeInt(synapses.size());
+            for(Synapse s : synapses) {
+                out.writeInt(s.getInputIndex());
+                out.writeDouble(s.getPermanence());
+            }
+        }
+        
+        // Distal segments
+        out.writeLong(c.tmIteration);
+        out.writeInt(c.nextFlatIdx);
+        out.writeInt(c.nextSegmentOrdinal);
+        out.writeInt(c.nextSynapseOrdinal);
+        writeInts(out, c.freeFlatIdxs.toArray());
+        
+        TIntArrayList segments = flagged(changes.segments, c.nextFlatIdx);
+        out.writeInt(segments.size());
+        for(int i = 0;i < segments.size();i++) {
+            int flatIdx = segments.get(i);
+            DistalDendrite segment = c.segmentForFlatIdx(flatIdx);
+            out.writeInt(flatIdx);
+            if(segment == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            List<Synapse> synapses = c.getSynapses(segment);
+            out.writeInt(segment.getParentCell().getIndex());
+            out.writeInt(segment.getOrdinal());
+            out.writeLong(segment.lastUsedIteration());
+            out.writeInt(synapses.size());
+            for(Synapse s : synapses) {
+                out.writeInt(s.getIndex());
+                out.writeInt(s.getPresynapticCell().getIndex());
+                out.writeDouble(s.getPermanence());
+            }
+        }
+        
+        TIntArrayList used = new TIntArrayList();
+        for(int flatIdx = 0, n = Math.min(c.nextFlatIdx, changes.usedSegments.length);flatIdx < n;flatIdx++) {
+            if(changes.usedSegments[flatIdx] && !changes.segments[flatIdx] && c.segmentForFlatIdx(flatIdx) != null) {
+                used.add(flatIdx);
+            }
+        }
+        out.writeInt(used.size());
+        for(int i = 0;i < used.size();i++) {
+            out.writeInt(used.get(i));
+            out.writeLong(c.segmentForFlatIdx(used.get(i)).lastUsedIteration());
+        }
+        
+        // State carried from the previous temporal memory cycle into the next
+        writeInts(out, cellIndexes(c.getActiveCells()));
+        writeInts(out, cellIndexes(c.getWinnerCells()));
+        writeInts(out, segmentIndexes(c.getActiveSegments()));
+        writeInts(out, segmentIndexes(c.getMatchingSegments()));
+        writeActivity(out, c.getLastActivity(), c.nextFlatIdx);
+        
+        ByteArrayOutputStream random = new ByteArrayOutputStream();
+        try(ObjectOutputStream oos = new ObjectOutputStream(random)) {
+            oos.writeObject(c.getRandom());
+        }
+        out.writeInt(random.size());
+        out.write(random.toByteArray());
+        
+        changes.clear();
+    }
+    
+    /**
+     * Applies one delta written by {@link #write(Connections, DataOutput)} to the
+     * specified {@link Connections}, which must hold the state the delta was
+     * written on top of (the base snapshot, plus all earlier deltas).
+     * 
+     * @param c     the {@link Connections} to update
+     * @param in    the input to read the delta from
+     * @throws IOException  if reading fails
+     */
+    public static void apply(Connections c, DataInput in) throws IOException {
+        c.spIterationNum = in.readInt();
+        c.spIterationLearnNum = in.readInt();
+        int inhibitionRadius = in.readInt();
+        if(inhibitionRadius != c.getInhibitionRadius()) {
+            c.setInhibitionRadius(inhibitionRadius);
+        }
+        c.setOverlapDutyCycles(readDoubles(in));
+        c.setActiveDutyCycles(readDoubles(in));
+        c.setMinOverlapDutyCycles(readDoubles(in));
+        c.setMinActiveDutyCycles(readDoubles(in));
+        c.setBoostFactors(readDoubles(in));
+        
+        for(int i = 0, numColumns = in.readInt();i < numColumns;i++) {
+            int column = in.readInt();
+            int size = in.readInt();
+            int[] inputIndexes = new int[size];
+            double[] permanences = new double[size];
+            for(int j = 0;j < size;j++) {
+                inputIndexes[j] = in.readInt();
+                permanences[j] = in.readDouble();
+            }
+            c.getColumn(column).setProximalPermanencesSparse(c, permanences, inputIndexes);
+        }
+        
+        c.tmIteration = in.readLong();
+        int nextFlatIdx = in.readInt();
+        int nextSegmentOrdinal = in.readInt();
+        int nextSynapseOrdinal = in.readInt();
+        int[] freeFlatIdxs = readInts(in);
+        
+        for(int i = 0, numSegments = in.readInt();i < numSegments;i++) {
+            int flatIdx = in.readInt();
+            DistalDendrite existing = flatIdx < c.segmentForFlatIdx.size() ? c.segmentForFlatIdx(flatIdx) : null;
+            if(existing != null) {
+                c.destroySegment(existing);
+            }
+            
+            int cell = in.readInt();
+            if(cell == -1) continue;
+            
+            int ordinal = in.readInt();
+            long lastUsed = in.readLong();
+            DistalDendrite segment = c.restoreSegment(c.getCell(cell), flatIdx, ordinal, lastUsed);
+            for(int j = 0, numSynapses = in.readInt();j < numSynapses;j++) {
+                c.nextSynapseOrdinal = in.readInt();
+                int presynapticCell = in.readInt();
+                c.createSynapse(segment, c.getCell(presynapticCell), in.readDouble());
+            }
+        }
+        
+        for(int i = 0, numUsed = in.readInt();i < numUsed;i++) {
+            int flatIdx = in.readInt();
+            c.segmentForFlatIdx(flatIdx).setLastUsedIteration(in.readLong());
+        }
+        
+        while(c.segmentForFlatIdx.size() < nextFlatIdx) {
+            c.segmentForFlatIdx.add(null);
+        }
+        c.nextFlatIdx = nextFlatIdx;
+        c.nextSegmentOrdinal = nextSegmentOrdinal;
+        c.nextSynapseOrdinal = nextSynapseOrdinal;
+        c.freeFlatIdxs = new TIntArrayList(freeFlatIdxs);
+        
+        c.setActiveCells(cellSet(c, readInts(in)));
+        c.setWinnerCells(cellSet(c, readInts(in)));
+        c.setActiveSegments(segmentList(c, readInts(in)));
+        c.setMatchingSegments(segmentList(c, readInts(in)));
+        c.lastActivity = readActivity(in);
+        
+        byte[] random = new byte[in.readInt()];
+        in.readFully(random);
+        try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(random))) {
+            c.setRandom((Random)ois.readObject());
+        }catch(ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+    
+    private static TIntArrayList flagged(boolean[] flags, int limit) {
+        TIntArrayList indexes = new TIntArrayList();
+        for(int i = 0, n = Math.min(limit, flags.length);i < n;i++) {
+            if(flags[i]) indexes.add(i);
+        }
+        return indexes;
+    }
+    
+    private static int[] cellIndexes(Set<Cell> cells) {
+        int[] indexes = new int[cells.size()];
+        int i = 0;
+        for(Cell cell : cells) {
+            indexes[i++] = cell.getIndex();
+        }
+        return indexes;
+    }
+    
+    private static int[] segmentIndexes(List<DistalDendrite> segments) {
+        int[] indexes = new int[segments.size()];
+        for(int i = 0;i < indexes.length;i++) {
+            indexes[i] = segments.get(i).getIndex();
+        }
+        return indexes;
+    }
+    
+    private static Set<Cell> cellSet(Connections c, int[] indexes) {
+        Set<Cell> cells = new LinkedHashSet<>();
+        for(int index : indexes) {
+            cells.add(c.getCell(index));
+        }
+        return cells;
+    }
+    
+    private static List<DistalDendrite> segmentList(Connections c, int[] indexes) {
+        List<DistalDendrite> segments = new ArrayList<>(indexes.length);
+        for(int index : indexes) {
+            segments.add(c.segmentForFlatIdx(index));
+        }
+        return segments;
+    }
+    
+    /**
+     * Writes the non zero segment counts of the previous cycle's activity, which
+     * the next cycle reads for its matching segments.
+     */
+    private static void writeActivity(DataOutput out, Connections.Activity activity, int numSegments) throws IOException {
+        if(activity == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int length = Math.min(numSegments, activity.numActivePotential.length);
+        TIntArrayList touched = new TIntArrayList();
+        for(int i = 0;i < length;i++) {
+            if(activity.numActivePotential[i] != 0) touched.add(i);
+        }
+        out.writeInt(numSegments);
+        out.writeInt(touched.size());
+        for(int i = 0;i < touched.size();i++) {
+            int flatIdx = touched.get(i);
+            out.writeInt(flatIdx);
+            out.writeInt(activity.numActiveConnected[flatIdx]);
+            out.writeInt(activity.numActivePotential[flatIdx]);
+        }
+    }
+    
+    private static Connections.Activity readActivity(DataInput in) throws IOException {
+        int length = in.readInt();
+        if(length == -1) return null;
+        
+        int[] numConnected = new int[length];
+        int[] numPotential = new int[length];
+        for(int i = 0, n = in.readInt();i < n;i++) {
+            int flatIdx = in.readInt();
+            numConnected[flatIdx] = in.readInt();
+            numPotential[flatIdx] = in.readInt();
+        }
+        return new Connections.Activity(numConnected, numPotential);
+    }
+    
+    private static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for(int v : values) {
+            out.writeInt(v);
+        }
+    }
+    
+    private static int[] readInts(DataInput in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for(int i = 0;i < values.length;i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+    
+    private static void writeDoubles(DataOutput out, double[] values) throws IOException {
+        if(values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for(double v : values) {
+            out.writeDouble(v);
+        }
+    }
+    
+    private static double[] readDoubles(DataInput in) throws IOException {
+        int length = in.readInt();
+        if(length == -1) return null;
+        
+        double[] values = new double[length];
+        for(int i = 0;i < length;i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+}
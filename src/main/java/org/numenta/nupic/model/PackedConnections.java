@@ -0,0 +1,520 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.numenta.nupic.algorithms.TemporalMemory;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * A {@link Connections} whose distal synapses are kept in primitive parallel
+ * arrays instead of one {@link Synapse} object per synapse.
+ * <p>
+ * Every synapse lives in a slot. The slot arrays hold the owning segment's
+ * flat index, the presynaptic cell index, the permanence and the creation
+ * ordinal. Each segment (by flat index) and each presynaptic cell (by cell index)
+ * keeps an {@code int[]} list of its slots, so computing segment activity
+ * walks primitive arrays only. Slots freed by destroyed synapses go on a free list
+ * and are handed out again before the arrays grow.
+ * </p><p>
+ * {@link TemporalMemory} runs on this class unchanged: {@link #getSynapses(DistalDendrite)}
+ * and {@link #getReceptorSynapses(Cell, boolean)} return snapshots of lightweight
+ * {@code Synapse} views whose permanence reads and writes go straight to the slot.
+ * A view whose slot has since been freed reports {@link Synapse#destroyed()} and is
+ * ignored by {@link #destroySynapse(Synapse)}.
+ * </p>
+ * Segments, cells, columns and all spatial pooler state are the same as in {@link Connections}.
+ * 与Connections相同，只是基底树突的突触用基本类型的平行数组存储，不再为每个突触创建对象
+ */
+public class PackedConnections extends Connections {
+    /** keep it simple */
+    private static final long serialVersionUID = 1L;
+
+    private static final double EPSILON = 0.00001;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int INITIAL_LIST_SIZE = 4;
+
+    /** Flat index of the segment owning each slot, -1 for a free slot */
+    private int[] synapseSegment = new int[INITIAL_CAPACITY];
+    /** Presynaptic cell index of each slot */
+    private int[] synapseCell = new int[INITIAL_CAPACITY];
+    /** Position of each slot within its presynaptic cell's slot list */
+    private int[] synapseCellPosition = new int[INITIAL_CAPACITY];
+    /** Creation ordinal of each slot's synapse */
+    private int[] synapseOrdinal = new int[INITIAL_CAPACITY];
+    private double[] synapsePermanence = new double[INITIAL_CAPACITY];
+    /** Number of slots ever handed out */
+    private int synapseSlots;
+    /** Freed slots waiting to be reused */
+    private TIntArrayList freeSynapseSlots = new TIntArrayList();
+
+    /** Slots of each segment in creation order, indexed by the segment's flat index */
+    private int[][] segmentSynapses = new int[0][];
+    private int[] segmentSynapseCount = new int[0];
+
+    /** Slots fed by each presynaptic cell, indexed by cell index, unordered */
+    private int[][] cellSynapses = new int[0][];
+    private int[] cellSynapseCount = new int[0];
+
+    public PackedConnections() {}
+
+    /**
+     * {@inheritDoc}
+     * 只遍历激活单元的突触槽位数组
+     */
+    @Override
+    protected void addCellActivity(Activity activity, int cellIdx, double threshold) {
+        if(cellIdx >= cellSynapses.length) return;
+
+        int[] slots = cellSynapses[cellIdx];
+        for(int i = 0, n = cellSynapseCount[cellIdx];i < n;i++) {
+            int slot = slots[i];
+            activity.addSynapse(synapseSegment[slot], synapsePermanence[slot] > threshold);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroySegment(DistalDendrite segment) {
+        int flatIdx = segment.getIndex();
+        if(flatIdx < segmentSynapseCount.length) {
+            int[] slots = segmentSynapses[flatIdx];
+            int len = segmentSynapseCount[flatIdx];
+            for(int i = 0;i < len;i++) {
+                freeSlot(slots[i]);
+            }
+            segmentSynapseCount[flatIdx] = 0;
+            numSynapses -= len;
+        }
+
+        getSegments(segment.getParentCell()).remove(segment);
+
+        freeFlatIdxs.add(flatIdx);
+        segmentForFlatIdx.set(flatIdx, null);
+        markSegmentChanged(flatIdx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Synapse createSynapse(DistalDendrite segment, Cell presynapticCell, double permanence) {
+        int flatIdx = segment.getIndex();
+        ensureSegment(flatIdx);
+        while(segmentSynapseCount[flatIdx] >= getMaxSynapsesPerSegment()) {
+            destroySlot(minPermanenceSlot(flatIdx));
+        }
+
+        int slot;
+        int len;
+        if((len = freeSynapseSlots.size()) > 0) {
+            slot = freeSynapseSlots.removeAt(len - 1);
+        } else {
+            slot = synapseSlots++;
+            ensureSlots(synapseSlots);
+        }
+
+        int cellIdx = presynapticCell.getIndex();
+        synapseSegment[slot] = flatIdx;
+        synapseCell[slot] = cellIdx;
+        synapseOrdinal[slot] = nextSynapseOrdinal;
+        synapsePermanence[slot] = permanence;
+
+        segmentSynapses[flatIdx] = append(segmentSynapses[flatIdx], segmentSynapseCount[flatIdx]++, slot);
+
+        ensureCell(cellIdx);
+        synapseCellPosition[slot] = cellSynapseCount[cellIdx];
+        cellSynapses[cellIdx] = append(cellSynapses[cellIdx], cellSynapseCount[cellIdx]++, slot);
+        markSegmentChanged(flatIdx);
+
+        ++nextSynapseOrdinal;
+
+        ++numSynapses;
+
+        return new SlotSynapse(this, slot);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Views whose slot has already been freed are ignored.
+     * </p>
+     */
+    @Override
+    public void destroySynapse(Synapse synapse) {
+        int slot = liveSlot(synapse);
+        if(slot != -1) {
+            destroySlot(slot);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The synapse stays on its segment but is no longer counted by
+     * {@code computeActivity}.
+     * </p>
+     */
+    @Override
+    public void removeSynapseFromPresynapticMap(Synapse synapse) {
+        int slot = liveSlot(synapse);
+        if(slot != -1) {
+            unlinkCell(slot);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long numSynapses(DistalDendrite optionalSegmentArg) {
+        if(optionalSegmentArg != null) {
+            int flatIdx = optionalSegmentArg.getIndex();
+            return flatIdx < segmentSynapseCount.length ? segmentSynapseCount[flatIdx] : 0;
+        }
+
+        return numSynapses;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned list is a snapshot of views in creation order; adding to or
+     * removing from it does not change this {@code Connections}.
+     * </p>
+     */
+    @Override
+    public List<Synapse> getSynapses(DistalDendrite segment) {
+        if(segment == null) {
+            throw new IllegalArgumentException("Segment was null");
+        }
+
+        int flatIdx = segment.getIndex();
+        int len = flatIdx < segmentSynapseCount.length ? segmentSynapseCount[flatIdx] : 0;
+        List<Synapse> retVal = new ArrayList<>(len);
+        for(int i = 0;i < len;i++) {
+            retVal.add(new SlotSynapse(this, segmentSynapses[flatIdx][i]));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned set is a snapshot of views; {@code doLazyCreate} has no effect.
+     * </p>
+     */
+    @Override
+    public Set<Synapse> getReceptorSynapses(Cell cell, boolean doLazyCreate) {
+        if(cell == null) {
+            throw new IllegalArgumentException("Cell was null");
+        }
+
+        int cellIdx = cell.getIndex();
+        int len = cellIdx < cellSynapseCount.length ? cellSynapseCount[cellIdx] : 0;
+        Set<Synapse> retVal = new LinkedHashSet<>();
+        for(int i = 0;i < len;i++) {
+            retVal.add(new SlotSynapse(this, cellSynapses[cellIdx][i]));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * <b>FOR TEST USE ONLY<b>
+     * @return
+     */
+    @Override
+    public Map<Cell, HashSet<Synapse>> getReceptorSynapseMapping() {
+        Map<Cell, HashSet<Synapse>> mapping = new LinkedHashMap<>();
+        for(int cellIdx = 0;cellIdx < cellSynapseCount.length;cellIdx++) {
+            if(cellSynapseCount[cellIdx] > 0) {
+                Cell cell = getCell(cellIdx);
+                mapping.put(cell, new LinkedHashSet<>(getReceptorSynapses(cell)));
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Returns the number of synapse slots allocated so far, live or free.
+     * 返回已经分配的突触槽位数量（包括空闲的槽位）
+     * @return  the number of slots
+     */
+    public int getSynapseSlotCount() {
+        return synapseSlots;
+    }
+
+    /**
+     * Returns the slot held by the specified view, or -1 if the view's
+     * synapse has been destroyed in the meantime.
+     */
+    private int liveSlot(Synapse synapse) {
+        if(!(synapse instanceof SlotSynapse)) {
+            throw new IllegalArgumentException("Synapse was not created by this PackedConnections: " + synapse);
+        }
+        SlotSynapse view = (SlotSynapse)synapse;
+        return view.isLive() ? view.slot : -1;
+    }
+
+    /**
+     * Removes a slot from its segment and presynaptic cell and frees it.
+     */
+    private void destroySlot(int slot) {
+        int flatIdx = synapseSegment[slot];
+        int[] slots = segmentSynapses[flatIdx];
+        int len = segmentSynapseCount[flatIdx];
+        for(int i = 0;i < len;i++) {
+            if(slots[i] == slot) {
+                // Keep creation order, it decides ties in minPermanenceSlot()
+                System.arraycopy(slots, i + 1, slots, i, len - i - 1);
+                break;
+            }
+        }
+        --segmentSynapseCount[flatIdx];
+        --numSynapses;
+        markSegmentChanged(flatIdx);
+
+        freeSlot(slot);
+    }
+
+    /**
+     * Unlinks a slot from its presynaptic cell and puts it on the free list.
+     */
+    private void freeSlot(int slot) {
+        unlinkCell(slot);
+        synapseSegment[slot] = -1;
+        freeSynapseSlots.add(slot);
+    }
+
+    /**
+     * Swap-removes a slot from its presynaptic cell's slot list.
+     */
+    private void unlinkCell(int slot) {
+        int pos = synapseCellPosition[slot];
+        if(pos == -1) return;
+
+        int cellIdx = synapseCell[slot];
+        int[] slots = cellSynapses[cellIdx];
+        int last = --cellSynapseCount[cellIdx];
+        if(pos != last) {
+            slots[pos] = slots[last];
+            synapseCellPosition[slots[pos]] = pos;
+        }
+        synapseCellPosition[slot] = -1;
+    }
+
+    /**
+     * Same choice as {@link Connections}: the lowest permanence, the oldest
+     * synapse winning ties within {@link #EPSILON}.
+     */
+    private int minPermanenceSlot(int flatIdx) {
+        int[] slots = segmentSynapses[flatIdx];
+        int min = -1;
+        double minPermanence = Double.MAX_VALUE;
+        for(int i = 0, len = segmentSynapseCount[flatIdx];i < len;i++) {
+            int slot = slots[i];
+            if(synapsePermanence[slot] < minPermanence - EPSILON) {
+                min = slot;
+                minPermanence = synapsePermanence[slot];
+            }
+        }
+        return min;
+    }
+
+    private void ensureSlots(int size) {
+        if(size <= synapseSegment.length) return;
+
+        int capacity = Math.max(size, synapseSegment.length * 2);
+        synapseSegment = Arrays.copyOf(synapseSegment, capacity);
+        synapseCell = Arrays.copyOf(synapseCell, capacity);
+        synapseCellPosition = Arrays.copyOf(synapseCellPosition, capacity);
+        synapseOrdinal = Arrays.copyOf(synapseOrdinal, capacity);
+        synapsePermanence = Arrays.copyOf(synapsePermanence, capacity);
+    }
+
+    private void ensureSegment(int flatIdx) {
+        if(flatIdx < segmentSynapses.length) return;
+
+        int capacity = Math.max(flatIdx + 1, segmentSynapses.length * 2);
+        segmentSynapses = Arrays.copyOf(segmentSynapses, capacity);
+        segmentSynapseCount = Arrays.copyOf(segmentSynapseCount, capacity);
+    }
+
+    private void ensureCell(int cellIdx) {
+        if(cellIdx < cellSynapses.length) return;
+
+        int capacity = Math.max(cellIdx + 1, getCells() == null ? 0 : getCells().length);
+        capacity = Math.max(capacity, cellSynapses.length * 2);
+        cellSynapses = Arrays.copyOf(cellSynapses, capacity);
+        cellSynapseCount = Arrays.copyOf(cellSynapseCount, capacity);
+    }
+
+    /**
+     * Stores value at position size, growing the list if needed.
+     */
+    private static int[] append(int[] list, int size, int value) {
+        if(list == null) {
+            list = new int[INITIAL_LIST_SIZE];
+        } else if(size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+        }
+        list[size] = value;
+        return list;
+    }
+
+    /* (non-Javadoc)
+     * @see org.numenta.nupic.model.Connections#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = super.hashCode();
+        for(int flatIdx = 0;flatIdx < segmentSynapseCount.length;flatIdx++) {
+            for(int i = 0;i < segmentSynapseCount[flatIdx];i++) {
+                int slot = segmentSynapses[flatIdx][i];
+                long temp = Double.doubleToLongBits(synapsePermanence[slot]);
+                result = prime * result + flatIdx;
+                result = prime * result + synapseCell[slot];
+                result = prime * result + (int)(temp ^ (temp >>> 32));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Two instances are equal when, besides the {@link Connections} state, every
+     * segment holds synapses to the same cells with the same permanences in the
+     * same order. Slot numbers are not compared.
+     * </p>
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj)
+            return true;
+        if(!super.equals(obj))
+            return false;
+        PackedConnections other = (PackedConnections)obj;
+        int numFlatIdxs = Math.max(segmentSynapseCount.length, other.segmentSynapseCount.length);
+        for(int flatIdx = 0;flatIdx < numFlatIdxs;flatIdx++) {
+            int len = flatIdx < segmentSynapseCount.length ? segmentSynapseCount[flatIdx] : 0;
+            int otherLen = flatIdx < other.segmentSynapseCount.length ? other.segmentSynapseCount[flatIdx] : 0;
+            if(len != otherLen)
+                return false;
+            for(int i = 0;i < len;i++) {
+                int slot = segmentSynapses[flatIdx][i];
+                int otherSlot = other.segmentSynapses[flatIdx][i];
+                if(synapseCell[slot] != other.synapseCell[otherSlot])
+                    return false;
+                if(synapseOrdinal[slot] != other.synapseOrdinal[otherSlot])
+                    return false;
+                if(synapsePermanence[slot] != other.synapsePermanence[otherSlot])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A {@link Synapse} view onto one slot of a {@link PackedConnections}.
+     * The view remembers the ordinal of the synapse it was created for, so
+     * it can tell when its slot has been freed or reused.
+     */
+    static class SlotSynapse extends Synapse {
+        private static final long serialVersionUID = 1L;
+
+        private final PackedConnections owner;
+        private final int slot;
+        private final int ordinal;
+
+        SlotSynapse(PackedConnections owner, int slot) {
+            super(owner.getCell(owner.synapseCell[slot]), owner.segmentForFlatIdx(owner.synapseSegment[slot]),
+                owner.synapseOrdinal[slot], owner.synapsePermanence[slot]);
+            this.owner = owner;
+            this.slot = slot;
+            this.ordinal = owner.synapseOrdinal[slot];
+        }
+
+        boolean isLive() {
+            return owner.synapseSegment[slot] != -1 && owner.synapseOrdinal[slot] == ordinal;
+        }
+
+        @Override
+        public double getPermanence() {
+            return isLive() ? owner.synapsePermanence[slot] : super.getPermanence();
+        }
+
+        @Override
+        public void setPermanence(Connections c, double perm) {
+            super.setPermanence(c, perm);
+            if(isLive()) {
+                owner.synapsePermanence[slot] = perm;
+            }
+        }
+
+        @Override
+        public void updatePermanence(double perm) {
+            super.updatePermanence(perm);
+            if(isLive()) {
+                owner.synapsePermanence[slot] = perm;
+            }
+        }
+
+        @Override
+        public boolean destroyed() {
+            return !isLive();
+        }
+
+        @Override
+        public int hashCode() {
+            return ordinal;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(obj == null || getClass() != obj.getClass())
+                return false;
+            SlotSynapse other = (SlotSynapse)obj;
+            return owner == other.owner && ordinal == other.ordinal;
+        }
+    }
+}
@@ -71,6 +71,7 @@ public class ProximalDendrite extends Segment implements Persistable {
     public void setPermanences(Connections c, double[] perms) {
         pool.resetConnections();//重置当前连接以准备新的持久度值调整
         c.getConnectedCounts().clearStatistics(index);//把当前突触的连接数量值清零
+        c.markColumnChanged(index);
         List<Synapse> synapses = c.getSynapses(this);//获取这个树突的突触列表
         for(Synapse s : synapses) { //对于突触列表中的每个突触，也就是只能更新已经建立的突触的持久度值，如果连突触都没有，那么这个持久度值是不会被更新进来的
             s.setPermanence(c, perms[s.getInputIndex()]);//设置突触的持久度值，请注意只有形成了潜在连接的突触才更新持久度值，没有形成的直接抛弃掉了
@@ -99,6 +100,7 @@ public class ProximalDendrite extends Segment implements Persistable {
     public void setPermanences(Connections c, double[] perms, int[] inputIndexes) {
         pool.resetConnections();
         c.getConnectedCounts().clearStatistics(index);
+        c.markColumnChanged(index);
         for(int i = 0;i < inputIndexes.length;i++) {
             pool.setPermanence(c, pool.getSynapseWithInput(inputIndexes[i]), perms[i]);
             if(perms[i] >= c.getSynPermConnected()) {
@@ -136,9 +136,22 @@ public class Synapse implements Persistable, Comparable<Synapse> {
         // On proximal dendrite which has no presynaptic cell
         if(sourceCell == null) {
             pool.updatePool(c, this, perm);
+        }else if(c != null) {
+            c.markSegmentChanged(segment.getIndex());
         }
     }
 
+    /**
+     * Sets this {@code Synapse}'s degree of connectedness without updating
+     * the {@link Pool}'s connected set. Only for callers which already know
+     * that the connected state of this {@code Synapse} doesn't change.
+     * 只修改持久度值，不更新池中的连接集合，调用者需要保证连接状态不变
+     * @param perm
+     */
+    public void updatePermanence(double perm) {
+        this.permanence = perm;
+    }
+
     /**
      * Returns the owning dendritic segment
      * @return
@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
 
 import org.joda.time.DateTime;
 import org.numenta.nupic.FieldMetaType;
@@ -199,6 +200,8 @@ public class Layer<T> implements Persistable {
     private transient PublishSubject<T> publisher = null;
     private transient Observable<Inference> userObservable;
     private transient Subscription subscription;
+    /** Loads {@link #connections} on first use, if this Layer was loaded lazily */
+    private transient volatile Supplier<Connections> pendingConnections;
     
     private volatile Inference currentInference;
 
@@ -303,6 +306,7 @@ public class Layer<T> implements Persistable {
     @SuppressWarnings("unchecked")
     @Override
     public Layer<T> preSerialize() {
+        materialize();
         isPostSerialized = false;
         return this;
     }
@@ -448,6 +452,8 @@ public class Layer<T> implements Persistable {
             return this;
         }
         
+        materialize();
+        
         params.apply(connections);
 
         if(sensor != null) {
@@ -927,8 +933,47 @@ public class Layer<T> implements Persistable {
      * @return      this {@code Layer}'s {@link Connections}
      */
     public Connections getConnections() {
+        materialize();
         return this.connections;
     }
+    
+    /**
+     * Sets the function which loads this {@code Layer}'s {@link Connections}
+     * when they are first needed, used when a {@link Network} is loaded lazily.
+     * 
+     * @param loader    the function returning the Connections
+     * @see PersistenceAPI#loadLazy(String)
+     */
+    void setPendingConnections(Supplier<Connections> loader) {
+        this.pendingConnections = loader;
+    }
+    
+    /**
+     * Loads this {@code Layer}'s {@link Connections} if the Layer was loaded lazily
+     * and they haven't been needed yet.
+     */
+    void materialize() {
+        if(pendingConnections != null) {
+            synchronized(this) {
+                Supplier<Connections> loader = pendingConnections;
+                if(loader != null) {
+                    connections = loader.get();
+                    pendingConnections = null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns a flag indicating whether this {@code Layer}'s {@link Connections}
+     * are loaded. Only a lazily loaded Layer which hasn't been used yet returns false.
+     * 
+     * @return  true if the Connections are loaded
+     * @see PersistenceAPI#loadLazy(String)
+     */
+    public boolean isMaterialized() {
+        return pendingConnections == null;
+    }
 
     /**
      * Processes a single element, sending the specified input up the configured
@@ -944,6 +989,8 @@ public class Layer<T> implements Persistable {
      * @param t     the input object who's type is generic.
      */
     public void compute(T t) {
+        materialize();
+        
         if(!isClosed) {
             close();
         }
@@ -1020,6 +1067,8 @@ public class Layer<T> implements Persistable {
      */
     @SuppressWarnings("unchecked")
     public void start() {
+        materialize();
+        
         if(isHalted) {
             restart(true);
             return;
@@ -1227,6 +1276,7 @@ public class Layer<T> implements Persistable {
      * matrix and state.
      */
     public Connections getMemory() {
+        materialize();
         return connections;
     }
 
@@ -1258,6 +1308,15 @@ public class Layer<T> implements Persistable {
         recordNum = 0;
         return this;
     }
+    
+    /**
+     * Restores the internal record count, used when replaying delta check points.
+     * 
+     * @param num   the record count to restore
+     */
+    void setRecordNum(int num) {
+        recordNum = num;
+    }
 
     /**
      * Resets the {@link TemporalMemory} if it exists.
@@ -1266,6 +1325,7 @@ public class Layer<T> implements Persistable {
         if(temporalMemory == null) {
             LOGGER.debug("Attempt to reset Layer: " + getName() + "without TemporalMemory");
         } else {
+            materialize();
             temporalMemory.reset(connections);
         }
     }
@@ -1662,23 +1722,37 @@ public class Layer<T> implements Persistable {
      * Executes the check point logic, handles the return of the serialized byte array
      * by delegating the call to {@link rx.Observer#onNext}(byte[]) of all the currently queued
      * Observers; then clears the list of Observers.
+     * 
+     * When check points are written asynchronously, the Observers are notified from the
+     * background writer once the file is on disk (or with {@link rx.Observer#onError(Throwable)}
+     * if writing failed), while this layer carries on with the next compute cycle.
      */
     private void doCheckPoint() {
-        byte[] bytes = parentNetwork.internalCheckPointOp();
-        
-        if(bytes != null) {
-            LOGGER.debug("Layer [" + getName() + "] checkPointed file: " + 
-                Persistence.get().getLastCheckPointFileName());
-        }else{
-            LOGGER.debug("Layer [" + getName() + "] checkPoint   F A I L E D   at: " + (new DateTime()));
-        }
-        
-        for(Observer<byte[]> o : checkPointOpObservers) {
-            o.onNext(bytes);
-            o.onCompleted();
-        }
-        
+        List<Observer<byte[]>> observers = new ArrayList<>(checkPointOpObservers);
         checkPointOpObservers.clear();
+        
+        parentNetwork.internalCheckPointOp().whenComplete((bytes, error) -> {
+            if(error != null) {
+                LOGGER.debug("Layer [" + getName() + "] checkPoint   F A I L E D   at: " + (new DateTime()), error);
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                for(Observer<byte[]> o : observers) {
+                    o.onError(cause);
+                }
+                return;
+            }
+            
+            if(bytes != null) {
+                LOGGER.debug("Layer [" + getName() + "] checkPointed file: " + 
+                    Persistence.get().getLastCheckPointFileName());
+            }else{
+                LOGGER.debug("Layer [" + getName() + "] checkPoint   F A I L E D   at: " + (new DateTime()));
+            }
+            
+            for(Observer<byte[]> o : observers) {
+                o.onNext(bytes);
+                o.onCompleted();
+            }
+        });
     }
 
     /**
@@ -2101,6 +2175,7 @@ public class Layer<T> implements Persistable {
                         // be executed.
                         l.checkPointOpObservers.add((Observer<byte[]>)r);
                     }else{
+                        l.checkPointOpObservers.add((Observer<byte[]>)r);
                         l.doCheckPoint();
                     }
                 }
@@ -24,6 +24,7 @@ package org.numenta.nupic.network;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import org.joda.time.DateTime;
@@ -182,6 +183,11 @@ public class Network implements Persistable {
     /** Stored check pointer function */
     private transient Function<Persistable, ?> checkPointFunction;
     
+    /** Full check point file which delta check points are currently appended to */
+    transient String deltaBaseFileName;
+    /** Number of delta check points appended since {@link #deltaBaseFileName} was written */
+    transient int deltasSinceBase;
+    
     boolean shouldDoHalt = true;
     
     
@@ -296,13 +302,27 @@ public class Network implements Persistable {
      * Called from {@link Layer} to execute a check point from within the scope of 
      * this {@link Network}
      * checkPointFunction
+     * 
+     * The returned future is already complete unless the check point function 
+     * writes asynchronously (see {@link org.numenta.nupic.serialize.SerialConfig#setAsyncCheckPoint(boolean)}),
+     * in which case it completes once the check point file has been written.
+     * 
      * @return  the serialized {@code Network} in byte array form.
      */
-    byte[] internalCheckPointOp() {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<byte[]> internalCheckPointOp() {
         shouldDoHalt = false;
-        byte[] serializedBytes = (byte[])checkPointFunction.apply(this);
-        shouldDoHalt = true;
-        return serializedBytes;
+        Object result;
+        try {
+            result = checkPointFunction.apply(this);
+        } finally {
+            shouldDoHalt = true;
+        }
+        
+        if(result instanceof CompletableFuture) {
+            return (CompletableFuture<byte[]>)result;
+        }
+        return CompletableFuture.completedFuture((byte[])result);
     }
     
     /**
@@ -355,6 +375,8 @@ public class Network implements Persistable {
         if(regions.size() < 1) {
             throw new IllegalStateException("Nothing to start - 0 regions");
         }
+        
+        materialize();
 
         Region tail = regions.get(0);
         Region upstream = tail;
@@ -423,6 +445,8 @@ public class Network implements Persistable {
         if(regions.size() < 1) {
             throw new IllegalStateException("Nothing to start - 0 regions");
         }
+        
+        materialize();
 
         Region tail = regions.get(0);
         Region upstream = tail;
@@ -619,6 +643,8 @@ public class Network implements Persistable {
             throw new IllegalStateException("Cannot call computeImmediate() when Network has been started.");
         }
         
+        materialize();
+        
         if(tail == null && regions.size() == 1) {
             this.tail = regions.get(0);
         }
@@ -728,9 +754,24 @@ public class Network implements Persistable {
         return sensorRegion;
     }
 
+    /**
+     * Loads the {@link Connections} of all {@link Layer}s which were loaded lazily
+     * and haven't been needed yet.
+     * 
+     * @see PersistenceAPI#loadLazy(String)
+     */
+    void materialize() {
+        regions.stream().forEach(r -> r.materialize());
+    }
+
     /**
      * Returns the {@link Region} with the specified name
-     * or null if it doesn't exist within this {@code Network}
+     * or null if it doesn't exist within this {@code Network}.
+     * 
+     * Looking up a Region of a lazily loaded Network loads nothing by itself;
+     * the {@link Connections} of each {@link Layer} are loaded when the Layer is
+     * looked up with {@link Region#lookup(String)}, or when the Network runs.
+     * 
      * @param regionName
      * @return
      */
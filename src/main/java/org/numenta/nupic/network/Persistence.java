@@ -21,23 +21,40 @@
  */
 package org.numenta.nupic.network;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.ConnectionsDelta;
 import org.numenta.nupic.model.Persistable;
 import org.numenta.nupic.serialize.SerialConfig;
 import org.numenta.nupic.serialize.SerializerCore;
@@ -120,6 +137,20 @@ public class Persistence {
          */
         private static AtomicReference<String> lastCheckPointFileName = new AtomicReference<String>(null);
         
+        /**
+         * Writes asynchronous check points. A single thread keeps check point files
+         * (and the deletion of their predecessors) in the order they were taken.
+         */
+        private static ExecutorService checkPointWriter;
+        
+        /** Header of a delta check point log, "HTMD" */
+        private static final int DELTA_LOG_MAGIC = 0x48544d44;
+        private static final int DELTA_LOG_VERSION = 1;
+        
+        /** Header of an indexed Network file, "HTMI" */
+        private static final int INDEXED_MAGIC = 0x48544d49;
+        private static final int INDEXED_VERSION = 1;
+        
         private SerializerCore defaultSerializer = new SerializerCore();
         
         private ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
@@ -272,20 +303,22 @@ public class Persistence {
             LOGGER.debug("PersistenceAccess load() called ...");
             
             String defaultFileName = serialConfig.getFileName();
-            byte[] bytes;
+            Network network;
             try {
-                bytes = readFile(defaultFileName);
+                File file = testFileExists(defaultFileName);
+                network = serializer().deSerialize(readFile(file.toPath()));
+                replayDeltas(network, file);
             } catch(IOException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
             }
-            Network network = serializer().deSerialize(bytes);
             return network.postDeSerialize();
         }
         
         /**
          * Loads a {@code Network} from the specified serialized file name and
-         * returns it.
+         * returns it. If delta check points were appended to the file, they are
+         * replayed on top of it.
          *  
          * @param fileName      the name of the serialization file.
          *    
@@ -295,8 +328,9 @@ public class Persistence {
         public Network load(String fileName) throws IOException {
             LOGGER.debug("PersistenceAccess load(" + fileName + ") called ...");
             
-            byte[] bytes = readFile(fileName);
-            Network network = serializer().deSerialize(bytes);
+            File file = testFileExists(fileName);
+            Network network = serializer().deSerialize(readFile(file.toPath()));
+            replayDeltas(network, file);
             return network; 
         }
         
@@ -341,6 +375,226 @@ public class Persistence {
             return (R)bytes;
         }
         
+        /**
+         * Stores the specified {@link Network} in the indexed form read by {@link #loadLazy(String)}:
+         * <pre>
+         * int      magic, version
+         * int      index length, followed by the index:
+         *              int     number of layers, then per layer: region name, layer name (UTF)
+         *                      and the number of its Connections blob (-1 for none)
+         *              int     number of blobs, then per blob: offset (long) and length (int)
+         *              long    offset and int length of the Network blob
+         * blobs    the Network, serialized without the Connections of its Layers, followed by
+         *          each distinct Connections, serialized on its own
+         * </pre>
+         * Offsets are relative to the end of the index. Layers which share a {@link Connections}
+         * (see {@link Layer#using(Connections)}) refer to the same blob.
+         * 
+         * @param network   the {@code Network} to store
+         */
+        @Override
+        public void storeIndexed(Network network) {
+            network.preSerialize();
+            
+            List<Layer<?>> layers = network.getRegions().stream()
+                .flatMap(r -> r.getLayers().stream())
+                .collect(Collectors.toList());
+            
+            // Detach the Connections, so the Network blob holds only the structure
+            Map<Connections, Integer> blobIds = new IdentityHashMap<>();
+            List<Connections> detached = new ArrayList<>();
+            for(Layer<?> l : layers) {
+                detached.add(l.connections);
+                if(l.connections != null && !blobIds.containsKey(l.connections)) {
+                    blobIds.put(l.connections, blobIds.size());
+                }
+            }
+            
+            byte[][] blobs = new byte[blobIds.size() + 1][];
+            try {
+                layers.stream().forEach(l -> l.connections = null);
+                blobs[blobs.length - 1] = defaultSerializer.serialize(network);
+            } finally {
+                for(int i = 0;i < layers.size();i++) {
+                    layers.get(i).connections = detached.get(i);
+                }
+            }
+            for(Map.Entry<Connections, Integer> e : blobIds.entrySet()) {
+                blobs[e.getValue()] = defaultSerializer.serialize(e.getKey());
+            }
+            
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            try(DataOutputStream out = new DataOutputStream(index)) {
+                out.writeInt(layers.size());
+                for(int i = 0;i < layers.size();i++) {
+                    Layer<?> l = layers.get(i);
+                    out.writeUTF(l.getRegion().getName());
+                    out.writeUTF(l.getName());
+                    out.writeInt(detached.get(i) == null ? -1 : blobIds.get(detached.get(i)));
+                }
+                out.writeInt(blobIds.size());
+                long offset = 0;
+                for(byte[] blob : blobs) {
+                    out.writeLong(offset);
+                    out.writeInt(blob.length);
+                    offset += blob.length;
+                }
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+            
+            ByteBuffer[] buffers = new ByteBuffer[blobs.length + 2];
+            buffers[0] = ByteBuffer.allocate(12).putInt(INDEXED_MAGIC).putInt(INDEXED_VERSION).putInt(index.size());
+            buffers[0].flip();
+            buffers[1] = ByteBuffer.wrap(index.toByteArray());
+            for(int i = 0;i < blobs.length;i++) {
+                buffers[i + 2] = ByteBuffer.wrap(blobs[i]);
+            }
+            
+            try {
+                Path path = ensurePathExists(serialConfig).toPath();
+                Set<StandardOpenOption> opts = EnumSet.of(StandardOpenOption.WRITE);
+                opts.addAll(Arrays.asList(serialConfig.getOpenOptions()));
+                try(FileChannel channel = FileChannel.open(path, opts)) {
+                    while(buffers[buffers.length - 1].hasRemaining()) {
+                        channel.write(buffers);
+                    }
+                    channel.force(true);
+                }
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        
+        /**
+         * Lazily loads a {@code Network} stored by {@link #storeIndexed(Network)} from the
+         * default or previously configured location and serial file.
+         * 
+         * @return the lazily loaded Network
+         * @see SerialConfig
+         */
+        @Override
+        public Network loadLazy() {
+            LOGGER.debug("PersistenceAccess loadLazy() called ...");
+            
+            try {
+                return loadLazy(serialConfig.getFileName()).postDeSerialize();
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        
+        /**
+         * Lazily loads a {@code Network} stored by {@link #storeIndexed(Network)}. Only the
+         * index and the Network blob are read here; each {@link Layer} is given a loader which
+         * reads its {@link Connections} blob from the file when they are first needed.
+         * 
+         * @param fileName      the name of the serialization file.
+         * 
+         * @return  the lazily loaded Network
+         * @throws IOException  if the file is missing or not in the indexed form
+         */
+        @Override
+        public Network loadLazy(String fileName) throws IOException {
+            LOGGER.debug("PersistenceAccess loadLazy(" + fileName + ") called ...");
+            
+            Path path = testFileExists(fileName).toPath();
+            byte[] index;
+            byte[] skeleton;
+            long dataOffset;
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = readFully(channel, 0, 12);
+                if(header.getInt() != INDEXED_MAGIC) {
+                    throw new IOException(fileName + " is not an indexed Network file");
+                }
+                int version = header.getInt();
+                if(version != INDEXED_VERSION) {
+                    throw new IOException("Unsupported indexed Network version " + version + " in " + fileName);
+                }
+                index = readFully(channel, 12, header.getInt()).array();
+                dataOffset = 12 + index.length;
+                
+                ByteBuffer last = ByteBuffer.wrap(index, index.length - 12, 12);
+                long offset = last.getLong();
+                skeleton = readFully(channel, dataOffset + offset, last.getInt()).array();
+            }
+            
+            Network network = serializer().deSerialize(skeleton);
+            
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            int numLayers = in.readInt();
+            String[] regionNames = new String[numLayers];
+            String[] layerNames = new String[numLayers];
+            int[] blobNums = new int[numLayers];
+            for(int i = 0;i < numLayers;i++) {
+                regionNames[i] = in.readUTF();
+                layerNames[i] = in.readUTF();
+                blobNums[i] = in.readInt();
+            }
+            LazyConnections[] loaders = new LazyConnections[in.readInt()];
+            for(int i = 0;i < loaders.length;i++) {
+                loaders[i] = new LazyConnections(path, dataOffset + in.readLong(), in.readInt());
+            }
+            
+            for(int i = 0;i < numLayers;i++) {
+                Region r = network.lookup(regionNames[i]);
+                Layer<?> l = r == null ? null : r.lookup(layerNames[i]);
+                if(l == null) {
+                    throw new IOException("Index of " + fileName + " refers to missing layer " + 
+                        regionNames[i] + ":" + layerNames[i]);
+                }
+                if(blobNums[i] != -1) {
+                    l.setPendingConnections(loaders[blobNums[i]]);
+                }
+            }
+            
+            return network;
+        }
+        
+        /**
+         * Reads {@code length} bytes of the channel starting at {@code position}.
+         */
+        private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        
+        /**
+         * Reads and deserializes one {@link Connections} blob of an indexed Network file
+         * on first use. Layers sharing the blob share the instance, so they go on sharing
+         * the same Connections.
+         */
+        private final class LazyConnections implements Supplier<Connections> {
+            private final Path path;
+            private final long offset;
+            private final int length;
+            private Connections connections;
+            
+            LazyConnections(Path path, long offset, int length) {
+                this.path = path;
+                this.offset = offset;
+                this.length = length;
+            }
+            
+            @Override
+            public synchronized Connections get() {
+                if(connections == null) {
+                    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        connections = serializer().deSerialize(readFully(channel, offset, length).array());
+                    } catch(IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return connections;
+            }
+        }
+        
         /**
          * Returns an {@link rx.Observable} operator that when subscribed to, invokes an operation
          * that stores the state of this {@code Network} while keeping the Network up and running.
@@ -368,6 +622,14 @@ public class Persistence {
          */
         @SuppressWarnings("unchecked")
         <T extends Persistable, R> Function<T, R> getCheckPointFunction(Network network) {
+            if(serialConfig.getDeltaCheckPoints() > 0) {
+                return (Function<T, R>)getDeltaCheckPointFunction(network);
+            }
+            
+            if(serialConfig.isAsyncCheckPoint()) {
+                return (Function<T, R>)getAsyncCheckPointFunction(network);
+            }
+            
             return (T t) -> {
                 t.preSerialize();
                 
@@ -394,6 +656,274 @@ public class Persistence {
             };
         }
         
+        /**
+         * Returns the asynchronous I/O variant of {@link #getCheckPointFunction(Network)}.
+         * 
+         * The {@link Network} is still serialized in full on the calling (compute) thread,
+         * while its layer is paused between compute cycles, so the bytes are a consistent
+         * copy which later cycles cannot disturb; that pause is not shortened by this variant.
+         * Only writing the file, forcing it to disk and deleting the previous check point
+         * (if configured) happen on a background thread. The returned {@link CompletableFuture} completes
+         * with the serialized bytes once the file is durable, or exceptionally if it could
+         * not be written.
+         * 
+         * @param network       the {@link Network} to check point
+         * @return  a Function which writes check point files in the background
+         */
+        <T extends Persistable> Function<T, CompletableFuture<byte[]>> getAsyncCheckPointFunction(Network network) {
+            return (T t) -> {
+                t.preSerialize();
+                
+                String fileName = serialConfig.getAbsoluteSerialDir() + File.separator + 
+                    serialConfig.getCheckPointFileName() + checkPointFormatter.print(new DateTime());
+                byte[] bytes = defaultSerializer.serialize(network);
+                
+                StandardOpenOption[] options = serialConfig.getCheckPointOpenOptions();
+                boolean oneCheckPointOnly = serialConfig.isOneCheckPointOnly();
+                
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        syncFile(fileName, bytes, options);
+                    }catch(IOException io) {
+                        throw new RuntimeException(io);
+                    }
+                    
+                    String oldCheckPointFileName = lastCheckPointFileName.getAndSet(fileName);
+                    if(oneCheckPointOnly && oldCheckPointFileName != null) {
+                        try {
+                            Files.deleteIfExists(new File(oldCheckPointFileName).toPath());
+                        }catch(IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    
+                    return bytes;
+                }, checkPointWriter());
+            };
+        }
+        
+        /**
+         * Returns the delta variant of {@link #getCheckPointFunction(Network)}, used when
+         * {@link SerialConfig#getDeltaCheckPoints()} is greater than zero.
+         * 
+         * Every (n + 1)th check point is a full snapshot written like any other check point,
+         * after which each layer's {@link Connections} start tracking their changes. The n
+         * check points in between only append the columns, segments and synapses which changed
+         * (see {@link ConnectionsDelta}) to a log named after the full snapshot plus
+         * {@link SerialConfig#DELTA_LOG_SUFFIX}, which {@link #load(String)} replays. Observers
+         * receive the full snapshot or the appended delta record respectively.
+         * 
+         * The snapshot or delta is always taken on the calling (compute) thread; the file is
+         * written there too, or in the background if {@link SerialConfig#isAsyncCheckPoint()}
+         * is set, in which case a {@link CompletableFuture} is returned.
+         * 
+         * @param network       the {@link Network} to check point
+         * @return  a Function which checkpoints
+         */
+        <T extends Persistable> Function<T, Object> getDeltaCheckPointFunction(Network network) {
+            return (T t) -> {
+                t.preSerialize();
+                
+                Supplier<byte[]> job;
+                if(network.deltaBaseFileName != null && network.deltasSinceBase < serialConfig.getDeltaCheckPoints()) {
+                    String logName = network.deltaBaseFileName + SerialConfig.DELTA_LOG_SUFFIX;
+                    byte[] record = writeDeltaRecord(network, ++network.deltasSinceBase);
+                    
+                    job = () -> {
+                        try {
+                            appendDelta(logName, record);
+                        }catch(IOException io) {
+                            throw new RuntimeException(io);
+                        }
+                        return record;
+                    };
+                }else{
+                    String fileName = serialConfig.getAbsoluteSerialDir() + File.separator + 
+                        serialConfig.getCheckPointFileName() + checkPointFormatter.print(new DateTime());
+                    byte[] bytes = defaultSerializer.serialize(network);
+                    
+                    for(Region r : network.getRegions()) {
+                        for(Layer<?> l : r.getLayers()) {
+                            if(l.getConnections() != null) {
+                                l.getConnections().beginChangeTracking();
+                            }
+                        }
+                    }
+                    network.deltaBaseFileName = fileName;
+                    network.deltasSinceBase = 0;
+                    
+                    StandardOpenOption[] options = serialConfig.getCheckPointOpenOptions();
+                    boolean oneCheckPointOnly = serialConfig.isOneCheckPointOnly();
+                    
+                    job = () -> {
+                        try {
+                            syncFile(fileName, bytes, options);
+                            
+                            String oldCheckPointFileName = lastCheckPointFileName.getAndSet(fileName);
+                            if(oneCheckPointOnly && oldCheckPointFileName != null) {
+                                Files.deleteIfExists(new File(oldCheckPointFileName).toPath());
+                                Files.deleteIfExists(new File(oldCheckPointFileName + SerialConfig.DELTA_LOG_SUFFIX).toPath());
+                            }
+                        }catch(IOException io) {
+                            throw new RuntimeException(io);
+                        }
+                        return bytes;
+                    };
+                }
+                
+                return serialConfig.isAsyncCheckPoint() ? 
+                    CompletableFuture.supplyAsync(job, checkPointWriter()) : job.get();
+            };
+        }
+        
+        /**
+         * Captures the changes of every {@link Layer}'s {@link Connections} since the
+         * previous check point as one delta log record.
+         * 
+         * @param network       the {@link Network} being check pointed
+         * @param sequence      the number of this delta since the full check point
+         * @return  the record payload
+         */
+        byte[] writeDeltaRecord(Network network, int sequence) {
+            List<Layer<?>> layers = network.getRegions().stream()
+                .flatMap(r -> r.getLayers().stream())
+                .collect(Collectors.toList());
+            
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try(DataOutputStream out = new DataOutputStream(bos)) {
+                out.writeInt(sequence);
+                out.writeInt(layers.size());
+                for(Layer<?> l : layers) {
+                    out.writeUTF(l.getRegion().getName());
+                    out.writeUTF(l.getName());
+                    out.writeInt(l.getRecordNum());
+                    
+                    Connections c = l.getConnections();
+                    boolean tracked = c != null && c.isTrackingChanges();
+                    out.writeBoolean(tracked);
+                    if(tracked) {
+                        ConnectionsDelta.write(c, out);
+                    }
+                }
+            }catch(IOException io) {
+                throw new RuntimeException(io);
+            }
+            
+            return bos.toByteArray();
+        }
+        
+        /**
+         * Appends a delta record to the log at "fileName", creating the log with its header
+         * if needed, and forces it to the storage device. Each record is prefixed with its
+         * length so that a record left incomplete by a crash can be recognized on replay.
+         * 
+         * @param fileName          the delta log file name
+         * @param record            the record payload
+         * @throws IOException      if there is a problem writing or syncing the log
+         */
+        void appendDelta(String fileName, byte[] record) throws IOException {
+            try {
+                Path path = ensurePathExists(serialConfig, fileName).toPath();
+                try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(12 + record.length);
+                    if(channel.size() == 0) {
+                        buffer.putInt(DELTA_LOG_MAGIC).putInt(DELTA_LOG_VERSION);
+                    }
+                    buffer.putInt(record.length).put(record);
+                    buffer.flip();
+                    while(buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+            } catch(Exception e) {
+               lastBytes.set(null);
+               throw e;
+            }
+            
+            lastBytes.set(record);
+        }
+        
+        /**
+         * Replays the delta log which belongs to the specified full check point file, if
+         * there is one, onto the {@link Network} deserialized from that file. A trailing
+         * record which was not completely written is ignored.
+         * 
+         * @param network       the Network deserialized from "file"
+         * @param file          the full check point file
+         * @throws IOException  if the log is not a delta log or is out of sequence
+         */
+        void replayDeltas(Network network, File file) throws IOException {
+            File log = new File(file.getPath() + SerialConfig.DELTA_LOG_SUFFIX);
+            if(!log.exists()) {
+                return;
+            }
+            
+            ByteBuffer buffer = ByteBuffer.wrap(readFile(log.toPath()));
+            if(buffer.remaining() < 8 || buffer.getInt() != DELTA_LOG_MAGIC) {
+                throw new IOException(log + " is not a delta check point log");
+            }
+            int version = buffer.getInt();
+            if(version != DELTA_LOG_VERSION) {
+                throw new IOException("Unsupported delta log version " + version + " in " + log);
+            }
+            
+            int expected = 1;
+            while(buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if(length < 0 || buffer.remaining() < length) {
+                    LOGGER.warn("Ignoring incomplete delta record " + expected + " in " + log);
+                    break;
+                }
+                
+                DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(buffer.array(), buffer.position(), length));
+                buffer.position(buffer.position() + length);
+                
+                int sequence = in.readInt();
+                if(sequence != expected++) {
+                    throw new IOException("Delta record " + sequence + " out of sequence in " + log);
+                }
+                
+                int numLayers = in.readInt();
+                for(int i = 0;i < numLayers;i++) {
+                    String regionName = in.readUTF();
+                    String layerName = in.readUTF();
+                    int recordNum = in.readInt();
+                    boolean tracked = in.readBoolean();
+                    
+                    Region r = network.lookup(regionName);
+                    Layer<?> l = r == null ? null : r.lookup(layerName);
+                    if(l == null) {
+                        throw new IOException("Delta record " + sequence + " refers to missing layer " + 
+                            regionName + ":" + layerName);
+                    }
+                    l.setRecordNum(recordNum);
+                    if(tracked) {
+                        ConnectionsDelta.apply(l.getConnections(), in);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Returns the single background thread used to write asynchronous check points,
+         * creating it on first use. The thread is a daemon so that pending writes never
+         * keep the JVM alive.
+         * 
+         * @return  the check point writer
+         */
+        static synchronized ExecutorService checkPointWriter() {
+            if(checkPointWriter == null) {
+                checkPointWriter = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "Check Point Writer");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return checkPointWriter;
+        }
+        
         /**
          * Returns the last check pointed bytes of the last check point operation.
          * 
@@ -430,7 +960,8 @@ public class Persistence {
                 final DateTimeFormatter f = checkPointFormatter;
                 chkPntFiles = Arrays.stream(customDir.list((d,n) -> {
                     // Return only checkpoint files before the specified checkpoint name.
-                    return n.indexOf(serialConfig.getCheckPointFileName()) != -1;
+                    return n.indexOf(serialConfig.getCheckPointFileName()) != -1 &&
+                        !n.endsWith(SerialConfig.DELTA_LOG_SUFFIX);
                 })).sorted((o1,o2) -> {
                     // Sort the list so that the most recent previous can be selected.
                     try {
@@ -615,6 +1146,37 @@ public class Persistence {
             lastBytes.set(bytes);
         }
         
+        /**
+         * Writes the file specified by "fileName" like {@link #writeFile(String, byte[], StandardOpenOption...)},
+         * but through a {@link FileChannel} which is forced to the storage device before this
+         * method returns, so a completed check point survives a crash.
+         * 
+         * @param fileName          the file name to use
+         * @param bytes             the content to write
+         * @param options           the file handling rules to use
+         * @throws IOException      if there is a problem writing or syncing the file
+         */
+        void syncFile(String fileName, byte[] bytes, StandardOpenOption... options) throws IOException {
+            Set<StandardOpenOption> opts = EnumSet.of(StandardOpenOption.WRITE);
+            opts.addAll(Arrays.asList(options));
+            
+            try {
+                Path path = ensurePathExists(serialConfig, fileName).toPath();
+                try(FileChannel channel = FileChannel.open(path, opts)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while(buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+            } catch(Exception e) {
+               lastBytes.set(null);
+               throw e;
+            }
+            
+            lastBytes.set(bytes);
+        }
+        
         /**
          * Reads the file located at the path specified and returns the content
          * in the form of a byte array.
@@ -132,10 +132,44 @@ public interface PersistenceAPI extends Serializable {
      *          where byte[] is the default of type &lt;R&gt;
      */
     public <R> R storeAndGet(Network network);
+    /**
+     * Stores the specified {@link Network} at the pre-configured location in an indexed
+     * form which {@link #loadLazy()} can open without reading every {@link Layer}'s
+     * {@link org.numenta.nupic.model.Connections}. Like {@link #storeAndGet(Network)},
+     * the Network is first prepared with {@link Network#preSerialize()}, which halts it
+     * if its thread is running and closes it otherwise.
+     * 
+     * @param network   the {@code Network} to store
+     */
+    public void storeIndexed(Network network);
+    /**
+     * Lazily loads a {@code Network} stored by {@link #storeIndexed(Network)} from the 
+     * pre-configured location and serial file. Only the Network, its Regions and Layers
+     * are read; the {@link org.numenta.nupic.model.Connections} of each Layer are read
+     * when it is first looked up via {@link Region#lookup(String)}, its Connections are 
+     * requested, or the Network is run or stored.
+     * 
+     * @return the lazily loaded Network
+     * @see SerialConfig
+     */
+    public Network loadLazy();
+    /**
+     * Lazily loads a {@code Network} stored by {@link #storeIndexed(Network)} from the 
+     * specified file name (see {@link #loadLazy()}).
+     * 
+     * @param fileName      the name of the serialization file.
+     * 
+     * @return  the lazily loaded Network
+     * @throws IOException  if the file is missing or not in the indexed form
+     */
+    public Network loadLazy(String fileName) throws IOException;
     /**
      * Returns an {@link rx.Observable} operator that when subscribed to, invokes an operation
      * that stores the state of this {@code Network} while keeping the Network up and running.
      * The Network will be stored at the pre-configured location (in binary form only, not JSON).
+     * If {@link SerialConfig#isAsyncCheckPoint()} is set, the Network is still serialized on
+     * the compute path but the file is written in the background; subscribers are notified
+     * once it is on disk.
      * 
      * @param <T> the type of the stored object
      * @param network   the {@link Network} to check point
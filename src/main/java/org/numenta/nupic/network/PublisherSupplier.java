@@ -79,6 +79,12 @@ public class PublisherSupplier implements Persistable, Supplier<Publisher> {
     /** 3 Header lines used during csv parsing of input and type determination */
     private List<String> headers = new ArrayList<>();
     
+    /** Capacity of the supplied Publisher's input buffer, 0 for unbounded */
+    private int capacity;
+    
+    /** Overflow policy of a bounded Publisher */
+    private Publisher.Overflow overflow;
+    
     /** last created Publisher instance */
     private volatile transient Publisher suppliedInstance;
     
@@ -110,6 +116,10 @@ public class PublisherSupplier implements Persistable, Supplier<Publisher> {
             
             headers.stream().forEach(line -> builder.addHeader(line));
             
+            if(capacity > 0) {
+                builder.buffer(capacity, overflow);
+            }
+            
             suppliedInstance = builder.build();
             suppliedInstance.setNetwork(network);
         }
@@ -178,6 +188,10 @@ public class PublisherSupplier implements Persistable, Supplier<Publisher> {
         
         private List<String> headers = new ArrayList<>();
         
+        private int capacity;
+        
+        private Publisher.Overflow overflow;
+        
         
         /**
          * Constructs a new {@code PublisherSupplier.Builder}
@@ -198,6 +212,26 @@ public class PublisherSupplier implements Persistable, Supplier<Publisher> {
             return this;
         }
         
+        /**
+         * Bounds the input buffer of the supplied {@link Publisher}s.
+         * 
+         * @param capacity  the maximum number of queued lines
+         * @param overflow  what to do with lines arriving while the buffer is full
+         * @return  this Builder
+         * @see Publisher.Builder#buffer(int, Publisher.Overflow)
+         */
+        public Builder buffer(int capacity, Publisher.Overflow overflow) {
+            if(capacity < 0) {
+                throw new IllegalArgumentException("Buffer capacity may not be negative: " + capacity);
+            }
+            if(capacity > 0 && overflow == null) {
+                throw new IllegalArgumentException("Overflow policy may not be null");
+            }
+            this.capacity = capacity;
+            this.overflow = overflow;
+            return this;
+        }
+        
         /**
          * Signals the builder to instantiate and return the new
          * {@code PublisherSupplier}
@@ -207,6 +241,8 @@ public class PublisherSupplier implements Persistable, Supplier<Publisher> {
         public PublisherSupplier build() {
             PublisherSupplier retVal = new PublisherSupplier(network);
             retVal.headers = new ArrayList<>(this.headers);
+            retVal.capacity = capacity;
+            retVal.overflow = overflow;
             return retVal;
         }
     }
@@ -21,6 +21,7 @@
  */
 package org.numenta.nupic.network;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -243,6 +244,8 @@ public class Region implements Persistable {
      */
     @SuppressWarnings("unchecked")
     public <T> void compute(T input) {
+        materialize();
+        
         if(!assemblyClosed) {
             close();
         }
@@ -330,6 +333,8 @@ public class Region implements Persistable {
      * @return flag indicating that thread was started
      */
     public boolean start() {
+        materialize();
+        
         if(!assemblyClosed) {
             close();
         }
@@ -554,14 +559,38 @@ public class Region implements Persistable {
      * key containing this {@code Region}'s name concatenated with the specified
      * {@link Layer}'s name, and returning the result.
      * 
+     * If the {@link Network} was loaded lazily, the Layer's {@link org.numenta.nupic.model.Connections}
+     * are loaded by this call if they haven't been already.
+     * 
      * @param layerName
      * @return
+     * @see PersistenceAPI#loadLazy(String)
      */
     public Layer<?> lookup(String layerName) {
-        if(layerName.indexOf(":") != -1) {
-            return layers.get(layerName);
+        Layer<?> l = layers.get(layerName.indexOf(":") != -1 ? 
+            layerName : name.concat(":").concat(layerName));
+        if(l != null) {
+            l.materialize();
         }
-        return layers.get(name.concat(":").concat(layerName));
+        return l;
+    }
+    
+    /**
+     * Loads the {@link org.numenta.nupic.model.Connections} of all lazily loaded {@link Layer}s of
+     * this {@code Region}.
+     */
+    void materialize() {
+        layers.values().stream().forEach(l -> l.materialize());
+    }
+    
+    /**
+     * Returns the {@link Layer}s contained by this {@code Region}, in no
+     * particular order.
+     * 
+     * @return  the contained Layers
+     */
+    Collection<Layer<Inference>> getLayers() {
+        return layers.values();
     }
     
     /**
@@ -23,15 +23,18 @@ package org.numenta.nupic.network.sensor;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
@@ -56,6 +59,7 @@ import org.numenta.nupic.encoders.RandomDistributedScalarEncoder;
 import org.numenta.nupic.encoders.SDRCategoryEncoder;
 import org.numenta.nupic.encoders.SDRPassThroughEncoder;
 import org.numenta.nupic.encoders.ScalarEncoder;
+import org.numenta.nupic.network.sensor.Publisher.Overflow;
 
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
@@ -105,11 +109,17 @@ public class HTMSensor<T> implements Sensor<T>, Serializable {
     
     
     private transient Iterator<int[]> mainIterator;
-    private List<LinkedList<int[]>> fanOuts = new ArrayList<>();
+    private List<FanOut> fanOuts = new ArrayList<>();
     
-    /** Protects {@ #mainIterator} formation and the next() call */
+    /** Protects {@link #mainIterator} formation and the fan out queues */
     private Lock criticalAccessLock = new ReentrantLock();
     
+    /** Signalled whenever a fan out is drained or a pull completes */
+    private transient Condition fanOutChanged;
+    
+    /** True while one of the output streams pulls from the {@link #mainIterator} */
+    private transient boolean pulling;
+    
     
     
     /**
@@ -270,23 +280,179 @@ public class HTMSensor<T> implements Sensor<T>, Serializable {
         return (MetaStream<K>)delegate.getInputStream();
     }
     
+    /**
+     * Queue of encodings pulled from the {@link #mainIterator} but not yet consumed
+     * by one of the output streams. When the sensor reads from a bounded {@link Publisher}
+     * each queue shares its capacity and {@link Overflow} policy, so that one stalled
+     * stream cannot make its siblings buffer without limit.
+     */
+    private static class FanOut implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final ArrayDeque<int[]> queue = new ArrayDeque<>();
+        private final int capacity;
+        private final Overflow overflow;
+        private long dropped;
+        
+        FanOut(int capacity, Overflow overflow) {
+            this.capacity = capacity;
+            this.overflow = overflow;
+        }
+        
+        boolean isFull() { return queue.size() >= capacity; }
+    }
+    
     /**
      * Customized Iterator which allows "forking" of a Stream
      * into multiple fanouts.
      */
     private class Copy implements Iterator<int[]> {
-        private LinkedList<int[]> list;
-        Copy(LinkedList<int[]> l) { this.list = l; }
-        public boolean hasNext() { return !list.isEmpty() || mainIterator.hasNext(); }
+        private FanOut fanOut;
+        Copy(FanOut f) { this.fanOut = f; }
+        public boolean hasNext() {
+            criticalAccessLock.lock();
+            try {
+                return awaitQueued();
+            }finally {
+                criticalAccessLock.unlock();
+            }
+        }
         public int[] next() {
-            if(list.isEmpty()) {
-                // We want to make sure only one thread calls next at a time
-                criticalAccessLock.lock();
-                int[] next = mainIterator.next();
-                for(List<int[]> l : fanOuts) { l.add(next); }
+            criticalAccessLock.lock();
+            try {
+                if(!awaitQueued()) {
+                    throw new NoSuchElementException();
+                }
+                int[] next = fanOut.queue.removeFirst();
+                fanOutChanged().signalAll();
+                return next;
+            }finally {
                 criticalAccessLock.unlock();
             }
-            return list.remove(0);
+        }
+        /**
+         * Waits until this fan out has an encoding queued, pulling the next one
+         * from the {@link #mainIterator} unless another stream already does.
+         * Must be called holding the {@link #criticalAccessLock}.
+         * 
+         * @return  false if this fan out is empty and the source is exhausted
+         */
+        private boolean awaitQueued() {
+            while(fanOut.queue.isEmpty()) {
+                if(pulling) {
+                    fanOutChanged().awaitUninterruptibly();
+                    continue;
+                }
+                // We want to make sure only one thread pulls at a time
+                pulling = true;
+                try {
+                    int[] next = pull();
+                    if(next == null) {
+                        return false;
+                    }
+                    distribute(next);
+                }finally {
+                    pulling = false;
+                    fanOutChanged().signalAll();
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Pulls the next encoding from the {@link #mainIterator}. The {@link #criticalAccessLock}
+     * held by the caller is released while waiting on the source, so that the
+     * other output streams can keep draining their queues meanwhile.
+     * 
+     * @return  the next encoding, or null if the source is exhausted
+     */
+    private int[] pull() {
+        criticalAccessLock.unlock();
+        try {
+            return mainIterator.hasNext() ? mainIterator.next() : null;
+        }finally {
+            criticalAccessLock.lock();
+        }
+    }
+    
+    /**
+     * Hands a newly pulled encoding to every fan out, applying each one's
+     * {@link Overflow} policy when it is full. Must be called holding the
+     * {@link #criticalAccessLock}.
+     * 
+     * @param next  the encoding pulled from the main iterator
+     */
+    private void distribute(int[] next) {
+        for(FanOut f : fanOuts) {
+            if(!f.isFull()) {
+                f.queue.addLast(next);
+                continue;
+            }
+            switch(f.overflow) {
+                case DROP: {
+                    f.dropped++;
+                    break;
+                }
+                case SAMPLE: {
+                    f.queue.removeLast();
+                    f.queue.addLast(next);
+                    f.dropped++;
+                    break;
+                }
+                default: {
+                    fanOutChanged().signalAll();
+                    while(f.isFull()) {
+                        fanOutChanged().awaitUninterruptibly();
+                    }
+                    f.queue.addLast(next);
+                }
+            }
+        }
+    }
+    
+    private Condition fanOutChanged() {
+        if(fanOutChanged == null) {
+            fanOutChanged = criticalAccessLock.newCondition();
+        }
+        return fanOutChanged;
+    }
+    
+    /**
+     * Returns the number of encodings waiting to be consumed by the slowest
+     * of the streams returned from {@link #getOutputStream()}.
+     * 
+     * @return  the deepest fan out queue
+     */
+    public int getMaxFanOutDepth() {
+        criticalAccessLock.lock();
+        try {
+            int depth = 0;
+            for(FanOut f : fanOuts) {
+                depth = Math.max(depth, f.queue.size());
+            }
+            return depth;
+        }finally {
+            criticalAccessLock.unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of encodings discarded from the output streams by
+     * the {@link Overflow} policy of a bounded {@link Publisher}.
+     * 
+     * @return  the total of dropped encodings over all fan outs
+     */
+    public long getFanOutDroppedCount() {
+        criticalAccessLock.lock();
+        try {
+            long dropped = 0;
+            for(FanOut f : fanOuts) {
+                dropped += f.dropped;
+            }
+            return dropped;
+        }finally {
+            criticalAccessLock.unlock();
         }
     }
     
@@ -365,9 +531,13 @@ public class HTMSensor<T> implements Sensor<T>, Serializable {
                 mainIterator = outputStream.iterator();
             }
             
-            LinkedList<int[]> l = new LinkedList<int[]>();
-            fanOuts.add(l);
-            Copy copy = new Copy(l);
+            Publisher publisher = delegate instanceof ObservableSensor ?
+                ((ObservableSensor<?>)delegate).getPublisher() : null;
+            FanOut f = publisher != null && publisher.isBounded() ?
+                new FanOut(publisher.getCapacity(), publisher.getOverflow()) :
+                    new FanOut(Integer.MAX_VALUE, Overflow.BLOCK);
+            fanOuts.add(f);
+            Copy copy = new Copy(f);
             
             retVal = StreamSupport.stream(Spliterators.spliteratorUnknownSize(copy,
                 Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
@@ -0,0 +1,259 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.network.sensor;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.numenta.nupic.network.sensor.Publisher.Overflow;
+
+/**
+ * Fixed capacity, single consumer ring buffer standing between a bounded
+ * {@link Publisher} and the {@link ObservableSensor} reading from it. What
+ * happens when the producer outruns the consumer is decided by the configured
+ * {@link Overflow} policy; the buffer itself never grows.
+ */
+class InputRingBuffer {
+    private final String[] ring;
+    private final Overflow overflow;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head;
+    private int size;
+    private boolean completed;
+    private Throwable error;
+
+    private int maxDepth;
+    private long published;
+    private long dropped;
+
+
+    /**
+     * Creates a new {@code InputRingBuffer}
+     *
+     * @param capacity  the maximum number of queued lines
+     * @param overflow  what to do with lines arriving while the buffer is full
+     */
+    InputRingBuffer(int capacity, Overflow overflow) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be positive: " + capacity);
+        }
+        if(overflow == null) {
+            throw new IllegalArgumentException("Overflow policy may not be null");
+        }
+        this.ring = new String[capacity];
+        this.overflow = overflow;
+    }
+
+    /**
+     * Queues the specified line, applying the {@link Overflow} policy if the
+     * buffer is full. Lines offered after {@link #complete()} or {@link #fail(Throwable)}
+     * are ignored.
+     *
+     * @param line  the line to queue
+     */
+    void offer(String line) {
+        lock.lock();
+        try {
+            if(completed) {
+                return;
+            }
+
+            if(size == ring.length) {
+                switch(overflow) {
+                    case DROP: {
+                        dropped++;
+                        return;
+                    }
+                    case SAMPLE: {
+                        // Keep the most recent line in place of the newest queued one
+                        ring[(head + size - 1) % ring.length] = line;
+                        published++;
+                        dropped++;
+                        return;
+                    }
+                    default: {
+                        while(size == ring.length && !completed) {
+                            try {
+                                notFull.await();
+                            }catch(InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                dropped++;
+                                return;
+                            }
+                        }
+                        if(completed) {
+                            return;
+                        }
+                    }
+                }
+            }
+
+            ring[(head + size) % ring.length] = line;
+            size++;
+            published++;
+            maxDepth = Math.max(maxDepth, size);
+            notEmpty.signal();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of input; the consumer drains whatever is left and then stops.
+     */
+    void complete() {
+        lock.lock();
+        try {
+            completed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of input with an error, which is thrown to the consumer
+     * once the queued lines have been drained.
+     *
+     * @param e     the error encountered by the producer
+     */
+    void fail(Throwable e) {
+        lock.lock();
+        try {
+            error = e;
+            completed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the next queued line, waiting for one if necessary.
+     *
+     * @return  the next line, or null if input has completed and the buffer is empty
+     * @throws IllegalStateException    if the producer failed or the consumer was interrupted
+     */
+    String take() {
+        lock.lock();
+        try {
+            while(size == 0) {
+                if(completed) {
+                    if(error != null) {
+                        throw new IllegalStateException("Publisher failed", error);
+                    }
+                    return null;
+                }
+                try {
+                    notEmpty.await();
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for input", e);
+                }
+            }
+
+            String line = ring[head];
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            notFull.signal();
+            return line;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lines currently queued.
+     * @return
+     */
+    int depth() {
+        lock.lock();
+        try {
+            return size;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the largest number of lines ever queued at once.
+     * @return
+     */
+    int maxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lines accepted into the buffer, including those
+     * which later replaced a queued line under {@link Overflow#SAMPLE}.
+     * @return
+     */
+    long published() {
+        lock.lock();
+        try {
+            return published;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lines lost to the {@link Overflow} policy.
+     * @return
+     */
+    long dropped() {
+        lock.lock();
+        try {
+            return dropped;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the {@link Overflow} policy of this buffer.
+     * @return
+     */
+    Overflow overflow() {
+        return overflow;
+    }
+
+    /**
+     * Returns the capacity of this buffer.
+     * @return
+     */
+    int capacity() {
+        return ring.length;
+    }
+}
@@ -52,6 +52,7 @@ public class ObservableSensor<T> implements Sensor<Observable<T>> {
     private static final boolean DEFAULT_PARALLEL_MODE = false;
     
     private transient BatchedCsvStream<String[]> stream;
+    private transient Publisher publisher;
     private SensorParams params;
     
     
@@ -71,20 +72,33 @@ public class ObservableSensor<T> implements Sensor<Observable<T>> {
         
         Observable<String> obs = null;
         Object publisher = params.get("ONSUB");
+        if(publisher instanceof Supplier<?>) {
+            publisher = ((Supplier<Publisher>)publisher).get();
+        }
+        
+        Iterator<String> observerator = null;
         if(publisher instanceof Publisher) {
-            obs = ((Publisher)publisher).observable();
-        } else if(publisher instanceof Supplier<?>) {
-            obs = ((Supplier<Publisher>)publisher).get().observable();
+            this.publisher = (Publisher)publisher;
+        }
+        
+        if(publisher instanceof Publisher && ((Publisher)publisher).isBounded()) {
+            // Pull straight from the ring buffer so that a lagging Layer pushes back on the producer
+            observerator = ((Publisher)publisher).iterator();
         } else {
-            obs = (Observable<String>)publisher; 
+            if(publisher instanceof Publisher) {
+                obs = ((Publisher)publisher).observable();
+            } else {
+                obs = (Observable<String>)publisher; 
+            }
+            observerator = obs.toBlocking().getIterator();
         }
         
-        Iterator<String> observerator = obs.toBlocking().getIterator();
+        final Iterator<String> source = observerator;
         
         Iterator<String> iterator = new Iterator<String>() {
-            @Override public boolean hasNext() { return observerator.hasNext(); }
+            @Override public boolean hasNext() { return source.hasNext(); }
             @Override public String next() {
-                return observerator.next();
+                return source.next();
             }
         };
                 
@@ -114,6 +128,15 @@ public class ObservableSensor<T> implements Sensor<Observable<T>> {
         return params;
     }
     
+    /**
+     * Returns the {@link Publisher} feeding this sensor.
+     * 
+     * @return  the Publisher, or null if this sensor wraps a plain {@link Observable}
+     */
+    public Publisher getPublisher() {
+        return publisher;
+    }
+    
     /**
      * Returns the configured {@link MetaStream}.
      * 
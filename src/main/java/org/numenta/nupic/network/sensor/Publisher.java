@@ -21,6 +21,8 @@
  */
 package org.numenta.nupic.network.sensor;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.function.Consumer;
 
 import org.numenta.nupic.model.Persistable;
@@ -81,6 +83,28 @@ import rx.subjects.ReplaySubject;
  * manual.onNext(entries[3]);
  * </pre>
  * 
+ * <b>Bounded input</b>
+ * <p>
+ * By default every line handed to {@link #onNext(String)} is held until the {@link Layer}
+ * gets around to it, so a producer which outruns the network grows memory without limit.
+ * Calling {@link Publisher.Builder#buffer(int, Overflow)} instead places a fixed size ring
+ * buffer between the producer and the {@link ObservableSensor}, with an {@link Overflow}
+ * policy deciding what happens when it fills up:
+ * <pre>
+ * Publisher bounded = Publisher.builder()
+ *     .addHeader("timestamp,consumption")
+ *     .addHeader("datetime,float")
+ *     .addHeader("B")
+ *     .buffer(1024, Publisher.Overflow.BLOCK)
+ *     .build();
+ * </pre>
+ * The queue depth and the number of published and dropped lines can then be monitored
+ * with {@link #getQueueDepth()}, {@link #getMaxQueueDepth()}, {@link #getPublishedCount()}
+ * and {@link #getDroppedCount()}. A bounded Publisher feeds exactly one consumer. Its
+ * capacity and policy also bound every output stream of the {@link HTMSensor} reading it,
+ * so a stalled stream does not make its siblings buffer without limit. Under
+ * {@link Overflow#BLOCK} those streams must therefore be consumed on separate threads.
+ * 
  * @author David Ray
  *
  */
@@ -89,9 +113,28 @@ public class Publisher implements Persistable {
 
     private static final int HEADER_SIZE = 3;
     
+    /**
+     * What a bounded {@code Publisher} does with a line arriving while its
+     * buffer is full.
+     */
+    public enum Overflow {
+        /** Discard the arriving line */
+        DROP,
+        /** Make the producer wait in {@link Publisher#onNext(String)} until there is room */
+        BLOCK,
+        /** Overwrite the newest queued line, so the consumer sees the latest value */
+        SAMPLE
+    }
+    
     /** "Replays" the header lines for all new subscribers */
     private transient ReplaySubject<String> subject;
     
+    /** Bounded input buffer, or null when this Publisher is unbounded */
+    private transient InputRingBuffer buffer;
+    
+    /** Header lines emitted ahead of the buffered input */
+    private transient String[] header;
+    
     private Network parentNetwork;
     
     
@@ -105,6 +148,10 @@ public class Publisher implements Persistable {
         
         int cursor = 0;
         
+        int capacity;
+        
+        Overflow overflow;
+        
         
         /**
          * Creates a new {@code Builder}
@@ -139,6 +186,28 @@ public class Publisher implements Persistable {
             return (Builder<PublishSubject<String>>)this;
         }
         
+        /**
+         * Bounds the number of lines held between the producer and the {@link Layer}
+         * to the specified capacity. A capacity of zero (the default) leaves the 
+         * Publisher unbounded.
+         * 
+         * @param capacity  the maximum number of queued lines
+         * @param overflow  what to do with lines arriving while the buffer is full
+         * @return  this Builder
+         */
+        @SuppressWarnings("unchecked")
+        public Builder<PublishSubject<String>> buffer(int capacity, Overflow overflow) {
+            if(capacity < 0) {
+                throw new IllegalArgumentException("Buffer capacity may not be negative: " + capacity);
+            }
+            if(capacity > 0 && overflow == null) {
+                throw new IllegalArgumentException("Overflow policy may not be null");
+            }
+            this.capacity = capacity;
+            this.overflow = overflow;
+            return (Builder<PublishSubject<String>>)this;
+        }
+        
         /**
          * Builds and validates the structure of the expected header then
          * returns an {@link Observable} that can be used to submit info to the
@@ -156,6 +225,10 @@ public class Publisher implements Persistable {
             
             Publisher p = new Publisher();
             p.subject = subject;
+            if(capacity > 0) {
+                p.buffer = new InputRingBuffer(capacity, overflow);
+                p.header = lines.clone();
+            }
             
             if(notifier != null) {
                 notifier.accept(p);
@@ -211,7 +284,11 @@ public class Publisher implements Persistable {
      * @param input the item emitted by the Observable
      */
     public void onNext(String input) {
-        subject.onNext(input);
+        if(buffer != null) {
+            buffer.offer(input);
+        } else {
+            subject.onNext(input);
+        }
     }
     
     /**
@@ -220,7 +297,11 @@ public class Publisher implements Persistable {
      * The {@link Observable} will not call this method if it calls {@link #onError}.
      */
     public void onComplete() {
-        subject.onCompleted();
+        if(buffer != null) {
+            buffer.complete();
+        } else {
+            subject.onCompleted();
+        }
     }
     
     /**
@@ -232,7 +313,11 @@ public class Publisher implements Persistable {
      * @param e     the exception encountered by the Observable
      */
     public void onError(Throwable e) {
-        subject.onError(e);
+        if(buffer != null) {
+            buffer.fail(e);
+        } else {
+            subject.onError(e);
+        }
     }
     
     /**
@@ -250,14 +335,110 @@ public class Publisher implements Persistable {
      * @see <a href="http://reactivex.io/documentation/operators/subscribe.html">ReactiveX operators documentation: Subscribe</a>
      */
     public Subscription subscribe(Observer<String> observer) {
-        return subject.subscribe(observer);
+        return observable().subscribe(observer);
     }
     
     /**
-     * Called within package to access this {@link Publisher}'s wrapped {@link Observable}
+     * Called within package to access this {@link Publisher}'s wrapped {@link Observable}.
+     * For a bounded Publisher the returned Observable drains the buffer on the subscribing
+     * thread, blocking it while waiting for input; prefer {@link #iterator()} there.
      * @return
      */
     public Observable<String> observable() {
+        if(buffer != null) {
+            return Observable.from(this::iterator);
+        }
         return subject;
     }
+    
+    /**
+     * Returns true if this Publisher was built with {@link Publisher.Builder#buffer(int, Overflow)}
+     * @return
+     */
+    public boolean isBounded() {
+        return buffer != null;
+    }
+    
+    /**
+     * Returns a blocking {@link Iterator} over the header lines followed by the buffered 
+     * input of a bounded Publisher. {@link Iterator#hasNext()} waits for the next line and
+     * returns false once {@link #onComplete()} has been called and the buffer is drained.
+     * 
+     * @return  the consuming iterator
+     * @throws IllegalStateException    if this Publisher is not bounded
+     */
+    public Iterator<String> iterator() {
+        if(buffer == null) {
+            throw new IllegalStateException("Only a bounded Publisher may be iterated");
+        }
+        
+        return new Iterator<String>() {
+            private int cursor;
+            private String next;
+            
+            @Override public boolean hasNext() {
+                if(next == null) {
+                    next = cursor < HEADER_SIZE ? header[cursor++] : buffer.take();
+                }
+                return next != null;
+            }
+            
+            @Override public String next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String retVal = next;
+                next = null;
+                return retVal;
+            }
+        };
+    }
+    
+    /**
+     * Returns the number of lines waiting in the buffer of a bounded Publisher.
+     * @return  the current queue depth, or 0 if this Publisher is unbounded
+     */
+    public int getQueueDepth() {
+        return buffer == null ? 0 : buffer.depth();
+    }
+    
+    /**
+     * Returns the largest queue depth reached by a bounded Publisher.
+     * @return  the high water mark, or 0 if this Publisher is unbounded
+     */
+    public int getMaxQueueDepth() {
+        return buffer == null ? 0 : buffer.maxDepth();
+    }
+    
+    /**
+     * Returns the buffer capacity of a bounded Publisher.
+     * @return  the capacity, or 0 if this Publisher is unbounded
+     */
+    public int getCapacity() {
+        return buffer == null ? 0 : buffer.capacity();
+    }
+    
+    /**
+     * Returns the {@link Overflow} policy of a bounded Publisher.
+     * @return  the policy, or null if this Publisher is unbounded
+     */
+    public Overflow getOverflow() {
+        return buffer == null ? null : buffer.overflow();
+    }
+    
+    /**
+     * Returns the number of lines accepted by a bounded Publisher.
+     * @return  the accepted line count, or 0 if this Publisher is unbounded
+     */
+    public long getPublishedCount() {
+        return buffer == null ? 0 : buffer.published();
+    }
+    
+    /**
+     * Returns the number of lines a bounded Publisher discarded under its {@link Overflow} policy.
+     * @return  the dropped line count, or 0 if this Publisher is unbounded
+     */
+    public long getDroppedCount() {
+        return buffer == null ? 0 : buffer.dropped();
+    }
 }
@@ -72,7 +72,11 @@ import org.slf4j.LoggerFactory;
  * </p>
  * <p>
  * In addition, you may also call {@link #setOneCheckPointOnly(boolean)} to overwrite the 
- * checkpoint file if you would rather not maintain multiple checkpoints.
+ * checkpoint file if you would rather not maintain multiple checkpoints, and
+ * {@link #setAsyncCheckPoint(boolean)} to take check point file I/O (but not serialization) off of
+ * the compute path.
+ * {@link #setDeltaCheckPoints(int)} makes most check points append only what changed in the
+ * {@link org.numenta.nupic.model.Connections} since the last one, to a log kept next to a periodic full snapshot.
  * 
  * 
  * @see NetworkTest
@@ -144,6 +148,8 @@ public class SerialConfig implements Serializable {
     private static final String SERIAL_FILE = "Network.ser";
     /** Default checkpoint Network file name for the {@link CheckPointer#checkPoint(rx.Observer)} method. */
     private static final String CHECKPOINT_FILE = "Network_Checkpoint_";
+    /** Suffix of the change log which is kept beside a full check point file */
+    public static final String DELTA_LOG_SUFFIX = ".delta";
     
     private String fileName;
     private String fileDir;
@@ -158,6 +164,12 @@ public class SerialConfig implements Serializable {
     /** Specifies that as a new CheckPoint file is written, the old one is deleted */
     private boolean oneCheckPointOnly;
     
+    /** Specifies that check point files are written and synced on a background thread */
+    private boolean asyncCheckPoint;
+    
+    /** Number of delta check points written between full check points (0 disables deltas) */
+    private int deltaCheckPoints;
+    
      
     
     /**
@@ -355,6 +367,53 @@ public class SerialConfig implements Serializable {
     public boolean isOneCheckPointOnly() {
         return oneCheckPointOnly;
     }
+    
+    /**
+     * Specifies that check point file I/O should happen on a background thread. This is
+     * asynchronous I/O only: the {@link Network} is still serialized in full on the compute
+     * path, and that pause grows with the size of the Network. Only writing and syncing the
+     * file are moved off of it. Combine with {@link #setDeltaCheckPoints(int)} to shorten the
+     * pause itself. Check point observers are notified once the file is on disk.
+     * 
+     * @param b     true to write check point files in the background, false to write them
+     *              before the next compute cycle (default).
+     */
+    public void setAsyncCheckPoint(boolean b) {
+        this.asyncCheckPoint = b;
+    }
+    
+    /**
+     * Returns a flag indicating whether check point files are written in the background
+     * (serialization itself always happens on the compute path).
+     * @return  the flag specifying this condition.
+     */
+    public boolean isAsyncCheckPoint() {
+        return asyncCheckPoint;
+    }
+    
+    /**
+     * Specifies how many delta check points follow each full check point. A delta check
+     * point only appends the {@link org.numenta.nupic.model.Connections} columns, segments and synapses which changed
+     * since the previous check point to the log named by the full check point file plus
+     * {@link #DELTA_LOG_SUFFIX}; loading the full check point file replays that log.
+     * 
+     * @param n     the number of deltas between full check points, or 0 (default) to
+     *              write every check point in full.
+     */
+    public void setDeltaCheckPoints(int n) {
+        if(n < 0) {
+            throw new IllegalArgumentException("Delta check point count must not be negative: " + n);
+        }
+        this.deltaCheckPoints = n;
+    }
+    
+    /**
+     * Returns the number of delta check points written between full check points.
+     * @return  the number of deltas, 0 when every check point is written in full.
+     */
+    public int getDeltaCheckPoints() {
+        return deltaCheckPoints;
+    }
 
     /* (non-Javadoc)
      * @see java.lang.Object#hashCode()
@@ -151,6 +151,36 @@ public abstract class AbstractSparseBinaryMatrix extends AbstractSparseMatrix im
      * @param results           the results array
      */
     public abstract void rightVecSumAtNZ(int[] inputVector, int[] results, double stimulusThreshold);
+    
+    /**
+     * Fills the specified results array with the result of the 
+     * matrix vector multiplication, where the right side vector is
+     * given as the (unique) indexes of its on bits rather than as a
+     * dense array of 0's and 1's. Only the on bits are visited, so the
+     * cost is proportional to the number of rows times the number of
+     * on bits instead of the full input width.
+     * 
+     * @param inputIndices      the indexes of the on bits of the right side vector
+     * @param results           the results array
+     * @param stimulusThreshold row sums below this value are set to 0
+     */
+    public void rightVecSumAtNZSparse(int[] inputIndices, int[] results, double stimulusThreshold) {
+        if(dimensions.length != 2) {
+            int[] inputVector = new int[dimensions.length < 2 ? dimensions[0] : (getMaxIndex() + 1) / dimensions[0]];
+            ArrayUtils.setIndexesTo(inputVector, inputIndices, 1);
+            rightVecSumAtNZ(inputVector, results, stimulusThreshold);
+            return;
+        }
+        
+        for(int i = 0;i < dimensions[0];i++) {
+            for(int j = 0;j < inputIndices.length;j++) {
+                results[i] += getIntValue(i, inputIndices[j]);
+            }
+            if(results[i] < stimulusThreshold) {
+                results[i] = 0;
+            }
+        }
+    }
         
     /**
      * Sets the value at the specified index.
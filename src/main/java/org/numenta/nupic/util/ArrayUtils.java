@@ -1476,7 +1476,7 @@ public class ArrayUtils {
      */
     public static double[] clip(double[] values, double min, double max) {
         for (int i = 0; i < values.length; i++) {
-            values[i] = Math.min(1, Math.max(0, values[i]));
+            values[i] = Math.min(max, Math.max(min, values[i]));
         }
         return values;
     }
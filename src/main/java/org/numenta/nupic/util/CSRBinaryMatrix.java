@@ -0,0 +1,426 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import java.util.Arrays;
+
+import org.numenta.nupic.model.Persistable;
+
+/**
+ * Two dimensional {@link AbstractSparseBinaryMatrix} for the connected synapse
+ * matrix ([columns, inputs]) which keeps a transposed index from each input
+ * bit to the rows connected to it.
+ * <p>
+ * Membership is stored as a row major bit set so {@link #get(int)} and
+ * {@link #set(int, int...)} are O(1) (plus the fan-out of the input when the
+ * bit flips). The transposed index is updated in the same call, so the overlap
+ * kernels ({@link #rightVecSumAtNZ(int[], int[], double)} and
+ * {@link #rightVecSumAtNZSparse(int[], int[], double)}) only visit the active
+ * input bits and the rows connected to them: the cost is proportional to
+ * active inputs x fan-out instead of rows x inputs, and nothing is allocated.
+ * <p>
+ * A packed CSR view ({@link #getRowPointers()}, {@link #getColumnIndices()})
+ * is rebuilt lazily after modification for consumers which walk the matrix
+ * row by row.
+ */
+public class CSRBinaryMatrix extends AbstractSparseBinaryMatrix implements Persistable {
+    private static final long serialVersionUID = 1L;
+
+    private final int rows;
+    private final int cols;
+    /** Number of longs per row in {@link #bits} */
+    private final int words;
+    /** Row major bit set of the connected entries */
+    private final long[] bits;
+
+    /** For each input (column of the matrix), the rows connected to it */
+    private final int[][] inputRows;
+    /** Number of valid entries in each array of {@link #inputRows} */
+    private final int[] inputFanOut;
+
+    /** Packed CSR view, valid while {@link #csrDirty} is false */
+    private int[] rowPtr;
+    private int[] colIdx;
+    private boolean csrDirty = true;
+
+    /**
+     * Constructs a new {@code CSRBinaryMatrix}
+     * @param dimensions    the dimensions [rows, columns] of the matrix
+     */
+    public CSRBinaryMatrix(int[] dimensions) {
+        super(dimensions, false);
+        if(dimensions.length != 2) {
+            throw new IllegalArgumentException("CSRBinaryMatrix must be two dimensional: " + Arrays.toString(dimensions));
+        }
+        rows = dimensions[0];
+        cols = dimensions[1];
+        words = (cols + 63) >>> 6;
+        bits = new long[rows * words];
+        inputRows = new int[cols][];
+        inputFanOut = new int[cols];
+        for(int i = 0;i < cols;i++) {
+            inputRows[i] = new int[4];
+        }
+    }
+
+    private boolean isSet(int row, int col) {
+        return (bits[row * words + (col >>> 6)] & (1L << (col & 63))) != 0;
+    }
+
+    private int rowCount(int row) {
+        int count = 0;
+        for(int w = row * words, end = w + words;w < end;w++) {
+            count += Long.bitCount(bits[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Flips the bit at (row, col) and updates the transposed index.
+     * @return  true if the bit changed
+     */
+    private boolean flip(int row, int col, boolean on) {
+        int w = row * words + (col >>> 6);
+        long mask = 1L << (col & 63);
+        if(((bits[w] & mask) != 0) == on) {
+            return false;
+        }
+
+        bits[w] ^= mask;
+        if(on) {
+            int[] list = inputRows[col];
+            if(inputFanOut[col] == list.length) {
+                list = inputRows[col] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[inputFanOut[col]++] = row;
+        }else{
+            removeFromInput(col, row);
+        }
+        csrDirty = true;
+        return true;
+    }
+
+    private void removeFromInput(int col, int row) {
+        int[] list = inputRows[col];
+        int last = --inputFanOut[col];
+        for(int i = 0;i <= last;i++) {
+            if(list[i] == row) {
+                list[i] = list[last];
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CSRBinaryMatrix set(int value, int... coordinates) {
+        int row = coordinates[0];
+        if(flip(row, coordinates[1], value == 1)) {
+            setTrueCount(row, getTrueCount(row) + (value == 1 ? 1 : -1));
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CSRBinaryMatrix set(int index, Object value) {
+        set(index, ((Integer)value).intValue());
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CSRBinaryMatrix setForTest(int index, int value) {
+        flip(index / cols, index % cols, value == 1);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer get(int index) {
+        return isSet(index / cols, index % cols) ? 1 : 0;
+    }
+
+    /**
+     * Clears the specified row, visiting only its connected entries.
+     */
+    @Override
+    public void clearStatistics(int row) {
+        setTrueCount(row, 0);
+        int base = row * words;
+        for(int w = 0;w < words;w++) {
+            long word = bits[base + w];
+            while(word != 0) {
+                removeFromInput((w << 6) + Long.numberOfTrailingZeros(word), row);
+                word &= word - 1;
+            }
+            bits[base + w] = 0;
+        }
+        csrDirty = true;
+    }
+
+    /**
+     * Returns the dense contents of a row as an {@code int[]}.
+     */
+    @Override
+    public Object getSlice(int... coordinates) {
+        if(coordinates.length != 1) {
+            sliceError(coordinates);
+        }
+        int[] slice = new int[cols];
+        int base = coordinates[0] * words;
+        for(int w = 0;w < words;w++) {
+            long word = bits[base + w];
+            while(word != 0) {
+                slice[(w << 6) + Long.numberOfTrailingZeros(word)] = 1;
+                word &= word - 1;
+            }
+        }
+        return slice;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int[] getSparseIndices() {
+        int total = 0;
+        for(long word : bits) {
+            total += Long.bitCount(word);
+        }
+        int[] indices = new int[total];
+        int k = 0;
+        for(int row = 0;row < rows;row++) {
+            int base = row * words;
+            for(int w = 0;w < words;w++) {
+                long word = bits[base + w];
+                while(word != 0) {
+                    indices[k++] = row * cols + (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rightVecSumAtNZ(int[] inputVector, int[] results) {
+        for(int i = 0;i < cols;i++) {
+            int value = inputVector[i];
+            if(value != 0) {
+                int[] list = inputRows[i];
+                for(int j = 0, len = inputFanOut[i];j < len;j++) {
+                    results[list[j]] += value;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rightVecSumAtNZ(int[] inputVector, int[] results, double stimulusThreshold) {
+        rightVecSumAtNZ(inputVector, results);
+        applyThreshold(results, stimulusThreshold);
+    }
+
+    /**
+     * Overlap kernel driven by the indices of the active input bits: each
+     * active input adds one to every row connected to it.
+     */
+    @Override
+    public void rightVecSumAtNZSparse(int[] inputIndices, int[] results, double stimulusThreshold) {
+        for(int i = 0;i < inputIndices.length;i++) {
+            int[] list = inputRows[inputIndices[i]];
+            for(int j = 0, len = inputFanOut[inputIndices[i]];j < len;j++) {
+                results[list[j]]++;
+            }
+        }
+        applyThreshold(results, stimulusThreshold);
+    }
+
+    /**
+     * Packs the indices of the active input bits into longs laid out like the
+     * rows of this matrix, for {@link #rightVecSumAtNZ(long[], int[], int, int, double)}.
+     * @param inputIndices  the indexes of the input bits which are on
+     * @return
+     */
+    public long[] packInput(int[] inputIndices) {
+        long[] inputBits = new long[words];
+        for(int i = 0;i < inputIndices.length;i++) {
+            inputBits[inputIndices[i] >>> 6] |= 1L << (inputIndices[i] & 63);
+        }
+        return inputBits;
+    }
+
+    /**
+     * Row driven overlap kernel over the rows [fromRow, toRow) only: the overlap
+     * of a row is the number of bits it shares with the packed input. Only reads
+     * the matrix, so disjoint row ranges can be computed concurrently; entries of
+     * {@code results} outside the range are left alone.
+     * 
+     * @param inputBits         the active input bits, see {@link #packInput(int[])}
+     * @param results           receives the thresholded overlap of each row in the range
+     * @param fromRow           the first row
+     * @param toRow             one past the last row
+     * @param stimulusThreshold overlaps below this are set to 0
+     */
+    public void rightVecSumAtNZ(long[] inputBits, int[] results, int fromRow, int toRow, double stimulusThreshold) {
+        for(int row = fromRow;row < toRow;row++) {
+            int count = 0;
+            for(int w = 0, base = row * words;w < words;w++) {
+                count += Long.bitCount(bits[base + w] & inputBits[w]);
+            }
+            results[row] = count < stimulusThreshold ? 0 : count;
+        }
+    }
+
+    /**
+     * Overlap kernel for a batch of packed inputs: every row is read once and
+     * intersected with each input in turn, so the matrix is traversed a single
+     * time for the whole batch.
+     * 
+     * @param inputBits         the active input bits of each record, see {@link #packInput(int[])}
+     * @param results           receives the thresholded overlaps of each record
+     * @param stimulusThreshold overlaps below this are set to 0
+     */
+    public void rightVecSumAtNZ(long[][] inputBits, int[][] results, double stimulusThreshold) {
+        for(int row = 0;row < rows;row++) {
+            int base = row * words;
+            for(int r = 0;r < inputBits.length;r++) {
+                long[] input = inputBits[r];
+                int count = 0;
+                for(int w = 0;w < words;w++) {
+                    count += Long.bitCount(bits[base + w] & input[w]);
+                }
+                results[r][row] = count < stimulusThreshold ? 0 : count;
+            }
+        }
+    }
+
+    private void applyThreshold(int[] results, double stimulusThreshold) {
+        for(int i = 0;i < rows;i++) {
+            if(results[i] < stimulusThreshold) {
+                results[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the rows connected to the specified input bit. The returned
+     * array is a copy.
+     * @param input     the input index (column of the matrix)
+     * @return
+     */
+    public int[] getInputRows(int input) {
+        return Arrays.copyOf(inputRows[input], inputFanOut[input]);
+    }
+
+    private void packCSR() {
+        if(!csrDirty) return;
+
+        int[] ptr = new int[rows + 1];
+        for(int row = 0;row < rows;row++) {
+            ptr[row + 1] = ptr[row] + rowCount(row);
+        }
+        int[] idx = new int[ptr[rows]];
+        for(int row = 0;row < rows;row++) {
+            int k = ptr[row];
+            int base = row * words;
+            for(int w = 0;w < words;w++) {
+                long word = bits[base + w];
+                while(word != 0) {
+                    idx[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+        rowPtr = ptr;
+        colIdx = idx;
+        csrDirty = false;
+    }
+
+    /**
+     * Returns the CSR row pointer array: the connected input indices of row
+     * {@code r} are {@code getColumnIndices()[rowPtr[r] .. rowPtr[r + 1])},
+     * in ascending order.
+     * @return
+     */
+    public int[] getRowPointers() {
+        packCSR();
+        return rowPtr;
+    }
+
+    /**
+     * Returns the CSR column index array, see {@link #getRowPointers()}.
+     * @return
+     */
+    public int[] getColumnIndices() {
+        packCSR();
+        return colIdx;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(getDimensions());
+        result = prime * result + Arrays.hashCode(bits);
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj)
+            return true;
+        if(obj == null)
+            return false;
+        if(getClass() != obj.getClass())
+            return false;
+        CSRBinaryMatrix other = (CSRBinaryMatrix)obj;
+        if(!Arrays.equals(getDimensions(), other.getDimensions()))
+            return false;
+        if(!Arrays.equals(bits, other.bits))
+            return false;
+        return true;
+    }
+}
@@ -136,6 +136,30 @@ public class SparseBinaryMatrix extends AbstractSparseBinaryMatrix implements Pe
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Reads each row's backing slice directly instead of going through
+     * the coordinate computations of the generic implementation.
+     */
+    @Override
+    public void rightVecSumAtNZSparse(int[] inputIndices, int[] results, double stimulusThreshold) {
+        if(dimensions.length != 2) {
+            super.rightVecSumAtNZSparse(inputIndices, results, stimulusThreshold);
+            return;
+        }
+        
+        for(int i = 0;i < dimensions[0];i++) {
+            int[] slice = (int[])getSlice(i);
+            for(int j = 0;j < inputIndices.length;j++) {
+                results[i] += slice[inputIndices[j]];
+            }
+            if(results[i] < stimulusThreshold) {
+                results[i] = 0;
+            }
+        }
+    }
+
     /**
      * Sets the value at the specified index.
      * 
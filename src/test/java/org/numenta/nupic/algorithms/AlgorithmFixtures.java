@@ -0,0 +1,131 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import java.util.Random;
+
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.util.MersenneTwister;
+
+/**
+ * Models and inputs shared by the tests comparing the parallel and compiled
+ * spatial poolers and temporal memories against the serial ones.
+ */
+final class AlgorithmFixtures {
+    /** Number of columns of {@link #initTemporalMemory(Connections)} */
+    static final int TM_COLUMNS = 200;
+
+    private AlgorithmFixtures() {}
+
+    /**
+     * A 32x32 column spatial pooler over a 30x30 input, the size of a
+     * {@code CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D)} encoding.
+     * 
+     * @param sp                    the pooler to initialize the connections with
+     * @param globalInhibition      whether to inhibit globally or locally
+     * @return  the initialized connections
+     */
+    static Connections initSpatialPooler(SpatialPooler sp, boolean globalInhibition) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.INPUT_DIMENSIONS, new int[] { 30, 30 });
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { 32, 32 });
+        parameters.set(KEY.CELLS_PER_COLUMN, 1);
+        parameters.set(KEY.POTENTIAL_RADIUS, new int[] { 5, 5 });
+        parameters.set(KEY.POTENTIAL_PCT, 0.8);
+        parameters.set(KEY.GLOBAL_INHIBITION, globalInhibition);
+        parameters.set(KEY.LOCAL_AREA_DENSITY, -1.0);
+        parameters.set(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, globalInhibition ? 40.0 : 5.0);
+        parameters.set(KEY.STIMULUS_THRESHOLD, 1.0);
+        parameters.set(KEY.SYN_PERM_INACTIVE_DEC, 0.01);
+        parameters.set(KEY.SYN_PERM_ACTIVE_INC, 0.03);
+        parameters.set(KEY.SYN_PERM_CONNECTED, 0.1);
+        parameters.set(KEY.MIN_PCT_OVERLAP_DUTY_CYCLES, 0.2);
+        parameters.set(KEY.MIN_PCT_ACTIVE_DUTY_CYCLES, 0.1);
+        parameters.set(KEY.DUTY_CYCLE_PERIOD, 10);
+        parameters.set(KEY.MAX_BOOST, 10.0);
+        parameters.set(KEY.RANDOM, new MersenneTwister(42));
+        Connections c = new Connections();
+        parameters.apply(c);
+        sp.init(c);
+        return c;
+    }
+
+    /**
+     * A temporal memory of {@link #TM_COLUMNS} columns with 4 cells each, and
+     * limits small enough that segments and synapses get evicted.
+     * 
+     * @param c     the connections to initialize
+     * @return  {@code c}
+     */
+    static <T extends Connections> T initTemporalMemory(T c) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { TM_COLUMNS });
+        parameters.set(KEY.CELLS_PER_COLUMN, 4);
+        parameters.set(KEY.ACTIVATION_THRESHOLD, 3);
+        parameters.set(KEY.MIN_THRESHOLD, 2);
+        parameters.set(KEY.MAX_NEW_SYNAPSE_COUNT, 6);
+        parameters.set(KEY.MAX_SYNAPSES_PER_SEGMENT, 10);
+        parameters.set(KEY.MAX_SEGMENTS_PER_CELL, 3);
+        parameters.set(KEY.INITIAL_PERMANENCE, 0.55);
+        parameters.set(KEY.PERMANENCE_INCREMENT, 0.1);
+        parameters.set(KEY.PERMANENCE_DECREMENT, 0.1);
+        parameters.set(KEY.PREDICTED_SEGMENT_DECREMENT, 0.05);
+        parameters.set(KEY.RANDOM, new MersenneTwister(42));
+        parameters.apply(c);
+        TemporalMemory.init(c);
+        return c;
+    }
+
+    /**
+     * A sequence of sorted active column sets, 10 columns out of {@link #TM_COLUMNS} each.
+     * 
+     * @param length    the number of elements
+     * @param seed      the random seed
+     * @return  the sequence
+     */
+    static int[][] sequence(int length, long seed) {
+        Random random = new Random(seed);
+        int[][] patterns = new int[length][];
+        for(int i = 0;i < length;i++) {
+            patterns[i] = random.ints(0, TM_COLUMNS).distinct().limit(10).sorted().toArray();
+        }
+        return patterns;
+    }
+
+    /**
+     * The sequence element of {@code step}, with about one step in ten replaced
+     * by noise so that some columns burst.
+     * 
+     * @param patterns  the sequence
+     * @param noise     the noise generator
+     * @param step      the step
+     * @return  the active columns
+     */
+    static int[] noisyInput(int[][] patterns, Random noise, int step) {
+        return noise.nextInt(10) == 0 ?
+            noise.ints(0, TM_COLUMNS).distinct().limit(10).toArray() : patterns[step % patterns.length];
+    }
+}
@@ -0,0 +1,155 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.numenta.nupic.algorithms.ColumnarWeightMatrix.Precision;
+
+public class ColumnarWeightMatrixTest {
+
+    @Test
+    public void testNewMatrixIsZero() {
+        for(Precision precision : Precision.values()) {
+            ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(precision, 3, 4, 0, 0);
+            double[] activation = new double[3];
+            matrix.accumulate(new int[] { 0, 1, 2, 3 }, activation);
+            assertArrayEquals(new double[3], activation, 0);
+            assertEquals(0.0, matrix.get(2, 3), 0);
+        }
+    }
+
+    @Test
+    public void testAddToColumnsOnlyTouchesActiveBits() {
+        for(Precision precision : Precision.values()) {
+            ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(precision, 2, 4, 0, 0);
+            matrix.addToColumns(new int[] { 1, 3 }, new double[] { 0.5, -0.25 });
+            assertEquals(0.5, matrix.get(0, 1), 0);
+            assertEquals(-0.25, matrix.get(1, 3), 0);
+            assertEquals(0.0, matrix.get(0, 2), 0);
+
+            double[] activation = new double[2];
+            matrix.accumulate(new int[] { 1, 2, 3 }, activation);
+            assertArrayEquals(new double[] { 1.0, -0.5 }, activation, 0);
+        }
+    }
+
+    @Test
+    public void testGrowingBucketsPadsColumnsWithZeros() {
+        for(Precision precision : Precision.values()) {
+            ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(precision, 1, 2, 0, 0);
+            matrix.addToColumns(new int[] { 0 }, new double[] { 1.0 });
+            matrix.ensureBuckets(3);
+            matrix.ensureInputs(5);
+            assertEquals(3, matrix.numBuckets());
+            assertEquals(5, matrix.numInputs());
+
+            double[] activation = new double[3];
+            matrix.accumulate(new int[] { 0, 4 }, activation);
+            assertArrayEquals(new double[] { 1.0, 0, 0 }, activation, 0);
+
+            matrix.addToColumns(new int[] { 0, 4 }, new double[] { 1.0, 2.0, 3.0 });
+            assertEquals(2.0, matrix.get(0, 0), 0);
+            assertEquals(3.0, matrix.get(2, 0), 0);
+            assertEquals(2.0, matrix.get(1, 4), 0);
+        }
+    }
+
+    @Test
+    public void testCapacityDoesNotShowAsBuckets() {
+        for(Precision precision : Precision.values()) {
+            ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(precision, 2, 3, 100, 50);
+            assertEquals(2, matrix.numBuckets());
+            assertEquals(3, matrix.numInputs());
+
+            matrix.addToColumns(new int[] { 2 }, new double[] { 1.0, 1.0, 7.0 });
+            double[] activation = new double[2];
+            matrix.accumulate(new int[] { 2 }, activation);
+            assertArrayEquals(new double[] { 1.0, 1.0 }, activation, 0);
+            assertEquals(0.0, matrix.get(2, 2), 0);
+
+            matrix.ensureBuckets(3);
+            assertEquals(0.0, matrix.get(2, 2), 0);
+        }
+    }
+
+    @Test
+    public void testGeometricGrowthKeepsWeights() {
+        for(Precision precision : Precision.values()) {
+            ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(precision, 1, 1, 0, 0);
+            for(int n = 1;n <= 200;n++) {
+                matrix.ensureBuckets(n);
+                matrix.ensureInputs(n);
+                double[] delta = new double[n];
+                delta[n - 1] = n;
+                matrix.addToColumns(n == 1 ? new int[] { 0 } : new int[] { 0, n - 1 }, delta);
+            }
+            for(int n = 1;n <= 200;n++) {
+                assertEquals(n, matrix.get(n - 1, 0), 0);
+                assertEquals(n, matrix.get(n - 1, n - 1), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRepeatedBitIsCountedTwice() {
+        ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(1, 1);
+        matrix.addToColumns(new int[] { 0, 0 }, new double[] { 1.0 });
+        assertEquals(2.0, matrix.get(0, 0), 0);
+    }
+
+    @Test
+    public void testFloatPrecisionRoundsWeights() {
+        ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(Precision.FLOAT, 1, 1, 0, 0);
+        matrix.addToColumns(new int[] { 0 }, new double[] { 0.1 });
+        assertEquals((double)0.1f, matrix.get(0, 0), 0);
+    }
+
+    @Test
+    public void testOffHeapMatrixSerializes() throws Exception {
+        ColumnarWeightMatrix matrix = ColumnarWeightMatrix.create(Precision.OFF_HEAP_FLOAT, 3, 4, 8, 0);
+        matrix.addToColumns(new int[] { 1, 3 }, new double[] { 0.5, -0.25, 2.0 });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(matrix);
+        }
+        ColumnarWeightMatrix copy;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (ColumnarWeightMatrix)in.readObject();
+        }
+
+        assertEquals(3, copy.numBuckets());
+        assertEquals(4, copy.numInputs());
+        for(int bucket = 0;bucket < 3;bucket++) {
+            for(int input = 0;input < 4;input++) {
+                assertEquals(matrix.get(bucket, input), copy.get(bucket, input), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+import static org.numenta.nupic.algorithms.AlgorithmFixtures.*;
+
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder.Variant;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.util.ArrayUtils;
+import org.numenta.nupic.util.SparseBinaryMatrix;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class CompiledSpatialPoolerTest {
+
+    private static int[] encode(CompiledSpatialDataEncoder encoder, int step) {
+        return encoder.encode((step * 7) % 122, (step * 3) % 61);
+    }
+
+    private void assertMatchesInference(Connections c, SpatialPooler sp, CompiledSpatialPooler compiled) {
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        int[] activeArray = new int[c.getNumColumns()];
+        TIntArrayList active = new TIntArrayList();
+        for(int step = 0;step < 60;step++) {
+            int[] input = encode(encoder, step);
+            sp.compute(c, input, activeArray, false);
+            int[] expected = ArrayUtils.where(activeArray, ArrayUtils.WHERE_1);
+
+            assertArrayEquals("step " + step, expected, compiled.compute(input));
+            active.resetQuick();
+            encoder.encodeActive((step * 7) % 122, (step * 3) % 61, active);
+            assertArrayEquals("step " + step, expected, compiled.computeSparse(active.toArray()));
+        }
+    }
+
+    private void assertCompiledMatches(boolean globalInhibition, boolean sparseBinaryMatrix) {
+        SpatialPooler sp = new SpatialPooler();
+        Connections c = initSpatialPooler(sp, globalInhibition);
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        int[] activeArray = new int[c.getNumColumns()];
+        for(int step = 0;step < 100;step++) {
+            sp.compute(c, encode(encoder, step + 1000), activeArray, true);
+        }
+        if(sparseBinaryMatrix) {
+            SparseBinaryMatrix matrix = new SparseBinaryMatrix(c.getConnectedCounts().getDimensions());
+            for(int index : c.getConnectedCounts().getSparseIndices()) {
+                matrix.set(index, 1);
+            }
+            c.setConnectedMatrix(matrix);
+        }
+
+        CompiledSpatialPooler compiled = CompiledSpatialPooler.compile(sp, c);
+        assertEquals(c.getConnectedCounts().getSparseIndices().length, compiled.getNumConnectedSynapses());
+        assertMatchesInference(c, sp, compiled);
+    }
+
+    @Test
+    public void testLocalInhibitionMatchesInference() {
+        assertCompiledMatches(false, false);
+    }
+
+    @Test
+    public void testGlobalInhibitionMatchesInference() {
+        assertCompiledMatches(true, false);
+    }
+
+    @Test
+    public void testSparseBinaryMatrixMatchesInference() {
+        assertCompiledMatches(false, true);
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterLearning() {
+        SpatialPooler sp = new SpatialPooler();
+        Connections c = initSpatialPooler(sp, true);
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        int[] input = encode(encoder, 5);
+        CompiledSpatialPooler compiled = CompiledSpatialPooler.compile(sp, c);
+        int[] before = compiled.compute(input);
+
+        int[] activeArray = new int[c.getNumColumns()];
+        for(int step = 0;step < 50;step++) {
+            sp.compute(c, encode(encoder, step), activeArray, true);
+        }
+        assertArrayEquals(before, compiled.compute(input));
+    }
+
+    @Test
+    public void testConcurrentInference() {
+        SpatialPooler sp = new SpatialPooler();
+        Connections c = initSpatialPooler(sp, false);
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        CompiledSpatialPooler compiled = CompiledSpatialPooler.compile(sp, c);
+        int[][] expected = new int[200][];
+        for(int step = 0;step < expected.length;step++) {
+            expected[step] = compiled.compute(encode(encoder, step));
+        }
+
+        int[][] actual = new int[expected.length][];
+        IntStream.range(0, expected.length).parallel().forEach(step -> {
+            actual[step] = compiled.compute(encode(encoder, step));
+        });
+        for(int step = 0;step < expected.length;step++) {
+            assertArrayEquals("step " + step, expected[step], actual[step]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsWrongInputSize() {
+        SpatialPooler sp = new SpatialPooler();
+        Connections c = initSpatialPooler(sp, true);
+        CompiledSpatialPooler.compile(sp, c).compute(new int[10]);
+    }
+}
@@ -0,0 +1,152 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+import static org.numenta.nupic.algorithms.AlgorithmFixtures.*;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.ComputeCycle;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.PackedConnections;
+import org.numenta.nupic.util.MersenneTwister;
+
+public class CompiledTemporalMemoryTest {
+
+    private static int[] indexes(Collection<Cell> cells) {
+        return cells.stream().mapToInt(Cell::getIndex).toArray();
+    }
+
+    @Test
+    public void testMatchesInference() {
+        Connections c = initTemporalMemory(new Connections());
+        TemporalMemory tm = new TemporalMemory();
+        int[][] patterns = sequence(15, 3);
+        Random noise = new Random(5);
+        for(int step = 0;step < 400;step++) {
+            tm.compute(c, noisyInput(patterns, noise, step), true);
+        }
+
+        CompiledTemporalMemory compiled = CompiledTemporalMemory.compile(c);
+        assertEquals(c.numSegments(), compiled.getNumSegments());
+        assertEquals(c.numSynapses(), compiled.getNumSynapses());
+
+        tm.reset(c);
+        c.setRandom(new MersenneTwister(7));
+        CompiledTemporalMemory.State state = compiled.newState(new MersenneTwister(7));
+        for(int step = 0;step < 200;step++) {
+            int[] activeColumns = noisyInput(patterns, noise, step);
+            ComputeCycle cycle = tm.compute(c, activeColumns, false);
+            compiled.compute(state, activeColumns);
+
+            String message = "step " + step;
+            assertArrayEquals(message, indexes(cycle.activeCells), state.getActiveCells());
+            assertArrayEquals(message, indexes(cycle.winnerCells), state.getWinnerCells());
+            assertArrayEquals(message, indexes(c.getPredictiveCells()), state.getPredictiveCells());
+        }
+    }
+
+    @Test
+    public void testMatchesIndexInferenceOnPackedConnections() {
+        Connections c = initTemporalMemory(new PackedConnections());
+        TemporalMemory tm = new TemporalMemory();
+        ComputeCycle cycle = new ComputeCycle();
+        int[][] patterns = sequence(20, 11);
+        Random noise = new Random(9);
+        for(int step = 0;step < 400;step++) {
+            tm.computeIndices(c, noisyInput(patterns, noise, step), true, cycle);
+        }
+
+        CompiledTemporalMemory compiled = CompiledTemporalMemory.compile(c);
+        cycle = new ComputeCycle();
+        c.setRandom(new MersenneTwister(13));
+        CompiledTemporalMemory.State state = compiled.newState(new MersenneTwister(13));
+        int predicted = 0;
+        for(int step = 0;step < 200;step++) {
+            int[] activeColumns = noisyInput(patterns, noise, step);
+            tm.computeIndices(c, activeColumns, false, cycle);
+            compiled.compute(state, activeColumns);
+
+            String message = "step " + step;
+            assertArrayEquals(message, cycle.activeCellIndices.toArray(), state.getActiveCells());
+            assertArrayEquals(message, cycle.winnerCellIndices.toArray(), state.getWinnerCells());
+            assertArrayEquals(message, cycle.predictiveCellIndices.toArray(), state.getPredictiveCells());
+            predicted += state.getPredictiveCells().length;
+        }
+        assertTrue(predicted > 0);
+    }
+
+    @Test
+    public void testResetForgetsPredictions() {
+        Connections c = initTemporalMemory(new Connections());
+        TemporalMemory tm = new TemporalMemory();
+        int[][] patterns = sequence(5, 17);
+        for(int step = 0;step < 100;step++) {
+            tm.compute(c, patterns[step % patterns.length], true);
+        }
+
+        CompiledTemporalMemory compiled = CompiledTemporalMemory.compile(c);
+        CompiledTemporalMemory.State state = compiled.newState(new MersenneTwister(1));
+        compiled.compute(state, patterns[0]);
+        assertTrue(state.getPredictiveCells().length > 0);
+
+        state.reset();
+        assertEquals(0, state.getPredictiveCells().length);
+        compiled.compute(state, patterns[1]);
+        assertEquals(patterns[1].length * c.getCellsPerColumn(), state.getActiveCells().length);
+    }
+
+    @Test
+    public void testConcurrentSequencesShareOneModel() {
+        Connections c = initTemporalMemory(new Connections());
+        TemporalMemory tm = new TemporalMemory();
+        int[][] patterns = sequence(10, 21);
+        for(int step = 0;step < 200;step++) {
+            tm.compute(c, patterns[step % patterns.length], true);
+        }
+        CompiledTemporalMemory compiled = CompiledTemporalMemory.compile(c);
+
+        int[][] expected = new int[8][];
+        for(int s = 0;s < expected.length;s++) {
+            expected[s] = run(compiled, patterns, s);
+        }
+        int[][] actual = new int[expected.length][];
+        IntStream.range(0, expected.length).parallel().forEach(s -> actual[s] = run(compiled, patterns, s));
+        for(int s = 0;s < expected.length;s++) {
+            assertArrayEquals(expected[s], actual[s]);
+        }
+    }
+
+    /** Runs the sequence from offset {@code start} and returns the last predictive cells */
+    private static int[] run(CompiledTemporalMemory compiled, int[][] patterns, int start) {
+        CompiledTemporalMemory.State state = compiled.newState(new MersenneTwister(start));
+        for(int step = 0;step < 50;step++) {
+            compiled.compute(state, patterns[(start + step) % patterns.length]);
+        }
+        return state.getPredictiveCells();
+    }
+}
@@ -0,0 +1,129 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+import static org.numenta.nupic.algorithms.AlgorithmFixtures.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder.Variant;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.util.ArrayUtils;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class ParallelSpatialPoolerTest {
+
+    private static void assertSameState(String message, Connections expected, Connections actual) {
+        assertArrayEquals(message, expected.getOverlaps(), actual.getOverlaps());
+        assertArrayEquals(message, expected.getBoostedOverlaps(), actual.getBoostedOverlaps(), 0);
+        assertArrayEquals(message, expected.getOverlapDutyCycles(), actual.getOverlapDutyCycles(), 0);
+        assertArrayEquals(message, expected.getActiveDutyCycles(), actual.getActiveDutyCycles(), 0);
+        assertArrayEquals(message, expected.getMinOverlapDutyCycles(), actual.getMinOverlapDutyCycles(), 0);
+        assertArrayEquals(message, expected.getMinActiveDutyCycles(), actual.getMinActiveDutyCycles(), 0);
+        assertArrayEquals(message, expected.getBoostFactors(), actual.getBoostFactors(), 0);
+        assertEquals(message, expected.getInhibitionRadius(), actual.getInhibitionRadius());
+        assertArrayEquals(message, expected.getConnectedCounts().getSparseIndices(), actual.getConnectedCounts().getSparseIndices());
+        assertArrayEquals(message, expected.getConnectedCounts().getTrueCounts(), actual.getConnectedCounts().getTrueCounts());
+        for(int i = 0;i < expected.getNumColumns();i++) {
+            assertTrue(message, Arrays.equals(expected.getPotentialPools().get(i).getSparsePermanences(),
+                actual.getPotentialPools().get(i).getSparsePermanences()));
+        }
+    }
+
+    private void assertMatchesSerial(SpatialPooler parallel, boolean globalInhibition) {
+        SpatialPooler serial = new SpatialPooler();
+        Connections expected = initSpatialPooler(serial, globalInhibition);
+        Connections actual = initSpatialPooler(parallel, globalInhibition);
+        assertSameState("init", expected, actual);
+
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        int[] input = new int[encoder.getWidth()];
+        TIntArrayList active = new TIntArrayList();
+        int[] expectedOut = new int[expected.getNumColumns()];
+        int[] actualOut = new int[actual.getNumColumns()];
+        for(int step = 0;step < 80;step++) {
+            int x = (step * 7) % 122, y = (step * 3) % 61;
+            boolean learn = step < 70;
+            if(step % 2 == 0) {
+                encoder.encode(x, y, input);
+                serial.compute(expected, input, expectedOut, learn);
+                parallel.compute(actual, input, actualOut, learn);
+            }else{
+                encoder.encodeActive(x, y, active);
+                serial.computeSparse(expected, active.toArray(), expectedOut, learn);
+                parallel.computeSparse(actual, active.toArray(), actualOut, learn);
+            }
+
+            String message = "step " + step;
+            assertArrayEquals(message, expectedOut, actualOut);
+            assertSameState(message, expected, actual);
+        }
+    }
+
+    @Test
+    public void testLocalInhibitionMatchesSerial() {
+        assertMatchesSerial(new ParallelSpatialPooler(4), false);
+    }
+
+    @Test
+    public void testGlobalInhibitionMatchesSerial() {
+        assertMatchesSerial(new ParallelSpatialPooler(new ForkJoinPool(3)), true);
+    }
+
+    @Test
+    public void testSingleRangeMatchesSerial() {
+        assertMatchesSerial(new ParallelSpatialPooler(1), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveParallelism() {
+        new ParallelSpatialPooler(0);
+    }
+
+    @Test
+    public void testComputeBatchMatchesCompute() {
+        SpatialPooler sp = new ParallelSpatialPooler(new ForkJoinPool(2));
+        Connections c = initSpatialPooler(sp, false);
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        int[] output = new int[c.getNumColumns()];
+        for(int step = 0;step < 20;step++) {
+            sp.compute(c, encoder.encode((step * 7) % 122, (step * 3) % 61), output, true);
+        }
+
+        int[][] inputs = new int[100][];
+        for(int r = 0;r < inputs.length;r++) {
+            inputs[r] = encoder.encode((r * 5) % 122, (r * 11) % 61);
+        }
+        int[][] batch = sp.computeBatch(c, inputs);
+        for(int r = 0;r < inputs.length;r++) {
+            sp.compute(c, inputs[r], output, false);
+            assertArrayEquals("record " + r, ArrayUtils.where(output, ArrayUtils.WHERE_1), batch[r]);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+import static org.numenta.nupic.algorithms.AlgorithmFixtures.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.ComputeCycle;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.PackedConnections;
+import org.numenta.nupic.model.Synapse;
+
+public class ParallelTemporalMemoryTest {
+
+    /**
+     * Checks that every active column has one winner and either its predicted cells
+     * or all its cells active, and that no segment holds two synapses from one cell.
+     */
+    private static void assertConsistent(Connections c, int[] activeColumns, ComputeCycle cycle) {
+        assertEquals(activeColumns.length, cycle.winnerCellIndices.size());
+        for(int i = 0;i < cycle.winnerCellIndices.size();i++) {
+            assertTrue(cycle.activeCellIndices.contains(cycle.winnerCellIndices.get(i)));
+        }
+        for(int i = 1;i < cycle.activeCellIndices.size();i++) {
+            assertTrue(cycle.activeCellIndices.get(i - 1) < cycle.activeCellIndices.get(i));
+        }
+
+        for(DistalDendrite segment : allSegments(c)) {
+            List<Synapse> synapses = c.getSynapses(segment);
+            assertTrue(synapses.size() > 0 && synapses.size() <= c.getMaxSynapsesPerSegment());
+            Set<Cell> presynaptic = new HashSet<>();
+            for(Synapse synapse : synapses) {
+                assertTrue(presynaptic.add(synapse.getPresynapticCell()));
+            }
+        }
+    }
+
+    private static Set<DistalDendrite> allSegments(Connections c) {
+        Set<DistalDendrite> segments = new HashSet<>();
+        for(Cell cell : c.getCells()) {
+            segments.addAll(c.getSegments(cell));
+        }
+        return segments;
+    }
+
+    @Test
+    public void testRunsAreReproducible() {
+        Connections first = initTemporalMemory(new Connections());
+        Connections second = initTemporalMemory(new Connections());
+        TemporalMemory firstTm = new ParallelTemporalMemory(4);
+        TemporalMemory secondTm = new ParallelTemporalMemory(new ForkJoinPool(4));
+        ComputeCycle firstCycle = new ComputeCycle();
+        ComputeCycle secondCycle = new ComputeCycle();
+
+        int[][] patterns = sequence(15, 5);
+        Random noise = new Random(7);
+        for(int step = 0;step < 600;step++) {
+            int[] activeColumns = noisyInput(patterns, noise, step);
+
+            firstTm.computeIndices(first, activeColumns, true, firstCycle);
+            secondTm.computeIndices(second, activeColumns, true, secondCycle);
+
+            String message = "step " + step;
+            assertEquals(message, firstCycle.activeCellIndices, secondCycle.activeCellIndices);
+            assertEquals(message, firstCycle.winnerCellIndices, secondCycle.winnerCellIndices);
+            assertEquals(message, firstCycle.activeSegmentIndices, secondCycle.activeSegmentIndices);
+            assertEquals(message, firstCycle.matchingSegmentIndices, secondCycle.matchingSegmentIndices);
+            assertEquals(message, first.numSynapses(), second.numSynapses());
+        }
+    }
+
+    private void assertLearnsSequence(Connections c, int parallelism) {
+        initTemporalMemory(c);
+        TemporalMemory tm = new ParallelTemporalMemory(parallelism);
+        ComputeCycle cycle = new ComputeCycle();
+
+        int[][] patterns = sequence(20, 11);
+        int bursting = 0;
+        for(int step = 0;step < 800;step++) {
+            int[] activeColumns = patterns[step % patterns.length];
+            int predicted = cycle.predictiveCellIndices.size();
+            tm.computeIndices(c, activeColumns, true, cycle);
+            assertConsistent(c, activeColumns, cycle);
+
+            if(step >= 700 && predicted == 0) {
+                bursting++;
+            }
+        }
+        // Only the first element of each repetition may come unpredicted
+        assertTrue("unpredicted steps: " + bursting, bursting <= 100 / patterns.length + 1);
+    }
+
+    @Test
+    public void testLearnsSequenceSerially() {
+        assertLearnsSequence(new Connections(), 1);
+    }
+
+    @Test
+    public void testLearnsSequenceInParallel() {
+        assertLearnsSequence(new Connections(), 4);
+    }
+
+    @Test
+    public void testLearnsSequenceOnPackedConnections() {
+        assertLearnsSequence(new PackedConnections(), 3);
+    }
+
+    @Test
+    public void testSingleActiveColumnMatchesSerial() {
+        Connections serial = initTemporalMemory(new Connections());
+        Connections parallel = initTemporalMemory(new Connections());
+        ComputeCycle serialCycle = new ComputeCycle();
+        ComputeCycle parallelCycle = new ComputeCycle();
+
+        new TemporalMemory().computeIndices(serial, new int[] { 7 }, true, serialCycle);
+        new ParallelTemporalMemory(4).computeIndices(parallel, new int[] { 7 }, true, parallelCycle);
+
+        assertEquals(4, serialCycle.activeCellIndices.size());
+        assertEquals(serialCycle.activeCellIndices, parallelCycle.activeCellIndices);
+        // Shards draw their own randoms, so the bursting column's winner may differ
+        assertEquals(1, parallelCycle.winnerCellIndices.size());
+        assertTrue(parallelCycle.activeCellIndices.contains(parallelCycle.winnerCellIndices.get(0)));
+        assertEquals(serialCycle.winnerCellIndices.get(0) / 4, parallelCycle.winnerCellIndices.get(0) / 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveParallelism() {
+        new ParallelTemporalMemory(0);
+    }
+}
@@ -0,0 +1,137 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.numenta.nupic.algorithms.ColumnarWeightMatrix.Precision;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class SDRClassifierTest {
+
+    private static Map<String, Object> classification(int bucketIdx, double actValue) {
+        Map<String, Object> classification = new LinkedHashMap<>();
+        classification.put("bucketIdx", bucketIdx);
+        classification.put("actValue", actValue);
+        return classification;
+    }
+
+    @Test
+    public void testSoftmaxIsStable() {
+        double[] dist = SDRClassifier.softmax(new double[] { 1000, 1001, -1000, 999 });
+        double sum = 0;
+        for(double p : dist) {
+            assertFalse(Double.isNaN(p));
+            sum += p;
+        }
+        assertEquals(1.0, sum, 1e-12);
+        assertEquals(Math.exp(1) / (1 + Math.E + Math.exp(-1)), dist[1], 1e-12);
+        assertEquals(0.0, dist[2], 1e-300);
+    }
+
+    @Test
+    public void testSoftmaxOfEqualActivationsIsUniform() {
+        double[] dist = SDRClassifier.softmax(new double[5]);
+        for(double p : dist) {
+            assertEquals(0.2, p, 1e-15);
+        }
+    }
+
+    /**
+     * The error is measured against the previous record's classification, so a
+     * pattern is associated with the bucket it was presented with.
+     */
+    @Test
+    public void testLearnsBucketOfPattern() {
+        SDRClassifier classifier = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);
+        int[][] patterns = { { 1, 5, 9 }, { 2, 6, 10 }, { 3, 7, 11 }, { 4, 8, 12 } };
+        int recordNum = 0;
+        for(int repeat = 0;repeat < 100;repeat++) {
+            for(int i = 0;i < patterns.length;i++) {
+                classifier.compute(recordNum++, classification(i, i * 10.0), patterns[i], true, false);
+            }
+        }
+
+        for(int i = 0;i < patterns.length;i++) {
+            Classification<Double> result = classifier.compute(recordNum++, classification(i, i * 10.0), patterns[i], false, true);
+            assertEquals(i, result.getMostProbableBucketIndex(1));
+            assertEquals(1.0, sum(result.getStats(1)), 1e-9);
+        }
+    }
+
+    @Test
+    public void testActualValuesAreRollingAverages() {
+        SDRClassifier classifier = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);
+        classifier.compute(0, classification(2, 10.0), new int[] { 1, 2 }, true, false);
+        classifier.compute(1, classification(2, 20.0), new int[] { 1, 2 }, true, false);
+        Classification<Double> result = classifier.compute(2, classification(2, 20.0), new int[] { 1, 2 }, false, true);
+        assertEquals(0.7 * 10.0 + 0.3 * 20.0, result.getActualValue(2), 1e-12);
+    }
+
+    @Test
+    public void testUnseenInputsAndBucketsHaveZeroWeight() {
+        SDRClassifier classifier = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);
+        classifier.compute(0, classification(0, 0.0), new int[] { 3 }, true, false);
+        classifier.compute(1, classification(500, 1.0), new int[] { 900 }, true, false);
+        ColumnarWeightMatrix weights = classifier.weightMatrix.get(1);
+        assertEquals(501, weights.numBuckets());
+        assertEquals(901, weights.numInputs());
+        assertEquals(0.0, weights.get(500, 900), 0);
+        assertTrue(weights.get(0, 3) > 0);
+        assertTrue(weights.get(500, 3) < 0);
+    }
+
+    @Test
+    public void testPresizedClassifiersAgree() {
+        SDRClassifier growing = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);
+        SDRClassifier presized = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0,
+            64, 100, Precision.DOUBLE);
+        SDRClassifier offHeap = new SDRClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0,
+            64, 100, Precision.OFF_HEAP_FLOAT);
+        int recordNum = 0;
+        for(int repeat = 0;repeat < 20;repeat++) {
+            for(int bucket = 0;bucket < 64;bucket++) {
+                int[] pattern = { bucket, bucket + 20, (bucket * 7) % 100 };
+                Map<String, Object> classification = classification(bucket, bucket);
+                Classification<Double> expected = growing.compute(recordNum, classification, pattern, true, true);
+                Classification<Double> actual = presized.compute(recordNum, classification, pattern, true, true);
+                Classification<Double> approximate = offHeap.compute(recordNum++, classification, pattern, true, true);
+
+                assertArrayEquals(expected.getStats(1), actual.getStats(1), 0);
+                assertArrayEquals(expected.getStats(1), approximate.getStats(1), 1e-5);
+            }
+        }
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+        for(double v : values) {
+            sum += v;
+        }
+        return sum;
+    }
+}
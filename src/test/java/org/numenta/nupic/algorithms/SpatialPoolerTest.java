@@ -0,0 +1,356 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import org.junit.Test;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder.Variant;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.Pool;
+import org.numenta.nupic.util.AbstractSparseBinaryMatrix;
+import org.numenta.nupic.util.ArrayUtils;
+import org.numenta.nupic.util.CSRBinaryMatrix;
+import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.SparseBinaryMatrix;
+
+import chaschev.lang.Pair;
+
+public class SpatialPoolerTest {
+
+    /**
+     * Same layout as the first layer of the grid cell route experiments,
+     * with a fixed random generator so that two instances are identical.
+     */
+    private Parameters getParameters() {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.INPUT_DIMENSIONS, new int[] { 30, 30 });
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { 20, 20 });
+        parameters.set(KEY.CELLS_PER_COLUMN, 1);
+        parameters.set(KEY.POTENTIAL_RADIUS, new int[] { 5, 5 });
+        parameters.set(KEY.POTENTIAL_PCT, 0.99);
+        parameters.set(KEY.GLOBAL_INHIBITION, false);
+        parameters.set(KEY.LOCAL_AREA_DENSITY, -1.0);
+        parameters.set(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 5.0);
+        parameters.set(KEY.STIMULUS_THRESHOLD, 1.0);
+        parameters.set(KEY.SYN_PERM_INACTIVE_DEC, 0.0005);
+        parameters.set(KEY.SYN_PERM_ACTIVE_INC, 0.0015);
+        parameters.set(KEY.SYN_PERM_CONNECTED, 0.1);
+        parameters.set(KEY.MIN_PCT_OVERLAP_DUTY_CYCLES, 0.1);
+        parameters.set(KEY.MIN_PCT_ACTIVE_DUTY_CYCLES, 0.1);
+        parameters.set(KEY.DUTY_CYCLE_PERIOD, 10);
+        parameters.set(KEY.MAX_BOOST, 10.0);
+        parameters.set(KEY.SEED, 42);
+        parameters.set(KEY.RANDOM, new MersenneTwister(42));
+        return parameters;
+    }
+
+    private Connections initConnections(SpatialPooler sp) {
+        Connections c = new Connections();
+        getParameters().apply(c);
+        sp.init(c);
+        return c;
+    }
+
+    @Test
+    public void testComputeSparseMatchesDense() {
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        SpatialPooler sp = new SpatialPooler();
+        Connections dense = initConnections(sp);
+        Connections sparse = initConnections(sp);
+
+        int[] input = new int[encoder.getWidth()];
+        TIntArrayList active = new TIntArrayList();
+        int[] denseOut = new int[dense.getNumColumns()];
+        int[] sparseOut = new int[sparse.getNumColumns()];
+        int totalActive = 0;
+        for(int i = 0;i < 60;i++) {
+            int x = (i * 7) % 122, y = (i * 3) % 61;
+            encoder.encode(x, y, input);
+            encoder.encodeActive(x, y, active);
+
+            boolean learn = i < 50;
+            sp.compute(dense, input, denseOut, learn);
+            sp.computeSparse(sparse, active.toArray(), sparseOut, learn);
+            assertArrayEquals("step " + i, denseOut, sparseOut);
+            assertArrayEquals("step " + i, dense.getOverlaps(), sparse.getOverlaps());
+            for(int bit : sparseOut) totalActive += bit;
+        }
+        assertTrue(totalActive > 0);
+    }
+
+    /**
+     * Swaps the connected matrix of the specified {@link Connections} for a
+     * {@link SparseBinaryMatrix} with the same contents.
+     */
+    private void useSparseBinaryMatrix(Connections c) {
+        AbstractSparseBinaryMatrix current = c.getConnectedCounts();
+        SparseBinaryMatrix matrix = new SparseBinaryMatrix(current.getDimensions());
+        for(int index : current.getSparseIndices()) {
+            matrix.set(index, 1);
+        }
+        c.setConnectedMatrix(matrix);
+    }
+
+    @Test
+    public void testConnectedMatrixBackendsAgree() {
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        SpatialPooler sp = new SpatialPooler();
+        Connections csr = initConnections(sp);
+        Connections reference = initConnections(sp);
+        assertTrue(csr.getConnectedCounts() instanceof CSRBinaryMatrix);
+        useSparseBinaryMatrix(reference);
+        assertArrayEquals(reference.getConnectedCounts().getTrueCounts(), csr.getConnectedCounts().getTrueCounts());
+
+        int[] input = new int[encoder.getWidth()];
+        int[] csrOut = new int[csr.getNumColumns()];
+        int[] referenceOut = new int[reference.getNumColumns()];
+        for(int i = 0;i < 60;i++) {
+            encoder.encode((i * 11) % 122, (i * 5) % 61, input);
+
+            boolean learn = i < 50;
+            sp.compute(csr, input, csrOut, learn);
+            sp.compute(reference, input, referenceOut, learn);
+            assertArrayEquals("step " + i, referenceOut, csrOut);
+            assertArrayEquals("step " + i, reference.getOverlaps(), csr.getOverlaps());
+        }
+        assertArrayEquals(reference.getConnectedCounts().getSparseIndices(), csr.getConnectedCounts().getSparseIndices());
+        assertArrayEquals(reference.getConnectedCounts().getTrueCounts(), csr.getConnectedCounts().getTrueCounts());
+    }
+
+    /**
+     * The original local inhibition, computing every neighborhood through the
+     * topology on each call.
+     */
+    private int[] referenceInhibitColumnsLocal(SpatialPooler sp, Connections c, double[] overlaps, double density) {
+        double addToWinners = ArrayUtils.max(overlaps) / 1000.0d;
+        if(addToWinners == 0) {
+            addToWinners = 0.001;
+        }
+        double[] tieBrokenOverlaps = overlaps.clone();
+        TIntArrayList winners = new TIntArrayList();
+        for(int column = 0;column < overlaps.length;column++) {
+            if(overlaps[column] >= c.getStimulusThreshold()) {
+                int[] neighborhood = sp.getColumnNeighborhood(c, column, c.getInhibitionRadius());
+                double[] neighborhoodOverlaps = ArrayUtils.sub(tieBrokenOverlaps, neighborhood);
+                double overlap = overlaps[column];
+                long numBigger = Arrays.stream(neighborhoodOverlaps).filter(d -> d > overlap).count();
+                int numActive = (int)(0.5 + density * neighborhood.length);
+                if(numBigger < numActive) {
+                    winners.add(column);
+                    tieBrokenOverlaps[column] += addToWinners;
+                }
+            }
+        }
+        return winners.toArray();
+    }
+
+    @Test
+    public void testInhibitColumnsLocalMatchesReference() {
+        SpatialPooler sp = new SpatialPooler();
+        Connections c = initConnections(sp);
+        MersenneTwister random = new MersenneTwister(7);
+        for(int radius : new int[] { 1, 3, 5 }) {
+            c.setInhibitionRadius(radius);
+            for(int trial = 0;trial < 20;trial++) {
+                double[] overlaps = new double[c.getNumColumns()];
+                for(int i = 0;i < overlaps.length;i++) {
+                    // Small integer overlaps so that ties are common
+                    overlaps[i] = random.nextInt(6);
+                }
+                assertArrayEquals(referenceInhibitColumnsLocal(sp, c, overlaps, 0.1), sp.inhibitColumnsLocal(c, overlaps, 0.1));
+            }
+            assertNotNull(c.getColumnNeighborhoods(radius));
+        }
+
+        c.setWrapAround(!c.isWrapAround());
+        assertNull(c.getColumnNeighborhoods(5));
+        double[] overlaps = new double[c.getNumColumns()];
+        for(int i = 0;i < overlaps.length;i++) overlaps[i] = random.nextInt(6);
+        assertArrayEquals(referenceInhibitColumnsLocal(sp, c, overlaps, 0.2), sp.inhibitColumnsLocal(c, overlaps, 0.2));
+    }
+
+    @Test
+    public void testInhibitColumnsGlobalMatchesSortedPairs() {
+        SpatialPooler sp = new SpatialPooler();
+        Connections c = initConnections(sp);
+        MersenneTwister random = new MersenneTwister(11);
+        for(int trial = 0;trial < 50;trial++) {
+            double[] overlaps = new double[c.getNumColumns()];
+            for(int i = 0;i < overlaps.length;i++) {
+                // Mostly ties, some zeros below the stimulus threshold, some boosted values
+                overlaps[i] = trial % 2 == 0 ? random.nextInt(4) : random.nextInt(4) * (1 + random.nextDouble());
+            }
+            double density = 0.01 + 0.49 * random.nextDouble();
+
+            int numActive = (int)(density * c.getNumColumns());
+            int[] sorted = IntStream.range(0, overlaps.length)
+                .mapToObj(i -> new Pair<>(i, overlaps[i]))
+                .sorted(c.inhibitionComparator)
+                .mapToInt(Pair<Integer, Double>::getFirst)
+                .toArray();
+            int start = sorted.length - numActive;
+            while(start < sorted.length && overlaps[sorted[start]] < c.getStimulusThreshold()) ++start;
+            int[] expected = IntStream.of(sorted).skip(start).toArray();
+
+            assertArrayEquals("trial " + trial, expected, sp.inhibitColumnsGlobal(c, overlaps, density));
+        }
+        assertArrayEquals(new int[0], SpatialPooler.selectTopOverlaps(new double[] { 1, 2 }, 0));
+        assertArrayEquals(new int[] { 0, 2, 1 }, SpatialPooler.selectTopOverlaps(new double[] { 2, 3, 2 }, 3));
+    }
+
+    /**
+     * The original dense adaptation: a dense permanence vector per active column,
+     * pushed back through {@link SpatialPooler#updatePermanencesForColumn}.
+     */
+    private static class DenseAdaptingSpatialPooler extends SpatialPooler {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void adaptSynapsesSparse(Connections c, int[] inputIndices, int[] activeColumns) {
+            double[] permChanges = new double[c.getNumInputs()];
+            Arrays.fill(permChanges, -1 * c.getSynPermInactiveDec());
+            ArrayUtils.setIndexesTo(permChanges, inputIndices, c.getSynPermActiveInc());
+            for(int i = 0;i < activeColumns.length;i++) {
+                Pool pool = c.getPotentialPools().get(activeColumns[i]);
+                double[] perm = pool.getDensePermanences(c);
+                int[] indexes = pool.getSparsePotential();
+                ArrayUtils.raiseValuesBy(permChanges, perm);
+                updatePermanencesForColumn(c, perm, c.getColumn(activeColumns[i]), indexes, true);
+            }
+        }
+    }
+
+    private void assertSameProximalState(String message, Connections expected, Connections actual) {
+        for(int i = 0;i < expected.getNumColumns();i++) {
+            Pool expectedPool = expected.getPotentialPools().get(i);
+            Pool actualPool = actual.getPotentialPools().get(i);
+            assertArrayEquals(message, expectedPool.getDensePermanences(expected), actualPool.getDensePermanences(actual), 0);
+            assertArrayEquals(message, expectedPool.getDenseConnected(expected), actualPool.getDenseConnected(actual));
+        }
+        assertArrayEquals(message, expected.getConnectedCounts().getSparseIndices(), actual.getConnectedCounts().getSparseIndices());
+        assertArrayEquals(message, expected.getConnectedCounts().getTrueCounts(), actual.getConnectedCounts().getTrueCounts());
+    }
+
+    private void assertAdaptsInPlaceLikeDense(Supplier<Connections> connections) {
+        for(boolean csr : new boolean[] { true, false }) {
+            SpatialPooler sp = new SpatialPooler();
+            SpatialPooler dense = new DenseAdaptingSpatialPooler();
+            Connections actual = connections.get();
+            Connections expected = connections.get();
+            for(Connections c : new Connections[] { actual, expected }) {
+                Parameters parameters = getParameters();
+                // Big steps and a high stimulus threshold so that synapses flip and
+                // raisePermanenceToThreshold has work to do
+                parameters.set(KEY.SYN_PERM_ACTIVE_INC, 0.04);
+                parameters.set(KEY.SYN_PERM_INACTIVE_DEC, 0.03);
+                parameters.set(KEY.STIMULUS_THRESHOLD, 12.0);
+                parameters.set(KEY.SYN_PERM_TRIM_THRESHOLD, 0.02);
+                parameters.apply(c);
+            }
+            sp.init(actual);
+            dense.init(expected);
+            if(!csr) {
+                useSparseBinaryMatrix(actual);
+                useSparseBinaryMatrix(expected);
+            }
+
+            MersenneTwister random = new MersenneTwister(5);
+            for(int step = 0;step < 40;step++) {
+                int[] input = new int[actual.getNumInputs()];
+                for(int i = 0;i < input.length;i++) {
+                    input[i] = random.nextInt(4) == 0 ? 1 : 0;
+                }
+                int[] activeColumns = IntStream.range(0, actual.getNumColumns())
+                    .filter(i -> random.nextInt(5) == 0).toArray();
+
+                sp.adaptSynapses(actual, input, activeColumns);
+                dense.adaptSynapses(expected, input, activeColumns);
+                assertSameProximalState("step " + step, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptSynapsesInPlaceMatchesDense() {
+        assertAdaptsInPlaceLikeDense(Connections::new);
+    }
+
+    @Test
+    public void testAdaptSynapsesInPlaceClipsToPermanenceBounds() {
+        // Bounds close around the connected threshold, so that clipping decides flips
+        assertAdaptsInPlaceLikeDense(() -> new Connections() {
+            private static final long serialVersionUID = 1L;
+            @Override public double getSynPermMin() { return 0.01; }
+            @Override public double getSynPermMax() { return 0.14; }
+        });
+    }
+
+    private void assertBatchMatchesCompute(SpatialPooler sp, boolean globalInhibition, boolean csr) {
+        Parameters parameters = getParameters();
+        parameters.set(KEY.GLOBAL_INHIBITION, globalInhibition);
+        Connections c = new Connections();
+        parameters.apply(c);
+        sp.init(c);
+        if(!csr) {
+            useSparseBinaryMatrix(c);
+        }
+
+        CompiledSpatialDataEncoder encoder = new CompiledSpatialDataEncoder(30, 30, 122, 61, Variant.TWO_D);
+        int[] output = new int[c.getNumColumns()];
+        for(int i = 0;i < 30;i++) {
+            sp.compute(c, encoder.encode((i * 11) % 122, (i * 5) % 61), output, true);
+        }
+
+        // More records than one block, and a last block which isn't full
+        int[][] inputs = new int[150][];
+        for(int r = 0;r < inputs.length;r++) {
+            inputs[r] = encoder.encode((r * 13) % 122, (r * 7) % 61);
+        }
+        int iteration = c.getIterationNum();
+        int[][] batch = sp.computeBatch(c, inputs);
+        assertEquals(iteration + inputs.length, c.getIterationNum());
+
+        for(int r = 0;r < inputs.length;r++) {
+            sp.compute(c, inputs[r], output, false);
+            assertArrayEquals("record " + r, ArrayUtils.where(output, ArrayUtils.WHERE_1), batch[r]);
+        }
+    }
+
+    @Test
+    public void testComputeBatchMatchesCompute() {
+        assertBatchMatchesCompute(new SpatialPooler(), false, true);
+        assertBatchMatchesCompute(new SpatialPooler(), true, true);
+        assertBatchMatchesCompute(new SpatialPooler(), false, false);
+    }
+}
@@ -0,0 +1,129 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.ComputeCycle;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.PackedConnections;
+import org.numenta.nupic.util.MersenneTwister;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class TemporalMemoryTest {
+
+    /**
+     * The 100 column, 4 cells per column layer of the route experiments, with
+     * small segment limits so that evictions and segment destruction happen.
+     */
+    private Connections init(Connections c) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { 100 });
+        parameters.set(KEY.CELLS_PER_COLUMN, 4);
+        parameters.set(KEY.ACTIVATION_THRESHOLD, 3);
+        parameters.set(KEY.MIN_THRESHOLD, 2);
+        parameters.set(KEY.MAX_NEW_SYNAPSE_COUNT, 5);
+        parameters.set(KEY.MAX_SYNAPSES_PER_SEGMENT, 8);
+        parameters.set(KEY.MAX_SEGMENTS_PER_CELL, 2);
+        parameters.set(KEY.PERMANENCE_INCREMENT, 0.1);
+        parameters.set(KEY.PERMANENCE_DECREMENT, 0.1);
+        parameters.set(KEY.PREDICTED_SEGMENT_DECREMENT, 0.05);
+        parameters.set(KEY.RANDOM, new MersenneTwister(42));
+        parameters.apply(c);
+        TemporalMemory.init(c);
+        return c;
+    }
+
+    private static void assertCells(String message, Set<Cell> expected, TIntArrayList actual) {
+        TIntArrayList indices = new TIntArrayList();
+        for(Cell cell : expected) {
+            indices.add(cell.getIndex());
+        }
+        assertEquals(message, indices, actual);
+    }
+
+    private static void assertSegments(String message, Iterable<DistalDendrite> expected, TIntArrayList actual) {
+        TIntArrayList indices = new TIntArrayList();
+        for(DistalDendrite segment : expected) {
+            indices.add(segment.getIndex());
+        }
+        assertEquals(message, indices, actual);
+    }
+
+    private void assertIndexPathMatches(Connections indexed) {
+        Connections reference = init(new Connections());
+        init(indexed);
+        TemporalMemory tm = new TemporalMemory();
+        ComputeCycle cycle = new ComputeCycle();
+
+        Random random = new Random(3);
+        int[][] patterns = new int[12][];
+        for(int i = 0;i < patterns.length;i++) {
+            patterns[i] = random.ints(0, 100).distinct().limit(8).toArray();
+        }
+
+        for(int step = 0;step < 1500;step++) {
+            if(step % 300 == 299) {
+                tm.reset(reference);
+                cycle.resetIndices();
+            }
+            int[] activeColumns = random.nextInt(8) == 0 ?
+                random.ints(0, 100).distinct().limit(8).toArray() :
+                    patterns[step % patterns.length];
+            boolean learn = step < 1200;
+
+            ComputeCycle expected = tm.compute(reference, activeColumns, learn);
+            tm.computeIndices(indexed, activeColumns, learn, cycle);
+
+            String message = "step " + step;
+            assertCells(message, expected.activeCells(), cycle.activeCellIndices);
+            assertCells(message, expected.winnerCells(), cycle.winnerCellIndices);
+            assertCells(message, expected.predictiveCells(), cycle.predictiveCellIndices);
+            assertSegments(message, expected.activeSegments, cycle.activeSegmentIndices);
+            assertSegments(message, expected.matchingSegments, cycle.matchingSegmentIndices);
+            assertEquals(message, reference.numSegments(), indexed.numSegments());
+            assertEquals(message, reference.numSynapses(), indexed.numSynapses());
+        }
+        assertTrue(cycle.predictiveCellIndices.size() > 0);
+    }
+
+    @Test
+    public void testComputeIndicesMatchesCompute() {
+        assertIndexPathMatches(new Connections());
+    }
+
+    @Test
+    public void testComputeIndicesOnPackedConnections() {
+        assertIndexPathMatches(new PackedConnections());
+    }
+}
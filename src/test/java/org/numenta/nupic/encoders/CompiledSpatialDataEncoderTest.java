@@ -0,0 +1,59 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.encoders;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder.Variant;
+
+public class CompiledSpatialDataEncoderTest {
+
+    @Test
+    public void testTwoDIsBitIdentical() {
+        SpatialDataEncoder encoder = new SpatialDataEncoder(30, 30, 122, 61);
+        CompiledSpatialDataEncoder compiled = encoder.compile(Variant.TWO_D);
+        assertEquals(30 * 30, compiled.getWidth());
+
+        for(int x = 0;x < 122;x++) {
+            for(int y = 0;y < 61;y++) {
+                int[] expected = encoder.GetEncodeTwoDim(encoder.encode_twoD(x, y));
+                assertArrayEquals("(" + x + "," + y + ")", expected, compiled.encode(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testThreeDIsBitIdentical() {
+        SpatialDataEncoder encoder = new SpatialDataEncoder(16, 16, 16, 16);
+        CompiledSpatialDataEncoder compiled = encoder.compile(Variant.THREE_D);
+        assertEquals(SpatialDataEncoder.radius_level * 16 * 16, compiled.getWidth());
+
+        for(int x = 0;x < 16;x++) {
+            for(int y = 0;y < 16;y++) {
+                int[] expected = encoder.GetEncodeThreeDim(encoder.encode_threeD(x, y));
+                assertArrayEquals("(" + x + "," + y + ")", expected, compiled.encode(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.encoders;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.numenta.nupic.util.ArrayUtils;
+
+public class GridCellEncoderTest {
+
+    private GridCellEncoder build() {
+        return GridCellEncoder.builder()
+            .moduleCount(6)
+            .phases(10)
+            .activeRadius(1)
+            .scale(5)
+            .scaleRatio(1.5)
+            .build();
+    }
+
+    private int overlap(int[] a, int[] b) {
+        int count = 0;
+        for(int i = 0;i < a.length;i++) {
+            if(a[i] == 1 && b[i] == 1) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testWidthAndSparsity() {
+        GridCellEncoder encoder = build();
+        assertEquals(6 * 10 * 10, encoder.getWidth());
+        // radius 1 on a hex lattice is the centre plus 6 neighbours
+        assertEquals(6 * 7, encoder.getW());
+
+        for(double x = -1000.25;x < 1000;x += 97.3) {
+            int[] code = encoder.encode(x, x * 0.37);
+            assertEquals(encoder.getW(), ArrayUtils.sum(code));
+        }
+
+        // Coordinates far beyond the spacing of the largest module still encode to w bits
+        assertEquals(encoder.getW(), ArrayUtils.sum(encoder.encode(6378137.5, -2.5e6)));
+    }
+
+    @Test
+    public void testNearbyCoordinatesOverlap() {
+        GridCellEncoder encoder = build();
+        int[] origin = encoder.encode(100.0, 200.0);
+        assertArrayEquals(origin, encoder.encode(100.0, 200.0));
+
+        int near = overlap(origin, encoder.encode(100.3, 200.2));
+        int far = overlap(origin, encoder.encode(487.0, -311.0));
+        assertTrue(near > far);
+        assertTrue(near > encoder.getW() / 2);
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        try {
+            GridCellEncoder.builder().phases(2).activeRadius(1).build();
+            fail();
+        }catch(IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("phases"));
+        }
+
+        try {
+            GridCellEncoder.builder().moduleCount(3).orientations(new double[] { 0, 1 }).build();
+            fail();
+        }catch(IllegalArgumentException e) {
+            assertEquals("Expected 3 orientations but got 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMultiEncoderField() {
+        Map<String, Object> gridSettings = new HashMap<>();
+        gridSettings.put("fieldName", "position");
+        gridSettings.put("encoderType", "GridCellEncoder");
+        gridSettings.put("moduleCount", 6);
+        gridSettings.put("phases", 10);
+        gridSettings.put("activeRadius", 1);
+        gridSettings.put("scale", 5);
+        gridSettings.put("scaleRatio", 1.5);
+        Map<String, Map<String, Object>> fieldEncodings = new HashMap<>();
+        fieldEncodings.put("position", gridSettings);
+
+        MultiEncoder multi = MultiEncoder.builder().name("").build();
+        multi.addMultipleEncoders(fieldEncodings);
+        assertEquals(600, multi.getWidth());
+
+        Map<String, Object> input = new HashMap<>();
+        input.put("position", new double[] { 12.5, -40.75 });
+        assertArrayEquals(build().encode(12.5, -40.75), multi.encode(input));
+    }
+}
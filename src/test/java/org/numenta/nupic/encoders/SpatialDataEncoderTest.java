@@ -0,0 +1,117 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.encoders;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class SpatialDataEncoderTest {
+
+    private int[][] trajectory(int width, int height) {
+        int[][] locations = new int[width * height][];
+        for(int i = 0;i < locations.length;i++) {
+            locations[i] = new int[] { i / height, i % height };
+        }
+        return locations;
+    }
+
+    @Test
+    public void testEncodeAllMatchesSequential() {
+        SpatialDataEncoder encoder = new SpatialDataEncoder(30, 30, 122, 61);
+        int[][] locations = trajectory(122, 61);
+
+        int[][] codes = encoder.encodeAll(locations);
+        assertEquals(locations.length, codes.length);
+        for(int i = 0;i < locations.length;i++) {
+            int[] expected = encoder.GetEncodeTwoDim(encoder.encode_twoD(locations[i][0], locations[i][1]));
+            assertArrayEquals(expected, codes[i]);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            assertArrayEquals(codes, encoder.compile(CompiledSpatialDataEncoder.Variant.TWO_D).encodeAll(locations, pool));
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testEncodeDoesNotDependOnPreviousCalls() {
+        SpatialDataEncoder encoder = new SpatialDataEncoder(16, 16, 16, 16);
+        int[] before = encoder.encode(5, 7);
+        encoder.encode_twoDAngle(3, 3);
+        encoder.encode_twoDRound(3, 3);
+        assertArrayEquals(before, encoder.encode(5, 7));
+    }
+
+    @Test
+    public void testSeededRandomEncodingsAreReproducible() {
+        SpatialDataEncoder encoder = new SpatialDataEncoder(16, 16, 61, 61, 42L);
+        SpatialDataEncoder same = new SpatialDataEncoder(16, 16, 61, 61, 42L);
+        assertTrue(encoder.isSeeded());
+        assertEquals(Long.valueOf(42), encoder.getSeed());
+
+        for(int x = 0;x < 61;x += 6) {
+            for(int y = 0;y < 61;y += 6) {
+                int[][] round = encoder.encode_twoDRound(x, y);
+                assertArrayEquals(round, encoder.encode_twoDRound(x, y));
+                assertArrayEquals(round, same.encode_twoDRound(x, y));
+
+                int[][] random = encoder.encode_twoDRoundRandom(x, y);
+                assertArrayEquals(random, encoder.encode_twoDRoundRandom(x, y));
+                assertArrayEquals(random, same.encode_twoDRoundRandom(x, y));
+
+                double[][] roundDouble = encoder.encode_twoDRoundDouble(x, y);
+                double[][] sameDouble = same.encode_twoDRoundDouble(x, y);
+                for(int i = 0;i < roundDouble.length;i++) {
+                    assertArrayEquals(roundDouble[i], sameDouble[i], 0);
+                }
+            }
+        }
+        assertFalse(new SpatialDataEncoder(16, 16, 61, 61).isSeeded());
+    }
+
+    @Test
+    public void testAnalyticIntegrationMatchesBruteForce() {
+        for(double kvalue : new double[] { 0.3, 2.5, 4 * Math.PI / (Math.sqrt(3) / 3) }) {
+            GratingIntegral integral = new GratingIntegral(kvalue, 13.65 / 180 * Math.PI);
+            for(int x = 0;x < 20;x += 3) {
+                assertEquals(integral.bruteForce(x, 7, 0.4, 1.3), integral.analytic(x, 7, 0.4, 1.3), 1e-9);
+            }
+        }
+
+        SpatialDataEncoder encoder = new SpatialDataEncoder(30, 30, 61, 61, 7L);
+        for(int x = 0;x < 61;x += 10) {
+            for(int y = 0;y < 61;y += 10) {
+                assertArrayEquals(encoder.encode_twoDAngle(x, y),
+                    encoder.encode_twoDAngle(x, y, SpatialDataEncoder.Integration.ANALYTIC));
+                assertArrayEquals(encoder.encode_twoDRoundRandom(x, y),
+                    encoder.encode_twoDRoundRandom(x, y, SpatialDataEncoder.Integration.ANALYTIC));
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.encoders;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import org.junit.Test;
+import org.numenta.nupic.encoders.CompiledSpatialDataEncoder.Variant;
+import org.numenta.nupic.util.ArrayUtils;
+
+public class SpatialEncodingAtlasTest {
+
+    @Test
+    public void testBuildMatchesEncoder() {
+        SpatialEncodingAtlas atlas = SpatialEncodingAtlas.build(16, 16, () -> {
+            SpatialDataEncoder e = new SpatialDataEncoder(16, 16, 16, 16);
+            return (x, y) -> e.GetEncodeTwoDim(e.encode_twoDAngle(x, y));
+        });
+        assertEquals(16 * 16, atlas.getWidth());
+
+        SpatialDataEncoder encoder = new SpatialDataEncoder(16, 16, 16, 16);
+        for(int x = 0;x < 16;x++) {
+            for(int y = 0;y < 16;y++) {
+                int[] expected = encoder.GetEncodeTwoDim(encoder.encode_twoDAngle(x, y));
+                assertArrayEquals(expected, atlas.get(x, y));
+
+                TIntArrayList active = new TIntArrayList();
+                atlas.getActive(x, y, active);
+                assertArrayEquals(ArrayUtils.where(expected, ArrayUtils.WHERE_1), active.toArray());
+            }
+        }
+    }
+
+    @Test
+    public void testSaveAndMap() throws Exception {
+        SpatialDataEncoder encoder = new SpatialDataEncoder(30, 30, 122, 61);
+        SpatialEncodingAtlas atlas = SpatialEncodingAtlas.build(encoder.compile(Variant.TWO_D));
+
+        File file = File.createTempFile("atlas", ".bin");
+        file.deleteOnExit();
+        atlas.save(file);
+
+        SpatialEncodingAtlas mapped = SpatialEncodingAtlas.map(file);
+        assertEquals(122, mapped.getSpatial_width());
+        assertEquals(61, mapped.getSpatial_height());
+        assertEquals(atlas.getWidth(), mapped.getWidth());
+        for(int x = 0;x < 122;x++) {
+            for(int y = 0;y < 61;y++) {
+                assertArrayEquals(atlas.getBits(x, y), mapped.getBits(x, y));
+            }
+        }
+        assertArrayEquals(encoder.GetEncodeTwoDim(encoder.encode_twoD(121, 60)), mapped.get(121, 60));
+    }
+
+    @Test
+    public void testLoadOrBuildRebuildsForOtherEncoder() throws Exception {
+        File file = File.createTempFile("atlas", ".bin");
+        file.delete();
+        file.deleteOnExit();
+
+        SpatialDataEncoder narrow = new SpatialDataEncoder(16, 16, 32, 32);
+        SpatialEncodingAtlas first = SpatialEncodingAtlas.loadOrBuild(file, 32, 32, () -> narrow.compile(Variant.TWO_D));
+        assertEquals(first.getFingerprint(), SpatialEncodingAtlas.map(file).getFingerprint());
+
+        // Same configuration reuses the file
+        SpatialEncodingAtlas reused = SpatialEncodingAtlas.loadOrBuild(file, 32, 32, () -> narrow.compile(Variant.TWO_D));
+        assertEquals(first.getFingerprint(), reused.getFingerprint());
+
+        // Same dimensions, other encoder: rebuilt rather than returned stale
+        CompiledSpatialDataEncoder other = new CompiledSpatialDataEncoder(16, 16, 32, 32, Math.PI / 7, Variant.TWO_D);
+        SpatialEncodingAtlas rebuilt = SpatialEncodingAtlas.loadOrBuild(file, 32, 32, () -> other);
+        assertNotEquals(first.getFingerprint(), rebuilt.getFingerprint());
+        for(int x = 0;x < 32;x++) {
+            for(int y = 0;y < 32;y++) {
+                assertArrayEquals(other.encode(x, y), rebuilt.get(x, y));
+            }
+        }
+        assertEquals(rebuilt.getFingerprint(), SpatialEncodingAtlas.map(file).getFingerprint());
+    }
+}
@@ -0,0 +1,200 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import static org.junit.Assert.*;
+import static org.numenta.nupic.model.ModelFixtures.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColumnarModelTest {
+    private static final double EPSILON = 0.00001;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    
+    private Connections train(Connections c, int[][] patterns) {
+        for(int step = 0;step < 150;step++) {
+            step(c, patterns[step % patterns.length], true);
+        }
+        return c;
+    }
+    
+    private void assertRestores(Connections original, Connections target) throws IOException {
+        int[][] patterns = patterns(new Random(7));
+        train(original, patterns);
+        
+        Path file = folder.newFile("model.htm").toPath();
+        ColumnarModel.write(original, file);
+        ColumnarModel model = ColumnarModel.map(file);
+        assertEquals(original.numSegments(), model.getNumSegments());
+        assertEquals(original.numSynapses(), model.getNumSynapses());
+        assertTrue(model.getNumSegments() > 0);
+        
+        model.restore(target);
+        
+        assertEquals(original.spIterationNum, target.spIterationNum);
+        assertEquals(original.tmIteration, target.tmIteration);
+        assertArrayEquals(original.getActiveDutyCycles(), target.getActiveDutyCycles(), 0);
+        assertArrayEquals(original.getBoostFactors(), target.getBoostFactors(), 0);
+        assertArrayEquals(original.getConnectedCounts().getTrueCounts(), target.getConnectedCounts().getTrueCounts());
+        for(int i = 0;i < original.getNumColumns();i++) {
+            assertArrayEquals(original.getPotentialPools().get(i).getDensePermanences(original),
+                target.getPotentialPools().get(i).getDensePermanences(target), 1e-6);
+        }
+        
+        assertEquals(original.numSegments(), target.numSegments());
+        assertEquals(original.numSynapses(), target.numSynapses());
+        for(Cell cell : original.getCells()) {
+            List<DistalDendrite> expectedSegments = original.getSegments(cell);
+            List<DistalDendrite> actualSegments = target.getSegments(target.getCell(cell.getIndex()));
+            assertEquals(expectedSegments.size(), actualSegments.size());
+            for(int s = 0;s < expectedSegments.size();s++) {
+                DistalDendrite e = expectedSegments.get(s);
+                DistalDendrite a = actualSegments.get(s);
+                assertEquals(e.getIndex(), a.getIndex());
+                assertEquals(e.getOrdinal(), a.getOrdinal());
+                assertEquals(e.lastUsedIteration(), a.lastUsedIteration());
+                List<Synapse> expectedSynapses = original.getSynapses(e);
+                List<Synapse> actualSynapses = target.getSynapses(a);
+                assertEquals(expectedSynapses.size(), actualSynapses.size());
+                for(int i = 0;i < expectedSynapses.size();i++) {
+                    Synapse x = expectedSynapses.get(i);
+                    Synapse y = actualSynapses.get(i);
+                    assertEquals(x.getIndex(), y.getIndex());
+                    assertEquals(x.getPresynapticCell().getIndex(), y.getPresynapticCell().getIndex());
+                    assertEquals(x.getPermanence(), y.getPermanence(), 1e-6);
+                    assertEquals(x.getPermanence() > original.getConnectedPermanence() - EPSILON, 
+                        y.getPermanence() > target.getConnectedPermanence() - EPSILON);
+                }
+            }
+        }
+        
+        // Connectivity is exact, so inference gives the same results
+        TM.reset(original);
+        for(int step = 0;step < 24;step++) {
+            int[] input = patterns[step % patterns.length];
+            ComputeCycle expected = step(original, input, false);
+            ComputeCycle actual = step(target, input, false);
+            assertEquals("step " + step, expected.activeCells(), actual.activeCells());
+            assertEquals("step " + step, expected.predictiveCells(), actual.predictiveCells());
+        }
+    }
+    
+    @Test
+    public void testRestore() throws IOException {
+        assertRestores(init(new Connections(), 64), init(new Connections(), 64));
+    }
+    
+    @Test
+    public void testRestorePacked() throws IOException {
+        assertRestores(init(new PackedConnections(), 64), init(new PackedConnections(), 64));
+    }
+    
+    @Test
+    public void testOverlapsFromMappedModel() throws IOException {
+        Connections c = train(init(new Connections(), 64), patterns(new Random(7)));
+        Path file = folder.newFile("model.htm").toPath();
+        ColumnarModel.write(c, file);
+        ColumnarModel model = ColumnarModel.map(file);
+        
+        for(int[] input : patterns(new Random(11))) {
+            assertArrayEquals(SP.calculateOverlap(c, input), model.computeOverlaps(input));
+        }
+        for(int i = 0;i < c.getNumColumns();i++) {
+            assertEquals(c.getSynapses(c.getColumn(i).getProximalDendrite()).size(), model.getPotentialPool(i).length);
+        }
+    }
+    
+    @Test
+    public void testFloatPermanenceKeepsConnectedSide() {
+        // (float)0.2 rounds up, (float)0.7 rounds down
+        double threshold = 0.2;
+        assertTrue(ColumnarModel.toFloat(Math.nextDown(threshold), threshold) < threshold);
+        assertTrue(ColumnarModel.toFloat(threshold, threshold) >= threshold);
+        threshold = 0.7;
+        assertTrue(ColumnarModel.toFloat(threshold, threshold) >= threshold);
+        assertTrue(ColumnarModel.toFloat(Math.nextDown(threshold), threshold) < threshold);
+    }
+    
+    @Test
+    public void testDistalPermanenceKeepsConnectedSide() throws IOException {
+        Connections original = init(new Connections(), 64);
+        double threshold = original.getConnectedPermanence() - EPSILON;
+        // Inside (connectedPermanence - EPSILON, connectedPermanence): connected for the
+        // TemporalMemory, but a plain cast to float rounds it to or below the threshold
+        double connected = Math.nextUp(threshold);
+        assertTrue((float)connected <= threshold);
+        double unconnected = threshold;
+        
+        DistalDendrite segment = original.createSegment(original.getCell(5));
+        original.createSynapse(segment, original.getCell(17), connected);
+        original.createSynapse(segment, original.getCell(23), unconnected);
+        
+        Path file = folder.newFile("model.htm").toPath();
+        ColumnarModel.write(original, file);
+        Connections target = init(new Connections(), 64);
+        ColumnarModel.map(file).restore(target);
+        
+        List<Synapse> synapses = target.getSynapses(target.getSegments(target.getCell(5)).get(0));
+        assertTrue(synapses.get(0).getPermanence() > threshold);
+        assertFalse(synapses.get(1).getPermanence() > threshold);
+        assertTrue(ColumnarModel.toFloatAbove(connected, threshold) > threshold);
+        assertFalse(ColumnarModel.toFloatAbove(unconnected, threshold) > threshold);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestoreRejectsOtherDimensions() throws IOException {
+        Path file = folder.newFile("model.htm").toPath();
+        ColumnarModel.write(init(new Connections(), 64), file);
+        ColumnarModel.map(file).restore(init(new Connections(), 32));
+    }
+    
+    @Test(expected = IOException.class)
+    public void testMapRejectsOtherFiles() throws IOException {
+        Path file = folder.newFile("model.htm").toPath();
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+        ColumnarModel.map(file);
+    }
+    
+    @Test(expected = IOException.class)
+    public void testMapRejectsTruncatedFiles() throws IOException {
+        Path file = folder.newFile("model.htm").toPath();
+        ColumnarModel.write(train(init(new Connections(), 64), patterns(new Random(7))), file);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        ColumnarModel.map(file);
+    }
+}
@@ -0,0 +1,156 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.model;
+
+import static org.junit.Assert.*;
+import static org.numenta.nupic.model.ModelFixtures.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.numenta.nupic.serialize.SerializerCore;
+
+public class ConnectionsDeltaTest {
+    
+    private final SerializerCore serializer = new SerializerCore();
+    
+    private byte[] delta(Connections c) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConnectionsDelta.write(c, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+    
+    private static void assertSameState(String message, Connections expected, Connections actual) {
+        assertEquals(message, expected.spIterationNum, actual.spIterationNum);
+        assertEquals(message, expected.tmIteration, actual.tmIteration);
+        assertArrayEquals(message, expected.getOverlapDutyCycles(), actual.getOverlapDutyCycles(), 0);
+        assertArrayEquals(message, expected.getActiveDutyCycles(), actual.getActiveDutyCycles(), 0);
+        assertArrayEquals(message, expected.getBoostFactors(), actual.getBoostFactors(), 0);
+        assertArrayEquals(message, expected.getConnectedCounts().getTrueCounts(), actual.getConnectedCounts().getTrueCounts());
+        for(int i = 0;i < expected.getNumColumns();i++) {
+            assertArrayEquals(message, expected.getPotentialPools().get(i).getDensePermanences(expected),
+                actual.getPotentialPools().get(i).getDensePermanences(actual), 0);
+        }
+        
+        assertEquals(message, expected.numSegments(), actual.numSegments());
+        assertEquals(message, expected.numSynapses(), actual.numSynapses());
+        for(Cell cell : expected.getCells()) {
+            List<DistalDendrite> expectedSegments = expected.getSegments(cell);
+            List<DistalDendrite> actualSegments = actual.getSegments(actual.getCell(cell.getIndex()));
+            assertEquals(message, expectedSegments.size(), actualSegments.size());
+            for(int s = 0;s < expectedSegments.size();s++) {
+                DistalDendrite e = expectedSegments.get(s);
+                DistalDendrite a = actualSegments.get(s);
+                assertEquals(message, e.getIndex(), a.getIndex());
+                assertEquals(message, e.getOrdinal(), a.getOrdinal());
+                assertEquals(message, e.lastUsedIteration(), a.lastUsedIteration());
+                List<Synapse> expectedSynapses = expected.getSynapses(e);
+                List<Synapse> actualSynapses = actual.getSynapses(a);
+                assertEquals(message, expectedSynapses.size(), actualSynapses.size());
+                for(int i = 0;i < expectedSynapses.size();i++) {
+                    assertEquals(message, expectedSynapses.get(i).getIndex(), actualSynapses.get(i).getIndex());
+                    assertEquals(message, expectedSynapses.get(i).getPresynapticCell().getIndex(),
+                        actualSynapses.get(i).getPresynapticCell().getIndex());
+                    assertEquals(message, expectedSynapses.get(i).getPermanence(), actualSynapses.get(i).getPermanence(), 0);
+                }
+            }
+        }
+    }
+    
+    private void assertReplayRestores(Connections original) throws IOException {
+        Random random = new Random(7);
+        int[][] patterns = patterns(random);
+        int step = 0;
+        for(;step < 100;step++) {
+            step(original, noisyInput(random, patterns, step), true);
+        }
+        
+        byte[] base = serializer.serialize(original);
+        original.beginChangeTracking();
+        
+        List<byte[]> deltas = new ArrayList<>();
+        for(int round = 0;round < 4;round++) {
+            for(int i = 0;i < 40;i++, step++) {
+                step(original, noisyInput(random, patterns, step), true);
+            }
+            deltas.add(delta(original));
+        }
+        
+        Connections restored = serializer.deSerialize(base);
+        for(byte[] delta : deltas) {
+            ConnectionsDelta.apply(restored, new DataInputStream(new ByteArrayInputStream(delta)));
+        }
+        assertSameState("replayed", original, restored);
+        
+        // Both go on identically
+        for(int i = 0;i < 60;i++, step++) {
+            int[] input = noisyInput(random, patterns, step);
+            ComputeCycle expected = step(original, input, true);
+            ComputeCycle actual = step(restored, input, true);
+            assertEquals("step " + step, expected.activeCells(), actual.activeCells());
+            assertEquals("step " + step, expected.predictiveCells(), actual.predictiveCells());
+        }
+        assertSameState("continued", original, restored);
+    }
+    
+    @Test
+    public void testReplayRestoresState() throws IOException {
+        assertReplayRestores(init(new Connections(), 64));
+    }
+    
+    @Test
+    public void testReplayRestoresPackedState() throws IOException {
+        assertReplayRestores(init(new PackedConnections(), 64));
+    }
+    
+    @Test
+    public void testDeltaOnlyHoldsChanges() throws IOException {
+        Connections c = init(new Connections(), 64);
+        Random random = new Random(7);
+        int[][] patterns = patterns(random);
+        for(int step = 0;step < 300;step++) {
+            step(c, noisyInput(random, patterns, step), true);
+        }
+        
+        byte[] base = serializer.serialize(c);
+        c.beginChangeTracking();
+        step(c, patterns[0], true);
+        byte[] first = delta(c);
+        byte[] empty = delta(c);
+        
+        assertTrue(first.length < base.length / 4);
+        // Flags are cleared by each delta: only the per cycle state is left
+        assertTrue(empty.length < first.length);
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testWriteRequiresTracking() throws IOException {
+        delta(init(new Connections(), 64));
+    }
+}
@@ -0,0 +1,184 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.model;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.algorithms.TemporalMemory;
+import org.numenta.nupic.model.Connections.Activity;
+import org.numenta.nupic.serialize.SerializerCore;
+
+public class ConnectionsTest {
+
+    private Connections init(Connections c) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { 64 });
+        parameters.set(KEY.CELLS_PER_COLUMN, 4);
+        parameters.apply(c);
+        TemporalMemory.init(c);
+        return c;
+    }
+
+    /**
+     * Random segments and synapses, with some segments destroyed and
+     * their flat indexes reused so that the flat index order differs
+     * from the cell order.
+     */
+    private void grow(Connections c, Random random) {
+        int numCells = c.getCells().length;
+        List<DistalDendrite> segments = new ArrayList<>();
+        for(int i = 0;i < 300;i++) {
+            DistalDendrite segment = c.createSegment(c.getCell(random.nextInt(numCells)));
+            for(int j = 0;j < 8;j++) {
+                c.createSynapse(segment, c.getCell(random.nextInt(numCells)), random.nextDouble());
+            }
+            segments.add(segment);
+            if(random.nextInt(4) == 0) {
+                c.destroySegment(segments.remove(random.nextInt(segments.size())));
+            }
+        }
+        for(int i = 0;i < 5;i++) {
+            c.destroySegment(segments.remove(random.nextInt(segments.size())));
+        }
+    }
+
+    private void assertActivity(Connections c, Set<Cell> activeCells, int activationThreshold, int minThreshold) {
+        int numSegments = c.nextFlatIdx;
+        int[] expectedConnected = new int[numSegments];
+        int[] expectedPotential = new int[numSegments];
+        for(Cell cell : activeCells) {
+            for(Synapse synapse : c.getReceptorSynapses(cell)) {
+                int flatIdx = synapse.getSegment().getIndex();
+                ++expectedPotential[flatIdx];
+                if(synapse.getPermanence() > c.getConnectedPermanence() - 0.00001) {
+                    ++expectedConnected[flatIdx];
+                }
+            }
+        }
+        List<DistalDendrite> expectedActive = new ArrayList<>();
+        List<DistalDendrite> expectedMatching = new ArrayList<>();
+        for(int flatIdx = 0;flatIdx < numSegments;flatIdx++) {
+            DistalDendrite segment = c.segmentForFlatIdx(flatIdx);
+            if(segment == null) continue;
+            if(expectedConnected[flatIdx] >= activationThreshold) expectedActive.add(segment);
+            if(expectedPotential[flatIdx] >= minThreshold) expectedMatching.add(segment);
+        }
+        Collections.sort(expectedActive, c.segmentPositionSortKey);
+        Collections.sort(expectedMatching, c.segmentPositionSortKey);
+
+        Activity activity = c.computeActivity(activeCells, c.getConnectedPermanence(), activationThreshold, minThreshold);
+        assertSame(activity, c.getLastActivity());
+        for(int flatIdx = 0;flatIdx < numSegments;flatIdx++) {
+            assertEquals(expectedConnected[flatIdx], activity.numActiveConnected[flatIdx]);
+            assertEquals(expectedPotential[flatIdx], activity.numActivePotential[flatIdx]);
+        }
+
+        List<DistalDendrite> active = new ArrayList<>();
+        for(int i = 0;i < activity.getNumActiveSegments();i++) {
+            active.add(c.segmentForFlatIdx(activity.getActiveSegment(i)));
+        }
+        List<DistalDendrite> matching = new ArrayList<>();
+        for(int i = 0;i < activity.getNumMatchingSegments();i++) {
+            matching.add(c.segmentForFlatIdx(activity.getMatchingSegment(i)));
+        }
+        assertEquals(expectedActive, active);
+        assertEquals(expectedMatching, matching);
+    }
+
+    private void assertActivityMatchesFullScan(Connections c) {
+        Random random = new Random(11);
+        grow(c, random);
+        assertTrue(c.freeFlatIdxs.size() > 0);
+
+        int numCells = c.getCells().length;
+        for(int round = 0;round < 30;round++) {
+            Set<Cell> activeCells = new LinkedHashSet<>();
+            int numActive = 10 + random.nextInt(60);
+            for(int i = 0;i < numActive;i++) {
+                activeCells.add(c.getCell(random.nextInt(numCells)));
+            }
+            assertActivity(c, activeCells, 2, 1);
+            assertActivity(c, activeCells, 3, 2);
+        }
+
+        // A zero threshold selects segments without any active synapse as well
+        Set<Cell> activeCells = new LinkedHashSet<>();
+        activeCells.add(c.getCell(0));
+        assertActivity(c, activeCells, 1, 0);
+        assertEquals(c.numSegments(), c.getLastActivity().getNumMatchingSegments());
+    }
+
+    @Test
+    public void testComputeActivityMatchesFullScan() {
+        assertActivityMatchesFullScan(init(new Connections()));
+    }
+
+    @Test
+    public void testPackedComputeActivityMatchesFullScan() {
+        assertActivityMatchesFullScan(init(new PackedConnections()));
+    }
+
+    @Test
+    public void testActivityScratchIsNotSerialized() throws Exception {
+        Connections c = init(new Connections());
+        Random random = new Random(11);
+        grow(c, random);
+        Set<Cell> activeCells = new LinkedHashSet<>();
+        for(int i = 0;i < 60;i++) {
+            activeCells.add(c.getCell(random.nextInt(c.getCells().length)));
+        }
+        Activity activity = c.computeActivity(activeCells, c.getConnectedPermanence(), 2, 1);
+        assertTrue(activity.getNumMatchingSegments() > 1);
+
+        SerializerCore serializer = new SerializerCore();
+        Connections restored = serializer.deSerialize(serializer.serialize(c));
+
+        // The counters read by the TemporalMemory survive, the scratch arrays do not
+        Activity last = restored.getLastActivity();
+        assertArrayEquals(activity.numActiveConnected, last.numActiveConnected);
+        assertArrayEquals(activity.numActivePotential, last.numActivePotential);
+        for(String name : new String[] { "touchedSegments", "activeSegments", "matchingSegments",
+            "sortKeys", "sortKeyBuffer", "sortBuffer" }) {
+            Field field = Activity.class.getDeclaredField(name);
+            field.setAccessible(true);
+            assertNull(name, field.get(last));
+        }
+        assertEquals(0, last.getNumMatchingSegments());
+
+        // ...and are recreated on the next computation
+        assertActivity(restored, activeCells, 2, 1);
+        assertActivity(restored, activeCells, 3, 2);
+    }
+}
@@ -0,0 +1,136 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.algorithms.SpatialPooler;
+import org.numenta.nupic.algorithms.TemporalMemory;
+import org.numenta.nupic.util.MersenneTwister;
+
+/**
+ * A small trained spatial pooler and temporal memory, shared by the tests
+ * storing and restoring {@link Connections}.
+ */
+final class ModelFixtures {
+    static final int NUM_INPUTS = 128;
+    
+    static final SpatialPooler SP = new SpatialPooler();
+    static final TemporalMemory TM = new TemporalMemory();
+    
+    private ModelFixtures() {}
+    
+    /**
+     * Small limits so that synapse eviction, synapse destruction and
+     * segment destruction all happen within a few hundred steps.
+     * 
+     * @param c             the connections to initialize
+     * @param numColumns    the number of columns
+     * @return  {@code c}
+     */
+    static <T extends Connections> T init(T c, int numColumns) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.INPUT_DIMENSIONS, new int[] { NUM_INPUTS });
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { numColumns });
+        parameters.set(KEY.POTENTIAL_RADIUS, new int[] { NUM_INPUTS });
+        parameters.set(KEY.POTENTIAL_PCT, 0.5);
+        parameters.set(KEY.GLOBAL_INHIBITION, true);
+        parameters.set(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 6.0);
+        parameters.set(KEY.STIMULUS_THRESHOLD, 1.0);
+        parameters.set(KEY.SYN_PERM_INACTIVE_DEC, 0.01);
+        parameters.set(KEY.SYN_PERM_ACTIVE_INC, 0.05);
+        parameters.set(KEY.DUTY_CYCLE_PERIOD, 20);
+        parameters.set(KEY.MAX_BOOST, 2.0);
+        parameters.set(KEY.CELLS_PER_COLUMN, 4);
+        parameters.set(KEY.ACTIVATION_THRESHOLD, 3);
+        parameters.set(KEY.MIN_THRESHOLD, 2);
+        parameters.set(KEY.MAX_NEW_SYNAPSE_COUNT, 4);
+        parameters.set(KEY.MAX_SYNAPSES_PER_SEGMENT, 6);
+        parameters.set(KEY.MAX_SEGMENTS_PER_CELL, 3);
+        parameters.set(KEY.INITIAL_PERMANENCE, 0.21);
+        parameters.set(KEY.CONNECTED_PERMANENCE, 0.5);
+        parameters.set(KEY.PERMANENCE_INCREMENT, 0.1);
+        parameters.set(KEY.PERMANENCE_DECREMENT, 0.1);
+        parameters.set(KEY.PREDICTED_SEGMENT_DECREMENT, 0.05);
+        parameters.set(KEY.RANDOM, new MersenneTwister(42));
+        parameters.apply(c);
+        SP.init(c);
+        TemporalMemory.init(c);
+        return c;
+    }
+    
+    /**
+     * Returns a sequence of 8 dense inputs with 16 of {@link #NUM_INPUTS} bits on.
+     * 
+     * @param random    the random generator
+     * @return  the sequence
+     */
+    static int[][] patterns(Random random) {
+        int[][] patterns = new int[8][];
+        for(int i = 0;i < patterns.length;i++) {
+            patterns[i] = randomInput(random);
+        }
+        return patterns;
+    }
+    
+    /**
+     * Returns the sequence element of {@code step}, with about one step in
+     * ten replaced by noise.
+     * 
+     * @param noise     the noise generator
+     * @param patterns  the sequence
+     * @param step      the step
+     * @return  the input
+     */
+    static int[] noisyInput(Random noise, int[][] patterns, int step) {
+        return noise.nextInt(10) == 0 ? randomInput(noise) : patterns[step % patterns.length];
+    }
+    
+    private static int[] randomInput(Random random) {
+        int[] input = new int[NUM_INPUTS];
+        random.ints(0, NUM_INPUTS).distinct().limit(16).forEach(bit -> input[bit] = 1);
+        return input;
+    }
+    
+    /**
+     * Runs one SP and TM step.
+     * 
+     * @param c         the connections
+     * @param input     the dense input
+     * @param learn     whether to learn
+     * @return  the TM's cycle
+     */
+    static ComputeCycle step(Connections c, int[] input, boolean learn) {
+        int[] activeArray = new int[c.getNumColumns()];
+        SP.compute(c, input, activeArray, learn);
+        int[] activeColumns = new int[c.getNumColumns()];
+        int n = 0;
+        for(int i = 0;i < activeArray.length;i++) {
+            if(activeArray[i] > 0) activeColumns[n++] = i;
+        }
+        return TM.compute(c, Arrays.copyOf(activeColumns, n), learn);
+    }
+}
@@ -0,0 +1,151 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.model;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.algorithms.TemporalMemory;
+import org.numenta.nupic.util.MersenneTwister;
+
+public class PackedConnectionsTest {
+
+    /**
+     * Small limits so that synapse eviction, synapse destruction and
+     * segment destruction all happen within a few hundred steps.
+     */
+    private Connections init(Connections c) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.set(KEY.COLUMN_DIMENSIONS, new int[] { 64 });
+        parameters.set(KEY.CELLS_PER_COLUMN, 4);
+        parameters.set(KEY.ACTIVATION_THRESHOLD, 3);
+        parameters.set(KEY.MIN_THRESHOLD, 2);
+        parameters.set(KEY.MAX_NEW_SYNAPSE_COUNT, 4);
+        parameters.set(KEY.MAX_SYNAPSES_PER_SEGMENT, 6);
+        parameters.set(KEY.MAX_SEGMENTS_PER_CELL, 3);
+        parameters.set(KEY.INITIAL_PERMANENCE, 0.21);
+        parameters.set(KEY.CONNECTED_PERMANENCE, 0.5);
+        parameters.set(KEY.PERMANENCE_INCREMENT, 0.1);
+        parameters.set(KEY.PERMANENCE_DECREMENT, 0.1);
+        parameters.set(KEY.PREDICTED_SEGMENT_DECREMENT, 0.05);
+        parameters.set(KEY.RANDOM, new MersenneTwister(42));
+        parameters.apply(c);
+        TemporalMemory.init(c);
+        return c;
+    }
+
+    private int[][] sequence(Random random) {
+        int[][] patterns = new int[8][];
+        for(int i = 0;i < patterns.length;i++) {
+            patterns[i] = random.ints(0, 64).distinct().limit(6).sorted().toArray();
+        }
+        return patterns;
+    }
+
+    @Test
+    public void testTemporalMemoryMatchesObjectBackend() {
+        Connections reference = init(new Connections());
+        PackedConnections packed = (PackedConnections)init(new PackedConnections());
+        TemporalMemory tm = new TemporalMemory();
+
+        Random random = new Random(7);
+        int[][] patterns = sequence(random);
+        for(int step = 0;step < 600;step++) {
+            // Mostly the repeating sequence, with some noise to punish predictions
+            int[] activeColumns = random.nextInt(10) == 0 ?
+                random.ints(0, 64).distinct().limit(6).sorted().toArray() :
+                    patterns[step % patterns.length];
+
+            ComputeCycle expected = tm.compute(reference, activeColumns, true);
+            ComputeCycle actual = tm.compute(packed, activeColumns, true);
+
+            assertEquals("step " + step, expected.activeCells(), actual.activeCells());
+            assertEquals("step " + step, expected.winnerCells(), actual.winnerCells());
+            assertEquals("step " + step, expected.predictiveCells(), actual.predictiveCells());
+            assertEquals("step " + step, reference.numSegments(), packed.numSegments());
+            assertEquals("step " + step, reference.numSynapses(), packed.numSynapses());
+        }
+
+        assertTrue(packed.numSegments() > 0);
+        for(Cell cell : reference.getCells()) {
+            List<DistalDendrite> expectedSegments = reference.getSegments(cell);
+            List<DistalDendrite> actualSegments = packed.getSegments(packed.getCell(cell.getIndex()));
+            assertEquals(expectedSegments.size(), actualSegments.size());
+            for(int s = 0;s < expectedSegments.size();s++) {
+                List<Synapse> expectedSynapses = reference.getSynapses(expectedSegments.get(s));
+                List<Synapse> actualSynapses = packed.getSynapses(actualSegments.get(s));
+                assertEquals(expectedSynapses.size(), actualSynapses.size());
+                for(int i = 0;i < expectedSynapses.size();i++) {
+                    Synapse e = expectedSynapses.get(i);
+                    Synapse a = actualSynapses.get(i);
+                    assertEquals(e.getPresynapticCell().getIndex(), a.getPresynapticCell().getIndex());
+                    assertEquals(e.getPermanence(), a.getPermanence(), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFreedSlotsAreReused() {
+        PackedConnections c = (PackedConnections)init(new PackedConnections());
+        DistalDendrite segment = c.createSegment(c.getCell(0));
+        Synapse first = c.createSynapse(segment, c.getCell(5), 0.3);
+        Synapse second = c.createSynapse(segment, c.getCell(6), 0.6);
+        assertEquals(2, c.getSynapseSlotCount());
+
+        c.destroySynapse(first);
+        assertTrue(first.destroyed());
+        assertEquals(1, c.numSynapses(segment));
+        assertTrue(c.getReceptorSynapses(c.getCell(5)).isEmpty());
+
+        Synapse third = c.createSynapse(segment, c.getCell(7), 0.4);
+        assertEquals(2, c.getSynapseSlotCount());
+        assertFalse(third.destroyed());
+        assertEquals(0.4, third.getPermanence(), 0);
+
+        // A stale view must not touch the synapse now living in its slot
+        c.destroySynapse(first);
+        assertEquals(2, c.numSynapses(segment));
+        assertEquals(2, c.numSynapses());
+
+        second.setPermanence(c, 0.7);
+        assertEquals(0.7, c.getSynapses(segment).get(0).getPermanence(), 0);
+        assertEquals(c.getCell(7), c.getSynapses(segment).get(1).getPresynapticCell());
+
+        c.destroySegment(segment);
+        assertEquals(0, c.numSynapses());
+        assertTrue(second.destroyed());
+        assertTrue(c.getReceptorSynapses(c.getCell(6)).isEmpty());
+
+        DistalDendrite reused = c.createSegment(c.getCell(1));
+        c.createSynapse(reused, c.getCell(8), 0.5);
+        c.createSynapse(reused, c.getCell(9), 0.5);
+        assertEquals(2, c.getSynapseSlotCount());
+    }
+}
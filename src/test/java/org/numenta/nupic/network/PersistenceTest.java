@@ -0,0 +1,307 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.network;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.algorithms.SpatialPooler;
+import org.numenta.nupic.algorithms.TemporalMemory;
+import org.numenta.nupic.model.Connections;
+import org.numenta.nupic.serialize.SerialConfig;
+import org.numenta.nupic.util.MersenneTwister;
+
+import rx.Observer;
+
+public class PersistenceTest {
+    private PersistenceAPI api;
+    private SerialConfig previousConfig;
+    
+    @Before
+    public void setUp() {
+        api = Persistence.get();
+        previousConfig = api.getConfig();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        if(new File(api.getConfig().getAbsoluteSerialDir()).exists()) {
+            for(String name : api.listCheckPointFiles()) {
+                Files.deleteIfExists(new File(api.getConfig().getAbsoluteSerialDir(), name).toPath());
+                Files.deleteIfExists(new File(api.getConfig().getAbsoluteSerialDir(), 
+                    name + SerialConfig.DELTA_LOG_SUFFIX).toPath());
+            }
+        }
+        api.setConfig(previousConfig);
+    }
+    
+    private Network createNetwork() {
+        Parameters p = Parameters.getAllDefaultParameters();
+        p.set(KEY.INPUT_DIMENSIONS, new int[] { 64 });
+        p.set(KEY.COLUMN_DIMENSIONS, new int[] { 64 });
+        p.set(KEY.CELLS_PER_COLUMN, 4);
+        
+        Network network = Network.create("CheckPointNetwork", p)
+            .add(Network.createRegion("r1")
+                .add(Network.createLayer("l1", p)
+                    .add(new TemporalMemory())));
+        
+        network.computeImmediate(new int[] { 1, 5, 9, 13 });
+        network.computeImmediate(new int[] { 2, 6, 10, 14 });
+        return network;
+    }
+    
+    private SerialConfig checkPointConfig(boolean async) {
+        SerialConfig config = new SerialConfig("CheckPointTest.ser", SerialConfig.SERIAL_TEST_DIR);
+        config.setCheckPointFileName("CheckPointTest_");
+        config.setOneCheckPointOnly(true);
+        config.setAsyncCheckPoint(async);
+        return config;
+    }
+    
+    @Test
+    public void testAsyncCheckPointNotifiesOnceDurable() throws Exception {
+        api.setConfig(checkPointConfig(true));
+        Network network = createNetwork();
+        
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        api.checkPointer(network).checkPoint(new Observer<byte[]>() {
+            @Override public void onCompleted() { done.countDown(); }
+            @Override public void onError(Throwable e) { failure.set(e); done.countDown(); }
+            @Override public void onNext(byte[] bytes) { received.set(bytes); }
+        });
+        
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertNotNull(received.get());
+        
+        // The observer is only told once the file is written in full.
+        File file = new File(api.getLastCheckPointFileName());
+        assertTrue(file.exists());
+        assertArrayEquals(received.get(), Files.readAllBytes(file.toPath()));
+        
+        Network reified = api.read(received.get());
+        assertEquals(network.getName(), reified.getName());
+        assertEquals(network.getRecordNum(), reified.getRecordNum());
+    }
+    
+    @Test
+    public void testAsyncCheckPointsKeepOrder() throws Exception {
+        api.setConfig(checkPointConfig(true));
+        Network network = createNetwork();
+        
+        // Consecutive check points are written in the order they were taken, so with
+        // "one check point only" just the newest file survives.
+        CountDownLatch done = new CountDownLatch(3);
+        for(int i = 0;i < 3;i++) {
+            api.checkPointer(network).checkPoint(new Observer<byte[]>() {
+                @Override public void onCompleted() { done.countDown(); }
+                @Override public void onError(Throwable e) { fail(e.getMessage()); }
+                @Override public void onNext(byte[] bytes) {}
+            });
+            Thread.sleep(5);
+        }
+        
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(1, api.listCheckPointFiles().size());
+        assertTrue(api.getLastCheckPointFileName().endsWith(api.listCheckPointFiles().get(0)));
+    }
+    
+    @Test
+    public void testSyncCheckPointNotifiesBeforeReturning() throws Exception {
+        api.setConfig(checkPointConfig(false));
+        Network network = createNetwork();
+        
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        api.checkPointer(network).checkPoint(new Observer<byte[]>() {
+            @Override public void onCompleted() {}
+            @Override public void onError(Throwable e) { fail(e.getMessage()); }
+            @Override public void onNext(byte[] bytes) { received.set(bytes); }
+        });
+        
+        assertNotNull(received.get());
+        assertArrayEquals(received.get(), Files.readAllBytes(new File(api.getLastCheckPointFileName()).toPath()));
+    }
+    
+    private static final int[][] SEQUENCE = {
+        { 1, 5, 9, 13 }, { 2, 6, 10, 14 }, { 3, 7, 11, 15 }, { 20, 30, 40, 50 }
+    };
+    
+    private byte[] checkPoint(Network network) {
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        api.checkPointer(network).checkPoint(new Observer<byte[]>() {
+            @Override public void onCompleted() {}
+            @Override public void onError(Throwable e) { fail(e.getMessage()); }
+            @Override public void onNext(byte[] bytes) { received.set(bytes); }
+        });
+        assertNotNull(received.get());
+        return received.get();
+    }
+    
+    private void run(Network network, int steps) {
+        for(int i = 0;i < steps;i++) {
+            network.computeImmediate(SEQUENCE[i % SEQUENCE.length]);
+        }
+    }
+    
+    @Test
+    public void testDeltaCheckPointsReplayOnLoad() throws Exception {
+        SerialConfig config = checkPointConfig(false);
+        config.setDeltaCheckPoints(2);
+        api.setConfig(config);
+        Network network = createNetwork();
+        
+        byte[] base = checkPoint(network);
+        String baseFileName = api.getLastCheckPointFileName();
+        File log = new File(baseFileName + SerialConfig.DELTA_LOG_SUFFIX);
+        assertFalse(log.exists());
+        
+        run(network, 12);
+        byte[] delta = checkPoint(network);
+        run(network, 12);
+        checkPoint(network);
+        
+        // Deltas are appended beside the base, which stays the last full check point
+        assertEquals(baseFileName, api.getLastCheckPointFileName());
+        assertTrue(log.exists());
+        assertTrue(delta.length < base.length);
+        assertEquals(1, api.listCheckPointFiles().size());
+        
+        Network loaded = api.load(baseFileName);
+        Layer<?> expected = network.lookup("r1").lookup("l1");
+        Layer<?> actual = loaded.lookup("r1").lookup("l1");
+        assertEquals(expected.getRecordNum(), actual.getRecordNum());
+        assertEquals(expected.getConnections().numSegments(), actual.getConnections().numSegments());
+        assertEquals(expected.getConnections().numSynapses(), actual.getConnections().numSynapses());
+        assertEquals(expected.getConnections().getActiveCells(), actual.getConnections().getActiveCells());
+        
+        // Both continue identically
+        loaded.postDeSerialize();
+        for(int i = 0;i < 8;i++) {
+            int[] input = SEQUENCE[i % SEQUENCE.length];
+            assertEquals(network.computeImmediate(input).getPredictiveCells(), 
+                loaded.computeImmediate(input).getPredictiveCells());
+        }
+        
+        // After two deltas the next check point is a new base, and the old base and its log are removed
+        checkPoint(network);
+        assertNotEquals(baseFileName, api.getLastCheckPointFileName());
+        assertFalse(log.exists());
+        assertEquals(1, api.listCheckPointFiles().size());
+    }
+    
+    private Network createMultiLayerNetwork() {
+        Parameters p = Parameters.getAllDefaultParameters();
+        p.set(KEY.INPUT_DIMENSIONS, new int[] { 64 });
+        p.set(KEY.COLUMN_DIMENSIONS, new int[] { 64 });
+        p.set(KEY.CELLS_PER_COLUMN, 4);
+        p.set(KEY.RANDOM, new MersenneTwister(42));
+        Parameters upper = p.copy();
+        upper.set(KEY.INPUT_DIMENSIONS, new int[] { 64 * 4 });
+        upper.set(KEY.RANDOM, new MersenneTwister(43));
+        
+        return Network.create("LazyNetwork", p)
+            .add(Network.createRegion("r1")
+                .add(Network.createLayer("2", upper)
+                    .add(new SpatialPooler())
+                    .add(new TemporalMemory()))
+                .add(Network.createLayer("1", p)
+                    .add(new TemporalMemory()))
+                .connect("2", "1"));
+    }
+    
+    @Test
+    public void testLazyLoadMaterializesOnLookup() throws Exception {
+        Network network = createMultiLayerNetwork();
+        run(network, 12);
+        
+        SerialConfig fullConfig = new SerialConfig("FullTest.ser", SerialConfig.SERIAL_TEST_DIR);
+        api.setConfig(fullConfig);
+        api.store(network);
+        File fullFile = new File(api.currentPath());
+        SerialConfig config = new SerialConfig("LazyTest.ser", SerialConfig.SERIAL_TEST_DIR);
+        api.setConfig(config);
+        api.storeIndexed(network);
+        File file = new File(api.currentPath());
+        try {
+            Network loaded = api.loadLazy(config.getFileName());
+            Region region = loaded.lookup("r1");
+            assertEquals(2, region.getLayers().size());
+            for(Layer<?> l : region.getLayers()) {
+                assertFalse(l.isMaterialized());
+            }
+            
+            // Only the looked up layer is read
+            Layer<?> l1 = region.lookup("1");
+            assertTrue(l1.isMaterialized());
+            assertFalse(region.getLayers().stream().filter(l -> l != l1).findFirst().get().isMaterialized());
+            assertEquals(network.lookup("r1").lookup("1").getConnections().numSegments(), 
+                l1.getConnections().numSegments());
+            assertEquals(network.lookup("r1").lookup("1").getConnections().numSynapses(), 
+                l1.getConnections().numSynapses());
+            
+            // Running reads the rest, and goes on like the fully loaded Network
+            Network full = api.load(fullFile.getAbsolutePath());
+            full.postDeSerialize();
+            loaded.postDeSerialize();
+            for(int i = 0;i < 8;i++) {
+                int[] input = SEQUENCE[i % SEQUENCE.length];
+                assertEquals(full.computeImmediate(input).getPredictiveCells(), 
+                    loaded.computeImmediate(input).getPredictiveCells());
+            }
+            for(Layer<?> l : region.getLayers()) {
+                assertTrue(l.isMaterialized());
+                Connections expected = full.lookup("r1").lookup(l.getName()).getConnections();
+                assertEquals(expected.numSynapses(), l.getConnections().numSynapses());
+                assertEquals(expected.getActiveCells(), l.getConnections().getActiveCells());
+            }
+        } finally {
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(fullFile.toPath());
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void testLazyLoadRejectsOtherFiles() throws Exception {
+        SerialConfig config = new SerialConfig("LazyTest.ser", SerialConfig.SERIAL_TEST_DIR);
+        api.setConfig(config);
+        api.store(createNetwork());
+        try {
+            api.loadLazy(config.getFileName());
+        } finally {
+            Files.deleteIfExists(new File(api.currentPath()).toPath());
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2016, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+package org.numenta.nupic.network.sensor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.examples.napi.hotgym.NetworkDemoHarness;
+import org.numenta.nupic.network.sensor.Publisher.Overflow;
+
+public class PublisherTest {
+
+    private Publisher bounded(int capacity, Overflow overflow) {
+        return Publisher.builder()
+            .addHeader("timestamp,consumption")
+            .addHeader("datetime,float")
+            .addHeader("B")
+            .buffer(capacity, overflow)
+            .build();
+    }
+
+    private List<String> drain(Iterator<String> it) {
+        List<String> lines = new ArrayList<>();
+        while(it.hasNext()) {
+            lines.add(it.next());
+        }
+        return lines;
+    }
+
+    @Test
+    public void testUnboundedByDefault() {
+        Publisher p = Publisher.builder()
+            .addHeader("timestamp,consumption")
+            .addHeader("datetime,float")
+            .addHeader("B")
+            .build();
+
+        assertFalse(p.isBounded());
+        p.onNext("7/2/10 0:00,21.2");
+        assertEquals(0, p.getCapacity());
+        assertEquals(0, p.getQueueDepth());
+        assertEquals(0, p.getDroppedCount());
+
+        try {
+            p.iterator();
+            fail();
+        }catch(IllegalStateException e) {
+            assertEquals("Only a bounded Publisher may be iterated", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDropDiscardsArrivingLines() {
+        Publisher p = bounded(2, Overflow.DROP);
+        assertTrue(p.isBounded());
+        assertEquals(2, p.getCapacity());
+
+        p.onNext("7/2/10 0:00,21.2");
+        p.onNext("7/2/10 1:00,34.0");
+        p.onNext("7/2/10 2:00,40.4");
+        p.onNext("7/2/10 3:00,123.4");
+        p.onComplete();
+
+        assertEquals(2, p.getQueueDepth());
+        assertEquals(2, p.getMaxQueueDepth());
+        assertEquals(2, p.getPublishedCount());
+        assertEquals(2, p.getDroppedCount());
+
+        List<String> lines = drain(p.iterator());
+        assertEquals(5, lines.size());
+        assertEquals("timestamp,consumption", lines.get(0));
+        assertEquals("B", lines.get(2));
+        assertEquals("7/2/10 0:00,21.2", lines.get(3));
+        assertEquals("7/2/10 1:00,34.0", lines.get(4));
+        assertEquals(0, p.getQueueDepth());
+    }
+
+    @Test
+    public void testSampleKeepsLatestLine() {
+        Publisher p = bounded(2, Overflow.SAMPLE);
+
+        p.onNext("7/2/10 0:00,21.2");
+        p.onNext("7/2/10 1:00,34.0");
+        p.onNext("7/2/10 2:00,40.4");
+        p.onNext("7/2/10 3:00,123.4");
+        p.onComplete();
+
+        assertEquals(2, p.getQueueDepth());
+        assertEquals(4, p.getPublishedCount());
+        assertEquals(2, p.getDroppedCount());
+
+        List<String> lines = drain(p.iterator());
+        assertEquals("7/2/10 0:00,21.2", lines.get(3));
+        assertEquals("7/2/10 3:00,123.4", lines.get(4));
+    }
+
+    /**
+     * Waits until the specified thread parks, failing after 10 seconds.
+     */
+    private static void awaitWaiting(Thread t) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(t.getState() != Thread.State.WAITING) {
+            assertTrue(t.getName() + " never blocked", System.currentTimeMillis() < deadline);
+            assertTrue(t.getName() + " finished without blocking", t.isAlive());
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testBlockMakesProducerWait() throws Exception {
+        Publisher p = bounded(4, Overflow.BLOCK);
+        int count = 1000;
+
+        Thread producer = new Thread(() -> {
+            for(int i = 0;i < count;i++) {
+                p.onNext("7/2/10 0:00," + i);
+            }
+            p.onComplete();
+        }, "producer");
+        producer.start();
+
+        // Nobody is reading yet: the producer must park on the full buffer
+        awaitWaiting(producer);
+        assertEquals(4, p.getQueueDepth());
+        assertEquals(4, p.getPublishedCount());
+
+        List<String> lines = drain(p.iterator());
+        producer.join();
+
+        assertEquals(count + 3, lines.size());
+        for(int i = 0;i < count;i++) {
+            assertEquals("7/2/10 0:00," + i, lines.get(i + 3));
+        }
+        assertEquals(count, p.getPublishedCount());
+        assertEquals(0, p.getDroppedCount());
+    }
+
+    @Test
+    public void testErrorIsThrownAfterDrain() {
+        Publisher p = bounded(4, Overflow.BLOCK);
+        p.onNext("7/2/10 0:00,21.2");
+        p.onError(new RuntimeException("boom"));
+
+        Iterator<String> it = p.iterator();
+        for(int i = 0;i < 4;i++) {
+            assertTrue(it.hasNext());
+            it.next();
+        }
+        try {
+            it.hasNext();
+            fail();
+        }catch(IllegalStateException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testObservableSensorReadsBoundedPublisher() throws Exception {
+        Publisher p = bounded(8, Overflow.BLOCK);
+        ObservableSensor<String[]> sensor = new ObservableSensor<>(
+            SensorParams.create(SensorParams.Keys::obs, new Object[] { "name", p }));
+
+        int count = 100;
+        Thread producer = new Thread(() -> {
+            for(int i = 0;i < count;i++) {
+                p.onNext("7/2/10 0:00," + i);
+            }
+            p.onComplete();
+        });
+        producer.start();
+
+        MetaStream<String[]> stream = sensor.getInputStream();
+        List<String[]> rows = stream.collect(Collectors.toList());
+        producer.join();
+
+        assertEquals(count, rows.size());
+        assertEquals("99", rows.get(count - 1)[2]);
+        assertTrue(p.getMaxQueueDepth() <= 8);
+    }
+
+    private HTMSensor<?> sensor(Publisher p) {
+        Sensor<ObservableSensor<String[]>> sensor = Sensor.create(
+            ObservableSensor::create, SensorParams.create(SensorParams.Keys::obs, new Object[] { "name", p }));
+
+        Map<String, Map<String, Object>> fieldEncodings = NetworkDemoHarness.setupMap(
+            null, 50, 21, 0, 100, 0, 0, null, true, null, "consumption", "float", "ScalarEncoder");
+        Parameters params = Parameters.getEncoderDefaultParameters();
+        params.set(KEY.FIELD_ENCODING_MAP, fieldEncodings);
+
+        HTMSensor<?> htm = (HTMSensor<?>)sensor;
+        htm.initEncoder(params);
+        return htm;
+    }
+
+    private Publisher scalar(int capacity, Overflow overflow) {
+        return Publisher.builder()
+            .addHeader("consumption")
+            .addHeader("float")
+            .addHeader("B")
+            .buffer(capacity, overflow)
+            .build();
+    }
+
+    @Test
+    public void testBlockBoundsStalledFanOut() throws Exception {
+        Publisher p = scalar(4, Overflow.BLOCK);
+        HTMSensor<?> htm = sensor(p);
+        Iterator<int[]> fast = htm.getOutputStream().iterator();
+        Iterator<int[]> stalled = htm.getOutputStream().iterator();
+
+        int count = 100;
+        Thread producer = new Thread(() -> {
+            for(int i = 0;i < count;i++) {
+                p.onNext(String.valueOf(i));
+            }
+            p.onComplete();
+        }, "producer");
+        List<int[]> fastSeen = new ArrayList<>();
+        Thread reader = new Thread(() -> fast.forEachRemaining(fastSeen::add), "reader");
+        producer.start();
+        reader.start();
+
+        // The stalled stream's queue fills up, parking the reader and in turn the producer
+        awaitWaiting(producer);
+        awaitWaiting(reader);
+        assertEquals(4, htm.getMaxFanOutDepth());
+        assertEquals(4, p.getQueueDepth());
+
+        List<int[]> stalledSeen = new ArrayList<>();
+        stalled.forEachRemaining(stalledSeen::add);
+        reader.join();
+        producer.join();
+
+        assertEquals(count, stalledSeen.size());
+        assertEquals(count, fastSeen.size());
+        for(int i = 0;i < count;i++) {
+            assertSame(fastSeen.get(i), stalledSeen.get(i));
+        }
+        assertEquals(0, htm.getFanOutDroppedCount());
+    }
+
+    @Test
+    public void testDropBoundsStalledFanOut() throws Exception {
+        Publisher p = scalar(4, Overflow.DROP);
+        HTMSensor<?> htm = sensor(p);
+        Iterator<int[]> fast = htm.getOutputStream().iterator();
+        Iterator<int[]> stalled = htm.getOutputStream().iterator();
+
+        int count = 100;
+        Thread producer = new Thread(() -> {
+            for(int i = 0;i < count;i++) {
+                // Pace the producer so that only the fan out overflows
+                while(p.getQueueDepth() > 0) {
+                    Thread.yield();
+                }
+                p.onNext(String.valueOf(i));
+            }
+            p.onComplete();
+        }, "producer");
+        producer.start();
+
+        List<int[]> fastSeen = new ArrayList<>();
+        fast.forEachRemaining(fastSeen::add);
+        producer.join();
+
+        assertEquals(0, p.getDroppedCount());
+        assertEquals(count, fastSeen.size());
+        assertEquals(4, htm.getMaxFanOutDepth());
+        assertEquals(count - 4, htm.getFanOutDroppedCount());
+
+        List<int[]> stalledSeen = new ArrayList<>();
+        stalled.forEachRemaining(stalledSeen::add);
+        assertEquals(4, stalledSeen.size());
+        for(int i = 0;i < 4;i++) {
+            assertSame(fastSeen.get(i), stalledSeen.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testStreamWaitingOnSourceDoesNotStallSiblings() throws Exception {
+        Publisher p = scalar(4, Overflow.BLOCK);
+        HTMSensor<?> htm = sensor(p);
+        Iterator<int[]> waiting = htm.getOutputStream().iterator();
+        Iterator<int[]> sibling = htm.getOutputStream().iterator();
+
+        p.onNext("1");
+        p.onNext("2");
+        List<int[]> waitingSeen = new ArrayList<>();
+        Thread reader = new Thread(() -> waiting.forEachRemaining(waitingSeen::add), "reader");
+        reader.start();
+
+        // The reader drains both lines, then waits on the publisher for more
+        awaitWaiting(reader);
+        assertEquals(2, htm.getMaxFanOutDepth());
+        assertTrue(sibling.hasNext());
+        sibling.next();
+        sibling.next();
+        assertEquals(0, htm.getMaxFanOutDepth());
+
+        p.onComplete();
+        reader.join();
+        assertEquals(2, waitingSeen.size());
+        assertFalse(sibling.hasNext());
+    }
+}
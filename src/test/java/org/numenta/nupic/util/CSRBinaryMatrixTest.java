@@ -0,0 +1,81 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CSRBinaryMatrixTest {
+
+    @Test
+    public void testSetClearAndCSRView() {
+        CSRBinaryMatrix matrix = new CSRBinaryMatrix(new int[] { 3, 70 });
+        matrix.set(1, 0, 2).set(1, 0, 65).set(1, 2, 2).set(1, 2, 69);
+        matrix.set(1, 0, 2);
+        assertEquals(1, (int)matrix.get(0, 65));
+        assertEquals(0, (int)matrix.get(1, 65));
+        assertArrayEquals(new int[] { 2, 0, 2 }, matrix.getTrueCounts());
+        assertArrayEquals(new int[] { 0, 2, 2, 4 }, matrix.getRowPointers());
+        assertArrayEquals(new int[] { 2, 65, 2, 69 }, matrix.getColumnIndices());
+        assertArrayEquals(new int[] { 2, 65, 142, 209 }, matrix.getSparseIndices());
+
+        matrix.set(0, 0, 65);
+        matrix.clearStatistics(2);
+        assertArrayEquals(new int[] { 1, 0, 0 }, matrix.getTrueCounts());
+        assertArrayEquals(new int[] { 0, 1, 1, 1 }, matrix.getRowPointers());
+        assertArrayEquals(new int[] { 0 }, matrix.getInputRows(2));
+        assertArrayEquals(new int[0], matrix.getInputRows(69));
+    }
+
+    @Test
+    public void testOverlapMatchesSparseBinaryMatrix() {
+        int rows = 40, cols = 130;
+        CSRBinaryMatrix csr = new CSRBinaryMatrix(new int[] { rows, cols });
+        SparseBinaryMatrix reference = new SparseBinaryMatrix(new int[] { rows, cols });
+        UniversalRandom random = new UniversalRandom(42);
+        for(int i = 0;i < 900;i++) {
+            int row = random.nextInt(rows), col = random.nextInt(cols);
+            csr.set(1, row, col);
+            reference.set(1, row, col);
+        }
+        csr.clearStatistics(7);
+        reference.clearStatistics(7);
+
+        int[] input = new int[cols];
+        for(int i = 0;i < cols;i += 3) input[i] = 1;
+        int[] inputIndices = ArrayUtils.where(input, ArrayUtils.WHERE_1);
+
+        int[] expected = new int[rows];
+        reference.rightVecSumAtNZ(input, expected, 3);
+        int[] dense = new int[rows];
+        csr.rightVecSumAtNZ(input, dense, 3);
+        int[] sparse = new int[rows];
+        csr.rightVecSumAtNZSparse(inputIndices, sparse, 3);
+
+        assertArrayEquals(expected, dense);
+        assertArrayEquals(expected, sparse);
+        assertArrayEquals(reference.getTrueCounts(), csr.getTrueCounts());
+    }
+}